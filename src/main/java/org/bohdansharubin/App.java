@@ -1,67 +1,394 @@
 package org.bohdansharubin;
 import org.bohdansharubin.controllers.MainController;
-import org.bohdansharubin.utils.Deserializer;
-import org.bohdansharubin.utils.Serializer;
+import org.bohdansharubin.utils.CatalogFile;
+import org.bohdansharubin.utils.CompressedCatalogFile;
+import org.bohdansharubin.utils.LogEntry;
+import org.bohdansharubin.utils.PagedCatalogFile;
+import org.bohdansharubin.utils.WriteAheadLog;
 import org.bohdansharubin.models.*;
+import org.bohdansharubin.services.ClothesCheckpointer;
+import org.bohdansharubin.services.ClothesLoader;
 import org.bohdansharubin.services.ClothesService;
+import org.bohdansharubin.services.ConcurrentClothesService;
+import org.bohdansharubin.services.StorageMode;
 import org.bohdansharubin.views.MainView;
 import org.bohdansharubin.views.View;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
 /**
  * Entry point of the Clothes application.
  * <p>
  * Responsible for:
  * <ul>
  *     <li>Initializing application components</li>
- *     <li>Loading saved clothes data from disk</li>
+ *     <li>Loading saved clothes data from disk, optionally in the background</li>
  *     <li>Starting the main application controller</li>
- *     <li>Saving data before application shutdown</li>
+ *     <li>Logging every change to the write-ahead log</li>
+ *     <li>Saving checkpoints of the catalog in the background</li>
  * </ul>
  */
 public class App {
 
+    /**
+     * Command-line option selecting the memory-mapped loading mode.
+     */
+    public static final String MAPPED_OPTION = "--mapped";
+
+    /**
+     * Command-line option saving whole compressed checkpoints instead of
+     * saving changes to the paged catalog file.
+     */
+    public static final String COMPRESSED_OPTION = "--compressed";
+
+    /**
+     * Prefix of the command-line option selecting the durability of the
+     * write-ahead log, e.g. {@code --durability=batched}.
+     */
+    public static final String DURABILITY_OPTION = "--durability=";
+
+    /**
+     * Command-line option showing the menu at once while the catalog is
+     * loaded in the background. Ignored with {@value #MAPPED_OPTION}, which
+     * does not load the catalog.
+     */
+    public static final String ASYNC_OPTION = "--async";
+
+    /**
+     * Interval of background writes of the write-ahead log.
+     */
+    private static final Duration LOG_INTERVAL = Duration.ofMillis(10);
+
+    /**
+     * Interval between checkpoints, which bounds the changes replayed on start.
+     */
+    private static final Duration CHECKPOINT_INTERVAL = Duration.ofSeconds(30);
+
+    /**
+     * Time between progress reports while waiting for the catalog on exit.
+     */
+    private static final Duration LOADING_PROGRESS_INTERVAL = Duration.ofMillis(500);
+
+    /**
+     * Suffix of the file an unreadable catalog is moved to.
+     */
+    private static final String BACKUP_SUFFIX = ".bak";
+
     /**
      * Starts the application.
      *
-     * @param args command-line arguments (not used)
-     * @throws IOException if saving data fails
-     * @throws ClassNotFoundException if loaded data has invalid format
+     * @param args command-line arguments, {@value #MAPPED_OPTION} serves the
+     *             catalog from a memory mapping of the file instead of loading it,
+     *             {@value #COMPRESSED_OPTION} saves compressed checkpoints instead
+     *             of saving only the changes to the paged catalog file,
+     *             {@value #DURABILITY_OPTION}{@code per_operation|batched|async}
+     *             selects when logged changes are written to disk,
+     *             {@value #ASYNC_OPTION} shows the menu before the catalog is loaded
+     * @throws IOException if the mapped catalog can't be read, the write-ahead log can't be opened or written
+     *                     or the last checkpoint can't be saved
      */
-    public static void main(String[] args) throws IOException, ClassNotFoundException {
+    public static void main(String[] args) throws IOException {
         System.out.println("Hello in Clothes App");
         System.out.println("Init clothes");
 
         final String inputFileName = "input.txt";
+        final String logFileName = "input.log";
+        final Path indexPath = Path.of("input.idx");
         Scanner input = new Scanner(System.in);
 
-        List<Clothes> clothesList = loadFromDisk(inputFileName);
-
-        final ClothesService service = new ClothesService(clothesList);
+        final boolean mapped = Arrays.asList(args).contains(MAPPED_OPTION);
+        final boolean compressed = Arrays.asList(args).contains(COMPRESSED_OPTION);
+        final boolean async = !mapped && Arrays.asList(args).contains(ASYNC_OPTION);
+        final WriteAheadLog.Durability durability = durabilityOf(args);
+        final Catalog catalog = new Catalog();
+        final ConcurrentClothesService service;
+        ClothesLoader loader = null;
+        if (mapped) {
+            service = mapFromDisk(inputFileName, indexPath);
+            catalog.mappedFile = Path.of(inputFileName);
+            catalog.open(service, inputFileName, logFileName, durability, false);
+        } else if (async) {
+            service = new ConcurrentClothesService(new ArrayList<>());
+            loader = new ClothesLoader(service);
+            loader.start((action, discard) -> {
+                if (!compressed) {
+                    catalog.pagedFile = openPaged(inputFileName, action, discard);
+                } else {
+                    loadFromDisk(inputFileName).forEach(action);
+                }
+            }, () -> catalog.open(service, inputFileName, logFileName, durability, compressed));
+        } else if (compressed) {
+            service = new ConcurrentClothesService(loadFromDisk(inputFileName));
+            catalog.open(service, inputFileName, logFileName, durability, true);
+        } else {
+            List<Clothes> clothes = new ArrayList<>();
+            catalog.pagedFile = openPaged(inputFileName, clothes);
+            service = new ConcurrentClothesService(clothes, StorageMode.OBJECTS, indexPath,
+                    catalog.pagedFile.stamp());
+            System.out.println(service.hasLoadedIndexes() ? "Loaded indexes from " + indexPath : "Built indexes");
+            catalog.open(service, inputFileName, logFileName, durability, false);
+        }
         final View view = new MainView();
-        MainController controller = new MainController(view, service, input);
+        MainController controller = new MainController(view, service, input, loader);
 
         controller.run();
 
-        Serializer.saveObject(service.getClothesList(), inputFileName);
+        boolean loaded = loader == null || loader.await(LOADING_PROGRESS_INTERVAL,
+                count -> System.out.println("Loaded " + count + " clothes"));
+        catalog.close(service, indexPath);
         input.close();
+        if (!loaded) {
+            throw loader.getFailure();
+        }
+    }
+
+    /**
+     * Files kept open for the loaded catalog until the application exits.
+     * <p>
+     * Fields are written by the thread loading the catalog, which may be a
+     * {@link ClothesLoader}, and read after the loading is awaited.
+     */
+    private static final class Catalog {
+
+        private PagedCatalogFile pagedFile;
+        private Path mappedFile;
+        private WriteAheadLog log;
+        private ClothesCheckpointer checkpointer;
+
+        /**
+         * Replays and attaches the log and starts checkpoints of the loaded catalog.
+         */
+        void open(ConcurrentClothesService service, String inputFileName, String logFileName,
+                  WriteAheadLog.Durability durability, boolean compressed) throws IOException {
+            if (pagedFile != null) {
+                service.trackChanges();
+            }
+            log = openLog(service, logFileName, durability);
+            checkpointer = pagedFile != null
+                    ? new ClothesCheckpointer(service, log, pagedFile, CHECKPOINT_INTERVAL)
+                    : new ClothesCheckpointer(service, log, Path.of(inputFileName), CHECKPOINT_INTERVAL, compressed);
+        }
+
+        /**
+         * Saves the last checkpoint and the indexes and closes the files
+         * which were opened.
+         */
+        void close(ConcurrentClothesService service, Path indexPath) throws IOException {
+            if (checkpointer != null) {
+                checkpointer.close();
+                checkpointer.checkpoint();
+                if (pagedFile != null || mappedFile != null) {
+                    saveIndexes(service, indexPath, pagedFile, mappedFile);
+                }
+            }
+            service.setWriteAheadLog(null);
+            if (log != null) {
+                log.close();
+            }
+            if (pagedFile != null) {
+                pagedFile.close();
+            }
+        }
+    }
+
+    /**
+     * Applies the changes logged after the last checkpoint was saved and
+     * attaches the log to the service, so every following change is appended to it.
+     * <p>
+     * Only the last logged change of every clothes item is applied, the log
+     * is reduced to these changes in partitions by uuid on all cores.
+     *
+     * @param service    service holding the loaded snapshot
+     * @param filename   name of the log file
+     * @param durability when logged changes are written to disk
+     * @return the opened log
+     * @throws IOException if the log can't be read or opened
+     */
+    public static WriteAheadLog openLog(ClothesService service, String filename, WriteAheadLog.Durability durability)
+            throws IOException {
+        Path path = Path.of(filename);
+        List<LogEntry> entries = WriteAheadLog.readLatest(path, Runtime.getRuntime().availableProcessors());
+        for (LogEntry entry : entries) {
+            service.apply(entry);
+        }
+        if (!entries.isEmpty()) {
+            System.out.println("Applied " + entries.size() + " logged changes");
+        }
+        WriteAheadLog log = WriteAheadLog.open(path, durability, LOG_INTERVAL);
+        service.setWriteAheadLog(log);
+        return log;
+    }
+
+    /**
+     * Saves the indexes for the last saved state of the paged catalog file or,
+     * without one, of the mapped catalog file, so the next start does not have
+     * to build them. Checkpoints save a mapped catalog in the order of the rows
+     * of the service, which is the order it is mapped in on the next start.
+     * A failure only costs building the indexes on the next start.
+     */
+    private static void saveIndexes(ClothesService service, Path indexPath, PagedCatalogFile pagedFile,
+                                    Path mappedFile) {
+        try {
+            if (pagedFile != null) {
+                service.saveIndexes(indexPath, pagedFile.stamp(), pagedFile.uuidsInLoadOrder());
+            } else {
+                OptionalLong stamp = CatalogFile.stamp(mappedFile);
+                if (stamp.isPresent()) {
+                    service.saveIndexes(indexPath, stamp.getAsLong(), null);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Can't save indexes to " + indexPath + ": " + e.getMessage());
+        }
+    }
+
+    private static WriteAheadLog.Durability durabilityOf(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith(DURABILITY_OPTION)) {
+                String value = arg.substring(DURABILITY_OPTION.length()).replace('-', '_');
+                try {
+                    return WriteAheadLog.Durability.valueOf(value.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unknown durability " + value);
+                }
+            }
+        }
+        return WriteAheadLog.Durability.PER_OPERATION;
     }
 
     /**
      * Loads clothes data from file.
+     * <p>
+     * A file in the legacy Java serialization format is converted to the
+     * binary catalog format first. A file that can't be read is moved aside
+     * so that saving the empty catalog doesn't overwrite it.
      *
-     * @param filename name of the file containing serialized clothes list
+     * @param filename name of the file containing the saved clothes
      * @return list of clothes if file exists and is valid, otherwise empty list
+     * @throws IOException if an unreadable file can't be moved aside
+     * @see #moveAside(Path)
      */
-    public static List<Clothes> loadFromDisk(String filename) {
+    public static List<Clothes> loadFromDisk(String filename) throws IOException {
+        Path path = Path.of(filename);
         try {
-            List<Clothes> list = (List<Clothes>) Deserializer.loadObject(filename);
+            if (CatalogFile.migrate(path)) {
+                System.out.println("Converted " + filename + " to the binary catalog format");
+            }
+            List<Clothes> list = CatalogFile.load(path);
             System.out.println("Loaded " + list.size() + " clothes");
             return list;
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (NoSuchFileException e) {
             System.out.println("Can't find file " + filename);
+        } catch (IOException e) {
+            System.out.println("Can't read file " + filename + ": " + e.getMessage());
+            moveAside(path);
         }
         return new ArrayList<>();
     }
+
+    /**
+     * Moves a catalog file that can't be read to a backup file next to it,
+     * replacing an earlier backup.
+     *
+     * @param path the unreadable catalog file
+     * @throws IOException if the file can't be moved
+     */
+    private static void moveAside(Path path) throws IOException {
+        Path backup = path.resolveSibling(path.getFileName() + BACKUP_SUFFIX);
+        Files.move(path, backup, StandardCopyOption.REPLACE_EXISTING);
+        System.out.println("Moved " + path + " to " + backup);
+    }
+
+    /**
+     * Opens the paged catalog file, which only changes are saved to.
+     * <p>
+     * A file in another format is converted, an empty catalog is created
+     * when the file is missing or, after it is moved aside, can't be read.
+     *
+     * @param filename name of the file containing the saved clothes
+     * @param clothes  list the loaded clothes are added to
+     * @return the opened file
+     * @throws IOException if the file can't be created, converted or moved aside
+     */
+    public static PagedCatalogFile openPaged(String filename, List<Clothes> clothes) throws IOException {
+        return openPaged(filename, clothes::add, clothes::clear);
+    }
+
+    /**
+     * Opens the paged catalog file, passing the loaded clothes to the action
+     * as they are read.
+     *
+     * @param filename name of the file containing the saved clothes
+     * @param action   receives every loaded clothes item
+     * @param discard  drops the clothes received so far when the rest of the file can't be read
+     * @return the opened file
+     * @throws IOException if the file can't be created, converted or moved aside
+     * @see #openPaged(String, List)
+     */
+    public static PagedCatalogFile openPaged(String filename, Consumer<? super Clothes> action, Runnable discard)
+            throws IOException {
+        Path path = Path.of(filename);
+        if (Files.exists(path) && !PagedCatalogFile.isPaged(path)) {
+            List<Clothes> loaded = loadFromDisk(filename);
+            loaded.forEach(action);
+            boolean read = Files.exists(path);
+            PagedCatalogFile file = PagedCatalogFile.create(path, loaded);
+            if (read) {
+                System.out.println("Converted " + filename + " to the paged catalog format");
+            }
+            return file;
+        }
+        int[] count = new int[1];
+        try {
+            PagedCatalogFile file = PagedCatalogFile.open(path, clothes -> {
+                count[0]++;
+                action.accept(clothes);
+            });
+            System.out.println("Loaded " + count[0] + " clothes");
+            return file;
+        } catch (NoSuchFileException e) {
+            System.out.println("Can't find file " + filename);
+        } catch (IOException e) {
+            System.out.println("Can't read file " + filename + ": " + e.getMessage());
+            discard.run();
+            moveAside(path);
+        }
+        return PagedCatalogFile.create(path, List.of());
+    }
+
+    /**
+     * Serves clothes data from a memory mapping of the file.
+     * <p>
+     * A file in the legacy Java serialization format, a compressed or a paged
+     * file is converted to the uncompressed binary catalog format first.
+     *
+     * @param filename  name of the file containing the saved clothes
+     * @param indexPath path of the indexes saved for the file, which are loaded if they match it
+     * @return service over the mapped file if it exists, otherwise empty service
+     * @throws IOException if the file exists but can't be read or converted
+     */
+    public static ConcurrentClothesService mapFromDisk(String filename, Path indexPath) throws IOException {
+        Path path = Path.of(filename);
+        try {
+            if (CatalogFile.migrate(path)) {
+                System.out.println("Converted " + filename + " to the binary catalog format");
+            } else if (CompressedCatalogFile.isCompressed(path) || PagedCatalogFile.isPaged(path)) {
+                CatalogFile.save(CatalogFile.load(path), path);
+                System.out.println("Converted " + filename + " to be mapped");
+            }
+            ConcurrentClothesService service = new ConcurrentClothesService(path, indexPath);
+            System.out.println("Mapped " + service.size() + " clothes");
+            System.out.println(service.hasLoadedIndexes() ? "Loaded indexes from " + indexPath : "Built indexes");
+            return service;
+        } catch (NoSuchFileException e) {
+            System.out.println("Can't find file " + filename);
+        }
+        return new ConcurrentClothesService(new ArrayList<>());
+    }
 }
@@ -1,9 +1,21 @@
 package org.bohdansharubin.controllers;
 
 import org.bohdansharubin.models.*;
+import org.bohdansharubin.services.ClothesCursor;
+import org.bohdansharubin.services.ClothesImporter;
+import org.bohdansharubin.services.ClothesLoader;
+import org.bohdansharubin.services.ClothesOrder;
+import org.bohdansharubin.services.ClothesPage;
 import org.bohdansharubin.services.ClothesService;
+import org.bohdansharubin.services.ImportReport;
 import org.bohdansharubin.views.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.Scanner;
@@ -16,14 +28,24 @@ import java.util.Scanner;
  */
 public class MainController {
 
+    /** Number of clothes shown at once when listing all clothes. */
+    private static final int PAGE_SIZE = 20;
+
+    /** Number of rejected rows printed after an import. */
+    private static final int REJECTIONS_SHOWN = 20;
+
+    /** Time between progress reports while waiting for the catalog. */
+    private static final Duration LOADING_PROGRESS_INTERVAL = Duration.ofMillis(500);
+
     private final View view;
     private final ClothesService clothesService;
     private final Scanner scanner;
-    private final CreateController createController;
-    private final SearchController searchController;
-    private final SortController sortController;
-    private final UpdateController updateController;
-    private final DeleteController deleteController;
+    private final ClothesLoader loader;
+    private CreateController createController;
+    private SearchController searchController;
+    private SortController sortController;
+    private UpdateController updateController;
+    private DeleteController deleteController;
 
     /**
      * Constructs MainController with dependencies.
@@ -33,14 +55,26 @@ public class MainController {
      * @param scanner         scanner for user input
      */
     public MainController(View view, ClothesService clothesService, Scanner scanner) {
+        this(view, clothesService, scanner, null);
+    }
+
+    /**
+     * Constructs MainController for a catalog which is still being loaded.
+     * <p>
+     * The menu is shown at once, operations which need the whole catalog
+     * wait until the loader is ready. Sub-controllers are created on their
+     * first use.
+     *
+     * @param view            main view
+     * @param clothesService  service for clothes operations
+     * @param scanner         scanner for user input
+     * @param loader          loader of the catalog into the service, {@code null} if it's loaded
+     */
+    public MainController(View view, ClothesService clothesService, Scanner scanner, ClothesLoader loader) {
         this.view = view;
         this.clothesService = clothesService;
         this.scanner = scanner;
-        this.createController = new CreateController(new CreateView(), scanner);
-        this.searchController = new SearchController(new SearchView(), clothesService, scanner);
-        this.sortController = new SortController(new SortView(), clothesService, scanner);
-        this.updateController = new UpdateController(new UpdateView(), clothesService, scanner);
-        this.deleteController = new DeleteController(new DeleteView(), clothesService, scanner);
+        this.loader = loader;
     }
 
     /**
@@ -54,6 +88,7 @@ public class MainController {
      *     <li>View sorted list of clothes</li>
      *     <li>Update clothes</li>
      *     <li>Delete clothes</li>
+     *     <li>Import clothes from a file</li>
      *     <li>Exit application</li>
      * </ul>
      */
@@ -68,29 +103,42 @@ public class MainController {
 
                 switch (choice) {
                     case 1 -> {
-                        Clothes clothes = createController.createClothes();
-                        if (clothes != null) {
+                        Clothes clothes = createController().createClothes();
+                        if (clothes != null && awaitCatalog()) {
                             clothesService.addClothes(clothes);
                             System.out.println("Clothes created");
                         }
                     }
-                    case 2 -> System.out.println(clothesService.getClothesList());
+                    case 2 -> {
+                        if (awaitCatalog()) {
+                            listClothes();
+                        }
+                    }
                     case 3 -> {
-                        List<Clothes> filteredList = searchController.filter();
+                        if (!awaitCatalog()) {
+                            continue;
+                        }
+                        List<Clothes> filteredList = searchController().filter();
                         if (filteredList != null) {
                             System.out.println("Results of your search: " + filteredList);
                         }
                     }
                     case 4 -> {
-                        List<Clothes> sortedList = sortController.sort();
+                        if (!awaitCatalog()) {
+                            continue;
+                        }
+                        List<Clothes> sortedList = sortController().sort();
                         if (sortedList != null) {
                             System.out.println(sortedList);
                         }
                     }
                     case 5 -> {
+                        if (!awaitCatalog()) {
+                            continue;
+                        }
                         System.out.println("All clothes:");
                         System.out.println(clothesService.toFormattedString());
-                        boolean isUpdated = updateController.update();
+                        boolean isUpdated = updateController().update();
                         if (isUpdated) {
                             System.out.println("Clothes was updated");
                         } else {
@@ -98,15 +146,23 @@ public class MainController {
                         }
                     }
                     case 6 -> {
+                        if (!awaitCatalog()) {
+                            continue;
+                        }
                         System.out.println("All clothes:");
                         System.out.println(clothesService.toFormattedString());
-                        boolean isUpdated = deleteController.delete();
+                        boolean isUpdated = deleteController().delete();
                         if (isUpdated) {
                             System.out.println("Clothes was deleted");
                         } else {
                             System.out.println("Clothes was NOT deleted");
                         }
                     }
+                    case 7 -> {
+                        if (awaitCatalog()) {
+                            importClothes();
+                        }
+                    }
                     case 99 -> isWorking = false;
                     default -> System.out.println("Wrong choice");
                 }
@@ -114,7 +170,105 @@ public class MainController {
             } catch (InputMismatchException e) {
                 System.out.println("Invalid input");
                 scanner.nextLine();
+            } catch (UncheckedIOException e) {
+                System.out.println("Change can't be saved: " + e.getMessage() + ": " + e.getCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Waits until the catalog is loaded, printing the progress meanwhile.
+     *
+     * @return {@code true} if the whole catalog is available
+     */
+    private boolean awaitCatalog() {
+        if (loader == null) {
+            return true;
+        }
+        if (!loader.isReady()) {
+            System.out.println("Waiting for the catalog to load...");
+        }
+        if (loader.await(LOADING_PROGRESS_INTERVAL, count -> System.out.println("Loaded " + count + " clothes"))) {
+            return true;
+        }
+        System.out.println("Catalog is not available: " + loader.getFailure().getMessage());
+        return false;
+    }
+
+    private CreateController createController() {
+        if (createController == null) {
+            createController = new CreateController(new CreateView(), scanner);
+        }
+        return createController;
+    }
+
+    private SearchController searchController() {
+        if (searchController == null) {
+            searchController = new SearchController(new SearchView(), clothesService, scanner);
+        }
+        return searchController;
+    }
+
+    private SortController sortController() {
+        if (sortController == null) {
+            sortController = new SortController(new SortView(), clothesService, scanner);
+        }
+        return sortController;
+    }
+
+    private UpdateController updateController() {
+        if (updateController == null) {
+            updateController = new UpdateController(new UpdateView(), clothesService, scanner);
+        }
+        return updateController;
+    }
+
+    private DeleteController deleteController() {
+        if (deleteController == null) {
+            deleteController = new DeleteController(new DeleteView(), clothesService, scanner);
+        }
+        return deleteController;
+    }
+
+    /**
+     * Imports clothes from a CSV or JSON Lines file named by the user and
+     * prints the first rejected rows.
+     */
+    private void importClothes() {
+        System.out.println("Please enter the path of a CSV or JSON Lines file: ");
+        String filename = scanner.nextLine().trim();
+        try {
+            ImportReport report = new ClothesImporter(clothesService).importFile(Path.of(filename));
+            System.out.println("Imported " + report.getImportedCount() + " of " + report.getRowCount() + " rows");
+            report.getRejections().stream().limit(REJECTIONS_SHOWN).forEach(System.out::println);
+            if (report.getRejectedCount() > REJECTIONS_SHOWN) {
+                System.out.println("... and " + (report.getRejectedCount() - REJECTIONS_SHOWN) + " more rejected rows");
+            }
+        } catch (InvalidPathException | NoSuchFileException e) {
+            System.out.println("Can't find file " + filename);
+        } catch (IOException e) {
+            System.out.println("Can't import file " + filename + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prints all clothes page by page in insertion order.
+     * <p>
+     * The next page is read only when the user asks for it.
+     */
+    private void listClothes() {
+        ClothesCursor cursor = null;
+        while (true) {
+            ClothesPage page = clothesService.getPage(ClothesOrder.INSERTION, cursor, PAGE_SIZE);
+            System.out.println(page.getItems());
+            if (!page.hasNext()) {
+                return;
+            }
+            System.out.println("Press Enter for the next page or type 99 to stop");
+            if (scanner.nextLine().trim().equals("99")) {
+                return;
             }
+            cursor = page.getNextCursor();
         }
     }
 }
@@ -4,6 +4,7 @@ import org.bohdansharubin.enums.AmericanSize;
 import org.bohdansharubin.enums.ClothesType;
 import org.bohdansharubin.exceptions.ClothesNotFoundException;
 import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.services.ClothesOrder;
 import org.bohdansharubin.services.ClothesService;
 import org.bohdansharubin.views.View;
 
@@ -76,7 +77,7 @@ public class SearchController {
                     }
                     case 5 -> {
                         System.out.println("All clothes with uuid:");
-                        clothesService.getSortedListByComparator(Comparator.comparing(Clothes::getUuid))
+                        clothesService.getSortedList(ClothesOrder.UUID)
                                 .stream()
                                 .map(clothes -> clothes.getUuid().toString() + "\t" + clothes.getType().toString())
                                 .forEach(System.out::println);
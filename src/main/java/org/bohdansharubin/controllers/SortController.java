@@ -1,6 +1,7 @@
 package org.bohdansharubin.controllers;
 
 import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.services.ClothesOrder;
 import org.bohdansharubin.services.ClothesService;
 import org.bohdansharubin.views.View;
 
@@ -48,6 +49,7 @@ public class SortController {
      *     <li>3 - Sort by American size</li>
      *     <li>4 - Sort by European size</li>
      *     <li>5 - Default sort (as provided by service)</li>
+     *     <li>6 - Sort by type, then American size, then European size</li>
      *     <li>99 - Exit / cancel</li>
      * </ul>
      * <p>
@@ -65,11 +67,13 @@ public class SortController {
                 scanner.nextLine();
 
                 return switch (choice) {
-                    case 1 -> service.getSortedListByComparator(Comparator.comparing(Clothes::getType));
-                    case 2 -> service.getSortedListByComparator((o1, o2) -> o1.getColor().compareTo(o2.getColor()));
-                    case 3 -> service.getSortedListByComparator((o1, o2) -> o1.getAmericanSize().compareTo(o2.getAmericanSize()));
-                    case 4 -> service.getSortedListByComparator((o1, o2) -> Integer.compare(o1.getEuropeanSize(), o2.getEuropeanSize()));
-                    case 5 -> service.getSortedList();
+                    case 1 -> service.getSortedList(ClothesOrder.TYPE);
+                    case 2 -> service.getSortedList(ClothesOrder.COLOR);
+                    case 3 -> service.getSortedList(ClothesOrder.AMERICAN_SIZE);
+                    case 4 -> service.getSortedList(ClothesOrder.EUROPEAN_SIZE);
+                    case 5 -> service.getSortedList(ClothesOrder.NATURAL);
+                    case 6 -> service.getSortedList(ClothesOrder.TYPE,
+                            ClothesOrder.AMERICAN_SIZE, ClothesOrder.EUROPEAN_SIZE);
                     case 99 -> null;
                     default -> throw new InputMismatchException("Invalid choice");
                 };
@@ -4,6 +4,7 @@ import org.bohdansharubin.enums.ClothesType;
 import org.bohdansharubin.exceptions.InvalidFieldValueException;
 
 import java.io.*;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -17,13 +18,29 @@ import java.util.UUID;
  */
 public abstract class Clothes implements Serializable, Comparable<Clothes>, Identifiable {
 
+    /**
+     * Smallest valid European size.
+     */
+    public static final int MIN_EUROPEAN_SIZE = 33;
+
+    /**
+     * Largest valid European size.
+     */
+    public static final int MAX_EUROPEAN_SIZE = 59;
+
     @Serial
     private static final long serialVersionUID = 1L;
+
+    private static volatile IdGenerator idGenerator = UuidV7Generator.getInstance();
+
     private String color;
     private int europeanSize;
     private AmericanSize americanSize;
     private ClothesType type;
     private final UUID uuid;
+    private transient int colorCode = ColorDictionary.NO_CODE;
+    private transient ClothesChangeListener[] changeListeners;
+    private transient boolean readOnly;
 
     /**
      * Constructs a Clothes object with all parameters.
@@ -36,11 +53,33 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
      */
     protected Clothes(String color, ClothesType type, int europeanSize, AmericanSize americanSize) {
         isValid(color, type, europeanSize, americanSize);
-        this.color = color;
+        assignColor(color);
         this.type = type;
         this.europeanSize = europeanSize;
         this.americanSize = americanSize;
-        this.uuid = UUID.randomUUID();
+        this.uuid = nextUuid();
+    }
+
+    /**
+     * Constructs a Clothes object with a known uuid, e.g. when restoring it from storage.
+     *
+     * @param uuid           the uuid of the clothes (must not be null)
+     * @param color          the color of the clothes (must not be null or blank)
+     * @param type           the type of clothes (must not be null)
+     * @param europeanSize   the European size (must be between 32 and 60)
+     * @param americanSize   the American size (must not be null)
+     * @throws InvalidFieldValueException if any argument is invalid
+     */
+    protected Clothes(UUID uuid, String color, ClothesType type, int europeanSize, AmericanSize americanSize) {
+        if (!isNotNull(uuid)) {
+            throw new InvalidFieldValueException("Uuid cannot be null");
+        }
+        isValid(color, type, europeanSize, americanSize);
+        assignColor(color);
+        this.type = type;
+        this.europeanSize = europeanSize;
+        this.americanSize = americanSize;
+        this.uuid = uuid;
     }
 
     /**
@@ -48,6 +87,7 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
      */
     protected Clothes(Clothes other) {
         this.color = other.color;
+        this.colorCode = other.colorCode;
         this.type = other.type;
         this.europeanSize = other.europeanSize;
         this.americanSize = other.americanSize;
@@ -58,7 +98,28 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
      * Default constructor.
      */
     protected Clothes() {
-        this.uuid = UUID.randomUUID();
+        this.uuid = nextUuid();
+    }
+
+    /**
+     * @return generator of uuids for newly created clothes
+     */
+    public static IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * Sets the generator of uuids for clothes created from now on.
+     * Time-ordered {@link UuidV7Generator} is used by default.
+     *
+     * @param generator the generator (must not be null)
+     * @throws IllegalArgumentException if generator is null
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        if (generator == null) {
+            throw new IllegalArgumentException("generator must not be null");
+        }
+        idGenerator = generator;
     }
 
     /**
@@ -77,6 +138,17 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
         return color;
     }
 
+    /**
+     * Returns the code of the color in the {@link ColorDictionary}.
+     * Clothes with the same code have the same color, ignoring case and
+     * surrounding spaces.
+     *
+     * @return the color code or {@link ColorDictionary#NO_CODE} if the color is not set
+     */
+    public int getColorCode() {
+        return colorCode;
+    }
+
     /**
      * Sets the color of the clothes.
      *
@@ -87,7 +159,9 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
         if (!isStringValid(color)) {
             throw new InvalidFieldValueException("Invalid color");
         }
-        this.color = color;
+        fireBeforeChange();
+        assignColor(color);
+        fireAfterChange();
     }
 
     /**
@@ -114,7 +188,9 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
         if (!isEuropeanSizeValid(europeanSize)) {
             throw new InvalidFieldValueException("Invalid size");
         }
+        fireBeforeChange();
         this.europeanSize = europeanSize;
+        fireAfterChange();
     }
 
     /**
@@ -134,11 +210,116 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
         if (!isNotNull(americanSize)) {
             throw new InvalidFieldValueException("American size can't be null");
         }
+        fireBeforeChange();
         this.americanSize = americanSize;
+        fireAfterChange();
+    }
+
+    /**
+     * Registers a listener notified around every change of this clothes.
+     *
+     * @param listener the listener to add (must not be null)
+     */
+    public void addChangeListener(ClothesChangeListener listener) {
+        Objects.requireNonNull(listener, "listener must not be null");
+        if (changeListeners == null) {
+            changeListeners = new ClothesChangeListener[] {listener};
+        } else {
+            changeListeners = Arrays.copyOf(changeListeners, changeListeners.length + 1);
+            changeListeners[changeListeners.length - 1] = listener;
+        }
+    }
+
+    /**
+     * Unregisters a previously added listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeChangeListener(ClothesChangeListener listener) {
+        if (changeListeners == null) {
+            return;
+        }
+        for (int i = 0; i < changeListeners.length; i++) {
+            if (changeListeners[i] == listener) {
+                if (changeListeners.length == 1) {
+                    changeListeners = null;
+                } else {
+                    ClothesChangeListener[] rest = new ClothesChangeListener[changeListeners.length - 1];
+                    System.arraycopy(changeListeners, 0, rest, 0, i);
+                    System.arraycopy(changeListeners, i + 1, rest, i, rest.length - i);
+                    changeListeners = rest;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of this clothes which cannot be changed.
+     * <p>
+     * The copy has the same uuid and field values, no listeners, and its
+     * setters throw {@link UnsupportedOperationException}.
+     *
+     * @return read-only copy
+     */
+    public final Clothes readOnlyCopy() {
+        if (readOnly) {
+            return this;
+        }
+        Clothes copy = copy();
+        copy.readOnly = true;
+        return copy;
+    }
+
+    /**
+     * @return {@code true} if this clothes is a read-only copy
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Creates a copy of this clothes with the same uuid and all fields,
+     * including the fields of the subclass.
+     *
+     * @return the copy
+     */
+    protected abstract Clothes copy();
+
+    /**
+     * Notifies listeners that a field is about to change.
+     * Must be called after the new value was validated.
+     *
+     * @throws UnsupportedOperationException if this clothes is a read-only copy
+     */
+    protected final void fireBeforeChange() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Read-only copy of clothes cannot be changed");
+        }
+        if (changeListeners != null) {
+            for (ClothesChangeListener listener : changeListeners) {
+                listener.beforeChange(this);
+            }
+        }
+    }
+
+    /**
+     * Notifies listeners that a field was changed.
+     */
+    protected final void fireAfterChange() {
+        if (changeListeners != null) {
+            for (ClothesChangeListener listener : changeListeners) {
+                listener.afterChange(this);
+            }
+        }
     }
 
     /**
      * Compares this object with another for equality.
+     * <p>
+     * Colors are compared by their {@link ColorDictionary} code, so clothes
+     * whose colors differ only in case or surrounding spaces are equal, the
+     * same as they are matched by searches.
      *
      * @param o the object to compare
      * @return true if objects are equal, false otherwise
@@ -148,7 +329,7 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
         if (o == null || getClass() != o.getClass()) return false;
         Clothes clothes = (Clothes) o;
         return europeanSize == clothes.europeanSize &&
-                Objects.equals(color, clothes.color) &&
+                colorCode == clothes.colorCode &&
                 Objects.equals(type, clothes.type) &&
                 Objects.equals(americanSize, clothes.americanSize);
     }
@@ -160,7 +341,7 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
      */
     @Override
     public int hashCode() {
-        return Objects.hash(color, type, europeanSize, americanSize);
+        return Objects.hash(colorCode, type, europeanSize, americanSize);
     }
 
     /**
@@ -195,7 +376,8 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
      * <p>
      * This method is invoked by the serialization runtime during
      * deserialization. It restores the object's state using the
-     * default deserialization mechanism.
+     * default deserialization mechanism and encodes the color in the
+     * {@link ColorDictionary} of this process.
      *
      * @param in the {@link ObjectInputStream} used to read the object data
      * @throws IOException if an I/O error occurs while reading from the stream
@@ -206,6 +388,10 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
     private void readObject(ObjectInputStream in)
             throws IOException, ClassNotFoundException {
         in.defaultReadObject();
+        colorCode = ColorDictionary.NO_CODE;
+        if (color != null) {
+            assignColor(color);
+        }
     }
 
     /**
@@ -224,6 +410,28 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
         out.defaultWriteObject();
     }
 
+    /**
+     * Returns the next uuid of the configured {@link IdGenerator}.
+     *
+     * @throws IllegalStateException if the generator returned {@code null}
+     */
+    private static UUID nextUuid() {
+        UUID uuid = idGenerator.nextId();
+        if (uuid == null) {
+            throw new IllegalStateException("Id generator returned null");
+        }
+        return uuid;
+    }
+
+    /**
+     * Stores the color as its shared instance and its code.
+     */
+    private void assignColor(String color) {
+        ColorDictionary dictionary = ColorDictionary.getInstance();
+        this.color = dictionary.intern(color);
+        this.colorCode = dictionary.encode(color);
+    }
+
     /**
      * Validates all fields.
      * @throws InvalidFieldValueException if at least one argument is invalid
@@ -260,6 +468,6 @@ public abstract class Clothes implements Serializable, Comparable<Clothes>, Iden
      * Checks if European size is in valid range.
      */
     private boolean isEuropeanSizeValid(int size) {
-        return size > 32 && size < 60;
+        return size >= MIN_EUROPEAN_SIZE && size <= MAX_EUROPEAN_SIZE;
     }
 }
\ No newline at end of file
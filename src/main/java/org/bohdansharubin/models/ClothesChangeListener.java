@@ -0,0 +1,25 @@
+package org.bohdansharubin.models;
+
+/**
+ * Listener notified around every change of a {@link Clothes} field.
+ * <p>
+ * {@link #beforeChange(Clothes)} is called after the new value was validated
+ * but before it is assigned, so the listener still sees the old state.
+ * {@link #afterChange(Clothes)} is called right after the assignment.
+ */
+public interface ClothesChangeListener {
+
+    /**
+     * Called before a field of the clothes is changed.
+     *
+     * @param clothes the clothes that is about to change
+     */
+    void beforeChange(Clothes clothes);
+
+    /**
+     * Called after a field of the clothes was changed.
+     *
+     * @param clothes the changed clothes
+     */
+    void afterChange(Clothes clothes);
+}
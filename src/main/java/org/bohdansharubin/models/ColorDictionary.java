@@ -0,0 +1,184 @@
+package org.bohdansharubin.models;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of clothes colors shared by all {@link Clothes}.
+ * <p>
+ * Every color is normalized (trimmed and lower-cased), so "Black", "black"
+ * and " BLACK " denote the same color, and the normalized form is encoded as
+ * a small dense {@code int} code. Comparing colors becomes an {@code int}
+ * comparison. The spelling given by the user is kept for display, but every
+ * distinct spelling is held in memory only once and has a dense id of its
+ * own, which columnar storage keeps per row instead of the string.
+ * <p>
+ * Codes are assigned in the order colors are first seen and are valid for
+ * the lifetime of the process. Code of a stored catalog is restored from its
+ * color names when it is loaded.
+ */
+public final class ColorDictionary {
+
+    /**
+     * Code of a missing or unknown color.
+     */
+    public static final int NO_CODE = -1;
+
+    private static final ColorDictionary INSTANCE = new ColorDictionary();
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> spellingIds = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private volatile String[] spellings = new String[16];
+    private volatile int[] spellingCodes = new int[16];
+    private int size;
+    private int spellingCount;
+
+    private ColorDictionary() {
+    }
+
+    /**
+     * @return the dictionary used by all clothes
+     */
+    public static ColorDictionary getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the canonical form of a color.
+     *
+     * @param color the color (must not be null)
+     * @return trimmed lower-case color
+     */
+    public static String normalize(String color) {
+        return color.strip().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the code of the color, assigning a new one to a color not seen before.
+     *
+     * @param color the color, may be {@code null}
+     * @return code of the normalized color or {@link #NO_CODE} for {@code null}
+     */
+    public int encode(String color) {
+        if (color == null) {
+            return NO_CODE;
+        }
+        String normalized = normalize(color);
+        Integer code = codes.get(normalized);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(normalized);
+            if (code == null) {
+                code = size;
+                String[] current = names;
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, size * 2);
+                }
+                current[size++] = normalized;
+                names = current;
+                codes.put(normalized, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * Returns the code of the color without assigning a new one.
+     *
+     * @param color the color, may be {@code null}
+     * @return code of the normalized color or {@link #NO_CODE} if the color is unknown
+     */
+    public int find(String color) {
+        if (color == null) {
+            return NO_CODE;
+        }
+        return codes.getOrDefault(normalize(color), NO_CODE);
+    }
+
+    /**
+     * Returns the canonical form of the color with the given code.
+     *
+     * @param code code returned by {@link #encode(String)}
+     * @return normalized color
+     * @throws IllegalArgumentException if the code was not assigned
+     */
+    public String decode(int code) {
+        String[] current = names;
+        if (code < 0 || code >= current.length || current[code] == null) {
+            throw new IllegalArgumentException("Unknown color code " + code);
+        }
+        return current[code];
+    }
+
+    /**
+     * Returns the single shared instance of the given spelling of a color.
+     *
+     * @param color the color, may be {@code null}
+     * @return equal string held by the dictionary or {@code null}
+     */
+    public String intern(String color) {
+        return color == null ? null : spelling(spellingId(color));
+    }
+
+    /**
+     * Returns the id of the given spelling of a color, assigning a new one to
+     * a spelling not seen before.
+     *
+     * @param color the color (must not be null)
+     * @return id of the exact spelling
+     */
+    public int spellingId(String color) {
+        Integer id = spellingIds.get(color);
+        if (id != null) {
+            return id;
+        }
+        int code = encode(color);
+        synchronized (this) {
+            id = spellingIds.get(color);
+            if (id == null) {
+                id = spellingCount;
+                String[] currentSpellings = spellings;
+                int[] currentCodes = spellingCodes;
+                if (id == currentSpellings.length) {
+                    currentSpellings = Arrays.copyOf(currentSpellings, id * 2);
+                    currentCodes = Arrays.copyOf(currentCodes, id * 2);
+                }
+                currentSpellings[id] = color;
+                currentCodes[id] = code;
+                spellingCount++;
+                spellingCodes = currentCodes;
+                spellings = currentSpellings;
+                spellingIds.put(color, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param spellingId id returned by {@link #spellingId(String)}
+     * @return the spelling of the color with the id
+     */
+    public String spelling(int spellingId) {
+        return spellings[spellingId];
+    }
+
+    /**
+     * @param spellingId id returned by {@link #spellingId(String)}
+     * @return code of the normalized color of the spelling
+     */
+    public int spellingCode(int spellingId) {
+        return spellingCodes[spellingId];
+    }
+
+    /**
+     * @return number of distinct normalized colors
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -5,7 +5,9 @@ import org.bohdansharubin.enums.ClothesType;
 import org.bohdansharubin.enums.HatType;
 import org.bohdansharubin.exceptions.InvalidFieldValueException;
 
+import java.io.Serial;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
  * Represents a Hat item.
@@ -19,6 +21,9 @@ import java.util.Objects;
  */
 public class Hat extends Clothes {
 
+    @Serial
+    private static final long serialVersionUID = 6002685640993202344L;
+
     private boolean isWaterProof;
     private HatType hatType;
 
@@ -55,6 +60,24 @@ public class Hat extends Clothes {
         this.hatType = hatType;
     }
 
+    /**
+     * Constructs a Hat with a known uuid, e.g. when restoring it from storage.
+     *
+     * @param uuid         the uuid of the hat; must not be {@code null}
+     * @param color        the color of the hat; must not be {@code null} or blank
+     * @param europeanSize the European size; must be within the valid range
+     * @param americanSize the American size; must not be {@code null}
+     * @param isWaterProof indicates whether the hat is waterproof
+     * @param hatType      the type of the hat; may be {@code null} if not specified
+     *
+     * @throws InvalidFieldValueException if any argument is invalid
+     */
+    public Hat(UUID uuid, String color, int europeanSize, AmericanSize americanSize, boolean isWaterProof, HatType hatType) {
+        super(uuid, color, ClothesType.HAT, europeanSize, americanSize);
+        this.isWaterProof = isWaterProof;
+        this.hatType = hatType;
+    }
+
     /**
      * Copy constructor.
      * <p>
@@ -91,7 +114,9 @@ public class Hat extends Clothes {
      * @param waterProof {@code true} to make it waterproof, {@code false} otherwise
      */
     public void setWaterProof(boolean waterProof) {
+        fireBeforeChange();
         isWaterProof = waterProof;
+        fireAfterChange();
     }
 
     /**
@@ -113,7 +138,14 @@ public class Hat extends Clothes {
         if (hatType == null) {
             throw new InvalidFieldValueException("hatType cannot be null");
         }
+        fireBeforeChange();
         this.hatType = hatType;
+        fireAfterChange();
+    }
+
+    @Override
+    protected Clothes copy() {
+        return new Hat(getUuid(), getColor(), getEuropeanSize(), getAmericanSize(), isWaterProof, hatType);
     }
 
     @Override
@@ -0,0 +1,25 @@
+package org.bohdansharubin.models;
+
+import java.util.UUID;
+
+/**
+ * Source of uuids for newly created {@link Clothes}.
+ * <p>
+ * Implementations must be thread-safe, since clothes may be created from
+ * many threads at once.
+ *
+ * @see Clothes#setIdGenerator(IdGenerator)
+ */
+@FunctionalInterface
+public interface IdGenerator {
+
+    /**
+     * Generator of random version 4 uuids backed by a shared secure random.
+     */
+    IdGenerator RANDOM = UUID::randomUUID;
+
+    /**
+     * @return a new unique uuid
+     */
+    UUID nextId();
+}
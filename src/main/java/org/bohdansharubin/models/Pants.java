@@ -5,7 +5,9 @@ import org.bohdansharubin.enums.ClothesType;
 import org.bohdansharubin.enums.SleeveLength;
 import org.bohdansharubin.exceptions.InvalidFieldValueException;
 
+import java.io.Serial;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
  * Represents a Pants item.
@@ -17,6 +19,10 @@ import java.util.Objects;
  * Additional characteristic specific to Pants is its existence of pockets.
  */
 public class Pants extends Clothes {
+
+    @Serial
+    private static final long serialVersionUID = 701943110431760365L;
+
     private boolean hasPockets;
 
     /**
@@ -45,6 +51,21 @@ public class Pants extends Clothes {
         this.hasPockets = hasPockets;
     }
 
+    /**
+     * Constructs Pants with a known uuid, e.g. when restoring it from storage.
+     *
+     * @param uuid         the uuid of the pants (must not be null)
+     * @param color        the color of the pants (must not be null or blank)
+     * @param europeanSize the European size (must be within valid range)
+     * @param americanSize the American size (must not be null)
+     * @param hasPockets the availability of pockets
+     * @throws InvalidFieldValueException if any argument is invalid
+     */
+    public Pants(UUID uuid, String color, int europeanSize, AmericanSize americanSize, boolean hasPockets) {
+        super(uuid, color, ClothesType.PANTS, europeanSize, americanSize);
+        this.hasPockets = hasPockets;
+    }
+
     /**
      * Copy constructor.
      *
@@ -73,7 +94,14 @@ public class Pants extends Clothes {
      * @param hasPockets must be true or false
      */
     public void setHasPockets(boolean hasPockets) {
+        fireBeforeChange();
         this.hasPockets = hasPockets;
+        fireAfterChange();
+    }
+
+    @Override
+    protected Clothes copy() {
+        return new Pants(getUuid(), getColor(), getEuropeanSize(), getAmericanSize(), hasPockets);
     }
 
     @Override
@@ -5,7 +5,9 @@ import org.bohdansharubin.enums.ClothesType;
 import org.bohdansharubin.enums.SleeveLength;
 import org.bohdansharubin.exceptions.InvalidFieldValueException;
 
+import java.io.Serial;
 import java.util.Objects;
+import java.util.UUID;
 
 /**
  * Represents a Shirt item.
@@ -18,6 +20,9 @@ import java.util.Objects;
  */
 public class Shirt extends Clothes {
 
+    @Serial
+    private static final long serialVersionUID = 6382478159777167979L;
+
     private SleeveLength sleeveLength;
 
     /**
@@ -51,6 +56,22 @@ public class Shirt extends Clothes {
         this.sleeveLength = sleeveLength;
     }
 
+    /**
+     * Constructs a Shirt with a known uuid, e.g. when restoring it from storage.
+     *
+     * @param uuid         the uuid of the shirt; must not be {@code null}
+     * @param color        the color of the shirt; must not be {@code null} or blank
+     * @param europeanSize the European size; must be within the valid range
+     * @param americanSize the American size; must not be {@code null}
+     * @param sleeveLength the sleeve length; may be {@code null} if not specified
+     *
+     * @throws InvalidFieldValueException if any argument is invalid
+     */
+    public Shirt(UUID uuid, String color, int europeanSize, AmericanSize americanSize, SleeveLength sleeveLength) {
+        super(uuid, color, ClothesType.SHIRT, europeanSize, americanSize);
+        this.sleeveLength = sleeveLength;
+    }
+
     /**
      * Copy constructor.
      * <p>
@@ -89,7 +110,14 @@ public class Shirt extends Clothes {
         if(sleeveLength == null) {
             throw new InvalidFieldValueException("SleeveLength can't be null");
         }
+        fireBeforeChange();
         this.sleeveLength = sleeveLength;
+        fireAfterChange();
+    }
+
+    @Override
+    protected Clothes copy() {
+        return new Shirt(getUuid(), getColor(), getEuropeanSize(), getAmericanSize(), sleeveLength);
     }
 
     @Override
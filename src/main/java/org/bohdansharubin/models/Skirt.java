@@ -5,6 +5,9 @@ import org.bohdansharubin.enums.ClothesType;
 import org.bohdansharubin.enums.SkirtLength;
 import org.bohdansharubin.exceptions.InvalidFieldValueException;
 
+import java.io.Serial;
+import java.util.UUID;
+
 /**
  * Represents a Skirt item.
  * <p>
@@ -16,6 +19,9 @@ import org.bohdansharubin.exceptions.InvalidFieldValueException;
  */
 public class Skirt extends Clothes {
 
+    @Serial
+    private static final long serialVersionUID = -6321748228216010085L;
+
     private SkirtLength length;
 
     /**
@@ -49,6 +55,22 @@ public class Skirt extends Clothes {
         this.length = length;
     }
 
+    /**
+     * Constructs a Skirt with a known uuid, e.g. when restoring it from storage.
+     *
+     * @param uuid         the uuid of the skirt; must not be {@code null}
+     * @param color        the color of the skirt; must not be {@code null} or blank
+     * @param europeanSize the European size; must be within the valid range
+     * @param americanSize the American size; must not be {@code null}
+     * @param length       the skirt length; may be {@code null} if not specified
+     *
+     * @throws InvalidFieldValueException if any argument is invalid
+     */
+    public Skirt(UUID uuid, String color, int europeanSize, AmericanSize americanSize, SkirtLength length) {
+        super(uuid, color, ClothesType.SKIRT, europeanSize, americanSize);
+        this.length = length;
+    }
+
     /**
      * Copy constructor.
      * <p>
@@ -87,7 +109,14 @@ public class Skirt extends Clothes {
         if (length == null) {
             throw new InvalidFieldValueException("length can't be null");
         }
+        fireBeforeChange();
         this.length = length;
+        fireAfterChange();
+    }
+
+    @Override
+    protected Clothes copy() {
+        return new Skirt(getUuid(), getColor(), getEuropeanSize(), getAmericanSize(), length);
     }
 
     @Override
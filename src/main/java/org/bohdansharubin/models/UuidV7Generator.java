@@ -0,0 +1,79 @@
+package org.bohdansharubin.models;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generator of time-ordered version 7 uuids.
+ * <p>
+ * The 48 most significant bits hold the Unix time in milliseconds, followed
+ * by the version, a 12 bit sequence and 62 random bits. The sequence starts
+ * at a random value in every millisecond and is incremented for further uuids
+ * of the same thread in that millisecond; when it runs out the timestamp is
+ * advanced by one millisecond. Uuids of one thread are therefore strictly
+ * increasing, and uuids of different threads are ordered by their millisecond.
+ * <p>
+ * Random bits come from {@link ThreadLocalRandom} and the sequence state is
+ * kept per thread, so generation takes no lock and shares no mutable state.
+ * Uuids are unique as long as the random bits do not collide, which is as
+ * unlikely as for version 4 uuids.
+ */
+public final class UuidV7Generator implements IdGenerator {
+
+    private static final UuidV7Generator INSTANCE = new UuidV7Generator();
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+    private static final long VERSION = 7L << SEQUENCE_BITS;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+
+    private final ThreadLocal<long[]> state = ThreadLocal.withInitial(() -> new long[] {-1, 0});
+
+    private UuidV7Generator() {
+    }
+
+    /**
+     * @return the shared generator
+     */
+    public static UuidV7Generator getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public UUID nextId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] last = state.get();
+        long millis = System.currentTimeMillis();
+        long sequence;
+        if (millis > last[0]) {
+            sequence = random.nextInt(MAX_SEQUENCE / 2 + 1);
+        } else {
+            millis = last[0];
+            sequence = last[1] + 1;
+            if (sequence > MAX_SEQUENCE) {
+                millis++;
+                sequence = 0;
+            }
+        }
+        last[0] = millis;
+        last[1] = sequence;
+        long msb = millis << 16 | VERSION | sequence;
+        long lsb = VARIANT | random.nextLong() & RANDOM_MASK;
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Returns the creation time of a version 7 uuid.
+     *
+     * @param uuid version 7 uuid (must not be null)
+     * @return milliseconds since the Unix epoch
+     * @throws IllegalArgumentException if the uuid is not of version 7
+     */
+    public static long timestampOf(UUID uuid) {
+        if (uuid.version() != 7) {
+            throw new IllegalArgumentException("uuid is not of version 7");
+        }
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+}
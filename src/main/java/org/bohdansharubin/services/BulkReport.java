@@ -0,0 +1,124 @@
+package org.bohdansharubin.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Per-item outcome of a bulk operation of {@link ClothesService}.
+ * <p>
+ * Bulk operations do not stop at the first failing item, every item is
+ * reported here instead of throwing.
+ *
+ * @see ClothesService#addAll(java.util.Collection)
+ * @see ClothesService#deleteAll(java.util.Collection)
+ * @see ClothesService#updateAll(java.util.function.Predicate, java.util.function.Consumer)
+ */
+public final class BulkReport {
+
+    /**
+     * Outcome of one item.
+     */
+    public enum Outcome {
+
+        /** The item was added, deleted or updated */
+        APPLIED,
+
+        /** Clothes with the same uuid already exists */
+        DUPLICATE,
+
+        /** No clothes with the uuid exists */
+        NOT_FOUND,
+
+        /** The item is null or its change was rejected */
+        INVALID
+    }
+
+    /**
+     * Outcome of one item.
+     */
+    public static final class Entry {
+
+        private final UUID uuid;
+        private final Outcome outcome;
+        private final String message;
+
+        Entry(UUID uuid, Outcome outcome, String message) {
+            this.uuid = uuid;
+            this.outcome = outcome;
+            this.message = message;
+        }
+
+        /**
+         * @return uuid of the item or {@code null} if the item was null
+         */
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        /**
+         * @return outcome of the item
+         */
+        public Outcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return reason of a failure or {@code null} if the item was applied
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return uuid + ": " + outcome + (message == null ? "" : " (" + message + ")");
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final int[] counts = new int[Outcome.values().length];
+
+    void add(UUID uuid, Outcome outcome, String message) {
+        entries.add(new Entry(uuid, outcome, message));
+        counts[outcome.ordinal()]++;
+    }
+
+    /**
+     * @return outcomes of all items in the order they were processed
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @param outcome the outcome to count
+     * @return number of items with the given outcome
+     */
+    public int count(Outcome outcome) {
+        return counts[outcome.ordinal()];
+    }
+
+    /**
+     * @return number of items applied
+     */
+    public int getAppliedCount() {
+        return count(Outcome.APPLIED);
+    }
+
+    /**
+     * @return {@code true} if any item was not applied
+     */
+    public boolean hasFailures() {
+        return getAppliedCount() < entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return "BulkReport{applied=" + count(Outcome.APPLIED)
+                + ", duplicate=" + count(Outcome.DUPLICATE)
+                + ", notFound=" + count(Outcome.NOT_FOUND)
+                + ", invalid=" + count(Outcome.INVALID) + '}';
+    }
+}
@@ -0,0 +1,236 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.models.ColorDictionary;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compressed bitmap indexes over the rows of a {@link ClothesStorage}.
+ * <p>
+ * Keeps one {@link CompressedBitmap} per value of type, American size,
+ * European size, color and of the subtype enums, plus a bitmap of all live
+ * rows used to evaluate negations. Used by {@link ClothesCriteria} to answer
+ * multi-attribute queries with word-level set operations.
+ */
+final class ClothesBitmapIndex {
+
+    private CompressedBitmap liveRows = new CompressedBitmap();
+    private final Map<ClothesType, CompressedBitmap> types = new EnumMap<>(ClothesType.class);
+    private final Map<AmericanSize, CompressedBitmap> americanSizes = new EnumMap<>(AmericanSize.class);
+    private final Map<Integer, CompressedBitmap> europeanSizes = new HashMap<>();
+    private final Map<Integer, CompressedBitmap> colors = new HashMap<>();
+    private final Map<HatType, CompressedBitmap> hatTypes = new EnumMap<>(HatType.class);
+    private final Map<SleeveLength, CompressedBitmap> sleeveLengths = new EnumMap<>(SleeveLength.class);
+    private final Map<SkirtLength, CompressedBitmap> skirtLengths = new EnumMap<>(SkirtLength.class);
+
+    /**
+     * Adds the row under the values stored in it.
+     *
+     * @param storage storage holding the row
+     * @param row     a live row
+     */
+    void add(ClothesStorage storage, int row) {
+        liveRows.add(row);
+        add(types, storage.type(row), row);
+        add(americanSizes, storage.americanSize(row), row);
+        add(europeanSizes, storage.europeanSize(row), row);
+        add(colors, ClothesIndexes.colorKey(storage.colorCode(row)), row);
+        add(hatTypes, storage.hatType(row), row);
+        add(sleeveLengths, storage.sleeveLength(row), row);
+        add(skirtLengths, storage.skirtLength(row), row);
+    }
+
+    /**
+     * Removes the row from the values stored in it.
+     *
+     * @param storage storage holding the row
+     * @param row     a live row
+     */
+    void remove(ClothesStorage storage, int row) {
+        liveRows.remove(row);
+        remove(types, storage.type(row), row);
+        remove(americanSizes, storage.americanSize(row), row);
+        remove(europeanSizes, storage.europeanSize(row), row);
+        remove(colors, ClothesIndexes.colorKey(storage.colorCode(row)), row);
+        remove(hatTypes, storage.hatType(row), row);
+        remove(sleeveLengths, storage.sleeveLength(row), row);
+        remove(skirtLengths, storage.skirtLength(row), row);
+    }
+
+    /**
+     * Removes all rows.
+     */
+    void clear() {
+        liveRows.clear();
+        types.clear();
+        americanSizes.clear();
+        europeanSizes.clear();
+        colors.clear();
+        hatTypes.clear();
+        sleeveLengths.clear();
+        skirtLengths.clear();
+    }
+
+    /**
+     * Writes the bitmaps with rows replaced by their positions.
+     *
+     * @param out the output
+     * @throws IOException if writing fails
+     */
+    void writeTo(ClothesIndexFile.Output out) throws IOException {
+        out.writeRows(liveRows.toArray());
+        writeEnums(out, types);
+        writeEnums(out, americanSizes);
+        out.writeInt(europeanSizes.size());
+        for (Map.Entry<Integer, CompressedBitmap> entry : europeanSizes.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeRows(entry.getValue().toArray());
+        }
+        ColorDictionary dictionary = ColorDictionary.getInstance();
+        out.writeInt(colors.size());
+        for (Map.Entry<Integer, CompressedBitmap> entry : colors.entrySet()) {
+            out.writeString(dictionary.decode(entry.getKey()));
+            out.writeRows(entry.getValue().toArray());
+        }
+        writeEnums(out, hatTypes);
+        writeEnums(out, sleeveLengths);
+        writeEnums(out, skirtLengths);
+    }
+
+    /**
+     * Reads bitmaps written by {@link #writeTo(ClothesIndexFile.Output)} into
+     * this empty index.
+     *
+     * @param in the input
+     * @throws IOException if the bitmaps are corrupted
+     */
+    void readFrom(ClothesIndexFile.Input in) throws IOException {
+        liveRows = CompressedBitmap.of(in.readRows());
+        readEnums(in, types, ClothesType.class);
+        readEnums(in, americanSizes, AmericanSize.class);
+        for (int count = in.readInt(); count > 0; count--) {
+            put(europeanSizes, in.readInt(), in.readRows());
+        }
+        ColorDictionary dictionary = ColorDictionary.getInstance();
+        for (int count = in.readInt(); count > 0; count--) {
+            put(colors, dictionary.encode(in.readString()), in.readRows());
+        }
+        readEnums(in, hatTypes, HatType.class);
+        readEnums(in, sleeveLengths, SleeveLength.class);
+        readEnums(in, skirtLengths, SkirtLength.class);
+    }
+
+    /**
+     * @return bitmap of all live rows; must not be modified
+     */
+    CompressedBitmap all() {
+        return liveRows;
+    }
+
+    /**
+     * @return bitmap of rows with the type; must not be modified
+     */
+    CompressedBitmap type(ClothesType type) {
+        return get(types, type);
+    }
+
+    /**
+     * @return bitmap of rows with the American size; must not be modified
+     */
+    CompressedBitmap americanSize(AmericanSize size) {
+        return get(americanSizes, size);
+    }
+
+    /**
+     * @param min minimum size (exclusive)
+     * @param max maximum size (inclusive)
+     * @return new bitmap of rows with a European size in the range
+     */
+    CompressedBitmap europeanSizeBetween(int min, int max) {
+        CompressedBitmap result = new CompressedBitmap();
+        for (Map.Entry<Integer, CompressedBitmap> entry : europeanSizes.entrySet()) {
+            if (entry.getKey() > min && entry.getKey() <= max) {
+                result = result.or(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return bitmap of rows with the color code; must not be modified
+     */
+    CompressedBitmap color(int colorCode) {
+        return get(colors, ClothesIndexes.colorKey(colorCode));
+    }
+
+    /**
+     * @return bitmap of rows with the hat type; must not be modified
+     */
+    CompressedBitmap hatType(HatType hatType) {
+        return get(hatTypes, hatType);
+    }
+
+    /**
+     * @return bitmap of rows with the sleeve length; must not be modified
+     */
+    CompressedBitmap sleeveLength(SleeveLength sleeveLength) {
+        return get(sleeveLengths, sleeveLength);
+    }
+
+    /**
+     * @return bitmap of rows with the skirt length; must not be modified
+     */
+    CompressedBitmap skirtLength(SkirtLength skirtLength) {
+        return get(skirtLengths, skirtLength);
+    }
+
+    private static <K> void add(Map<K, CompressedBitmap> bitmaps, K value, int row) {
+        if (value != null) {
+            bitmaps.computeIfAbsent(value, key -> new CompressedBitmap()).add(row);
+        }
+    }
+
+    private static <K> void remove(Map<K, CompressedBitmap> bitmaps, K value, int row) {
+        if (value == null) {
+            return;
+        }
+        CompressedBitmap bitmap = bitmaps.get(value);
+        if (bitmap != null) {
+            bitmap.remove(row);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(value);
+            }
+        }
+    }
+
+    private static <E extends Enum<E>> void writeEnums(ClothesIndexFile.Output out, Map<E, CompressedBitmap> bitmaps)
+            throws IOException {
+        out.writeInt(bitmaps.size());
+        for (Map.Entry<E, CompressedBitmap> entry : bitmaps.entrySet()) {
+            out.writeString(entry.getKey().name());
+            out.writeRows(entry.getValue().toArray());
+        }
+    }
+
+    private static <E extends Enum<E>> void readEnums(ClothesIndexFile.Input in, Map<E, CompressedBitmap> bitmaps,
+                                                      Class<E> type) throws IOException {
+        for (int count = in.readInt(); count > 0; count--) {
+            put(bitmaps, in.readEnum(type), in.readRows());
+        }
+    }
+
+    private static <K> void put(Map<K, CompressedBitmap> bitmaps, K value, int[] rows) {
+        if (rows.length > 0) {
+            bitmaps.put(value, CompressedBitmap.of(rows));
+        }
+    }
+
+    private static <K> CompressedBitmap get(Map<K, CompressedBitmap> bitmaps, K value) {
+        CompressedBitmap bitmap = value == null ? null : bitmaps.get(value);
+        return bitmap == null ? new CompressedBitmap() : bitmap;
+    }
+}
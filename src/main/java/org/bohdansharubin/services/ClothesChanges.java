@@ -0,0 +1,52 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Clothes added, changed or deleted in a {@link ClothesService} since its
+ * changes were last drained.
+ *
+ * @see ClothesService#trackChanges()
+ * @see ClothesService#drainChanges()
+ */
+public final class ClothesChanges {
+
+    private final List<Clothes> changed;
+    private final Set<UUID> deleted;
+
+    ClothesChanges(List<Clothes> changed, Set<UUID> deleted) {
+        this.changed = Collections.unmodifiableList(changed);
+        this.deleted = Collections.unmodifiableSet(deleted);
+    }
+
+    /**
+     * @return read-only copies of the added or changed clothes in their current state
+     */
+    public List<Clothes> getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return uuids of the deleted clothes
+     */
+    public Set<UUID> getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return {@code true} if nothing was changed
+     */
+    public boolean isEmpty() {
+        return changed.isEmpty() && deleted.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ClothesChanges{changed=" + changed.size() + ", deleted=" + deleted.size() + "}";
+    }
+}
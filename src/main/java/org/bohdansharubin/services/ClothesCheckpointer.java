@@ -0,0 +1,188 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.utils.CatalogFile;
+import org.bohdansharubin.utils.CompressedCatalogFile;
+import org.bohdansharubin.utils.PagedCatalogFile;
+import org.bohdansharubin.utils.WriteAheadLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves checkpoints of a {@link ConcurrentClothesService} in the background,
+ * so that the {@link WriteAheadLog} holds only the changes of the last interval.
+ * <p>
+ * A checkpoint reads the end position of the log, takes a
+ * {@link ClothesSnapshot} of the service, which contains every change logged
+ * before that position, and saves it over the catalog file by
+ * {@link CatalogFile} or {@link CompressedCatalogFile} without blocking
+ * writers. Only then the log is cut at the position.
+ * Changes logged before the snapshot was taken may end up both in the
+ * checkpoint and in the log, applying them again on recovery is harmless.
+ * A crash at any point leaves either the previous or the new checkpoint
+ * together with a log covering every change made after it.
+ * <p>
+ * Checkpoints to a {@link PagedCatalogFile} are incremental: instead of a
+ * snapshot, the changes {@linkplain ConcurrentClothesService#drainChanges()
+ * drained} from the service are saved, so a checkpoint costs as much as the
+ * changes since the previous one.
+ */
+public final class ClothesCheckpointer implements Closeable {
+
+    private final ConcurrentClothesService service;
+    private final WriteAheadLog log;
+    private final Path catalogFile;
+    private final boolean compressed;
+    private final PagedCatalogFile pagedFile;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * End position of the log covered by the last checkpoint, guarded by this.
+     */
+    private long checkpointedPosition;
+
+    /**
+     * Failure of the last background checkpoint, {@code null} if it succeeded.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Starts saving uncompressed checkpoints of the service once per interval.
+     *
+     * @param service     service to save (must not be null)
+     * @param log         log attached to the service (must not be null)
+     * @param catalogFile path of the catalog file to save checkpoints to (must not be null)
+     * @param interval    interval between checkpoints (must be positive)
+     * @throws IllegalArgumentException if any argument is null or interval is not positive
+     */
+    public ClothesCheckpointer(ConcurrentClothesService service, WriteAheadLog log, Path catalogFile,
+                               Duration interval) {
+        this(service, log, catalogFile, interval, false);
+    }
+
+    /**
+     * Starts saving checkpoints of the service once per interval.
+     *
+     * @param service     service to save (must not be null)
+     * @param log         log attached to the service (must not be null)
+     * @param catalogFile path of the catalog file to save checkpoints to (must not be null)
+     * @param interval    interval between checkpoints (must be positive)
+     * @param compressed  {@code true} to save checkpoints by {@link CompressedCatalogFile},
+     *                    which can't be memory-mapped
+     * @throws IllegalArgumentException if any argument is null or interval is not positive
+     */
+    public ClothesCheckpointer(ConcurrentClothesService service, WriteAheadLog log, Path catalogFile,
+                               Duration interval, boolean compressed) {
+        this(service, log, catalogFile, compressed, null, interval);
+    }
+
+    /**
+     * Starts saving the changes of the service to the paged catalog file once per interval.
+     * <p>
+     * Changes of the service are tracked from now on, the file must hold the
+     * catalog as it was when tracking started.
+     *
+     * @param service   service to save (must not be null)
+     * @param log       log attached to the service (must not be null)
+     * @param pagedFile file to save the changes to (must not be null)
+     * @param interval  interval between checkpoints (must be positive)
+     * @throws IllegalArgumentException if any argument is null or interval is not positive
+     * @see ClothesService#trackChanges()
+     */
+    public ClothesCheckpointer(ConcurrentClothesService service, WriteAheadLog log, PagedCatalogFile pagedFile,
+                               Duration interval) {
+        this(service, log, null, false, pagedFile, interval);
+    }
+
+    private ClothesCheckpointer(ConcurrentClothesService service, WriteAheadLog log, Path catalogFile,
+                                boolean compressed, PagedCatalogFile pagedFile, Duration interval) {
+        if (service == null || log == null || (catalogFile == null && pagedFile == null)) {
+            throw new IllegalArgumentException("service, log and catalog file must not be null");
+        }
+        if (interval == null || interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        this.service = service;
+        this.log = log;
+        this.catalogFile = catalogFile;
+        this.compressed = compressed;
+        this.pagedFile = pagedFile;
+        if (pagedFile != null) {
+            service.trackChanges();
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "clothes-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long nanos = interval.toNanos();
+        executor.scheduleWithFixedDelay(this::checkpointInBackground, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Saves a checkpoint now, unless nothing was logged since the last one.
+     *
+     * @return {@code true} if a checkpoint was saved
+     * @throws IOException if the checkpoint can't be saved or the log can't be cut,
+     *         the previous checkpoint and the whole log are kept then
+     * @throws IllegalStateException if the log is closed
+     */
+    public synchronized boolean checkpoint() throws IOException {
+        long position = log.size();
+        if (position == checkpointedPosition) {
+            return false;
+        }
+        if (pagedFile != null) {
+            ClothesChanges changes = service.drainChanges();
+            try {
+                pagedFile.save(changes.getChanged(), changes.getDeleted());
+            } catch (IOException | RuntimeException e) {
+                service.restoreChanges(changes);
+                throw e;
+            }
+            log.discardBefore(position);
+            checkpointedPosition = position;
+            return true;
+        }
+        service.saveCatalog(catalogFile, compressed);
+        log.discardBefore(position);
+        checkpointedPosition = position;
+        return true;
+    }
+
+    /**
+     * @return failure of the last background checkpoint, {@code null} if it succeeded
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Stops saving checkpoints in the background and waits for a running one.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkpointInBackground() {
+        try {
+            checkpoint();
+            failure = null;
+        } catch (IOException e) {
+            failure = e;
+        } catch (IllegalStateException e) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Boolean condition over clothes attributes evaluated by
+ * {@link ClothesService#findClothes(ClothesCriteria)} and
+ * {@link ClothesService#countClothes(ClothesCriteria)}.
+ * <p>
+ * Criteria are built from attribute conditions and combined with
+ * {@link #and}, {@link #or} and {@link #not}, e.g.
+ * <pre>{@code
+ * ClothesCriteria.type(ClothesType.SHIRT)
+ *         .and(ClothesCriteria.americanSize(AmericanSize.L))
+ *         .and(ClothesCriteria.color("blue"))
+ *         .and(ClothesCriteria.europeanSizeBetween(40, 46));
+ * }</pre>
+ * Criteria are immutable and are evaluated on the bitmap indexes of the
+ * service without touching stored clothes.
+ */
+public final class ClothesCriteria {
+
+    private final Function<ClothesBitmapIndex, CompressedBitmap> evaluator;
+    private final String description;
+
+    private ClothesCriteria(Function<ClothesBitmapIndex, CompressedBitmap> evaluator, String description) {
+        this.evaluator = evaluator;
+        this.description = description;
+    }
+
+    /**
+     * @return criteria matching all clothes
+     */
+    public static ClothesCriteria all() {
+        return new ClothesCriteria(ClothesBitmapIndex::all, "all");
+    }
+
+    /**
+     * @param type the type to match
+     * @return criteria matching clothes of the given type
+     */
+    public static ClothesCriteria type(ClothesType type) {
+        return new ClothesCriteria(index -> index.type(type), "type=" + type);
+    }
+
+    /**
+     * @param size the American size to match
+     * @return criteria matching clothes of the given American size
+     */
+    public static ClothesCriteria americanSize(AmericanSize size) {
+        return new ClothesCriteria(index -> index.americanSize(size), "americanSize=" + size);
+    }
+
+    /**
+     * @param min minimum size (exclusive)
+     * @param max maximum size (inclusive)
+     * @return criteria matching clothes with European size in the range
+     */
+    public static ClothesCriteria europeanSizeBetween(int min, int max) {
+        return new ClothesCriteria(index -> index.europeanSizeBetween(min, max),
+                "europeanSize in (" + min + ", " + max + "]");
+    }
+
+    /**
+     * @param color the color to match, ignoring case and surrounding spaces
+     * @return criteria matching clothes of the given color
+     */
+    public static ClothesCriteria color(String color) {
+        IntSupplier colorCode = ClothesIndexes.colorCode(color);
+        return new ClothesCriteria(index -> index.color(colorCode.getAsInt()), "color=" + color);
+    }
+
+    /**
+     * @param hatType the hat type to match
+     * @return criteria matching hats of the given type
+     */
+    public static ClothesCriteria hatType(HatType hatType) {
+        return new ClothesCriteria(index -> index.hatType(hatType), "hatType=" + hatType);
+    }
+
+    /**
+     * @param sleeveLength the sleeve length to match
+     * @return criteria matching shirts with the given sleeve length
+     */
+    public static ClothesCriteria sleeveLength(SleeveLength sleeveLength) {
+        return new ClothesCriteria(index -> index.sleeveLength(sleeveLength), "sleeveLength=" + sleeveLength);
+    }
+
+    /**
+     * @param skirtLength the skirt length to match
+     * @return criteria matching skirts with the given length
+     */
+    public static ClothesCriteria skirtLength(SkirtLength skirtLength) {
+        return new ClothesCriteria(index -> index.skirtLength(skirtLength), "skirtLength=" + skirtLength);
+    }
+
+    /**
+     * @param other the other criteria (must not be null)
+     * @return criteria matching clothes matched by both criteria
+     */
+    public ClothesCriteria and(ClothesCriteria other) {
+        Objects.requireNonNull(other, "other must not be null");
+        return new ClothesCriteria(index -> evaluate(index).and(other.evaluate(index)),
+                "(" + description + " AND " + other.description + ")");
+    }
+
+    /**
+     * @param other the other criteria (must not be null)
+     * @return criteria matching clothes matched by at least one of the criteria
+     */
+    public ClothesCriteria or(ClothesCriteria other) {
+        Objects.requireNonNull(other, "other must not be null");
+        return new ClothesCriteria(index -> evaluate(index).or(other.evaluate(index)),
+                "(" + description + " OR " + other.description + ")");
+    }
+
+    /**
+     * @return criteria matching clothes not matched by this criteria
+     */
+    public ClothesCriteria not() {
+        return new ClothesCriteria(index -> index.all().andNot(evaluate(index)), "NOT " + description);
+    }
+
+    /**
+     * Evaluates the criteria to the bitmap of matching rows.
+     * The result may be an index bitmap and must not be modified.
+     */
+    CompressedBitmap evaluate(ClothesBitmapIndex index) {
+        return evaluator.apply(index);
+    }
+
+    /**
+     * @return readable form of the criteria
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
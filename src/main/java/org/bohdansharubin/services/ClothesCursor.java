@@ -0,0 +1,32 @@
+package org.bohdansharubin.services;
+
+/**
+ * Position in a sorted view of {@link ClothesService} to continue paging from.
+ * <p>
+ * A cursor remembers the sort attributes of the last item of a page, not its
+ * index, so the next page starts right after that item even if clothes were
+ * added, changed or deleted in the meantime, including the item itself.
+ *
+ * @see ClothesService#getPage(ClothesOrder, ClothesCursor, int)
+ */
+public final class ClothesCursor {
+
+    private final ClothesOrder order;
+    private final SortedViews.Key key;
+
+    ClothesCursor(ClothesOrder order, SortedViews.Key key) {
+        this.order = order;
+        this.key = key;
+    }
+
+    /**
+     * @return ordering of the pages the cursor belongs to
+     */
+    public ClothesOrder getOrder() {
+        return order;
+    }
+
+    SortedViews.Key key() {
+        return key;
+    }
+}
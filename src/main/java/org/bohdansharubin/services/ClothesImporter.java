@@ -0,0 +1,485 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.exceptions.InvalidFieldValueException;
+import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.utils.ClothesRecordParser;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports clothes from a CSV or JSON Lines file into a {@link ClothesService}.
+ * <p>
+ * The import runs as a pipeline of three stages connected by bounded queues:
+ * <ol>
+ *     <li>a reader thread reads the file through a {@link FileChannel} in
+ *         chunks of whole lines,</li>
+ *     <li>a pool of parser threads turns every chunk into a batch of clothes
+ *         by a {@link ClothesRecordParser} of its own, rejecting invalid rows,</li>
+ *     <li>the calling thread adds every batch by one
+ *         {@link ClothesService#addAll(java.util.Collection)}, which updates the
+ *         indexes and logs the batch with a single wait for durability.</li>
+ * </ol>
+ * A full queue blocks the stage before it, so at most a few chunks are held
+ * in memory however large the file is. Batches are added in the order of the
+ * file, and every row which is invalid or has a uuid which already exists is
+ * reported with its line number in the {@link ImportReport}.
+ * <p>
+ * Blank lines are skipped. A CSV file has to start with a header line
+ * naming its columns, see {@link ClothesRecordParser} for the fields.
+ */
+public final class ClothesImporter {
+
+    /**
+     * Default size of the chunks the file is read in.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final ClothesService service;
+    private final int workers;
+    private final int chunkSize;
+
+    /**
+     * Creates an importer parsing on all available cores.
+     *
+     * @param service service to add the clothes to (must not be null)
+     * @throws IllegalArgumentException if service is null
+     */
+    public ClothesImporter(ClothesService service) {
+        this(service, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates an importer.
+     *
+     * @param service   service to add the clothes to (must not be null)
+     * @param workers   number of parser threads (must be positive)
+     * @param chunkSize size of the chunks the file is read in (must be positive),
+     *                  longer lines are read in a larger chunk
+     * @throws IllegalArgumentException if service is null, workers or chunkSize is not positive
+     */
+    public ClothesImporter(ClothesService service, int workers, int chunkSize) {
+        if (service == null) {
+            throw new IllegalArgumentException("service must not be null");
+        }
+        if (workers <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("workers and chunkSize must be positive");
+        }
+        this.service = service;
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports the file in the format detected by its extension.
+     *
+     * @param path path of the file (must not be null)
+     * @return rows read, clothes imported and rows rejected
+     * @throws IOException if the file can't be read or the CSV header is invalid,
+     *         clothes of the batches added before stay imported
+     * @see ClothesRecordParser.Format#of(Path)
+     */
+    public ImportReport importFile(Path path) throws IOException {
+        return importFile(path, ClothesRecordParser.Format.of(path));
+    }
+
+    /**
+     * Imports the file in the given format.
+     *
+     * @param path   path of the file (must not be null)
+     * @param format format of the file (must not be null)
+     * @return rows read, clothes imported and rows rejected
+     * @throws IOException if the file can't be read or the CSV header is invalid,
+     *         clothes of the batches added before stay imported
+     */
+    public ImportReport importFile(Path path, ClothesRecordParser.Format format) throws IOException {
+        if (path == null || format == null) {
+            throw new IllegalArgumentException("path and format must not be null");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ChunkReader reader = new ChunkReader(channel, chunkSize);
+            long firstLine = 1;
+            String header = null;
+            if (format == ClothesRecordParser.Format.CSV) {
+                header = reader.readLine();
+                if (header == null) {
+                    return new ImportReport();
+                }
+                try {
+                    ClothesRecordParser.csv(header);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid CSV header: " + e.getMessage(), e);
+                }
+                firstLine = 2;
+            }
+            return run(reader, header, firstLine);
+        }
+    }
+
+    private ImportReport run(ChunkReader reader, String header, long firstLine) throws IOException {
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(2 * workers);
+        BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(2 * workers);
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 1, task -> {
+            Thread thread = new Thread(task, "clothes-import-" + threads.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<Void> reading = executor.submit(() -> {
+                read(reader, chunks);
+                return null;
+            });
+            for (int i = 0; i < workers; i++) {
+                executor.execute(() -> parse(header, chunks, batches));
+            }
+            ImportReport report = insert(batches, firstLine);
+            try {
+                reading.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException("Reading the import file failed", e.getCause());
+            }
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import was interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * First stage: reads chunks until the end of the file or a failure and
+     * then tells every parser to stop, unless the import is cancelled.
+     */
+    private void read(ChunkReader reader, BlockingQueue<Chunk> chunks) throws IOException, InterruptedException {
+        try {
+            Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                chunks.put(chunk);
+            }
+        } catch (IOException | RuntimeException e) {
+            stopParsers(chunks);
+            throw e;
+        }
+        stopParsers(chunks);
+    }
+
+    private void stopParsers(BlockingQueue<Chunk> chunks) throws InterruptedException {
+        for (int i = 0; i < workers; i++) {
+            chunks.put(Chunk.END);
+        }
+    }
+
+    /**
+     * Second stage: parses chunks into batches until the reader is done.
+     */
+    private void parse(String header, BlockingQueue<Chunk> chunks, BlockingQueue<Batch> batches) {
+        RuntimeException failure = null;
+        try {
+            ClothesRecordParser parser = header == null
+                    ? ClothesRecordParser.jsonLines()
+                    : ClothesRecordParser.csv(header);
+            Chunk chunk;
+            while ((chunk = chunks.take()) != Chunk.END) {
+                batches.put(parse(parser, chunk));
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        try {
+            batches.put(new Batch(failure));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Batch parse(ClothesRecordParser parser, Chunk chunk) {
+        Batch batch = new Batch(chunk.sequence);
+        byte[] data = chunk.data;
+        int start = 0;
+        int line = 0;
+        while (start < chunk.length) {
+            int end = start;
+            while (end < chunk.length && data[end] != '\n') {
+                end++;
+            }
+            int lineEnd = end > start && data[end - 1] == '\r' ? end - 1 : end;
+            if (!isBlank(data, start, lineEnd)) {
+                batch.rows++;
+                try {
+                    batch.add(parser.parse(data, start, lineEnd), line);
+                } catch (InvalidFieldValueException e) {
+                    batch.reject(line, e.getMessage());
+                }
+            }
+            line++;
+            start = end + 1;
+        }
+        batch.lineCount = line;
+        return batch;
+    }
+
+    /**
+     * Last stage: adds batches in the order of the file until every parser is done.
+     */
+    private ImportReport insert(BlockingQueue<Batch> batches, long firstLine) throws InterruptedException {
+        ImportReport report = new ImportReport();
+        Map<Long, Batch> pending = new HashMap<>();
+        long next = 0;
+        long line = firstLine;
+        int finished = 0;
+        while (finished < workers) {
+            Batch batch = batches.take();
+            if (batch.isEnd()) {
+                if (batch.failure != null) {
+                    throw batch.failure;
+                }
+                finished++;
+                continue;
+            }
+            pending.put(batch.sequence, batch);
+            while ((batch = pending.remove(next)) != null) {
+                insert(batch, line, report);
+                line += batch.lineCount;
+                next++;
+            }
+        }
+        return report;
+    }
+
+    private void insert(Batch batch, long firstLine, ImportReport report) {
+        List<BulkReport.Entry> entries = service.addAll(batch.clothes).getEntries();
+        int imported = 0;
+        int rejected = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            BulkReport.Entry entry = entries.get(i);
+            if (entry.getOutcome() == BulkReport.Outcome.APPLIED) {
+                imported++;
+                continue;
+            }
+            while (rejected < batch.rejectedCount && batch.rejectedLines[rejected] < batch.lines[i]) {
+                report.reject(firstLine + batch.rejectedLines[rejected], batch.messages.get(rejected));
+                rejected++;
+            }
+            report.reject(firstLine + batch.lines[i], "Clothes with uuid = " + entry.getUuid() + " already exists");
+        }
+        for (; rejected < batch.rejectedCount; rejected++) {
+            report.reject(firstLine + batch.rejectedLines[rejected], batch.messages.get(rejected));
+        }
+        report.addRows(batch.rows, imported);
+    }
+
+    private static boolean isBlank(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] != ' ' && data[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whole lines read from the file.
+     */
+    private static final class Chunk {
+
+        static final Chunk END = new Chunk(-1, new byte[0], 0);
+
+        final long sequence;
+        final byte[] data;
+        final int length;
+
+        Chunk(long sequence, byte[] data, int length) {
+            this.sequence = sequence;
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Parsed clothes of a chunk with the lines of the clothes and of the
+     * rejected rows, counted from the first line of the chunk.
+     */
+    private static final class Batch {
+
+        final long sequence;
+        final RuntimeException failure;
+        final List<Clothes> clothes = new ArrayList<>();
+        final List<String> messages = new ArrayList<>();
+        int[] lines = new int[16];
+        int[] rejectedLines = new int[16];
+        int rejectedCount;
+        int rows;
+        int lineCount;
+
+        Batch(long sequence) {
+            this.sequence = sequence;
+            this.failure = null;
+        }
+
+        /**
+         * Creates the last batch of a parser, which failed if failure is not null.
+         */
+        Batch(RuntimeException failure) {
+            this.sequence = -1;
+            this.failure = failure;
+        }
+
+        boolean isEnd() {
+            return sequence < 0;
+        }
+
+        void add(Clothes item, int line) {
+            if (clothes.size() == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length * 2);
+            }
+            lines[clothes.size()] = line;
+            clothes.add(item);
+        }
+
+        void reject(int line, String message) {
+            if (rejectedCount == rejectedLines.length) {
+                rejectedLines = Arrays.copyOf(rejectedLines, rejectedLines.length * 2);
+            }
+            rejectedLines[rejectedCount++] = line;
+            messages.add(message);
+        }
+    }
+
+    /**
+     * Reads the file in chunks ending at a line break.
+     * <p>
+     * Every chunk is read into a new array, only the incomplete line at its
+     * end is copied to the array of the next chunk.
+     */
+    private static final class ChunkReader {
+
+        private final FileChannel channel;
+        private final int chunkSize;
+        private byte[] data;
+        private int length;
+        private boolean eof;
+        private boolean started;
+        private long sequence;
+
+        ChunkReader(FileChannel channel, int chunkSize) {
+            this.channel = channel;
+            this.chunkSize = chunkSize;
+            this.data = new byte[chunkSize];
+        }
+
+        /**
+         * Reads the first line, e.g. the header of a CSV file.
+         *
+         * @return the line without the line break or {@code null} if the file is empty
+         */
+        String readLine() throws IOException {
+            int end;
+            while ((end = indexOf((byte) '\n', 0)) < 0 && !eof) {
+                fill();
+            }
+            if (end < 0) {
+                if (length == 0) {
+                    return null;
+                }
+                end = length;
+            }
+            int lineEnd = end > 0 && data[end - 1] == '\r' ? end - 1 : end;
+            String line = new String(data, 0, lineEnd, StandardCharsets.UTF_8);
+            int next = Math.min(end + 1, length);
+            System.arraycopy(data, next, data, 0, length - next);
+            length -= next;
+            return line;
+        }
+
+        /**
+         * @return next chunk of whole lines or {@code null} at the end of the file
+         */
+        Chunk next() throws IOException {
+            while (true) {
+                fill();
+                int end = lastIndexOf((byte) '\n') + 1;
+                if (end == 0) {
+                    if (!eof) {
+                        continue;
+                    }
+                    if (length == 0) {
+                        return null;
+                    }
+                    end = length;
+                }
+                byte[] chunk = data;
+                data = new byte[Math.max(chunkSize, 2 * (length - end))];
+                System.arraycopy(chunk, end, data, 0, length - end);
+                length -= end;
+                return new Chunk(sequence++, chunk, end);
+            }
+        }
+
+        /**
+         * Reads until the array is full or the file ends, growing a full array first.
+         */
+        private void fill() throws IOException {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while (!eof && length < data.length) {
+                int read = channel.read(ByteBuffer.wrap(data, length, data.length - length));
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    length += read;
+                }
+            }
+            if (!started) {
+                started = true;
+                if (length >= 3 && (data[0] & 0xFF) == 0xEF && (data[1] & 0xFF) == 0xBB && (data[2] & 0xFF) == 0xBF) {
+                    System.arraycopy(data, 3, data, 0, length - 3);
+                    length -= 3;
+                    fill();
+                }
+            }
+        }
+
+        private int indexOf(byte b, int from) {
+            for (int i = from; i < length; i++) {
+                if (data[i] == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int lastIndexOf(byte b) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (data[i] == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
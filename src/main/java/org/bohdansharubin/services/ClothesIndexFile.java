@@ -0,0 +1,334 @@
+package org.bohdansharubin.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * File holding the {@link ClothesIndexes} of a catalog snapshot, so a service
+ * loading the snapshot does not have to build them again.
+ * <p>
+ * Rows in the file are positions of the clothes in the order the snapshot is
+ * loaded. The uuid index is saved with its hash table layout, posting lists
+ * and bitmaps as ascending rows, so the file is read from a memory mapping by
+ * bulk copies into the arrays of the indexes without hashing or sorting.
+ * Colors are saved by name, their codes are local to a process. Sorted views
+ * are not saved, they are created on their first read as usual.
+ * <p>
+ * Layout, all numbers big-endian:
+ * <pre>
+ * offset size field
+ *  0     4    magic "CLTI"
+ *  4     2    format version
+ *  6     2    reserved
+ *  8     8    stamp of the snapshot
+ *  16    4    number of rows
+ *  20    4    CRC32 of the body
+ *  24    8    length of the body
+ *  32    ...  body written by {@link ClothesIndexes#writeTo(Output)}
+ * </pre>
+ * The stamp identifies the content of the snapshot, e.g.
+ * {@link org.bohdansharubin.utils.PagedCatalogFile#stamp()}, so a file saved
+ * for another snapshot or for the same snapshot in another order does not
+ * match. The file is used only if it was saved for the same stamp and number
+ * of rows as the loaded snapshot and its body is intact, a file not
+ * matching is ignored and the indexes are built from the clothes.
+ */
+final class ClothesIndexFile {
+
+    /**
+     * Magic number at the start of an index file, "CLTI" in ASCII.
+     */
+    static final int MAGIC = 0x434C5449;
+
+    /**
+     * Current version of the format.
+     */
+    static final short VERSION = 2;
+
+    private static final int HEADER_SIZE = 32;
+
+    private ClothesIndexFile() {
+    }
+
+    /**
+     * Saves the indexes over a temporary file which then replaces the target.
+     *
+     * @param path       path of the file
+     * @param stamp      stamp of the snapshot the rows are positions in
+     * @param indexes    the indexes
+     * @param positions  position in the snapshot of every row of the indexes,
+     *                   {@code -1} for rows not in the snapshot
+     * @param rowCount   number of clothes in the snapshot
+     * @throws IOException if the file can't be written, the previous file is kept then
+     */
+    static void save(Path path, long stamp, ClothesIndexes indexes, int[] positions, int rowCount)
+            throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_SIZE);
+            Output out = new Output(channel, positions);
+            indexes.writeTo(out);
+            out.flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putShort(VERSION)
+                    .putShort((short) 0)
+                    .putLong(stamp)
+                    .putInt(rowCount)
+                    .putInt((int) out.crc.getValue())
+                    .putLong(out.length)
+                    .flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Loads the indexes saved for the snapshot.
+     *
+     * @param path       path of the file
+     * @param stamp      stamp of the loaded snapshot
+     * @param rowCount   number of clothes in the loaded snapshot
+     * @return the indexes or {@code null} if the file is missing, was saved for
+     *         another snapshot or can't be read
+     */
+    static ClothesIndexes load(Path path, long stamp, int rowCount) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+                return null;
+            }
+            buffer.getShort();
+            if (buffer.getLong() != stamp || buffer.getInt() != rowCount) {
+                return null;
+            }
+            int crc = buffer.getInt();
+            if (buffer.getLong() != size - HEADER_SIZE) {
+                return null;
+            }
+            CRC32 actual = new CRC32();
+            actual.update(buffer.duplicate());
+            if ((int) actual.getValue() != crc) {
+                return null;
+            }
+            ClothesIndexes indexes = ClothesIndexes.readFrom(new Input(buffer.slice(), rowCount));
+            return indexes.size() == rowCount ? indexes : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Buffered writer of the body, mapping rows to their positions.
+     */
+    static final class Output {
+
+        private final FileChannel channel;
+        private final int[] positions;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private final CRC32 crc = new CRC32();
+        private long length;
+
+        private Output(FileChannel channel, int[] positions) {
+            this.channel = channel;
+            this.positions = positions;
+        }
+
+        /**
+         * @param row a row of the indexes
+         * @return position of the row in the snapshot or {@code -1} if it's not in it
+         */
+        int position(int row) {
+            return row < positions.length ? positions[row] : -1;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            for (int i = 0; i < bytes.length; ) {
+                ensure(1);
+                int count = Math.min(buffer.remaining(), bytes.length - i);
+                buffer.put(bytes, i, count);
+                i += count;
+            }
+        }
+
+        void writeLongs(long[] values) throws IOException {
+            for (int i = 0; i < values.length; ) {
+                ensure(Long.BYTES);
+                int count = Math.min(buffer.remaining() / Long.BYTES, values.length - i);
+                buffer.asLongBuffer().put(values, i, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                i += count;
+            }
+        }
+
+        void writeInts(int[] values, int length) throws IOException {
+            for (int i = 0; i < length; ) {
+                ensure(Integer.BYTES);
+                int count = Math.min(buffer.remaining() / Integer.BYTES, length - i);
+                buffer.asIntBuffer().put(values, i, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                i += count;
+            }
+        }
+
+        /**
+         * Writes the positions of the rows in ascending order, leaving out rows not in the snapshot.
+         *
+         * @param rows distinct rows, the array is overwritten
+         */
+        void writeRows(int[] rows) throws IOException {
+            int count = 0;
+            boolean ascending = true;
+            for (int row : rows) {
+                int position = position(row);
+                if (position >= 0) {
+                    ascending &= count == 0 || rows[count - 1] < position;
+                    rows[count++] = position;
+                }
+            }
+            if (!ascending) {
+                Arrays.sort(rows, 0, count);
+            }
+            writeInt(count);
+            writeInts(rows, count);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            length += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reader of the body from the mapped file, rejecting values out of bounds.
+     */
+    static final class Input {
+
+        private final ByteBuffer buffer;
+        private final int rowCount;
+
+        private Input(ByteBuffer buffer, int rowCount) {
+            this.buffer = buffer;
+            this.rowCount = rowCount;
+        }
+
+        int readInt() throws IOException {
+            if (buffer.remaining() < Integer.BYTES) {
+                throw corrupted();
+            }
+            return buffer.getInt();
+        }
+
+        String readString() throws IOException {
+            int length = readCount(1);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        <E extends Enum<E>> E readEnum(Class<E> type) throws IOException {
+            String name = readString();
+            try {
+                return Enum.valueOf(type, name);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown " + type.getSimpleName() + " " + name, e);
+            }
+        }
+
+        long[] readLongs(int count) throws IOException {
+            if (count < 0 || (long) count * Long.BYTES > buffer.remaining()) {
+                throw corrupted();
+            }
+            long[] values = new long[count];
+            buffer.asLongBuffer().get(values);
+            buffer.position(buffer.position() + count * Long.BYTES);
+            return values;
+        }
+
+        int[] readInts(int count) throws IOException {
+            if (count < 0 || (long) count * Integer.BYTES > buffer.remaining()) {
+                throw corrupted();
+            }
+            int[] values = new int[count];
+            buffer.asIntBuffer().get(values);
+            buffer.position(buffer.position() + count * Integer.BYTES);
+            return values;
+        }
+
+        /**
+         * @return rows written by {@link Output#writeRows(int[])}
+         * @throws IOException if the rows are not ascending or out of the snapshot
+         */
+        int[] readRows() throws IOException {
+            int[] rows = readInts(readCount(Integer.BYTES));
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i] < 0 || rows[i] >= rowCount || i > 0 && rows[i] <= rows[i - 1]) {
+                    throw corrupted();
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * @return number of rows of the snapshot
+         */
+        int rowCount() {
+            return rowCount;
+        }
+
+        private int readCount(int elementSize) throws IOException {
+            int count = readInt();
+            if (count < 0 || (long) count * elementSize > buffer.remaining()) {
+                throw corrupted();
+            }
+            return count;
+        }
+
+        private static IOException corrupted() {
+            return new IOException("Index file is corrupted");
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.enums.ClothesType;
+import org.bohdansharubin.models.ColorDictionary;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+/**
+ * All indexes kept by {@link ClothesService} over the rows of its storage.
+ * <p>
+ * Groups the uuid index with the secondary indexes, so they are updated
+ * together and can be handed to the {@link QueryPlanner} as one set of
+ * access paths.
+ */
+final class ClothesIndexes {
+
+    /**
+     * Index of rows by uuid.
+     */
+    final UuidIndex uuids;
+
+    /**
+     * Index of rows by clothes type.
+     */
+    final EnumIndex<ClothesType> types = new EnumIndex<>(ClothesType.class);
+
+    /**
+     * Index of rows by American size.
+     */
+    final EnumIndex<AmericanSize> americanSizes = new EnumIndex<>(AmericanSize.class);
+
+    /**
+     * Index of rows by color code of the {@link ColorDictionary}.
+     */
+    final HashIndex<Integer> colors = new HashIndex<>();
+
+    /**
+     * Index of rows by European size.
+     */
+    final EuropeanSizeIndex europeanSizes = new EuropeanSizeIndex();
+
+    /**
+     * Compressed bitmap indexes used to evaluate {@link ClothesCriteria}.
+     */
+    final ClothesBitmapIndex bitmaps = new ClothesBitmapIndex();
+
+    /**
+     * Sorted views for the built-in {@link ClothesOrder}s.
+     */
+    final SortedViews sortedViews = new SortedViews();
+
+    /**
+     * Constructs empty indexes.
+     *
+     * @param expectedSize expected number of rows
+     */
+    ClothesIndexes(int expectedSize) {
+        this(new UuidIndex(expectedSize));
+    }
+
+    private ClothesIndexes(UuidIndex uuids) {
+        this.uuids = uuids;
+    }
+
+    /**
+     * Writes the indexes except the sorted views for a {@link ClothesIndexFile}.
+     *
+     * @param out the output mapping rows to their positions
+     * @throws IOException if writing fails
+     */
+    void writeTo(ClothesIndexFile.Output out) throws IOException {
+        uuids.writeTo(out);
+        writeEnums(out, types.postings());
+        writeEnums(out, americanSizes.postings());
+        ColorDictionary dictionary = ColorDictionary.getInstance();
+        Map<Integer, PostingList> colorPostings = colors.postings();
+        out.writeInt(colorPostings.size());
+        for (Map.Entry<Integer, PostingList> entry : colorPostings.entrySet()) {
+            out.writeString(dictionary.decode(entry.getKey()));
+            out.writeRows(entry.getValue().toArray());
+        }
+        Map<Integer, PostingList> sizePostings = europeanSizes.postings();
+        out.writeInt(sizePostings.size());
+        for (Map.Entry<Integer, PostingList> entry : sizePostings.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeRows(entry.getValue().toArray());
+        }
+        bitmaps.writeTo(out);
+    }
+
+    /**
+     * Reads indexes written by {@link #writeTo(ClothesIndexFile.Output)}.
+     *
+     * @param in the input
+     * @return the indexes, rows are the positions in the snapshot
+     * @throws IOException if the indexes are corrupted
+     */
+    static ClothesIndexes readFrom(ClothesIndexFile.Input in) throws IOException {
+        ClothesIndexes indexes = new ClothesIndexes(UuidIndex.readFrom(in));
+        for (int count = in.readInt(); count > 0; count--) {
+            ClothesType type = in.readEnum(ClothesType.class);
+            int[] rows = in.readRows();
+            if (rows.length > 0) {
+                indexes.types.put(type, PostingList.of(rows));
+            }
+        }
+        for (int count = in.readInt(); count > 0; count--) {
+            AmericanSize size = in.readEnum(AmericanSize.class);
+            int[] rows = in.readRows();
+            if (rows.length > 0) {
+                indexes.americanSizes.put(size, PostingList.of(rows));
+            }
+        }
+        ColorDictionary dictionary = ColorDictionary.getInstance();
+        for (int count = in.readInt(); count > 0; count--) {
+            int code = dictionary.encode(in.readString());
+            int[] rows = in.readRows();
+            if (rows.length > 0) {
+                indexes.colors.put(colorKey(code), PostingList.of(rows));
+            }
+        }
+        for (int count = in.readInt(); count > 0; count--) {
+            int size = in.readInt();
+            int[] rows = in.readRows();
+            if (rows.length > 0) {
+                indexes.europeanSizes.put(size, PostingList.of(rows));
+            }
+        }
+        indexes.bitmaps.readFrom(in);
+        return indexes;
+    }
+
+    /**
+     * @return number of indexed rows
+     */
+    int size() {
+        return uuids.size();
+    }
+
+    /**
+     * Adds a new row to all indexes.
+     *
+     * @param storage storage holding the row
+     * @param row     a live row
+     */
+    void add(ClothesStorage storage, int row) {
+        uuids.put(storage.uuidMostSignificantBits(row), storage.uuidLeastSignificantBits(row), row);
+        addValues(storage, row);
+    }
+
+    /**
+     * Adds the row to the secondary indexes using the values stored in it.
+     *
+     * @param storage storage holding the row
+     * @param row     a live row
+     */
+    void addValues(ClothesStorage storage, int row) {
+        addToValueIndexes(storage, row);
+        sortedViews.add(storage, row);
+    }
+
+    /**
+     * Removes the row from the secondary indexes using the values stored in it.
+     *
+     * @param storage storage holding the row
+     * @param row     a live row
+     */
+    void removeValues(ClothesStorage storage, int row) {
+        types.remove(storage.type(row), row);
+        americanSizes.remove(storage.americanSize(row), row);
+        colors.remove(colorKey(storage.colorCode(row)), row);
+        europeanSizes.remove(storage.europeanSize(row), row);
+        bitmaps.remove(storage, row);
+        sortedViews.remove(row);
+    }
+
+    /**
+     * Indexes every live row of the storage again after it was compacted.
+     * <p>
+     * Sorted views only renumber their rows, compaction keeps the relative
+     * order of rows.
+     *
+     * @param storage the compacted storage
+     */
+    void rebuild(ClothesStorage storage) {
+        uuids.clear();
+        types.clear();
+        americanSizes.clear();
+        colors.clear();
+        europeanSizes.clear();
+        bitmaps.clear();
+        sortedViews.compact();
+        for (int row = 0; row < storage.rowCount(); row++) {
+            if (storage.isLive(row)) {
+                uuids.put(storage.uuidMostSignificantBits(row), storage.uuidLeastSignificantBits(row), row);
+                addToValueIndexes(storage, row);
+            }
+        }
+    }
+
+    private static <E extends Enum<E>> void writeEnums(ClothesIndexFile.Output out, Map<E, PostingList> postings)
+            throws IOException {
+        out.writeInt(postings.size());
+        for (Map.Entry<E, PostingList> entry : postings.entrySet()) {
+            out.writeString(entry.getKey().name());
+            out.writeRows(entry.getValue().toArray());
+        }
+    }
+
+    private void addToValueIndexes(ClothesStorage storage, int row) {
+        types.add(storage.type(row), row);
+        americanSizes.add(storage.americanSize(row), row);
+        colors.add(colorKey(storage.colorCode(row)), row);
+        europeanSizes.add(storage.europeanSize(row), row);
+        bitmaps.add(storage, row);
+    }
+
+    /**
+     * @param colorCode code of a color
+     * @return key of the color in color indexes, {@code null} for {@link ColorDictionary#NO_CODE}
+     */
+    static Integer colorKey(int colorCode) {
+        return colorCode == ColorDictionary.NO_CODE ? null : colorCode;
+    }
+
+    /**
+     * Looks up the code of a searched color without adding the color to the
+     * {@link ColorDictionary}, so searching for unknown colors does not grow it.
+     * <p>
+     * A color unknown when the condition is built may be added later, it is
+     * looked up again until it has a code. Codes never change once assigned.
+     *
+     * @param color the searched color, may be {@code null}
+     * @return supplier of the code of the color or {@link ColorDictionary#NO_CODE} while it's unknown
+     */
+    static IntSupplier colorCode(String color) {
+        ColorDictionary dictionary = ColorDictionary.getInstance();
+        int code = dictionary.find(color);
+        if (code != ColorDictionary.NO_CODE || color == null) {
+            return () -> code;
+        }
+        int[] found = {ColorDictionary.NO_CODE};
+        return () -> {
+            if (found[0] == ColorDictionary.NO_CODE) {
+                found[0] = dictionary.find(color);
+            }
+            return found[0];
+        };
+    }
+}
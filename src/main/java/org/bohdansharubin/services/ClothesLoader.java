@@ -0,0 +1,209 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Loads a catalog into a {@link ClothesService} on a background thread.
+ * <p>
+ * Clothes read from the {@link Source} are added in batches by
+ * {@link ClothesService#addAll(java.util.Collection)}, so the service answers
+ * requests about the part loaded so far while the rest is read. Once all
+ * clothes are added, the step passed to {@link #start} runs on the same
+ * thread, e.g. to replay and attach the write-ahead log, and the loader
+ * becomes ready.
+ * <p>
+ * Operations which need the whole catalog wait for readiness by
+ * {@link #await(Duration, LongConsumer)}, which reports the number of
+ * loaded clothes while waiting.
+ */
+public final class ClothesLoader {
+
+    /**
+     * Reader of a catalog.
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        /**
+         * Reads all clothes of the catalog.
+         *
+         * @param action  receives every clothes item read
+         * @param discard drops every item received so far, e.g. when the
+         *                catalog turns out to be corrupted after some were read
+         * @throws IOException if the catalog can't be read
+         */
+        void read(Consumer<? super Clothes> action, Runnable discard) throws IOException;
+    }
+
+    /**
+     * Step run after all clothes are loaded and before the loader becomes ready.
+     */
+    @FunctionalInterface
+    public interface Step {
+
+        /**
+         * @throws IOException if the step fails, the loader fails with it
+         */
+        void run() throws IOException;
+    }
+
+    /**
+     * Default number of clothes added to the service at once.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final ClothesService service;
+    private final int batchSize;
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private final AtomicLong loadedCount = new AtomicLong();
+    private volatile IOException failure;
+    private Thread thread;
+
+    /**
+     * Creates a loader adding clothes in batches of {@value #DEFAULT_BATCH_SIZE}.
+     *
+     * @param service service to load the clothes into (must not be null)
+     * @throws IllegalArgumentException if service is null
+     */
+    public ClothesLoader(ClothesService service) {
+        this(service, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a loader.
+     *
+     * @param service   service to load the clothes into (must not be null)
+     * @param batchSize number of clothes added to the service at once (must be positive)
+     * @throws IllegalArgumentException if service is null or batchSize is not positive
+     */
+    public ClothesLoader(ClothesService service, int batchSize) {
+        if (service == null) {
+            throw new IllegalArgumentException("service must not be null");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.service = service;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Starts loading on a new thread and returns immediately.
+     *
+     * @param source   reader of the catalog (must not be null)
+     * @param onLoaded step run after all clothes are added (must not be null)
+     * @throws IllegalArgumentException if source or onLoaded is null
+     * @throws IllegalStateException if the loader was already started
+     */
+    public synchronized void start(Source source, Step onLoaded) {
+        if (source == null || onLoaded == null) {
+            throw new IllegalArgumentException("source and onLoaded must not be null");
+        }
+        if (thread != null) {
+            throw new IllegalStateException("Loader was already started");
+        }
+        thread = new Thread(() -> load(source, onLoaded), "clothes-loader");
+        thread.start();
+    }
+
+    /**
+     * @return {@code true} if loading finished, successfully or not
+     */
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * @return number of clothes added to the service so far
+     */
+    public long getLoadedCount() {
+        return loadedCount.get();
+    }
+
+    /**
+     * @return cause of a failed loading, {@code null} while loading or if it succeeded
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits until loading finishes.
+     * <p>
+     * An interrupt does not stop the wait, the interrupt status is restored
+     * before returning.
+     *
+     * @param interval time between progress reports (must be positive)
+     * @param progress receives the number of loaded clothes after every
+     *                 interval of waiting (must not be null)
+     * @return {@code true} if the catalog was loaded, {@code false} if loading failed
+     * @throws IllegalArgumentException if interval is not positive or progress is null
+     */
+    public boolean await(Duration interval, LongConsumer progress) {
+        if (interval == null || interval.isNegative() || interval.isZero() || progress == null) {
+            throw new IllegalArgumentException("interval must be positive and progress must not be null");
+        }
+        boolean interrupted = false;
+        while (!isReady()) {
+            try {
+                if (!ready.await(interval.toMillis(), TimeUnit.MILLISECONDS)) {
+                    progress.accept(loadedCount.get());
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return failure == null;
+    }
+
+    private void load(Source source, Step onLoaded) {
+        List<Clothes> batch = new ArrayList<>(batchSize);
+        List<UUID> added = new ArrayList<>();
+        try {
+            source.read(clothes -> {
+                batch.add(clothes);
+                if (batch.size() == batchSize) {
+                    addBatch(batch, added);
+                }
+            }, () -> {
+                batch.clear();
+                service.deleteAll(added);
+                added.clear();
+                loadedCount.set(0);
+            });
+            addBatch(batch, added);
+            onLoaded.run();
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException("Can't load the catalog: " + e.getMessage(), e);
+        } finally {
+            ready.countDown();
+        }
+    }
+
+    private void addBatch(List<Clothes> batch, List<UUID> added) {
+        BulkReport report = service.addAll(batch);
+        for (BulkReport.Entry entry : report.getEntries()) {
+            if (entry.getOutcome() == BulkReport.Outcome.APPLIED) {
+                added.add(entry.getUuid());
+            }
+        }
+        loadedCount.addAndGet(report.getAppliedCount());
+        batch.clear();
+    }
+}
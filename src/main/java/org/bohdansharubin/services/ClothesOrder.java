@@ -0,0 +1,58 @@
+package org.bohdansharubin.services;
+
+import java.util.Comparator;
+
+/**
+ * Built-in orderings of clothes for which {@link ClothesService} keeps
+ * sorted views up to date.
+ * <p>
+ * Clothes equal in the ordering keep their insertion order, the same as
+ * a stable sort of {@link ClothesService#getClothesList()} would give.
+ */
+public enum ClothesOrder {
+
+    /** By insertion, the order of {@link ClothesService#getClothesList()} */
+    INSERTION((o1, o2) -> 0),
+
+    /** By clothes type */
+    TYPE(Comparator.comparing(SortedViews.Key::type)),
+
+    /** By color, case-sensitive */
+    COLOR(Comparator.comparing(SortedViews.Key::color)),
+
+    /** By American size */
+    AMERICAN_SIZE(Comparator.comparing(SortedViews.Key::americanSize)),
+
+    /** By European size */
+    EUROPEAN_SIZE(Comparator.comparingInt(SortedViews.Key::europeanSize)),
+
+    /** By natural ordering of {@link org.bohdansharubin.models.Clothes}: European size, then color */
+    NATURAL(Comparator.comparingInt(SortedViews.Key::europeanSize)
+            .thenComparing(SortedViews.Key::color)),
+
+    /** By uuid, as {@link java.util.UUID#compareTo} */
+    UUID(Comparator.comparingLong(SortedViews.Key::msb)
+            .thenComparingLong(SortedViews.Key::lsb));
+
+    private final Comparator<SortedViews.Key> attributeComparator;
+    private final Comparator<SortedViews.Key> comparator;
+
+    ClothesOrder(Comparator<SortedViews.Key> attributeComparator) {
+        this.attributeComparator = attributeComparator;
+        this.comparator = attributeComparator.thenComparingLong(SortedViews.Key::sequence);
+    }
+
+    /**
+     * @return comparator of the sorted attributes only, without a tie-break
+     */
+    Comparator<SortedViews.Key> attributeComparator() {
+        return attributeComparator;
+    }
+
+    /**
+     * @return comparator of view entries, ties are broken by insertion
+     */
+    Comparator<SortedViews.Key> comparator() {
+        return comparator;
+    }
+}
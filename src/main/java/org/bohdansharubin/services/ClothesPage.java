@@ -0,0 +1,42 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.util.List;
+
+/**
+ * One page of clothes read from a sorted view of {@link ClothesService}.
+ *
+ * @see ClothesService#getPage(ClothesOrder, ClothesCursor, int)
+ */
+public final class ClothesPage {
+
+    private final List<Clothes> items;
+    private final ClothesCursor nextCursor;
+
+    ClothesPage(List<Clothes> items, ClothesCursor nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return clothes of the page in sorted order
+     */
+    public List<Clothes> getItems() {
+        return items;
+    }
+
+    /**
+     * @return cursor to read the next page with or {@code null} if this is the last page
+     */
+    public ClothesCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return {@code true} if there are more clothes after this page
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,117 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Conjunction of attribute conditions executed by
+ * {@link ClothesService#findClothes(ClothesQuery)}.
+ * <p>
+ * Conditions are added with chained calls, e.g.
+ * <pre>{@code
+ * new ClothesQuery()
+ *         .type(ClothesType.SHIRT)
+ *         .americanSize(AmericanSize.L)
+ *         .color("blue")
+ *         .europeanSizeBetween(40, 46);
+ * }</pre>
+ * The order of the calls does not matter: the service plans the query and
+ * evaluates the most selective conditions first. The chosen plan can be
+ * inspected with {@link ClothesService#explain(ClothesQuery)}.
+ */
+public final class ClothesQuery {
+
+    private final List<QueryPredicate> predicates = new ArrayList<>();
+
+    /**
+     * @param uuid the uuid to match (must not be null)
+     * @return this query
+     */
+    public ClothesQuery uuid(UUID uuid) {
+        if (uuid == null) {
+            throw new IllegalArgumentException("uuid must not be null");
+        }
+        predicates.add(QueryPredicate.uuid(uuid));
+        return this;
+    }
+
+    /**
+     * @param type the type to match
+     * @return this query
+     */
+    public ClothesQuery type(ClothesType type) {
+        predicates.add(QueryPredicate.type(type));
+        return this;
+    }
+
+    /**
+     * @param size the American size to match
+     * @return this query
+     */
+    public ClothesQuery americanSize(AmericanSize size) {
+        predicates.add(QueryPredicate.americanSize(size));
+        return this;
+    }
+
+    /**
+     * @param color the color to match
+     * @return this query
+     */
+    public ClothesQuery color(String color) {
+        predicates.add(QueryPredicate.color(color));
+        return this;
+    }
+
+    /**
+     * @param min minimum size (exclusive)
+     * @param max maximum size (inclusive)
+     * @return this query
+     */
+    public ClothesQuery europeanSizeBetween(int min, int max) {
+        predicates.add(QueryPredicate.europeanSizeBetween(min, max));
+        return this;
+    }
+
+    /**
+     * @param hatType the hat type to match
+     * @return this query
+     */
+    public ClothesQuery hatType(HatType hatType) {
+        predicates.add(QueryPredicate.hatType(hatType));
+        return this;
+    }
+
+    /**
+     * @param sleeveLength the sleeve length to match
+     * @return this query
+     */
+    public ClothesQuery sleeveLength(SleeveLength sleeveLength) {
+        predicates.add(QueryPredicate.sleeveLength(sleeveLength));
+        return this;
+    }
+
+    /**
+     * @param skirtLength the skirt length to match
+     * @return this query
+     */
+    public ClothesQuery skirtLength(SkirtLength skirtLength) {
+        predicates.add(QueryPredicate.skirtLength(skirtLength));
+        return this;
+    }
+
+    /**
+     * @return conditions of the query in the order they were added
+     */
+    List<QueryPredicate> predicates() {
+        return Collections.unmodifiableList(predicates);
+    }
+
+    @Override
+    public String toString() {
+        return "ClothesQuery" + predicates;
+    }
+}
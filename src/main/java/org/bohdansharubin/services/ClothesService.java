@@ -4,8 +4,16 @@ import org.bohdansharubin.enums.AmericanSize;
 import org.bohdansharubin.enums.ClothesType;
 import org.bohdansharubin.exceptions.ClothesNotFoundException;
 import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.models.ClothesChangeListener;
+import org.bohdansharubin.models.ColorDictionary;
+import org.bohdansharubin.utils.LogEntry;
+import org.bohdansharubin.utils.WriteAheadLog;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import static org.bohdansharubin.views.View.LINE_SEPARATOR;
 
@@ -17,40 +25,626 @@ import static org.bohdansharubin.views.View.LINE_SEPARATOR;
  */
 public class ClothesService {
 
+    /**
+     * A bulk delete of at least 1/BULK_REINDEX_RATIO of the catalog rebuilds
+     * the indexes once instead of updating them for every item.
+     */
+    private static final int BULK_REINDEX_RATIO = 8;
+
     /**
      * Internal storage of clothes.
+     * <p>
+     * Every item is addressed by its row. Deleted items leave an empty row
+     * behind, so rows of the other items stay stable until the storage is
+     * compacted.
+     */
+    private final ClothesStorage storage;
+
+    /**
+     * Indexes over the rows of the storage.
+     */
+    private final ClothesIndexes indexes;
+
+    /**
+     * Plans and executes {@link ClothesQuery} over the indexes.
+     */
+    private final QueryPlanner planner;
+
+    /**
+     * Whether the indexes were loaded from an index file instead of being built.
+     */
+    private final boolean indexesLoaded;
+
+    /**
+     * Execution mode of scans and sorts.
+     */
+    private ParallelConfig parallelConfig = ParallelConfig.sequential();
+
+    /**
+     * Versions of the catalog for snapshot reads, {@code null} until the first snapshot.
+     */
+    private ClothesVersions versions;
+
+    /**
+     * Log every change is appended to, {@code null} if changes are not logged.
+     */
+    private WriteAheadLog log;
+
+    /**
+     * Uuids of clothes added, changed or deleted since changes were last
+     * drained, {@code null} while changes are not tracked.
+     */
+    private Set<UUID> changedUuids;
+
+    /**
+     * Clothes changed by {@link #updateAll}, its indexes are updated once per item
+     * instead of on every setter.
      */
-    private final List<Clothes> clothesList;
+    private Clothes bulkUpdated;
+
+    /**
+     * Keeps the indexes in sync when stored clothes are changed through their setters.
+     */
+    private final ClothesChangeListener indexUpdater = new ClothesChangeListener() {
+        @Override
+        public void beforeChange(Clothes clothes) {
+            checkLogWritable();
+            beforeStoredChange(clothes);
+            if (clothes == bulkUpdated) {
+                return;
+            }
+            int row = indexes.uuids.get(clothes.getUuid());
+            if (row != UuidIndex.ABSENT) {
+                indexes.removeValues(storage, row);
+            }
+        }
+
+        @Override
+        public void afterChange(Clothes clothes) {
+            try {
+                int row = clothes == bulkUpdated ? UuidIndex.ABSENT : indexes.uuids.get(clothes.getUuid());
+                if (row != UuidIndex.ABSENT) {
+                    storage.update(row, clothes);
+                    indexes.addValues(storage, row);
+                    if (versions != null) {
+                        versions.update(row, clothes);
+                    }
+                    recordPut(clothes);
+                }
+            } finally {
+                afterStoredChange(clothes);
+            }
+            if (clothes != bulkUpdated) {
+                awaitDurable();
+            }
+        }
+    };
 
     /**
      * Constructs a service with the given list of clothes.
      *
      * @param clothesList initial list of clothes (must not be null)
-     * @throws IllegalArgumentException if clothesList is null
+     * @throws IllegalArgumentException if clothesList is null,
+     *         contains null or contains two clothes with the same uuid
      */
     public ClothesService(List<Clothes> clothesList) {
+        this(clothesList, StorageMode.OBJECTS);
+    }
+
+    /**
+     * Constructs a service with the given list of clothes stored in the given layout.
+     *
+     * @param clothesList initial list of clothes (must not be null)
+     * @param storageMode layout of the catalog in memory (must not be null)
+     * @throws IllegalArgumentException if clothesList or storageMode is null,
+     *         clothesList contains null or contains two clothes with the same uuid
+     */
+    public ClothesService(List<Clothes> clothesList, StorageMode storageMode) {
+        this(clothesList, storageMode, null, 0);
+    }
+
+    /**
+     * Constructs a service with the given list of clothes, loading its indexes
+     * from the index file if it was saved by {@link #saveIndexes} for the same
+     * snapshot.
+     * <p>
+     * The file is used only if it was saved with the same stamp and number of
+     * clothes. The stamp must identify the clothes and their order in
+     * clothesList, such as {@link org.bohdansharubin.utils.PagedCatalogFile#stamp()}
+     * of the file they were read from, since the loaded indexes are trusted
+     * without checking the clothes. Otherwise the indexes are built as by
+     * {@link #ClothesService(List, StorageMode)}, a missing, stale or corrupted
+     * file is not an error.
+     *
+     * @param clothesList initial list of clothes in the order of the snapshot (must not be null)
+     * @param storageMode layout of the catalog in memory (must not be null)
+     * @param indexFile   path of the index file, {@code null} to build the indexes
+     * @param stamp       stamp of the snapshot the clothes were loaded from
+     * @throws IllegalArgumentException if clothesList or storageMode is null,
+     *         clothesList contains null or contains two clothes with the same uuid
+     */
+    public ClothesService(List<Clothes> clothesList, StorageMode storageMode, Path indexFile, long stamp) {
         if (clothesList == null) {
             throw new IllegalArgumentException("clothesList must not be null");
         }
-        this.clothesList = new ArrayList<>(clothesList);
+        if (storageMode == null) {
+            throw new IllegalArgumentException("storageMode must not be null");
+        }
+        this.storage = switch (storageMode) {
+            case OBJECTS -> new ObjectClothesStorage(clothesList.size(), indexUpdater);
+            case COLUMNAR -> new ColumnarClothesStorage(clothesList.size(), indexUpdater);
+        };
+        if (indexFile == null) {
+            this.indexes = new ClothesIndexes(clothesList.size());
+            this.indexesLoaded = false;
+            this.planner = new QueryPlanner(storage, indexes);
+            for (Clothes clothes : clothesList) {
+                insert(clothes);
+            }
+            return;
+        }
+        for (Clothes clothes : clothesList) {
+            if (clothes == null) {
+                throw new IllegalArgumentException("clothes must not be null");
+            }
+            storage.add(clothes);
+        }
+        ClothesIndexes loaded = ClothesIndexFile.load(indexFile, stamp, storage.rowCount());
+        this.indexesLoaded = loaded != null;
+        this.indexes = indexesLoaded ? loaded : buildIndexes(storage);
+        this.planner = new QueryPlanner(storage, indexes);
+    }
+
+    /**
+     * Constructs a service serving the catalog file saved by
+     * {@link org.bohdansharubin.utils.CatalogFile} from a read-only memory mapping.
+     * <p>
+     * Indexes are built by reading the mapped records, clothes are
+     * materialized only when they are returned. The file is never written,
+     * changes are kept in memory until the catalog is saved.
+     *
+     * @param catalogFile path of the catalog file (must not be null)
+     * @throws IOException if the file can't be read, is corrupted or contains two clothes with the same uuid
+     * @throws IllegalArgumentException if catalogFile is null
+     */
+    public ClothesService(Path catalogFile) throws IOException {
+        this(catalogFile, null);
+    }
+
+    /**
+     * Constructs a service serving the catalog file from a read-only memory
+     * mapping, loading its indexes from the index file if it was saved by
+     * {@link #saveIndexes} for the same file.
+     * <p>
+     * The index file is used if it was saved with the
+     * {@linkplain org.bohdansharubin.utils.CatalogFile#stamp(Path) stamp} of the
+     * catalog file and the clothes in the order of its records. Opening then
+     * does not read the records, they are read when they are queried, and the
+     * indexes are read by bulk copies instead of being built. Otherwise every
+     * record is checked while the indexes are built as by
+     * {@link #ClothesService(Path)}.
+     *
+     * @param catalogFile path of the catalog file (must not be null)
+     * @param indexFile   path of the index file, {@code null} to build the indexes
+     * @throws IOException if the file can't be read, is corrupted or contains two clothes with the same uuid
+     * @throws IllegalArgumentException if catalogFile is null
+     */
+    public ClothesService(Path catalogFile, Path indexFile) throws IOException {
+        if (catalogFile == null) {
+            throw new IllegalArgumentException("catalogFile must not be null");
+        }
+        MappedClothesStorage mapped = MappedClothesStorage.open(catalogFile, indexUpdater);
+        OptionalLong stamp = mapped.stamp();
+        ClothesIndexes loaded = indexFile == null || stamp.isEmpty()
+                ? null
+                : ClothesIndexFile.load(indexFile, stamp.getAsLong(), mapped.rowCount());
+        this.storage = mapped;
+        this.indexesLoaded = loaded != null;
+        this.indexes = indexesLoaded ? loaded : new ClothesIndexes(mapped.rowCount());
+        this.planner = new QueryPlanner(storage, indexes);
+        if (indexesLoaded) {
+            return;
+        }
+        for (int row = 0; row < mapped.rowCount(); row++) {
+            mapped.checkRecord(row);
+            long msb = mapped.uuidMostSignificantBits(row);
+            long lsb = mapped.uuidLeastSignificantBits(row);
+            if (indexes.uuids.get(msb, lsb) != UuidIndex.ABSENT) {
+                throw new IOException("Clothes with uuid = " + new UUID(msb, lsb) + " occurs twice in " + catalogFile);
+            }
+            indexes.add(mapped, row);
+        }
+    }
+
+    /**
+     * @return {@code true} if the indexes were loaded from an index file
+     *         instead of being built from the clothes
+     */
+    public boolean hasLoadedIndexes() {
+        return indexesLoaded;
+    }
+
+    /**
+     * Saves the indexes to a file read by
+     * {@link #ClothesService(List, StorageMode, Path, long)} or
+     * {@link #ClothesService(Path, Path)} when the same snapshot is loaded again.
+     * <p>
+     * Sorted views are not saved, they are built on their first use.
+     *
+     * @param indexFile  path of the index file (must not be null)
+     * @param stamp      stamp of the snapshot
+     * @param loadOrder  uuids of the clothes in the order the snapshot is loaded,
+     *                   {@code null} for the order of {@link #getClothesList()}
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if indexFile is null or loadOrder
+     *         contains a uuid not in the catalog
+     */
+    public void saveIndexes(Path indexFile, long stamp, List<UUID> loadOrder) throws IOException {
+        if (indexFile == null) {
+            throw new IllegalArgumentException("indexFile must not be null");
+        }
+        int[] positions = new int[storage.rowCount()];
+        Arrays.fill(positions, UuidIndex.ABSENT);
+        int rowCount = 0;
+        if (loadOrder == null) {
+            for (int row = 0; row < storage.rowCount(); row++) {
+                if (storage.isLive(row)) {
+                    positions[row] = rowCount++;
+                }
+            }
+        } else {
+            for (UUID uuid : loadOrder) {
+                int row = uuid == null ? UuidIndex.ABSENT : indexes.uuids.get(uuid);
+                if (row == UuidIndex.ABSENT) {
+                    throw new IllegalArgumentException("Clothes with uuid = " + uuid + " not found");
+                }
+                positions[row] = rowCount++;
+            }
+        }
+        ClothesIndexFile.save(indexFile, stamp, indexes, positions, rowCount);
+    }
+
+    /**
+     * @return log every change is appended to, {@code null} if changes are not logged
+     */
+    public WriteAheadLog getWriteAheadLog() {
+        return log;
+    }
+
+    /**
+     * Sets the log every following change is appended to.
+     * <p>
+     * Mutating methods and setters of stored clothes return once the change
+     * is as durable as the {@link WriteAheadLog.Durability} of the log requires.
+     * Once writing the log failed, they throw {@link java.io.UncheckedIOException}
+     * before applying the change, so the catalog never gets ahead of the log.
+     *
+     * @param log the log, {@code null} to stop logging changes
+     */
+    public void setWriteAheadLog(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Starts tracking which clothes are added, changed or deleted, taking the
+     * current catalog as unchanged. Does nothing if changes are already tracked.
+     *
+     * @see #drainChanges()
+     */
+    public void trackChanges() {
+        if (changedUuids == null) {
+            changedUuids = new HashSet<>();
+        }
+    }
+
+    /**
+     * Returns the clothes added, changed or deleted since changes were last
+     * drained or tracking started, and starts tracking anew.
+     * <p>
+     * Every item is reported once with its current state, however many times
+     * it was changed. Clothes added and deleted again are reported as deleted.
+     *
+     * @return the changes
+     * @throws IllegalStateException if changes are not tracked
+     */
+    public ClothesChanges drainChanges() {
+        if (changedUuids == null) {
+            throw new IllegalStateException("Changes are not tracked");
+        }
+        List<Clothes> changed = new ArrayList<>();
+        Set<UUID> deleted = new HashSet<>();
+        for (UUID uuid : changedUuids) {
+            int row = indexes.uuids.get(uuid);
+            if (row == UuidIndex.ABSENT) {
+                deleted.add(uuid);
+            } else {
+                changed.add(storage.get(row).readOnlyCopy());
+            }
+        }
+        changedUuids = new HashSet<>();
+        return new ClothesChanges(changed, deleted);
+    }
+
+    /**
+     * Marks drained changes as not drained again, e.g. after saving them failed.
+     * Their current state is reported by the next drain.
+     *
+     * @param changes changes returned by {@link #drainChanges()} (must not be null)
+     * @throws IllegalArgumentException if changes is null
+     * @throws IllegalStateException if changes are not tracked
+     */
+    public void restoreChanges(ClothesChanges changes) {
+        if (changes == null) {
+            throw new IllegalArgumentException("changes must not be null");
+        }
+        if (changedUuids == null) {
+            throw new IllegalStateException("Changes are not tracked");
+        }
+        for (Clothes clothes : changes.getChanged()) {
+            changedUuids.add(clothes.getUuid());
+        }
+        changedUuids.addAll(changes.getDeleted());
+    }
+
+    /**
+     * @return execution mode of scans and sorts
+     */
+    public ParallelConfig getParallelConfig() {
+        return parallelConfig;
+    }
+
+    /**
+     * Sets execution mode of scans and sorts.
+     * <p>
+     * Results do not depend on the mode, only the number of threads used
+     * to compute them.
+     *
+     * @param parallelConfig the mode (must not be null)
+     * @throws IllegalArgumentException if parallelConfig is null
+     */
+    public void setParallelConfig(ParallelConfig parallelConfig) {
+        if (parallelConfig == null) {
+            throw new IllegalArgumentException("parallelConfig must not be null");
+        }
+        this.parallelConfig = parallelConfig;
     }
 
     /**
      * Returns the list of clothes.
+     * <p>
+     * The returned list is a read-only view, changes of the collection
+     * must go through the service.
      *
      * @return list of clothes
      */
     public List<Clothes> getClothesList() {
-        return clothesList;
+        if (storage.removedCount() > 0) {
+            compact();
+        }
+        return storage.toList();
+    }
+
+    /**
+     * Returns an immutable point-in-time view of the catalog.
+     * <p>
+     * The first call copies the catalog once, from then on every change keeps
+     * a new version up to date and a snapshot is taken in O(1). Long searches,
+     * sorts and renders over a snapshot see consistent data and do not hold
+     * back changes of the service.
+     *
+     * @return snapshot of the current catalog
+     */
+    public ClothesSnapshot snapshot() {
+        if (versions == null) {
+            versions = new ClothesVersions(storage);
+        }
+        return versions.current();
+    }
+
+    /**
+     * Stops keeping versions for snapshots, the next snapshot copies the catalog again.
+     */
+    void dropVersions() {
+        versions = null;
     }
 
     /**
      * Adds a new clothes item to the list.
      *
      * @param clothes the clothes to add
+     * @throws IllegalArgumentException if clothes is null or clothes
+     *         with the same uuid already exists
      */
     public void addClothes(Clothes clothes) {
-        clothesList.add(clothes);
+        checkLogWritable();
+        insert(clothes);
+        awaitDurable();
+    }
+
+    /**
+     * Applies a change read from a {@link WriteAheadLog}.
+     * <p>
+     * A put adds the clothes or, if clothes with the same uuid are stored,
+     * replaces them keeping their position in the insertion order.
+     * A delete removes the clothes if they are stored.
+     *
+     * @param entry the change (must not be null)
+     * @throws IllegalArgumentException if entry is null or puts clothes of another type
+     *         than the stored clothes with the same uuid
+     */
+    public void apply(LogEntry entry) {
+        if (entry == null) {
+            throw new IllegalArgumentException("entry must not be null");
+        }
+        checkLogWritable();
+        if (entry.getOperation() == LogEntry.Operation.DELETE) {
+            if (containsClothes(entry.getUuid())) {
+                deleteClothesByUuid(entry.getUuid());
+            }
+            return;
+        }
+        Clothes clothes = entry.getClothes();
+        int row = indexes.uuids.get(clothes.getUuid());
+        if (row == UuidIndex.ABSENT) {
+            addClothes(clothes);
+            return;
+        }
+        if (storage.type(row) != clothes.getType()) {
+            throw new IllegalArgumentException("Clothes with uuid = " + clothes.getUuid() + " has another type");
+        }
+        indexes.removeValues(storage, row);
+        storage.update(row, clothes);
+        indexes.addValues(storage, row);
+        if (versions != null) {
+            versions.update(row, clothes);
+        }
+        recordPut(clothes);
+        awaitDurable();
+    }
+
+    /**
+     * Adds all given clothes.
+     * <p>
+     * Items which cannot be added are reported and skipped, the others are
+     * added in the given order.
+     *
+     * @param clothes clothes to add (must not be null, may contain null)
+     * @return outcome of every item
+     * @throws IllegalArgumentException if clothes is null
+     */
+    public BulkReport addAll(Collection<? extends Clothes> clothes) {
+        if (clothes == null) {
+            throw new IllegalArgumentException("clothes must not be null");
+        }
+        checkLogWritable();
+        BulkReport report = new BulkReport();
+        for (Clothes item : clothes) {
+            if (item == null) {
+                report.add(null, BulkReport.Outcome.INVALID, "clothes must not be null");
+            } else if (indexes.uuids.contains(item.getUuid())) {
+                report.add(item.getUuid(), BulkReport.Outcome.DUPLICATE, "clothes already exists");
+            } else {
+                insert(item);
+                report.add(item.getUuid(), BulkReport.Outcome.APPLIED, null);
+            }
+        }
+        awaitDurable();
+        return report;
+    }
+
+    /**
+     * Deletes clothes with all given uuids.
+     * <p>
+     * When the batch deletes a large part of the catalog, rows are only marked
+     * as deleted and the storage is compacted and reindexed once in a single
+     * pass, instead of removing every row from every index.
+     *
+     * @param uuids uuids of clothes to delete (must not be null, may contain null)
+     * @return outcome of every uuid
+     * @throws IllegalArgumentException if uuids is null
+     */
+    public BulkReport deleteAll(Collection<UUID> uuids) {
+        if (uuids == null) {
+            throw new IllegalArgumentException("uuids must not be null");
+        }
+        checkLogWritable();
+        boolean reindex = uuids.size() * BULK_REINDEX_RATIO >= indexes.size();
+        BulkReport report = new BulkReport();
+        for (UUID uuid : uuids) {
+            if (uuid == null) {
+                report.add(null, BulkReport.Outcome.INVALID, "uuid must not be null");
+                continue;
+            }
+            int row = indexes.uuids.remove(uuid);
+            if (row == UuidIndex.ABSENT) {
+                report.add(uuid, BulkReport.Outcome.NOT_FOUND, "clothes not found");
+                continue;
+            }
+            if (reindex) {
+                indexes.sortedViews.remove(row);
+            } else {
+                indexes.removeValues(storage, row);
+            }
+            storage.remove(row);
+            if (versions != null) {
+                versions.remove(row);
+            }
+            recordDelete(uuid);
+            report.add(uuid, BulkReport.Outcome.APPLIED, null);
+        }
+        if (reindex ? storage.removedCount() > 0 : storage.removedCount() * 2 > storage.rowCount()) {
+            compact();
+        }
+        awaitDurable();
+        return report;
+    }
+
+    /**
+     * Applies the mutation to all clothes matching the predicate.
+     * <p>
+     * Indexes of an item are updated once after the whole mutation, however
+     * many setters it calls. If the mutation throws, the item is reported as
+     * invalid with the changes made before the exception kept.
+     * The mutation must change only the given clothes.
+     *
+     * @param predicate selects clothes to update (must not be null)
+     * @param mutation  changes the clothes through its setters (must not be null)
+     * @return outcome of every matching item
+     * @throws IllegalArgumentException if predicate or mutation is null
+     */
+    public BulkReport updateAll(Predicate<Clothes> predicate, Consumer<Clothes> mutation) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("predicate must not be null");
+        }
+        if (mutation == null) {
+            throw new IllegalArgumentException("mutation must not be null");
+        }
+        checkLogWritable();
+        BulkReport report = new BulkReport();
+        for (int row = 0; row < storage.rowCount(); row++) {
+            if (!storage.isLive(row)) {
+                continue;
+            }
+            Clothes clothes = storage.get(row);
+            if (!predicate.test(clothes)) {
+                continue;
+            }
+            indexes.removeValues(storage, row);
+            bulkUpdated = clothes;
+            try {
+                mutation.accept(clothes);
+                report.add(clothes.getUuid(), BulkReport.Outcome.APPLIED, null);
+            } catch (RuntimeException e) {
+                report.add(clothes.getUuid(), BulkReport.Outcome.INVALID, e.getMessage());
+            } finally {
+                bulkUpdated = null;
+                storage.update(row, clothes);
+                indexes.addValues(storage, row);
+                if (versions != null) {
+                    versions.update(row, clothes);
+                }
+                recordPut(clothes);
+            }
+        }
+        awaitDurable();
+        return report;
+    }
+
+    /**
+     * Checks whether clothes with given uuid exists.
+     *
+     * @param uuid the uuid to check, may be {@code null}
+     * @return {@code true} if clothes with given uuid is stored in the service
+     */
+    public boolean containsClothes(UUID uuid) {
+        return indexes.uuids.contains(uuid);
+    }
+
+    /**
+     * @return number of clothes in the service
+     */
+    public int size() {
+        return indexes.size();
     }
 
     /**
@@ -60,29 +654,18 @@ public class ClothesService {
      * @return list of clothes matching the given type
      */
     public List<Clothes> findClothesByType(ClothesType clothesType) {
-        List<Clothes> filteredList = new ArrayList<>();
-        for(Clothes clothes : clothesList) {
-            if(clothes.getType() == clothesType) {
-                filteredList.add(clothes);
-            }
-        }
-        return filteredList;
+        return materialize(indexes.types.get(clothesType));
     }
 
     /**
      * Finds clothes by color.
      *
-     * @param color the color to search for
+     * @param color the color to search for, ignoring case and surrounding spaces
      * @return list of clothes matching the given color
      */
     public List<Clothes> findClothesByColor(String color) {
-        List<Clothes> filteredList = new ArrayList<>();
-        for(Clothes clothes : clothesList) {
-            if(clothes.getColor().equals(color)) {
-                filteredList.add(clothes);
-            }
-        }
-        return filteredList;
+        int colorCode = ColorDictionary.getInstance().find(color);
+        return materialize(indexes.colors.get(ClothesIndexes.colorKey(colorCode)));
     }
 
     /**
@@ -92,17 +675,13 @@ public class ClothesService {
      * @return list of clothes matching the given size
      */
     public List<Clothes> findClothesByAmericanSize(AmericanSize size) {
-        List<Clothes> filteredList = new ArrayList<>();
-        for(Clothes clothes : clothesList) {
-            if(clothes.getAmericanSize().equals(size)) {
-                filteredList.add(clothes);
-            }
-        }
-        return filteredList;
+        return materialize(indexes.americanSizes.get(size));
     }
 
     /**
      * Finds clothes within a European size range.
+     * <p>
+     * The result is ordered by European size and then by insertion order.
      *
      * @param min minimum size (exclusive)
      * @param max maximum size (inclusive)
@@ -113,33 +692,280 @@ public class ClothesService {
         if(min >= max) {
             throw new IllegalArgumentException("Min value must be greater than max value");
         }
-        List<Clothes> filteredList = new ArrayList<>();
-        for(Clothes clothes : clothesList) {
-            if(clothes.getEuropeanSize() > min && clothes.getEuropeanSize() <= max) {
-                filteredList.add(clothes);
-            }
+        int[] rows = indexes.europeanSizes.rowsBetween(min, max);
+        List<Clothes> filteredList = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            filteredList.add(storage.get(row));
+        }
+        return filteredList;
+    }
+
+    /**
+     * Counts clothes within a European size range without building the list.
+     *
+     * @param min minimum size (exclusive)
+     * @param max maximum size (inclusive)
+     * @return number of clothes within the specified size range
+     * @throws IllegalArgumentException if min is greater than or equal to max
+     */
+    public int countClothesInEuropeanSizeBetween(int min, int max) {
+        if(min >= max) {
+            throw new IllegalArgumentException("Min value must be greater than max value");
+        }
+        return indexes.europeanSizes.countBetween(min, max);
+    }
+
+    /**
+     * Finds clothes matching the given criteria.
+     * <p>
+     * The criteria is evaluated on compressed bitmap indexes, only matching
+     * clothes are read from the storage.
+     *
+     * @param criteria the criteria to match (must not be null)
+     * @return list of matching clothes in insertion order
+     * @throws IllegalArgumentException if criteria is null
+     */
+    public List<Clothes> findClothes(ClothesCriteria criteria) {
+        if (criteria == null) {
+            throw new IllegalArgumentException("criteria must not be null");
+        }
+        int[] rows = criteria.evaluate(indexes.bitmaps).toArray();
+        List<Clothes> filteredList = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            filteredList.add(storage.get(row));
+        }
+        return filteredList;
+    }
+
+    /**
+     * Counts clothes matching the given criteria without reading them.
+     *
+     * @param criteria the criteria to match (must not be null)
+     * @return number of matching clothes
+     * @throws IllegalArgumentException if criteria is null
+     */
+    public int countClothes(ClothesCriteria criteria) {
+        if (criteria == null) {
+            throw new IllegalArgumentException("criteria must not be null");
+        }
+        return criteria.evaluate(indexes.bitmaps).cardinality();
+    }
+
+    /**
+     * Finds clothes matching all conditions of the given query.
+     * <p>
+     * The query is planned on current index statistics, see {@link #explain(ClothesQuery)}.
+     *
+     * @param query the query to execute (must not be null)
+     * @return list of matching clothes in insertion order
+     * @throws IllegalArgumentException if query is null
+     */
+    public List<Clothes> findClothes(ClothesQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        int[] rows = planner.execute(planner.plan(query), parallelConfig);
+        List<Clothes> filteredList = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            filteredList.add(storage.get(row));
         }
         return filteredList;
     }
 
+    /**
+     * Counts clothes matching all conditions of the given query without reading them.
+     *
+     * @param query the query to execute (must not be null)
+     * @return number of matching clothes
+     * @throws IllegalArgumentException if query is null
+     */
+    public int countClothes(ClothesQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        return planner.execute(planner.plan(query), parallelConfig).length;
+    }
+
+    /**
+     * Plans and executes the query and reports the chosen plan together with
+     * estimated and actual number of rows.
+     *
+     * @param query the query to explain (must not be null)
+     * @return executed plan of the query
+     * @throws IllegalArgumentException if query is null
+     */
+    public QueryPlan explain(ClothesQuery query) {
+        if (query == null) {
+            throw new IllegalArgumentException("query must not be null");
+        }
+        QueryPlan plan = planner.plan(query);
+        planner.execute(plan, parallelConfig);
+        return plan;
+    }
+
     /**
      * Returns sorted list of clothes not modified original list
      * @return sorted list of clothes
      */
     public List<Clothes> getSortedList() {
-        return clothesList.stream()
-                .sorted()
-                .toList();
+        return getSortedList(ClothesOrder.NATURAL);
+    }
+
+    /**
+     * Returns list of clothes sorted in the given built-in order.
+     * <p>
+     * The order is kept up to date as clothes are added, changed and deleted,
+     * so the list is read from a sorted view instead of being sorted again.
+     *
+     * @param order the ordering (must not be null)
+     * @return sorted list of clothes
+     * @throws IllegalArgumentException if order is null
+     */
+    public List<Clothes> getSortedList(ClothesOrder order) {
+        if (order == null) {
+            throw new IllegalArgumentException("order must not be null");
+        }
+        int[] rows = indexes.sortedViews.rows(storage, order);
+        List<Clothes> sortedList = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            sortedList.add(storage.get(row));
+        }
+        return sortedList;
+    }
+
+    /**
+     * Returns list of clothes sorted by several built-in orders, each next
+     * order breaking ties of the previous ones.
+     * <p>
+     * Sorted attributes of every item are packed into a primitive key and sorted
+     * with a radix sort in a few linear passes, without comparators. Clothes
+     * equal in all orders keep their insertion order.
+     *
+     * @param first the most significant order (must not be null)
+     * @param then  orders breaking ties (must not contain null)
+     * @return sorted list of clothes
+     * @throws IllegalArgumentException if any order is null
+     */
+    public List<Clothes> getSortedList(ClothesOrder first, ClothesOrder... then) {
+        if (then == null) {
+            throw new IllegalArgumentException("orders must not be null");
+        }
+        List<ClothesOrder> orders = new ArrayList<>(then.length + 1);
+        orders.add(first);
+        orders.addAll(Arrays.asList(then));
+        if (orders.contains(null)) {
+            throw new IllegalArgumentException("order must not be null");
+        }
+        int[] rows = PackedKeySort.sortRows(storage, orders);
+        List<Clothes> sortedList = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            sortedList.add(storage.get(row));
+        }
+        return sortedList;
     }
 
     /**
      * Returns sorted list of clothes with given comparator not modified original list
+     * <p>
+     * In parallel mode large catalogs are sorted with {@link Arrays#parallelSort}
+     * over a snapshot array, which is stable as the sequential sort.
      * @return sorted list of clothes with comparator
      */
     public List<Clothes> getSortedListByComparator(Comparator<Clothes> comparator) {
-        List<Clothes> copy = new ArrayList<>(clothesList);
-        Collections.sort(copy, comparator);
-        return copy;
+        List<Clothes> clothesList = getClothesList();
+        if (!parallelConfig.isParallelFor(clothesList.size())) {
+            List<Clothes> copy = new ArrayList<>(clothesList);
+            Collections.sort(copy, comparator);
+            return copy;
+        }
+        Clothes[] snapshot = clothesList.toArray(new Clothes[0]);
+        parallelConfig.pool().submit(() -> Arrays.parallelSort(snapshot, comparator)).join();
+        return new ArrayList<>(Arrays.asList(snapshot));
+    }
+
+    /**
+     * Returns the first {@code k} clothes in the order of the given comparator.
+     * <p>
+     * Only a heap of {@code k} clothes is kept while the catalog is scanned,
+     * which takes O(n log k) instead of sorting the whole catalog. Clothes equal
+     * in the comparator keep their insertion order, as with
+     * {@link #getSortedListByComparator(Comparator)}.
+     *
+     * @param comparator the ordering (must not be null)
+     * @param k          maximum number of clothes to return (must not be negative)
+     * @return sorted list of at most {@code k} clothes
+     * @throws IllegalArgumentException if comparator is null or k is negative
+     */
+    public List<Clothes> getFirstSorted(Comparator<Clothes> comparator, int k) {
+        if (comparator == null) {
+            throw new IllegalArgumentException("comparator must not be null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative");
+        }
+        List<Clothes> clothesList = getClothesList();
+        if (k >= clothesList.size()) {
+            return getSortedListByComparator(comparator);
+        }
+        Comparator<Integer> byPosition = (i, j) -> {
+            int result = comparator.compare(clothesList.get(i), clothesList.get(j));
+            return result != 0 ? result : Integer.compare(i, j);
+        };
+        PriorityQueue<Integer> worstFirst = new PriorityQueue<>(Math.max(1, k), byPosition.reversed());
+        for (int i = 0; i < clothesList.size() && k > 0; i++) {
+            if (worstFirst.size() < k) {
+                worstFirst.add(i);
+            } else if (byPosition.compare(i, worstFirst.peek()) < 0) {
+                worstFirst.poll();
+                worstFirst.add(i);
+            }
+        }
+        Clothes[] first = new Clothes[worstFirst.size()];
+        for (int i = first.length - 1; i >= 0; i--) {
+            first[i] = clothesList.get(worstFirst.poll());
+        }
+        return new ArrayList<>(Arrays.asList(first));
+    }
+
+    /**
+     * Returns a page of clothes in the given built-in order.
+     * <p>
+     * Pages are read by keyset: the next page starts right after the last item
+     * of the previous one, found in the sorted view in O(log n). Clothes added
+     * or deleted meanwhile do not shift the following pages.
+     *
+     * @param order    the ordering (must not be null)
+     * @param after    cursor returned with the previous page,
+     *                 or {@code null} to read the first page
+     * @param pageSize maximum number of clothes on the page (must be positive)
+     * @return the page
+     * @throws IllegalArgumentException if order is null, pageSize is not positive
+     *         or the cursor belongs to another ordering
+     */
+    public ClothesPage getPage(ClothesOrder order, ClothesCursor after, int pageSize) {
+        if (order == null) {
+            throw new IllegalArgumentException("order must not be null");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        if (after != null && after.getOrder() != order) {
+            throw new IllegalArgumentException("cursor belongs to order " + after.getOrder());
+        }
+        List<SortedViews.Key> keys = indexes.sortedViews.page(storage, order,
+                after == null ? null : after.key(), pageSize);
+        List<Clothes> items = new ArrayList<>(keys.size());
+        for (SortedViews.Key key : keys) {
+            items.add(storage.get(key.row()));
+        }
+        ClothesCursor nextCursor = null;
+        if (!keys.isEmpty()) {
+            SortedViews.Key last = keys.get(keys.size() - 1);
+            if (indexes.sortedViews.hasAfter(storage, order, last)) {
+                nextCursor = new ClothesCursor(order, last);
+            }
+        }
+        return new ClothesPage(items, nextCursor);
     }
 
     /**
@@ -148,12 +974,11 @@ public class ClothesService {
      * @throws ClothesNotFoundException when clothes with given uuid not exists
      */
     public Optional<Clothes> findClothesByUuid(UUID uuid) {
-        for (Clothes clothes : clothesList) {
-            if (clothes.getUuid().equals(uuid)) {
-                return Optional.of(clothes);
-            }
+        int row = indexes.uuids.get(uuid);
+        if (row == UuidIndex.ABSENT) {
+            throw new ClothesNotFoundException(uuid);
         }
-        throw new ClothesNotFoundException(uuid);
+        return Optional.of(storage.get(row));
     }
 
     /**
@@ -183,12 +1008,15 @@ public class ClothesService {
         int europeanLength = europeanSizeColumn.length();
         sb.append(getFormattedHeader());
 
-        for(Clothes clothes : clothesList) {
-            UUID uuid = clothes.getUuid();
-            ClothesType clothesType = clothes.getType();
-            AmericanSize americanSize = clothes.getAmericanSize();
-            int europeanSize = clothes.getEuropeanSize();
-            String color = clothes.getColor();
+        for(int row = 0; row < storage.rowCount(); row++) {
+            if (!storage.isLive(row)) {
+                continue;
+            }
+            UUID uuid = new UUID(storage.uuidMostSignificantBits(row), storage.uuidLeastSignificantBits(row));
+            ClothesType clothesType = storage.type(row);
+            AmericanSize americanSize = storage.americanSize(row);
+            int europeanSize = storage.europeanSize(row);
+            String color = storage.color(row);
             sb.append(uuid)
                     .append(columnDelimiter)
                     .append(clothesType)
@@ -214,8 +1042,9 @@ public class ClothesService {
      * <p>If the provided UUID is {@code null}, the method immediately
      * returns {@code false}.</p>
      *
-     * <p>The method iterates through the internal collection and removes
-     * the first item whose UUID matches the provided value.</p>
+     * <p>The row of the item is looked up in the uuid index and cleared in
+     * constant time. Cleared rows are compacted once they make up half of
+     * the collection.</p>
      *
      * @param uuid the unique identifier of the clothes item to remove
      * @return {@code true} if an item was found and removed,
@@ -226,16 +1055,166 @@ public class ClothesService {
         if(uuid == null) {
             return false;
         }
-        Iterator<Clothes> clothesIterator = clothesList.iterator();
-        Clothes item;
-        while(clothesIterator.hasNext()) {
-            item = clothesIterator.next();
-            if(item.getUuid().equals(uuid)) {
-                clothesIterator.remove();
-                return true;
+        checkLogWritable();
+        int row = indexes.uuids.remove(uuid);
+        if (row == UuidIndex.ABSENT) {
+            throw new ClothesNotFoundException(uuid);
+        }
+        indexes.removeValues(storage, row);
+        storage.remove(row);
+        if (versions != null) {
+            versions.remove(row);
+        }
+        recordDelete(uuid);
+        if (storage.removedCount() * 2 > storage.rowCount()) {
+            compact();
+        }
+        awaitDurable();
+        return true;
+    }
+
+    /**
+     * Called when stored clothes are about to be changed through a setter,
+     * before the indexes are updated. Every call is followed by
+     * {@link #afterStoredChange(Clothes)} in the same thread.
+     *
+     * @param clothes the clothes being changed
+     */
+    void beforeStoredChange(Clothes clothes) {
+    }
+
+    /**
+     * Called when the indexes were updated after stored clothes were changed
+     * through a setter.
+     *
+     * @param clothes the changed clothes
+     */
+    void afterStoredChange(Clothes clothes) {
+    }
+
+    /**
+     * Appends the entry of a change just applied to the log. Subclasses may
+     * append it later, but before the next change of the same clothes and
+     * before the calling thread {@linkplain #awaitDurable() waits} for the log.
+     *
+     * @param entry appends the entry when run
+     */
+    void appendToLog(Runnable entry) {
+        entry.run();
+    }
+
+    /**
+     * Waits until the changes logged by the calling thread are durable.
+     * Called at the end of every mutation.
+     */
+    void awaitDurable() {
+        if (log != null) {
+            log.awaitDurable();
+        }
+    }
+
+    /**
+     * Returns live clothes without compacting the storage.
+     *
+     * @return read-only list of clothes in insertion order
+     */
+    List<Clothes> liveClothes() {
+        return storage.toList();
+    }
+
+    /**
+     * Builds the indexes over all rows of the storage.
+     */
+    private static ClothesIndexes buildIndexes(ClothesStorage storage) {
+        ClothesIndexes indexes = new ClothesIndexes(storage.rowCount());
+        for (int row = 0; row < storage.rowCount(); row++) {
+            long msb = storage.uuidMostSignificantBits(row);
+            long lsb = storage.uuidLeastSignificantBits(row);
+            if (indexes.uuids.get(msb, lsb) != UuidIndex.ABSENT) {
+                throw new IllegalArgumentException("Clothes with uuid = " + new UUID(msb, lsb) + " already exists");
             }
+            indexes.add(storage, row);
+        }
+        return indexes;
+    }
+
+    /**
+     * Appends clothes as a new row and indexes it.
+     */
+    private void insert(Clothes clothes) {
+        if (clothes == null) {
+            throw new IllegalArgumentException("clothes must not be null");
+        }
+        if (indexes.uuids.contains(clothes.getUuid())) {
+            throw new IllegalArgumentException("Clothes with uuid = " + clothes.getUuid() + " already exists");
+        }
+        indexes.add(storage, storage.add(clothes));
+        if (versions != null) {
+            versions.add(clothes);
+        }
+        recordPut(clothes);
+    }
+
+    /**
+     * Rejects a change before it is applied if writing the log failed.
+     *
+     * @throws java.io.UncheckedIOException if writing the log failed
+     */
+    private void checkLogWritable() {
+        if (log != null) {
+            log.checkWritable();
+        }
+    }
+
+    /**
+     * Logs the current state of added or changed clothes and tracks the change.
+     */
+    private void recordPut(Clothes clothes) {
+        if (log != null) {
+            WriteAheadLog target = log;
+            appendToLog(() -> target.appendPut(clothes));
+        }
+        if (changedUuids != null) {
+            changedUuids.add(clothes.getUuid());
+        }
+    }
+
+    /**
+     * Logs deletion of the clothes with the uuid and tracks the change.
+     */
+    private void recordDelete(UUID uuid) {
+        if (log != null) {
+            WriteAheadLog target = log;
+            appendToLog(() -> target.appendDelete(uuid));
+        }
+        if (changedUuids != null) {
+            changedUuids.add(uuid);
+        }
+    }
+
+    /**
+     * Returns clothes stored in the given rows, in row order.
+     */
+    private List<Clothes> materialize(PostingList rows) {
+        if (rows == null) {
+            return new ArrayList<>();
+        }
+        List<Clothes> result = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            result.add(storage.get(rows.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Removes rows left by deletions and renumbers the remaining rows.
+     */
+    private void compact() {
+        storage.compact();
+        indexes.rebuild(storage);
+        if (versions != null) {
+            versions.compact();
         }
-        throw new ClothesNotFoundException(uuid);
     }
 
     /**
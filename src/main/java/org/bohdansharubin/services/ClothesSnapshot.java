@@ -0,0 +1,105 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Immutable point-in-time view of the catalog of a {@link ClothesService}.
+ * <p>
+ * Taking a snapshot costs O(1) and does not block writers, later changes
+ * of the service are not visible in it. Clothes of the snapshot are
+ * {@linkplain Clothes#readOnlyCopy() read-only copies}.
+ *
+ * @see ClothesService#snapshot()
+ */
+public final class ClothesSnapshot {
+
+    private final PersistentVector<Clothes> rows;
+    private final int size;
+
+    ClothesSnapshot(PersistentVector<Clothes> rows, int size) {
+        this.rows = rows;
+        this.size = size;
+    }
+
+    PersistentVector<Clothes> rows() {
+        return rows;
+    }
+
+    /**
+     * @return number of clothes in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes clothes of the snapshot to the action in insertion order.
+     *
+     * @param action the action (must not be null)
+     * @throws IllegalArgumentException if action is null
+     */
+    public void forEach(Consumer<Clothes> action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action must not be null");
+        }
+        rows.forEach(clothes -> {
+            if (clothes != null) {
+                action.accept(clothes);
+            }
+        });
+    }
+
+    /**
+     * @return read-only list of clothes in insertion order
+     */
+    public List<Clothes> getClothesList() {
+        List<Clothes> list = new ArrayList<>(size);
+        forEach(list::add);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Finds clothes of the snapshot matching the predicate.
+     *
+     * @param predicate the condition (must not be null)
+     * @return list of matching clothes in insertion order
+     * @throws IllegalArgumentException if predicate is null
+     */
+    public List<Clothes> findClothes(Predicate<Clothes> predicate) {
+        if (predicate == null) {
+            throw new IllegalArgumentException("predicate must not be null");
+        }
+        List<Clothes> filteredList = new ArrayList<>();
+        forEach(clothes -> {
+            if (predicate.test(clothes)) {
+                filteredList.add(clothes);
+            }
+        });
+        return filteredList;
+    }
+
+    /**
+     * Returns clothes of the snapshot sorted with the given comparator.
+     * Clothes equal in the comparator keep their insertion order.
+     *
+     * @param comparator the ordering (must not be null)
+     * @return sorted list of clothes
+     * @throws IllegalArgumentException if comparator is null
+     */
+    public List<Clothes> getSortedListByComparator(Comparator<Clothes> comparator) {
+        if (comparator == null) {
+            throw new IllegalArgumentException("comparator must not be null");
+        }
+        List<Clothes> sortedList = new ArrayList<>(size);
+        forEach(sortedList::add);
+        sortedList.sort(comparator);
+        return sortedList;
+    }
+}
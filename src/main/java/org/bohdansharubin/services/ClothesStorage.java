@@ -0,0 +1,136 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.models.Clothes;
+
+import java.util.List;
+
+/**
+ * Row storage behind {@link ClothesService}.
+ * <p>
+ * Every stored item gets a row number on {@link #add(Clothes)}. Removing an
+ * item leaves its row empty, so the rows of other items stay stable until
+ * {@link #compact()} is called. Attribute accessors read a single row
+ * without materializing a {@link Clothes} object where the layout allows it.
+ */
+interface ClothesStorage {
+
+    /**
+     * Appends clothes as a new row.
+     *
+     * @param clothes the clothes to store
+     * @return row of the stored clothes
+     */
+    int add(Clothes clothes);
+
+    /**
+     * Returns clothes stored in the row.
+     *
+     * @param row the row
+     * @return the clothes or {@code null} if the row was removed
+     */
+    Clothes get(int row);
+
+    /**
+     * Writes the current state of the clothes back into its row. The clothes
+     * may also be another object with the same uuid and type, which then
+     * replaces the stored one.
+     *
+     * @param row     the row of the clothes
+     * @param clothes the changed clothes
+     */
+    void update(int row, Clothes clothes);
+
+    /**
+     * Removes clothes from the row, leaving the row empty.
+     *
+     * @param row the row to remove
+     */
+    void remove(int row);
+
+    /**
+     * @param row the row
+     * @return {@code true} if the row holds clothes
+     */
+    boolean isLive(int row);
+
+    /**
+     * @return number of rows including removed ones
+     */
+    int rowCount();
+
+    /**
+     * @return number of removed rows
+     */
+    int removedCount();
+
+    /**
+     * Drops removed rows and renumbers the remaining rows, keeping their order.
+     */
+    void compact();
+
+    /**
+     * @return stored clothes in row order, possibly as a read-only view
+     */
+    List<Clothes> toList();
+
+    /**
+     * @param row a live row
+     * @return most significant bits of the uuid stored in the row
+     */
+    long uuidMostSignificantBits(int row);
+
+    /**
+     * @param row a live row
+     * @return least significant bits of the uuid stored in the row
+     */
+    long uuidLeastSignificantBits(int row);
+
+    /**
+     * @param row a live row
+     * @return type stored in the row
+     */
+    ClothesType type(int row);
+
+    /**
+     * @param row a live row
+     * @return American size stored in the row
+     */
+    AmericanSize americanSize(int row);
+
+    /**
+     * @param row a live row
+     * @return European size stored in the row
+     */
+    int europeanSize(int row);
+
+    /**
+     * @param row a live row
+     * @return color stored in the row
+     */
+    String color(int row);
+
+    /**
+     * @param row a live row
+     * @return code of the color in the {@link org.bohdansharubin.models.ColorDictionary}
+     */
+    int colorCode(int row);
+
+    /**
+     * @param row a live row
+     * @return hat type stored in the row or {@code null} if the row holds no hat with a type
+     */
+    HatType hatType(int row);
+
+    /**
+     * @param row a live row
+     * @return sleeve length stored in the row or {@code null} if the row holds no shirt with a sleeve length
+     */
+    SleeveLength sleeveLength(int row);
+
+    /**
+     * @param row a live row
+     * @return skirt length stored in the row or {@code null} if the row holds no skirt with a length
+     */
+    SkirtLength skirtLength(int row);
+}
@@ -0,0 +1,80 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versions of the catalog of {@link ClothesService} for snapshot reads.
+ * <p>
+ * Keeps a read-only copy of the clothes of every row in a
+ * {@link PersistentVector} aligned with the rows of the storage, deleted rows
+ * hold {@code null}. Every change publishes a new version which shares all
+ * but one path of the trie with the previous one, so taking a snapshot is
+ * reading one volatile field.
+ */
+final class ClothesVersions {
+
+    private volatile ClothesSnapshot current;
+
+    /**
+     * Creates the first version from the live rows of the storage.
+     *
+     * @param storage the storage
+     */
+    ClothesVersions(ClothesStorage storage) {
+        List<Clothes> copies = new ArrayList<>(storage.rowCount());
+        for (int row = 0; row < storage.rowCount(); row++) {
+            copies.add(storage.isLive(row) ? storage.get(row).readOnlyCopy() : null);
+        }
+        current = new ClothesSnapshot(PersistentVector.of(copies),
+                storage.rowCount() - storage.removedCount());
+    }
+
+    /**
+     * @return the latest version
+     */
+    ClothesSnapshot current() {
+        return current;
+    }
+
+    /**
+     * Publishes a version with clothes added as the next row.
+     *
+     * @param clothes the added clothes
+     */
+    void add(Clothes clothes) {
+        ClothesSnapshot version = current;
+        current = new ClothesSnapshot(version.rows().append(clothes.readOnlyCopy()), version.size() + 1);
+    }
+
+    /**
+     * Publishes a version with the clothes of the row replaced.
+     *
+     * @param row     the changed row
+     * @param clothes new state of the clothes
+     */
+    void update(int row, Clothes clothes) {
+        ClothesSnapshot version = current;
+        current = new ClothesSnapshot(version.rows().set(row, clothes.readOnlyCopy()), version.size());
+    }
+
+    /**
+     * Publishes a version without the row.
+     *
+     * @param row the deleted row
+     */
+    void remove(int row) {
+        ClothesSnapshot version = current;
+        current = new ClothesSnapshot(version.rows().set(row, null), version.size() - 1);
+    }
+
+    /**
+     * Publishes a version with deleted rows dropped, the same way as the storage was compacted.
+     */
+    void compact() {
+        ClothesSnapshot version = current;
+        current = new ClothesSnapshot(PersistentVector.of(version.getClothesList()), version.size());
+    }
+}
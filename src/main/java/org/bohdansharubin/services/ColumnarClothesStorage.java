@@ -0,0 +1,259 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.models.*;
+
+import java.util.*;
+
+/**
+ * {@link ClothesStorage} keeping the catalog as primitive columns.
+ * <p>
+ * Every attribute lives in its own array indexed by row: uuid halves as
+ * {@code long}s, enum ordinals and European size as {@code byte}s, color as
+ * its spelling id in the shared {@link ColorDictionary}, and the
+ * {@link Pants#isHasPockets()} / {@link Hat#isWaterProof()} flag in a bit set.
+ * A row takes about 30 bytes and scans over one attribute read a single
+ * contiguous array.
+ * <p>
+ * {@link #get(int)} materializes a new {@link Clothes} object on every call.
+ * Changes made through its setters are reported to the given listener, which
+ * is expected to write them back with {@link #update(int, Clothes)}.
+ */
+final class ColumnarClothesStorage implements ClothesStorage {
+
+    private static final byte NONE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final ClothesType[] TYPES = ClothesType.values();
+    private static final AmericanSize[] AMERICAN_SIZES = AmericanSize.values();
+    private static final HatType[] HAT_TYPES = HatType.values();
+    private static final SleeveLength[] SLEEVE_LENGTHS = SleeveLength.values();
+    private static final SkirtLength[] SKIRT_LENGTHS = SkirtLength.values();
+
+    private final ClothesChangeListener listener;
+    private final ColorDictionary colorDictionary = ColorDictionary.getInstance();
+
+    private long[] uuidMostSignificantBits;
+    private long[] uuidLeastSignificantBits;
+    private byte[] types;
+    private byte[] americanSizes;
+    private byte[] europeanSizes;
+    private byte[] subtypes;
+    private int[] colors;
+    private final BitSet flags = new BitSet();
+    private final BitSet removed = new BitSet();
+    private int rowCount;
+    private int removedCount;
+
+    /**
+     * Constructs an empty storage.
+     *
+     * @param expectedSize expected number of items
+     * @param listener     listener registered on every materialized item
+     */
+    ColumnarClothesStorage(int expectedSize, ClothesChangeListener listener) {
+        this.listener = listener;
+        allocate(Math.max(INITIAL_CAPACITY, expectedSize));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalArgumentException if color, type or American size of the clothes is not set
+     */
+    @Override
+    public int add(Clothes clothes) {
+        if (clothes.getColor() == null || clothes.getType() == null || clothes.getAmericanSize() == null) {
+            throw new IllegalArgumentException("Clothes with unset fields can't be stored in columns");
+        }
+        if (rowCount == types.length) {
+            allocate(rowCount + (rowCount >> 1));
+        }
+        int row = rowCount++;
+        uuidMostSignificantBits[row] = clothes.getUuid().getMostSignificantBits();
+        uuidLeastSignificantBits[row] = clothes.getUuid().getLeastSignificantBits();
+        types[row] = (byte) clothes.getType().ordinal();
+        write(row, clothes);
+        return row;
+    }
+
+    @Override
+    public Clothes get(int row) {
+        if (!isLive(row)) {
+            return null;
+        }
+        UUID uuid = new UUID(uuidMostSignificantBits[row], uuidLeastSignificantBits[row]);
+        String color = colorDictionary.spelling(colors[row]);
+        int europeanSize = europeanSizes[row];
+        AmericanSize americanSize = AMERICAN_SIZES[americanSizes[row]];
+        byte subtype = subtypes[row];
+        Clothes clothes = switch (TYPES[types[row]]) {
+            case PANTS -> new Pants(uuid, color, europeanSize, americanSize, flags.get(row));
+            case SHIRT -> new Shirt(uuid, color, europeanSize, americanSize,
+                    subtype == NONE ? null : SLEEVE_LENGTHS[subtype]);
+            case HAT -> new Hat(uuid, color, europeanSize, americanSize, flags.get(row),
+                    subtype == NONE ? null : HAT_TYPES[subtype]);
+            case SKIRT -> new Skirt(uuid, color, europeanSize, americanSize,
+                    subtype == NONE ? null : SKIRT_LENGTHS[subtype]);
+        };
+        clothes.addChangeListener(listener);
+        return clothes;
+    }
+
+    @Override
+    public void update(int row, Clothes clothes) {
+        write(row, clothes);
+    }
+
+    @Override
+    public void remove(int row) {
+        if (isLive(row)) {
+            removed.set(row);
+            removedCount++;
+        }
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return row < rowCount && !removed.get(row);
+    }
+
+    @Override
+    public int rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int removedCount() {
+        return removedCount;
+    }
+
+    @Override
+    public void compact() {
+        int target = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (removed.get(row)) {
+                continue;
+            }
+            if (target != row) {
+                uuidMostSignificantBits[target] = uuidMostSignificantBits[row];
+                uuidLeastSignificantBits[target] = uuidLeastSignificantBits[row];
+                types[target] = types[row];
+                americanSizes[target] = americanSizes[row];
+                europeanSizes[target] = europeanSizes[row];
+                subtypes[target] = subtypes[row];
+                colors[target] = colors[row];
+                flags.set(target, flags.get(row));
+            }
+            target++;
+        }
+        flags.clear(target, rowCount);
+        removed.clear();
+        rowCount = target;
+        removedCount = 0;
+    }
+
+    @Override
+    public List<Clothes> toList() {
+        List<Clothes> list = new ArrayList<>(rowCount - removedCount);
+        for (int row = 0; row < rowCount; row++) {
+            if (!removed.get(row)) {
+                list.add(get(row));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public long uuidMostSignificantBits(int row) {
+        return uuidMostSignificantBits[row];
+    }
+
+    @Override
+    public long uuidLeastSignificantBits(int row) {
+        return uuidLeastSignificantBits[row];
+    }
+
+    @Override
+    public ClothesType type(int row) {
+        return TYPES[types[row]];
+    }
+
+    @Override
+    public AmericanSize americanSize(int row) {
+        return AMERICAN_SIZES[americanSizes[row]];
+    }
+
+    @Override
+    public int europeanSize(int row) {
+        return europeanSizes[row];
+    }
+
+    @Override
+    public String color(int row) {
+        return colorDictionary.spelling(colors[row]);
+    }
+
+    @Override
+    public int colorCode(int row) {
+        return colorDictionary.spellingCode(colors[row]);
+    }
+
+    @Override
+    public HatType hatType(int row) {
+        return types[row] == ClothesType.HAT.ordinal() && subtypes[row] != NONE ? HAT_TYPES[subtypes[row]] : null;
+    }
+
+    @Override
+    public SleeveLength sleeveLength(int row) {
+        return types[row] == ClothesType.SHIRT.ordinal() && subtypes[row] != NONE ? SLEEVE_LENGTHS[subtypes[row]] : null;
+    }
+
+    @Override
+    public SkirtLength skirtLength(int row) {
+        return types[row] == ClothesType.SKIRT.ordinal() && subtypes[row] != NONE ? SKIRT_LENGTHS[subtypes[row]] : null;
+    }
+
+    /**
+     * Writes the mutable attributes of the clothes into the row.
+     */
+    private void write(int row, Clothes clothes) {
+        americanSizes[row] = (byte) clothes.getAmericanSize().ordinal();
+        europeanSizes[row] = (byte) clothes.getEuropeanSize();
+        colors[row] = colorDictionary.spellingId(clothes.getColor());
+        Enum<?> subtype = null;
+        boolean flag = false;
+        if (clothes instanceof Pants pants) {
+            flag = pants.isHasPockets();
+        } else if (clothes instanceof Shirt shirt) {
+            subtype = shirt.getSleeveLength();
+        } else if (clothes instanceof Hat hat) {
+            flag = hat.isWaterProof();
+            subtype = hat.getHatType();
+        } else if (clothes instanceof Skirt skirt) {
+            subtype = skirt.getLength();
+        }
+        subtypes[row] = subtype == null ? NONE : (byte) subtype.ordinal();
+        flags.set(row, flag);
+    }
+
+    private void allocate(int capacity) {
+        if (types != null && capacity <= types.length) {
+            return;
+        }
+        uuidMostSignificantBits = grow(uuidMostSignificantBits, capacity);
+        uuidLeastSignificantBits = grow(uuidLeastSignificantBits, capacity);
+        types = grow(types, capacity);
+        americanSizes = grow(americanSizes, capacity);
+        europeanSizes = grow(europeanSizes, capacity);
+        subtypes = grow(subtypes, capacity);
+        colors = colors == null ? new int[capacity] : Arrays.copyOf(colors, capacity);
+    }
+
+    private static long[] grow(long[] array, int capacity) {
+        return array == null ? new long[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    private static byte[] grow(byte[] array, int capacity) {
+        return array == null ? new byte[capacity] : Arrays.copyOf(array, capacity);
+    }
+}
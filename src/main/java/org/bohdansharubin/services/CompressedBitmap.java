@@ -0,0 +1,556 @@
+package org.bohdansharubin.services;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative row numbers in the style of Roaring bitmaps.
+ * <p>
+ * Rows are split by their high 16 bits into chunks of 65536 rows. Each chunk
+ * is stored in a container that is either a sorted {@code char} array, while
+ * it holds at most {@value #MAX_ARRAY_CARDINALITY} rows, or a 1024-word
+ * bitmap otherwise. Set operations combine matching chunks and work on whole
+ * 64-bit words whenever a bitmap container takes part.
+ * <p>
+ * Results of {@link #and}, {@link #or} and {@link #andNot} are new bitmaps;
+ * the operands are never modified.
+ */
+final class CompressedBitmap {
+
+    /**
+     * Largest number of rows kept in an array container.
+     */
+    static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    private static final int INITIAL_CONTAINERS = 4;
+
+    private char[] keys = new char[INITIAL_CONTAINERS];
+    private Container[] containers = new Container[INITIAL_CONTAINERS];
+    private int containerCount;
+
+    /**
+     * Creates a bitmap of the given rows, filling every container at once.
+     *
+     * @param rows distinct non-negative rows in ascending order
+     * @return the bitmap
+     */
+    static CompressedBitmap of(int[] rows) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        int start = 0;
+        while (start < rows.length) {
+            int high = rows[start] >>> 16;
+            int end = start + 1;
+            while (end < rows.length && rows[end] >>> 16 == high) {
+                end++;
+            }
+            int cardinality = end - start;
+            Container container;
+            if (cardinality <= MAX_ARRAY_CARDINALITY) {
+                char[] values = new char[cardinality];
+                for (int i = 0; i < cardinality; i++) {
+                    values[i] = (char) rows[start + i];
+                }
+                container = new ArrayContainer(values, cardinality);
+            } else {
+                long[] words = new long[BitmapContainer.WORDS];
+                for (int i = start; i < end; i++) {
+                    words[(char) rows[i] >>> 6] |= 1L << rows[i];
+                }
+                container = new BitmapContainer(words, cardinality);
+            }
+            bitmap.appendContainer((char) high, container);
+            start = end;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds a row.
+     *
+     * @param row non-negative row number
+     */
+    void add(int row) {
+        char key = (char) (row >>> 16);
+        int index = findContainer(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+        containers[index] = containers[index].add((char) row);
+    }
+
+    /**
+     * Removes a row.
+     *
+     * @param row the row to remove
+     */
+    void remove(int row) {
+        int index = findContainer((char) (row >>> 16));
+        if (index < 0) {
+            return;
+        }
+        Container container = containers[index].remove((char) row);
+        if (container.cardinality() == 0) {
+            removeContainer(index);
+        } else {
+            containers[index] = container;
+        }
+    }
+
+    /**
+     * @param row the row to look for
+     * @return {@code true} if the row is in the bitmap
+     */
+    boolean contains(int row) {
+        int index = findContainer((char) (row >>> 16));
+        return index >= 0 && containers[index].contains((char) row);
+    }
+
+    /**
+     * @return number of rows in the bitmap
+     */
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < containerCount; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return {@code true} if the bitmap holds no rows
+     */
+    boolean isEmpty() {
+        return containerCount == 0;
+    }
+
+    /**
+     * Removes all rows.
+     */
+    void clear() {
+        Arrays.fill(containers, 0, containerCount, null);
+        containerCount = 0;
+    }
+
+    /**
+     * @return rows of the bitmap in ascending order
+     */
+    int[] toArray() {
+        int[] rows = new int[cardinality()];
+        int position = 0;
+        for (int i = 0; i < containerCount; i++) {
+            position = containers[i].copyTo(keys[i] << 16, rows, position);
+        }
+        return rows;
+    }
+
+    /**
+     * @param other the other bitmap
+     * @return rows present in both bitmaps
+     */
+    CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < containerCount && j < other.containerCount) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = and(containers[i], other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.appendContainer(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param other the other bitmap
+     * @return rows present in at least one of the bitmaps
+     */
+    CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < containerCount || j < other.containerCount) {
+            if (j == other.containerCount || (i < containerCount && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i == containerCount || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param other the other bitmap
+     * @return rows present in this bitmap but not in the other one
+     */
+    CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < containerCount; i++) {
+            while (j < other.containerCount && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.containerCount && other.keys[j] == keys[i]
+                    ? andNot(containers[i], other.containers[j])
+                    : containers[i].copy();
+            if (container.cardinality() > 0) {
+                result.appendContainer(keys[i], container);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return independent copy of the bitmap
+     */
+    CompressedBitmap copy() {
+        CompressedBitmap copy = new CompressedBitmap();
+        for (int i = 0; i < containerCount; i++) {
+            copy.appendContainer(keys[i], containers[i].copy());
+        }
+        return copy;
+    }
+
+    private static Container and(Container left, Container right) {
+        if (left instanceof ArrayContainer leftArray) {
+            return right instanceof ArrayContainer rightArray
+                    ? leftArray.intersect(rightArray)
+                    : leftArray.filter((BitmapContainer) right, true);
+        }
+        if (right instanceof ArrayContainer rightArray) {
+            return rightArray.filter((BitmapContainer) left, true);
+        }
+        return ((BitmapContainer) left).combine((BitmapContainer) right, Operation.AND);
+    }
+
+    private static Container or(Container left, Container right) {
+        if (left instanceof ArrayContainer leftArray && right instanceof ArrayContainer rightArray) {
+            return leftArray.union(rightArray);
+        }
+        return left.toBitmap().combine(right.toBitmap(), Operation.OR);
+    }
+
+    private static Container andNot(Container left, Container right) {
+        if (left instanceof ArrayContainer leftArray) {
+            return leftArray.filter(right.toBitmap(), false);
+        }
+        return ((BitmapContainer) left).combine(right.toBitmap(), Operation.AND_NOT);
+    }
+
+    private int findContainer(char key) {
+        if (containerCount > 0 && keys[containerCount - 1] == key) {
+            return containerCount - 1;
+        }
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount * 2);
+            containers = Arrays.copyOf(containers, containerCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+        keys[index] = key;
+        containers[index] = container;
+        containerCount++;
+    }
+
+    private void appendContainer(char key, Container container) {
+        insertContainer(containerCount, key, container);
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+        containers[--containerCount] = null;
+    }
+
+    /**
+     * Word-level operations between two bitmap containers.
+     */
+    private enum Operation {
+        AND, OR, AND_NOT
+    }
+
+    /**
+     * Rows of one 65536-row chunk, addressed by their low 16 bits.
+     */
+    private abstract static class Container {
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract int copyTo(int high, int[] target, int position);
+
+        abstract BitmapContainer toBitmap();
+
+        abstract Container copy();
+    }
+
+    /**
+     * Sparse container holding its values in a sorted array.
+     */
+    private static final class ArrayContainer extends Container {
+
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            if (position >= 0) {
+                return this;
+            }
+            if (cardinality == MAX_ARRAY_CARDINALITY) {
+                return toBitmap().add(value);
+            }
+            int insertion = -position - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY_CARDINALITY, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, insertion, values, insertion + 1, cardinality - insertion);
+            values[insertion] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int position = Arrays.binarySearch(values, 0, cardinality, value);
+            if (position >= 0) {
+                System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int copyTo(int high, int[] target, int position) {
+            for (int i = 0; i < cardinality; i++) {
+                target[position++] = high | values[i];
+            }
+            return position;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        ArrayContainer intersect(ArrayContainer other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < other.cardinality) {
+                if (values[i] < other.values[j]) {
+                    i++;
+                } else if (values[i] > other.values[j]) {
+                    j++;
+                } else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        Container union(ArrayContainer other) {
+            if (cardinality + other.cardinality > MAX_ARRAY_CARDINALITY) {
+                return toBitmap().combine(other.toBitmap(), Operation.OR);
+            }
+            char[] result = new char[Math.max(cardinality + other.cardinality, 1)];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < other.cardinality) {
+                if (j == other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+                    result[count++] = values[i++];
+                } else if (i == cardinality || values[i] > other.values[j]) {
+                    result[count++] = other.values[j++];
+                } else {
+                    result[count++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        /**
+         * Keeps values that are ({@code keep == true}) or are not present in the bitmap.
+         */
+        ArrayContainer filter(BitmapContainer bitmap, boolean keep) {
+            char[] result = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (bitmap.contains(values[i]) == keep) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+    }
+
+    /**
+     * Dense container holding one bit per possible value.
+     */
+    private static final class BitmapContainer extends Container {
+
+        private static final int WORDS = 1024;
+
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            long before = words[value >>> 6];
+            long after = before | (1L << value);
+            if (before != after) {
+                words[value >>> 6] = after;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long before = words[value >>> 6];
+            long after = before & ~(1L << value);
+            if (before != after) {
+                words[value >>> 6] = after;
+                cardinality--;
+            }
+            return cardinality <= MAX_ARRAY_CARDINALITY / 2 ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int copyTo(int high, int[] target, int position) {
+            for (int word = 0; word < WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    target[position++] = high | (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+            return position;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        Container combine(BitmapContainer other, Operation operation) {
+            long[] result = new long[WORDS];
+            switch (operation) {
+                case AND -> {
+                    for (int i = 0; i < WORDS; i++) {
+                        result[i] = words[i] & other.words[i];
+                    }
+                }
+                case OR -> {
+                    for (int i = 0; i < WORDS; i++) {
+                        result[i] = words[i] | other.words[i];
+                    }
+                }
+                case AND_NOT -> {
+                    for (int i = 0; i < WORDS; i++) {
+                        result[i] = words[i] & ~other.words[i];
+                    }
+                }
+            }
+            int count = 0;
+            for (long word : result) {
+                count += Long.bitCount(word);
+            }
+            BitmapContainer container = new BitmapContainer(result, count);
+            return count <= MAX_ARRAY_CARDINALITY ? container.toArray() : container;
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[Math.max(cardinality, 1)];
+            int count = 0;
+            for (int word = 0; word < WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    values[count++] = (char) ((word << 6) | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+    }
+}
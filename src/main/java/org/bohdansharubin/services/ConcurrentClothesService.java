@@ -0,0 +1,597 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.enums.ClothesType;
+import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.utils.CatalogFile;
+import org.bohdansharubin.utils.CompressedCatalogFile;
+import org.bohdansharubin.utils.LogEntry;
+import org.bohdansharubin.utils.WriteAheadLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe {@link ClothesService} for concurrent readers and writers.
+ * <p>
+ * Storage and indexes are guarded by a {@link StampedLock}:
+ * <ul>
+ *     <li>{@link #size()}, {@link #containsClothes(UUID)} and taking a
+ *     snapshot only read a few primitive fields and run as optimistic reads,
+ *     falling back to the read lock only if a writer interfered;</li>
+ *     <li>lookups, counts, searches and sorted reads run under the shared
+ *     read lock, as they materialize clothes or walk indexes a writer may
+ *     be resizing, which an optimistic read could see torn;</li>
+ *     <li>a mutation holds the write lock only while it updates the storage
+ *     and the indexes.</li>
+ * </ul>
+ * Writers are first partitioned by uuid over striped locks. A mutation
+ * holds the stripe of its clothes, and a bulk operation every stripe, from
+ * before the write lock is taken until after its {@link WriteAheadLog}
+ * entries are appended. Encoding and appending the entries happens after the
+ * write lock is released, so readers wait only for the index and storage
+ * update, while the stripe keeps the entries of the same clothes in the order
+ * the changes were applied. Changes made through setters of stored clothes
+ * hold the stripe and the write lock from before to after the change. Bulk
+ * operations hold the write lock for the whole batch, so a batch costs one
+ * lock acquisition instead of one per item. Waiting for the log to make a
+ * change durable happens after the locks are released, so concurrent
+ * mutators share its fsyncs.
+ * Sorts by comparator take a snapshot under the read lock and sort it
+ * without holding any lock.
+ * <p>
+ * Returned clothes are the stored objects, changing them is thread-safe
+ * as far as the service is concerned.
+ */
+public class ConcurrentClothesService extends ClothesService {
+
+    /**
+     * Number of writer stripes, a power of two.
+     */
+    private static final int STRIPES = 64;
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Writer locks partitioned by uuid, always taken before the write lock and in index order.
+     */
+    private final ReentrantLock[] stripes = newStripes();
+
+    /**
+     * Sorted views already created, reading other views requires the write lock.
+     */
+    private final Set<ClothesOrder> createdViews = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether versions for snapshots are kept, enabling them requires the write lock.
+     */
+    private volatile boolean snapshotsEnabled;
+
+    /**
+     * Number of catalog saves holding a snapshot, guarded by the write lock.
+     */
+    private int savingCatalogs;
+
+    /**
+     * Thread holding the write lock, so nested calls from setter callbacks
+     * do not lock again.
+     */
+    private volatile Thread writer;
+    private long writeStamp;
+    private int writeDepth;
+
+    /**
+     * Log entries of the changes made under the write lock, appended once it
+     * is released. Guarded by the write lock.
+     */
+    private List<Runnable> unloggedChanges = new ArrayList<>();
+
+    /**
+     * Constructs a thread-safe service with the given list of clothes.
+     *
+     * @param clothesList initial list of clothes (must not be null)
+     * @throws IllegalArgumentException if clothesList is null,
+     *         contains null or contains two clothes with the same uuid
+     */
+    public ConcurrentClothesService(List<Clothes> clothesList) {
+        this(clothesList, StorageMode.OBJECTS);
+    }
+
+    /**
+     * Constructs a thread-safe service with the given list of clothes stored in the given layout.
+     *
+     * @param clothesList initial list of clothes (must not be null)
+     * @param storageMode layout of the catalog in memory (must not be null)
+     * @throws IllegalArgumentException if clothesList or storageMode is null,
+     *         clothesList contains null or contains two clothes with the same uuid
+     */
+    public ConcurrentClothesService(List<Clothes> clothesList, StorageMode storageMode) {
+        super(clothesList, storageMode);
+    }
+
+    /**
+     * Constructs a thread-safe service with the given list of clothes, loading
+     * its indexes from the index file if it matches the snapshot.
+     *
+     * @param clothesList initial list of clothes in the order of the snapshot (must not be null)
+     * @param storageMode layout of the catalog in memory (must not be null)
+     * @param indexFile   path of the index file, {@code null} to build the indexes
+     * @param stamp       stamp of the snapshot the clothes were loaded from
+     * @throws IllegalArgumentException if clothesList or storageMode is null,
+     *         clothesList contains null or contains two clothes with the same uuid
+     * @see ClothesService#ClothesService(List, StorageMode, Path, long)
+     */
+    public ConcurrentClothesService(List<Clothes> clothesList, StorageMode storageMode, Path indexFile,
+                                    long stamp) {
+        super(clothesList, storageMode, indexFile, stamp);
+    }
+
+    /**
+     * Constructs a thread-safe service serving the catalog file from a read-only memory mapping.
+     *
+     * @param catalogFile path of the catalog file (must not be null)
+     * @throws IOException if the file can't be read, is corrupted or contains two clothes with the same uuid
+     * @throws IllegalArgumentException if catalogFile is null
+     * @see ClothesService#ClothesService(Path)
+     */
+    public ConcurrentClothesService(Path catalogFile) throws IOException {
+        super(catalogFile);
+    }
+
+    /**
+     * Constructs a thread-safe service serving the catalog file from a
+     * read-only memory mapping, loading its indexes from the index file if it
+     * matches the catalog file.
+     *
+     * @param catalogFile path of the catalog file (must not be null)
+     * @param indexFile   path of the index file, {@code null} to build the indexes
+     * @throws IOException if the file can't be read, is corrupted or contains two clothes with the same uuid
+     * @throws IllegalArgumentException if catalogFile is null
+     * @see ClothesService#ClothesService(Path, Path)
+     */
+    public ConcurrentClothesService(Path catalogFile, Path indexFile) throws IOException {
+        super(catalogFile, indexFile);
+    }
+
+    @Override
+    public ParallelConfig getParallelConfig() {
+        return read(super::getParallelConfig);
+    }
+
+    @Override
+    public void saveIndexes(Path indexFile, long stamp, List<UUID> loadOrder) throws IOException {
+        try {
+            read(() -> {
+                try {
+                    super.saveIndexes(indexFile, stamp, loadOrder);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Saves the catalog over the file from a snapshot taken under the write
+     * lock, writers are held back only while it is taken, not while the file
+     * is written. Unless snapshots are enabled, taking it copies the catalog
+     * and the versions are dropped again after the save, so changes do not
+     * keep paying for them between checkpoints.
+     *
+     * @param catalogFile path of the catalog file
+     * @param compressed  {@code true} to save by {@link CompressedCatalogFile}
+     * @throws IOException if the file can't be written, the previous file is kept then
+     */
+    void saveCatalog(Path catalogFile, boolean compressed) throws IOException {
+        ClothesSnapshot snapshot = write(() -> {
+            savingCatalogs++;
+            return super.snapshot();
+        });
+        try {
+            if (compressed) {
+                CompressedCatalogFile.save(snapshot.getClothesList(), catalogFile);
+            } else {
+                CatalogFile.save(snapshot.getClothesList(), catalogFile);
+            }
+        } finally {
+            write(() -> {
+                if (--savingCatalogs == 0 && !snapshotsEnabled) {
+                    dropVersions();
+                }
+                return null;
+            });
+        }
+    }
+
+    @Override
+    public WriteAheadLog getWriteAheadLog() {
+        return read(super::getWriteAheadLog);
+    }
+
+    @Override
+    public void setWriteAheadLog(WriteAheadLog log) {
+        write(() -> {
+            super.setWriteAheadLog(log);
+            return null;
+        });
+    }
+
+    @Override
+    public void trackChanges() {
+        write(() -> {
+            super.trackChanges();
+            return null;
+        });
+    }
+
+    @Override
+    public ClothesChanges drainChanges() {
+        return write(super::drainChanges);
+    }
+
+    @Override
+    public void restoreChanges(ClothesChanges changes) {
+        write(() -> {
+            super.restoreChanges(changes);
+            return null;
+        });
+    }
+
+    @Override
+    public void setParallelConfig(ParallelConfig parallelConfig) {
+        write(() -> {
+            super.setParallelConfig(parallelConfig);
+            return null;
+        });
+    }
+
+    /**
+     * Returns a snapshot of the clothes list.
+     * <p>
+     * Later additions and deletions are not reflected in the returned list.
+     *
+     * @return read-only list of clothes
+     */
+    @Override
+    public List<Clothes> getClothesList() {
+        return read(() -> List.copyOf(liveClothes()));
+    }
+
+    /**
+     * Returns an immutable point-in-time view of the catalog.
+     * <p>
+     * Apart from the first call, taking a snapshot does not lock, and reading
+     * it never blocks writers.
+     *
+     * @return snapshot of the current catalog
+     */
+    @Override
+    public ClothesSnapshot snapshot() {
+        if (snapshotsEnabled) {
+            return readOptimistic(super::snapshot);
+        }
+        return write(() -> {
+            ClothesSnapshot snapshot = super.snapshot();
+            snapshotsEnabled = true;
+            return snapshot;
+        });
+    }
+
+    @Override
+    public void addClothes(Clothes clothes) {
+        if (clothes == null) {
+            throw new IllegalArgumentException("clothes must not be null");
+        }
+        mutate(clothes.getUuid(), () -> {
+            super.addClothes(clothes);
+            return null;
+        });
+        awaitDurable();
+    }
+
+    @Override
+    public void apply(LogEntry entry) {
+        if (entry == null) {
+            throw new IllegalArgumentException("entry must not be null");
+        }
+        mutate(entry.getUuid(), () -> {
+            super.apply(entry);
+            return null;
+        });
+        awaitDurable();
+    }
+
+    @Override
+    public BulkReport addAll(Collection<? extends Clothes> clothes) {
+        BulkReport report = mutateAll(() -> super.addAll(clothes));
+        awaitDurable();
+        return report;
+    }
+
+    @Override
+    public BulkReport deleteAll(Collection<UUID> uuids) {
+        BulkReport report = mutateAll(() -> super.deleteAll(uuids));
+        awaitDurable();
+        return report;
+    }
+
+    @Override
+    public BulkReport updateAll(Predicate<Clothes> predicate, Consumer<Clothes> mutation) {
+        BulkReport report = mutateAll(() -> super.updateAll(predicate, mutation));
+        awaitDurable();
+        return report;
+    }
+
+    @Override
+    public boolean containsClothes(UUID uuid) {
+        return readOptimistic(() -> super.containsClothes(uuid));
+    }
+
+    @Override
+    public int size() {
+        return readOptimistic(super::size);
+    }
+
+    @Override
+    public List<Clothes> findClothesByType(ClothesType clothesType) {
+        return read(() -> super.findClothesByType(clothesType));
+    }
+
+    @Override
+    public List<Clothes> findClothesByColor(String color) {
+        return read(() -> super.findClothesByColor(color));
+    }
+
+    @Override
+    public List<Clothes> findClothesByAmericanSize(AmericanSize size) {
+        return read(() -> super.findClothesByAmericanSize(size));
+    }
+
+    @Override
+    public List<Clothes> findClothesInEuropeanSizeBetween(int min, int max) {
+        return read(() -> super.findClothesInEuropeanSizeBetween(min, max));
+    }
+
+    @Override
+    public int countClothesInEuropeanSizeBetween(int min, int max) {
+        return read(() -> super.countClothesInEuropeanSizeBetween(min, max));
+    }
+
+    @Override
+    public List<Clothes> findClothes(ClothesCriteria criteria) {
+        return read(() -> super.findClothes(criteria));
+    }
+
+    @Override
+    public int countClothes(ClothesCriteria criteria) {
+        return read(() -> super.countClothes(criteria));
+    }
+
+    @Override
+    public List<Clothes> findClothes(ClothesQuery query) {
+        return read(() -> super.findClothes(query));
+    }
+
+    @Override
+    public int countClothes(ClothesQuery query) {
+        return read(() -> super.countClothes(query));
+    }
+
+    @Override
+    public QueryPlan explain(ClothesQuery query) {
+        return read(() -> super.explain(query));
+    }
+
+    @Override
+    public List<Clothes> getSortedList(ClothesOrder order) {
+        return readView(order, () -> super.getSortedList(order));
+    }
+
+    @Override
+    public List<Clothes> getSortedList(ClothesOrder first, ClothesOrder... then) {
+        return read(() -> super.getSortedList(first, then));
+    }
+
+    @Override
+    public ClothesPage getPage(ClothesOrder order, ClothesCursor after, int pageSize) {
+        return readView(order, () -> super.getPage(order, after, pageSize));
+    }
+
+    @Override
+    public Optional<Clothes> findClothesByUuid(UUID uuid) {
+        return read(() -> super.findClothesByUuid(uuid));
+    }
+
+    @Override
+    public String toFormattedString() {
+        return read(super::toFormattedString);
+    }
+
+    @Override
+    public boolean deleteClothesByUuid(UUID uuid) {
+        if (uuid == null) {
+            return false;
+        }
+        boolean deleted = mutate(uuid, () -> super.deleteClothesByUuid(uuid));
+        awaitDurable();
+        return deleted;
+    }
+
+    @Override
+    void beforeStoredChange(Clothes clothes) {
+        stripeOf(clothes.getUuid()).lock();
+        lockWrite();
+    }
+
+    @Override
+    void afterStoredChange(Clothes clothes) {
+        try {
+            unlockWrite();
+        } finally {
+            stripeOf(clothes.getUuid()).unlock();
+        }
+    }
+
+    /**
+     * Defers the log entry until the write lock is released, the stripe of
+     * the changed clothes is still held then.
+     */
+    @Override
+    void appendToLog(Runnable entry) {
+        if (writer == Thread.currentThread()) {
+            unloggedChanges.add(entry);
+        } else {
+            entry.run();
+        }
+    }
+
+    /**
+     * Waits for the log only outside of the write lock, so that threads
+     * waiting for the same fsync do not hold back other writers.
+     */
+    @Override
+    void awaitDurable() {
+        if (writer != Thread.currentThread()) {
+            super.awaitDurable();
+        }
+    }
+
+    /**
+     * Runs a read of a few primitive fields optimistically, retrying under the
+     * read lock if a writer interfered. Exceptions thrown by a read that raced
+     * with a writer are discarded with its result.
+     * <p>
+     * Only reads which neither allocate shared state nor follow references
+     * into structures a writer may be resizing may run this way.
+     */
+    private <T> T readOptimistic(Supplier<T> action) {
+        if (writer == Thread.currentThread()) {
+            return action.get();
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = action.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        return read(action);
+    }
+
+    private <T> T read(Supplier<T> action) {
+        if (writer == Thread.currentThread()) {
+            return action.get();
+        }
+        long stamp = lock.readLock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Reads a sorted view, creating it under the write lock on the first read.
+     */
+    private <T> T readView(ClothesOrder order, Supplier<T> action) {
+        if (order == null || createdViews.contains(order)) {
+            return read(action);
+        }
+        return write(() -> {
+            T result = action.get();
+            createdViews.add(order);
+            return result;
+        });
+    }
+
+    /**
+     * Runs a mutation of the clothes with the uuid under its stripe and the write lock.
+     */
+    private <T> T mutate(UUID uuid, Supplier<T> action) {
+        ReentrantLock stripe = stripeOf(uuid);
+        stripe.lock();
+        try {
+            return write(action);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Runs a mutation of any clothes under every stripe and the write lock.
+     */
+    private <T> T mutateAll(Supplier<T> action) {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            return write(action);
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    private ReentrantLock stripeOf(UUID uuid) {
+        return stripes[uuid.hashCode() & (STRIPES - 1)];
+    }
+
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        return stripes;
+    }
+
+    private <T> T write(Supplier<T> action) {
+        lockWrite();
+        try {
+            return action.get();
+        } finally {
+            unlockWrite();
+        }
+    }
+
+    private void lockWrite() {
+        if (writer == Thread.currentThread()) {
+            writeDepth++;
+            return;
+        }
+        long stamp = lock.writeLock();
+        writer = Thread.currentThread();
+        writeStamp = stamp;
+        writeDepth = 1;
+    }
+
+    private void unlockWrite() {
+        if (--writeDepth == 0) {
+            List<Runnable> entries = List.of();
+            if (!unloggedChanges.isEmpty()) {
+                entries = unloggedChanges;
+                unloggedChanges = new ArrayList<>();
+            }
+            writer = null;
+            lock.unlockWrite(writeStamp);
+            entries.forEach(Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.bohdansharubin.services;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Secondary index of rows by the value of an enum attribute.
+ * <p>
+ * Keeps one {@link PostingList} per constant in an {@link EnumMap}.
+ * {@code null} values are not indexed.
+ *
+ * @param <E> type of the indexed enum
+ */
+final class EnumIndex<E extends Enum<E>> {
+
+    private final Map<E, PostingList> postings;
+
+    /**
+     * Constructs an empty index.
+     *
+     * @param type class of the indexed enum
+     */
+    EnumIndex(Class<E> type) {
+        this.postings = new EnumMap<>(type);
+    }
+
+    /**
+     * Adds a row under the given value.
+     *
+     * @param value attribute value, ignored if {@code null}
+     * @param row   the row to add
+     */
+    void add(E value, int row) {
+        if (value != null) {
+            postings.computeIfAbsent(value, key -> new PostingList()).add(row);
+        }
+    }
+
+    /**
+     * Removes a row from the given value.
+     *
+     * @param value attribute value, ignored if {@code null}
+     * @param row   the row to remove
+     */
+    void remove(E value, int row) {
+        if (value != null) {
+            PostingList list = postings.get(value);
+            if (list != null) {
+                list.remove(row);
+            }
+        }
+    }
+
+    /**
+     * @param value attribute value
+     * @return rows holding the value or {@code null} if there are none
+     */
+    PostingList get(E value) {
+        return value == null ? null : postings.get(value);
+    }
+
+    /**
+     * @param value attribute value
+     * @return number of rows holding the value
+     */
+    int count(E value) {
+        PostingList list = get(value);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * @return read-only view of the rows of every value
+     */
+    Map<E, PostingList> postings() {
+        return Collections.unmodifiableMap(postings);
+    }
+
+    /**
+     * Replaces the rows of the value, e.g. with rows read from a {@link ClothesIndexFile}.
+     *
+     * @param value attribute value (must not be null)
+     * @param rows  the rows
+     */
+    void put(E value, PostingList rows) {
+        postings.put(value, rows);
+    }
+
+    /**
+     * Removes all rows.
+     */
+    void clear() {
+        postings.clear();
+    }
+}
@@ -0,0 +1,176 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Secondary index of rows by European size.
+ * <p>
+ * Valid sizes form a small domain ({@link Clothes#MIN_EUROPEAN_SIZE} to
+ * {@link Clothes#MAX_EUROPEAN_SIZE}), so rows are kept in an array of
+ * {@link PostingList} buckets indexed by size. A range query only visits
+ * the buckets inside the range and counting a range never touches rows.
+ * Sizes outside of the domain, which only clothes built with the default
+ * constructor can have, are kept aside in a map.
+ */
+final class EuropeanSizeIndex {
+
+    private final PostingList[] buckets =
+            new PostingList[Clothes.MAX_EUROPEAN_SIZE - Clothes.MIN_EUROPEAN_SIZE + 1];
+    private final Map<Integer, PostingList> otherSizes = new HashMap<>();
+
+    /**
+     * Adds a row under the given size.
+     *
+     * @param size European size
+     * @param row  the row to add
+     */
+    void add(int size, int row) {
+        if (isInDomain(size)) {
+            int bucket = size - Clothes.MIN_EUROPEAN_SIZE;
+            if (buckets[bucket] == null) {
+                buckets[bucket] = new PostingList();
+            }
+            buckets[bucket].add(row);
+        } else {
+            otherSizes.computeIfAbsent(size, key -> new PostingList()).add(row);
+        }
+    }
+
+    /**
+     * Removes a row from the given size.
+     *
+     * @param size European size
+     * @param row  the row to remove
+     */
+    void remove(int size, int row) {
+        if (isInDomain(size)) {
+            PostingList bucket = buckets[size - Clothes.MIN_EUROPEAN_SIZE];
+            if (bucket != null) {
+                bucket.remove(row);
+            }
+        } else {
+            PostingList list = otherSizes.get(size);
+            if (list != null && list.remove(row) && list.isEmpty()) {
+                otherSizes.remove(size);
+            }
+        }
+    }
+
+    /**
+     * @param size European size
+     * @return rows with the size or {@code null} if there are none
+     */
+    PostingList get(int size) {
+        return isInDomain(size) ? buckets[size - Clothes.MIN_EUROPEAN_SIZE] : otherSizes.get(size);
+    }
+
+    /**
+     * Returns rows with a size in the range, ordered by size and then by row.
+     *
+     * @param min minimum size (exclusive)
+     * @param max maximum size (inclusive)
+     * @return rows in the range
+     */
+    int[] rowsBetween(int min, int max) {
+        int[] result = new int[countBetween(min, max)];
+        int position = 0;
+        for (Map.Entry<Integer, PostingList> entry : otherSizes.entrySet()) {
+            if (entry.getKey() > min && entry.getKey() <= max && entry.getKey() < Clothes.MIN_EUROPEAN_SIZE) {
+                position = copy(entry.getValue(), result, position);
+            }
+        }
+        int from = Math.max(min + 1, Clothes.MIN_EUROPEAN_SIZE);
+        int to = Math.min(max, Clothes.MAX_EUROPEAN_SIZE);
+        for (int size = from; size <= to; size++) {
+            position = copy(buckets[size - Clothes.MIN_EUROPEAN_SIZE], result, position);
+        }
+        for (Map.Entry<Integer, PostingList> entry : otherSizes.entrySet()) {
+            if (entry.getKey() > min && entry.getKey() <= max && entry.getKey() > Clothes.MAX_EUROPEAN_SIZE) {
+                position = copy(entry.getValue(), result, position);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts rows with a size in the range without materializing them.
+     *
+     * @param min minimum size (exclusive)
+     * @param max maximum size (inclusive)
+     * @return number of rows in the range
+     */
+    int countBetween(int min, int max) {
+        int count = 0;
+        int from = Math.max(min + 1, Clothes.MIN_EUROPEAN_SIZE);
+        int to = Math.min(max, Clothes.MAX_EUROPEAN_SIZE);
+        for (int size = from; size <= to; size++) {
+            PostingList bucket = buckets[size - Clothes.MIN_EUROPEAN_SIZE];
+            if (bucket != null) {
+                count += bucket.size();
+            }
+        }
+        for (Map.Entry<Integer, PostingList> entry : otherSizes.entrySet()) {
+            if (entry.getKey() > min && entry.getKey() <= max) {
+                count += entry.getValue().size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return rows of every size, ordered by size
+     */
+    Map<Integer, PostingList> postings() {
+        Map<Integer, PostingList> postings = new TreeMap<>(otherSizes);
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            if (buckets[bucket] != null) {
+                postings.put(bucket + Clothes.MIN_EUROPEAN_SIZE, buckets[bucket]);
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * Replaces the rows of the size, e.g. with rows read from a {@link ClothesIndexFile}.
+     *
+     * @param size European size
+     * @param rows the rows
+     */
+    void put(int size, PostingList rows) {
+        if (isInDomain(size)) {
+            buckets[size - Clothes.MIN_EUROPEAN_SIZE] = rows;
+        } else {
+            otherSizes.put(size, rows);
+        }
+    }
+
+    /**
+     * Removes all rows.
+     */
+    void clear() {
+        for (PostingList bucket : buckets) {
+            if (bucket != null) {
+                bucket.clear();
+            }
+        }
+        otherSizes.clear();
+    }
+
+    private static boolean isInDomain(int size) {
+        return size >= Clothes.MIN_EUROPEAN_SIZE && size <= Clothes.MAX_EUROPEAN_SIZE;
+    }
+
+    private static int copy(PostingList rows, int[] target, int position) {
+        if (rows == null) {
+            return position;
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            target[position++] = rows.get(i);
+        }
+        return position;
+    }
+}
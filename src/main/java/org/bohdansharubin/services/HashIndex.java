@@ -0,0 +1,96 @@
+package org.bohdansharubin.services;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Secondary index of rows by the value of an attribute with an open domain,
+ * such as color.
+ * <p>
+ * Keeps one {@link PostingList} per distinct value in a {@link HashMap} and
+ * drops the list once its last row is removed. {@code null} values are not
+ * indexed.
+ *
+ * @param <K> type of the indexed value
+ */
+final class HashIndex<K> {
+
+    private final Map<K, PostingList> postings = new HashMap<>();
+
+    /**
+     * Adds a row under the given value.
+     *
+     * @param value attribute value, ignored if {@code null}
+     * @param row   the row to add
+     */
+    void add(K value, int row) {
+        if (value != null) {
+            postings.computeIfAbsent(value, key -> new PostingList()).add(row);
+        }
+    }
+
+    /**
+     * Removes a row from the given value.
+     *
+     * @param value attribute value, ignored if {@code null}
+     * @param row   the row to remove
+     */
+    void remove(K value, int row) {
+        if (value == null) {
+            return;
+        }
+        PostingList list = postings.get(value);
+        if (list != null && list.remove(row) && list.isEmpty()) {
+            postings.remove(value);
+        }
+    }
+
+    /**
+     * @param value attribute value
+     * @return rows holding the value or {@code null} if there are none
+     */
+    PostingList get(K value) {
+        return value == null ? null : postings.get(value);
+    }
+
+    /**
+     * @param value attribute value
+     * @return number of rows holding the value
+     */
+    int count(K value) {
+        PostingList list = get(value);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * @return number of distinct indexed values
+     */
+    int distinctValues() {
+        return postings.size();
+    }
+
+    /**
+     * @return read-only view of the rows of every value
+     */
+    Map<K, PostingList> postings() {
+        return Collections.unmodifiableMap(postings);
+    }
+
+    /**
+     * Replaces the rows of the value, e.g. with rows read from a {@link ClothesIndexFile}.
+     *
+     * @param value attribute value (must not be null)
+     * @param rows  the rows
+     */
+    void put(K value, PostingList rows) {
+        postings.put(value, rows);
+    }
+
+    /**
+     * Removes all rows.
+     */
+    void clear() {
+        postings.clear();
+    }
+}
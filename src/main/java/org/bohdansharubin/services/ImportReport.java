@@ -0,0 +1,102 @@
+package org.bohdansharubin.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of an import by {@link ClothesImporter}.
+ * <p>
+ * An import does not stop at the first invalid row, every row which was not
+ * imported is reported here with its line number instead.
+ */
+public final class ImportReport {
+
+    /**
+     * Row of the file which was not imported.
+     */
+    public static final class Rejection {
+
+        private final long line;
+        private final String message;
+
+        Rejection(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * @return number of the line in the file, starting with 1
+         */
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * @return reason of the rejection
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+
+    private final List<Rejection> rejections = new ArrayList<>();
+    private long rowCount;
+    private long importedCount;
+
+    void addRows(long rows, long imported) {
+        rowCount += rows;
+        importedCount += imported;
+    }
+
+    void reject(long line, String message) {
+        rejections.add(new Rejection(line, message));
+    }
+
+    /**
+     * @return number of non-blank rows read from the file
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return number of clothes added to the service
+     */
+    public long getImportedCount() {
+        return importedCount;
+    }
+
+    /**
+     * @return number of rows which were not imported
+     */
+    public int getRejectedCount() {
+        return rejections.size();
+    }
+
+    /**
+     * @return rows which were not imported in the order of their lines
+     */
+    public List<Rejection> getRejections() {
+        return Collections.unmodifiableList(rejections);
+    }
+
+    /**
+     * @return {@code true} if any row was not imported
+     */
+    public boolean hasRejections() {
+        return !rejections.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ImportReport{rows=" + rowCount
+                + ", imported=" + importedCount
+                + ", rejected=" + rejections.size() + '}';
+    }
+}
@@ -0,0 +1,354 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.models.*;
+import org.bohdansharubin.utils.CatalogFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * {@link ClothesStorage} serving the records of a catalog file saved in the
+ * {@link CatalogFormat} straight from a read-only memory mapping.
+ * <p>
+ * Attribute accessors read the fixed-width records of the mapping, so
+ * opening the storage allocates no {@link Clothes} objects and the records
+ * stay in the page cache shared with other processes. {@link #get(int)}
+ * materializes a new object on every call, like {@link ColumnarClothesStorage}.
+ * <p>
+ * The file is never written. Added clothes, and records changed through the
+ * setters of materialized clothes, are kept in a {@link ColumnarClothesStorage}
+ * overlay. Rows are mapped to their slots, where slots below the number of
+ * records in the file address the mapping and the following slots address
+ * the overlay. The mapping is identity for the leading rows which were never
+ * moved by {@link #compact()}, so a freshly opened storage needs no slot table.
+ */
+final class MappedClothesStorage implements ClothesStorage {
+
+    private final ClothesChangeListener listener;
+    private final MappedByteBuffer records;
+    private final CatalogFormat.Header header;
+    private final String[] colors;
+    private final int[] colorCodes;
+    private final int recordCount;
+
+    /**
+     * Added clothes and changed records.
+     */
+    private final ColumnarClothesStorage overlay;
+
+    /**
+     * Records of the file which were changed, with the overlay rows holding their current state.
+     */
+    private final BitSet changedRecords = new BitSet();
+    private final Map<Integer, Integer> changedRows = new HashMap<>();
+
+    /**
+     * Rows below this number are stored in the slot of the same number.
+     */
+    private int identityRows;
+
+    /**
+     * Slots of rows starting with {@link #identityRows}.
+     */
+    private int[] slots = new int[16];
+
+    private final BitSet removed = new BitSet();
+    private int rowCount;
+    private int removedCount;
+
+    private MappedClothesStorage(MappedByteBuffer records, CatalogFormat.Header header, List<String> colors,
+                                 ClothesChangeListener listener) {
+        this.listener = listener;
+        this.records = records;
+        this.header = header;
+        this.recordCount = (int) header.recordCount();
+        this.colors = new String[colors.size()];
+        this.colorCodes = new int[colors.size()];
+        ColorDictionary dictionary = ColorDictionary.getInstance();
+        for (int i = 0; i < colors.size(); i++) {
+            this.colors[i] = dictionary.intern(colors.get(i));
+            this.colorCodes[i] = dictionary.encode(colors.get(i));
+        }
+        this.overlay = new ColumnarClothesStorage(0, listener);
+        this.identityRows = recordCount;
+        this.rowCount = recordCount;
+    }
+
+    /**
+     * Maps the records of a catalog file.
+     * <p>
+     * Only the header and the color dictionary are read, so opening takes the
+     * same time however many records the file has. Records are checked when
+     * they are read: by {@link #checkRecord(int)} while indexes are built, or
+     * as they are materialized and their colors are read.
+     *
+     * @param path     path of a file saved by {@link org.bohdansharubin.utils.CatalogFile}
+     * @param listener listener registered on every materialized item
+     * @return the storage with a row for every record of the file
+     * @throws IOException if the file can't be read, is corrupted or is too large to be mapped
+     */
+    static MappedClothesStorage open(Path path, ClothesChangeListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CatalogFormat.Header header = CatalogFormat.readHeader(channel);
+            long size = header.recordCount() * CatalogFormat.RECORD_SIZE;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Catalog is too large to be mapped");
+            }
+            List<String> colors = CatalogFormat.readColors(channel, header);
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, header.dataOffset(), size);
+            return new MappedClothesStorage(records, header, colors, listener);
+        }
+    }
+
+    @Override
+    public int add(Clothes clothes) {
+        int slot = recordCount + overlay.add(clothes);
+        if (rowCount - identityRows == slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(16, slots.length * 2));
+        }
+        slots[rowCount - identityRows] = slot;
+        return rowCount++;
+    }
+
+    @Override
+    public Clothes get(int row) {
+        if (!isLive(row)) {
+            return null;
+        }
+        int overlayRow = overlayRow(row);
+        if (overlayRow >= 0) {
+            return overlay.get(overlayRow);
+        }
+        ByteBuffer record = records.duplicate().position(offset(row));
+        Clothes clothes;
+        try {
+            clothes = CatalogFormat.readRecord(record, header, Arrays.asList(colors));
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted record " + slot(row) + " of the mapped catalog", e);
+        }
+        clothes.addChangeListener(listener);
+        return clothes;
+    }
+
+    @Override
+    public void update(int row, Clothes clothes) {
+        int overlayRow = overlayRow(row);
+        if (overlayRow >= 0) {
+            overlay.update(overlayRow, clothes);
+            return;
+        }
+        int slot = slot(row);
+        changedRows.put(slot, overlay.add(clothes));
+        changedRecords.set(slot);
+    }
+
+    @Override
+    public void remove(int row) {
+        if (isLive(row)) {
+            removed.set(row);
+            removedCount++;
+        }
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return row < rowCount && !removed.get(row);
+    }
+
+    @Override
+    public int rowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int removedCount() {
+        return removedCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the slot table is rewritten; overlay rows of removed clothes are
+     * not reclaimed.
+     */
+    @Override
+    public void compact() {
+        int firstRemoved = removed.nextSetBit(0);
+        if (firstRemoved < 0) {
+            return;
+        }
+        int newIdentityRows = Math.min(identityRows, firstRemoved);
+        int[] newSlots = new int[Math.max(16, rowCount - removedCount - newIdentityRows)];
+        int target = newIdentityRows;
+        for (int row = newIdentityRows; row < rowCount; row++) {
+            if (!removed.get(row)) {
+                newSlots[target++ - newIdentityRows] = slot(row);
+            }
+        }
+        identityRows = newIdentityRows;
+        slots = newSlots;
+        removed.clear();
+        rowCount = target;
+        removedCount = 0;
+    }
+
+    @Override
+    public List<Clothes> toList() {
+        List<Clothes> list = new ArrayList<>(rowCount - removedCount);
+        for (int row = 0; row < rowCount; row++) {
+            if (!removed.get(row)) {
+                list.add(get(row));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public long uuidMostSignificantBits(int row) {
+        int overlayRow = overlayRow(row);
+        return overlayRow >= 0 ? overlay.uuidMostSignificantBits(overlayRow) : records.getLong(offset(row));
+    }
+
+    @Override
+    public long uuidLeastSignificantBits(int row) {
+        int overlayRow = overlayRow(row);
+        return overlayRow >= 0
+                ? overlay.uuidLeastSignificantBits(overlayRow)
+                : records.getLong(offset(row) + Long.BYTES);
+    }
+
+    @Override
+    public ClothesType type(int row) {
+        int overlayRow = overlayRow(row);
+        return overlayRow >= 0
+                ? overlay.type(overlayRow)
+                : header.type(byteAt(row, CatalogFormat.TYPE_OFFSET));
+    }
+
+    @Override
+    public AmericanSize americanSize(int row) {
+        int overlayRow = overlayRow(row);
+        return overlayRow >= 0
+                ? overlay.americanSize(overlayRow)
+                : header.americanSize(byteAt(row, CatalogFormat.AMERICAN_SIZE_OFFSET));
+    }
+
+    @Override
+    public int europeanSize(int row) {
+        int overlayRow = overlayRow(row);
+        return overlayRow >= 0
+                ? overlay.europeanSize(overlayRow)
+                : byteAt(row, CatalogFormat.EUROPEAN_SIZE_OFFSET);
+    }
+
+    @Override
+    public String color(int row) {
+        int overlayRow = overlayRow(row);
+        return overlayRow >= 0 ? overlay.color(overlayRow) : colors[colorId(row)];
+    }
+
+    @Override
+    public int colorCode(int row) {
+        int overlayRow = overlayRow(row);
+        return overlayRow >= 0 ? overlay.colorCode(overlayRow) : colorCodes[colorId(row)];
+    }
+
+    @Override
+    public HatType hatType(int row) {
+        int overlayRow = overlayRow(row);
+        if (overlayRow >= 0) {
+            return overlay.hatType(overlayRow);
+        }
+        return type(row) == ClothesType.HAT ? header.hatType(subtype(row)) : null;
+    }
+
+    @Override
+    public SleeveLength sleeveLength(int row) {
+        int overlayRow = overlayRow(row);
+        if (overlayRow >= 0) {
+            return overlay.sleeveLength(overlayRow);
+        }
+        return type(row) == ClothesType.SHIRT ? header.sleeveLength(subtype(row)) : null;
+    }
+
+    @Override
+    public SkirtLength skirtLength(int row) {
+        int overlayRow = overlayRow(row);
+        if (overlayRow >= 0) {
+            return overlay.skirtLength(overlayRow);
+        }
+        return type(row) == ClothesType.SKIRT ? header.skirtLength(subtype(row)) : null;
+    }
+
+    /**
+     * @return stamp of the mapped file, empty if the file does not store one
+     * @see CatalogFormat.Header#stamp()
+     */
+    OptionalLong stamp() {
+        return header.stamp();
+    }
+
+    /**
+     * Checks that the record of a row read from the mapping decodes to valid clothes.
+     *
+     * @param row a row of a record which was not moved or changed since opening
+     * @throws IOException if the record is corrupted
+     */
+    void checkRecord(int row) throws IOException {
+        int colorId = records.getInt(offset(row) + CatalogFormat.COLOR_ID_OFFSET);
+        int europeanSize = europeanSize(row);
+        if (colorId < 0 || colorId >= colors.length || type(row) == null || americanSize(row) == null
+                || europeanSize < Clothes.MIN_EUROPEAN_SIZE || europeanSize > Clothes.MAX_EUROPEAN_SIZE) {
+            throw new IOException("Corrupted record " + row);
+        }
+    }
+
+    private int slot(int row) {
+        return row < identityRows ? row : slots[row - identityRows];
+    }
+
+    /**
+     * Returns the overlay row holding the row or -1 if the row is read from the mapping.
+     */
+    private int overlayRow(int row) {
+        int slot = slot(row);
+        if (slot >= recordCount) {
+            return slot - recordCount;
+        }
+        return changedRecords.get(slot) ? changedRows.get(slot) : -1;
+    }
+
+    /**
+     * Returns the offset of the record read for the row, which must not be in the overlay.
+     */
+    private int offset(int row) {
+        return slot(row) * CatalogFormat.RECORD_SIZE;
+    }
+
+    private int byteAt(int row, int field) {
+        return Byte.toUnsignedInt(records.get(offset(row) + field));
+    }
+
+    /**
+     * Returns the color id of the record read for the row.
+     *
+     * @throws IllegalStateException if the id is out of the color dictionary
+     */
+    private int colorId(int row) {
+        int colorId = records.getInt(offset(row) + CatalogFormat.COLOR_ID_OFFSET);
+        if (colorId < 0 || colorId >= colors.length) {
+            throw new IllegalStateException("Corrupted record " + slot(row) + " of the mapped catalog");
+        }
+        return colorId;
+    }
+
+    private int subtype(int row) {
+        return (byteAt(row, CatalogFormat.ATTRIBUTES_OFFSET) & CatalogFormat.SUBTYPE_MASK) - 1;
+    }
+}
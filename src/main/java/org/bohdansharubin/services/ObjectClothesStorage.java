@@ -0,0 +1,145 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.models.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * {@link ClothesStorage} keeping every item as its own {@link Clothes} object.
+ * <p>
+ * Stored objects are returned as they are, so changes made through their
+ * setters are visible right away and reported to the given listener.
+ */
+final class ObjectClothesStorage implements ClothesStorage {
+
+    private final List<Clothes> rows;
+    private final ClothesChangeListener listener;
+    private int removedCount;
+
+    /**
+     * Constructs an empty storage.
+     *
+     * @param expectedSize expected number of items
+     * @param listener     listener registered on every stored item
+     */
+    ObjectClothesStorage(int expectedSize, ClothesChangeListener listener) {
+        this.rows = new ArrayList<>(expectedSize);
+        this.listener = listener;
+    }
+
+    @Override
+    public int add(Clothes clothes) {
+        rows.add(clothes);
+        clothes.addChangeListener(listener);
+        return rows.size() - 1;
+    }
+
+    @Override
+    public Clothes get(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public void update(int row, Clothes clothes) {
+        Clothes previous = rows.get(row);
+        if (previous != clothes) {
+            previous.removeChangeListener(listener);
+            rows.set(row, clothes);
+            clothes.addChangeListener(listener);
+        }
+    }
+
+    @Override
+    public void remove(int row) {
+        Clothes removed = rows.set(row, null);
+        if (removed != null) {
+            removed.removeChangeListener(listener);
+            removedCount++;
+        }
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return rows.get(row) != null;
+    }
+
+    @Override
+    public int rowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int removedCount() {
+        return removedCount;
+    }
+
+    @Override
+    public void compact() {
+        rows.removeIf(Objects::isNull);
+        removedCount = 0;
+    }
+
+    @Override
+    public List<Clothes> toList() {
+        if (removedCount > 0) {
+            List<Clothes> live = new ArrayList<>(rows);
+            live.removeIf(Objects::isNull);
+            return Collections.unmodifiableList(live);
+        }
+        return Collections.unmodifiableList(rows);
+    }
+
+    @Override
+    public long uuidMostSignificantBits(int row) {
+        return rows.get(row).getUuid().getMostSignificantBits();
+    }
+
+    @Override
+    public long uuidLeastSignificantBits(int row) {
+        return rows.get(row).getUuid().getLeastSignificantBits();
+    }
+
+    @Override
+    public ClothesType type(int row) {
+        return rows.get(row).getType();
+    }
+
+    @Override
+    public AmericanSize americanSize(int row) {
+        return rows.get(row).getAmericanSize();
+    }
+
+    @Override
+    public int europeanSize(int row) {
+        return rows.get(row).getEuropeanSize();
+    }
+
+    @Override
+    public String color(int row) {
+        return rows.get(row).getColor();
+    }
+
+    @Override
+    public int colorCode(int row) {
+        return rows.get(row).getColorCode();
+    }
+
+    @Override
+    public HatType hatType(int row) {
+        return rows.get(row) instanceof Hat hat ? hat.getHatType() : null;
+    }
+
+    @Override
+    public SleeveLength sleeveLength(int row) {
+        return rows.get(row) instanceof Shirt shirt ? shirt.getSleeveLength() : null;
+    }
+
+    @Override
+    public SkirtLength skirtLength(int row) {
+        return rows.get(row) instanceof Skirt skirt ? skirt.getLength() : null;
+    }
+}
@@ -0,0 +1,199 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.enums.ClothesType;
+import org.bohdansharubin.models.Clothes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sorts rows by a combination of {@link ClothesOrder}s on packed primitive keys.
+ * <p>
+ * Every sorted attribute has a tiny domain: enum ordinals, European sizes
+ * 33..59 and the rank of a color among the distinct colors. The attributes
+ * of a row are packed into one {@code long}, the first ordering in the
+ * highest bits and the row in the lowest {@value #ROW_BITS} bits, and the
+ * keys are sorted with an LSD radix sort by bytes. Sorting takes a few
+ * linear passes over a primitive array, the row bits keep equal clothes in
+ * insertion order.
+ * <p>
+ * Orderings which do not fit into the key, such as uuid, fall back to a
+ * comparison sort.
+ */
+final class PackedKeySort {
+
+    private static final int ROW_BITS = 31;
+    private static final long ROW_MASK = (1L << ROW_BITS) - 1;
+    private static final int MAX_ATTRIBUTE_BITS = Long.SIZE - 1 - ROW_BITS;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+
+    private PackedKeySort() {
+    }
+
+    /**
+     * Returns live rows of the storage sorted by the given orderings, each next
+     * ordering breaking ties of the previous ones and insertion order breaking
+     * the rest.
+     *
+     * @param storage storage holding the rows
+     * @param orders  orderings from the most significant
+     * @return sorted rows
+     */
+    static int[] sortRows(ClothesStorage storage, List<ClothesOrder> orders) {
+        Map<String, Integer> colorRanks = orders.contains(ClothesOrder.COLOR) || orders.contains(ClothesOrder.NATURAL)
+                ? rankColors(storage)
+                : Map.of();
+        int[] bits = new int[orders.size()];
+        int totalBits = 0;
+        for (int i = 0; i < orders.size(); i++) {
+            bits[i] = bits(orders.get(i), colorRanks.size());
+            if (bits[i] < 0) {
+                return compareRows(storage, orders);
+            }
+            totalBits += bits[i];
+        }
+        if (totalBits > MAX_ATTRIBUTE_BITS) {
+            return compareRows(storage, orders);
+        }
+
+        long[] keys = new long[storage.rowCount() - storage.removedCount()];
+        int count = 0;
+        for (int row = 0; row < storage.rowCount(); row++) {
+            if (!storage.isLive(row)) {
+                continue;
+            }
+            long key = 0;
+            for (int i = 0; i < orders.size(); i++) {
+                key = (key << bits[i]) | value(orders.get(i), storage, row, colorRanks);
+            }
+            keys[count++] = (key << ROW_BITS) | row;
+        }
+        radixSort(keys, ROW_BITS + totalBits);
+
+        int[] rows = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            rows[i] = (int) (keys[i] & ROW_MASK);
+        }
+        return rows;
+    }
+
+    /**
+     * Sorts non-negative keys using only their lowest {@code bits} bits.
+     * Passes over a byte where all keys are equal are skipped.
+     */
+    static void radixSort(long[] keys, int bits) {
+        long[] buffer = new long[keys.length];
+        long[] source = keys;
+        long[] target = buffer;
+        int[] counts = new int[RADIX];
+        for (int shift = 0; shift < bits; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (long key : source) {
+                counts[(int) (key >>> shift) & (RADIX - 1)]++;
+            }
+            if (keys.length == 0 || counts[(int) (source[0] >>> shift) & (RADIX - 1)] == keys.length) {
+                continue;
+            }
+            int position = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int digitCount = counts[digit];
+                counts[digit] = position;
+                position += digitCount;
+            }
+            for (long key : source) {
+                target[counts[(int) (key >>> shift) & (RADIX - 1)]++] = key;
+            }
+            long[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != keys) {
+            System.arraycopy(source, 0, keys, 0, keys.length);
+        }
+    }
+
+    /**
+     * @return number of key bits of the ordering or -1 if it cannot be packed
+     */
+    private static int bits(ClothesOrder order, int distinctColors) {
+        return switch (order) {
+            case INSERTION -> 0;
+            case TYPE -> bitsFor(ClothesType.values().length);
+            case AMERICAN_SIZE -> bitsFor(AmericanSize.values().length);
+            case EUROPEAN_SIZE -> bitsFor(Clothes.MAX_EUROPEAN_SIZE - Clothes.MIN_EUROPEAN_SIZE + 1);
+            case COLOR -> bitsFor(distinctColors);
+            case NATURAL -> bitsFor(Clothes.MAX_EUROPEAN_SIZE - Clothes.MIN_EUROPEAN_SIZE + 1)
+                    + bitsFor(distinctColors);
+            case UUID -> -1;
+        };
+    }
+
+    private static long value(ClothesOrder order, ClothesStorage storage, int row, Map<String, Integer> colorRanks) {
+        return switch (order) {
+            case INSERTION -> 0;
+            case TYPE -> storage.type(row).ordinal();
+            case AMERICAN_SIZE -> storage.americanSize(row).ordinal();
+            case EUROPEAN_SIZE -> storage.europeanSize(row) - Clothes.MIN_EUROPEAN_SIZE;
+            case COLOR -> colorRanks.get(storage.color(row));
+            case NATURAL -> ((long) (storage.europeanSize(row) - Clothes.MIN_EUROPEAN_SIZE)
+                    << bitsFor(colorRanks.size())) | colorRanks.get(storage.color(row));
+            case UUID -> throw new IllegalStateException("uuid cannot be packed");
+        };
+    }
+
+    private static int bitsFor(int values) {
+        return values <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(values - 1);
+    }
+
+    /**
+     * Ranks distinct spellings of colors of the live rows, which may be more
+     * than distinct color codes since the color order compares spellings.
+     */
+    private static Map<String, Integer> rankColors(ClothesStorage storage) {
+        Set<String> distinct = new HashSet<>();
+        for (int row = 0; row < storage.rowCount(); row++) {
+            if (storage.isLive(row)) {
+                distinct.add(storage.color(row));
+            }
+        }
+        List<String> sorted = new ArrayList<>(distinct);
+        sorted.sort(Comparator.naturalOrder());
+        Map<String, Integer> ranks = new HashMap<>(sorted.size() * 2);
+        for (int i = 0; i < sorted.size(); i++) {
+            ranks.put(sorted.get(i), i);
+        }
+        return ranks;
+    }
+
+    /**
+     * Comparison sort used when the orderings do not fit into a packed key.
+     */
+    private static int[] compareRows(ClothesStorage storage, List<ClothesOrder> orders) {
+        Comparator<SortedViews.Key> comparator = (o1, o2) -> 0;
+        for (ClothesOrder order : orders) {
+            comparator = comparator.thenComparing(order.attributeComparator());
+        }
+        comparator = comparator.thenComparingInt(SortedViews.Key::row);
+        SortedViews.Key[] keys = new SortedViews.Key[storage.rowCount() - storage.removedCount()];
+        int count = 0;
+        for (int row = 0; row < storage.rowCount(); row++) {
+            if (storage.isLive(row)) {
+                keys[count++] = new SortedViews.Key(row, row, storage);
+            }
+        }
+        Arrays.sort(keys, comparator);
+        int[] rows = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            rows[i] = keys[i].row();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,103 @@
+package org.bohdansharubin.services;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Execution mode of scans and sorts in {@link ClothesService}.
+ * <p>
+ * In parallel mode every scan or sort over at least {@link #getThreshold()}
+ * clothes is split into fork-join tasks. Results are identical to the
+ * sequential mode, including their order. Smaller inputs always run
+ * sequentially, where the overhead of forking would outweigh the gain.
+ */
+public final class ParallelConfig {
+
+    /**
+     * Default minimal number of clothes to run in parallel.
+     */
+    public static final int DEFAULT_THRESHOLD = 50_000;
+
+    private static final ParallelConfig SEQUENTIAL = new ParallelConfig(null, Integer.MAX_VALUE);
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    private ParallelConfig(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return configuration running everything in the calling thread
+     */
+    public static ParallelConfig sequential() {
+        return SEQUENTIAL;
+    }
+
+    /**
+     * @return configuration running inputs of at least {@link #DEFAULT_THRESHOLD}
+     *         clothes in the common fork-join pool
+     */
+    public static ParallelConfig parallel() {
+        return parallel(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold minimal number of clothes to run in parallel (must be positive)
+     * @return configuration running large inputs in the common fork-join pool
+     * @throws IllegalArgumentException if threshold is not positive
+     */
+    public static ParallelConfig parallel(int threshold) {
+        return parallel(threshold, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param threshold minimal number of clothes to run in parallel (must be positive)
+     * @param pool      pool to run the tasks in (must not be null)
+     * @return configuration running large inputs in the given pool
+     * @throws IllegalArgumentException if threshold is not positive or pool is null
+     */
+    public static ParallelConfig parallel(int threshold, ForkJoinPool pool) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("pool must not be null");
+        }
+        return new ParallelConfig(pool, threshold);
+    }
+
+    /**
+     * @return {@code true} if large inputs run in parallel
+     */
+    public boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * @return minimal number of clothes to run in parallel
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param size number of clothes to process
+     * @return {@code true} if the input should be processed in parallel
+     */
+    boolean isParallelFor(int size) {
+        return pool != null && size >= threshold;
+    }
+
+    /**
+     * @return pool for the tasks, {@code null} in sequential mode
+     */
+    ForkJoinPool pool() {
+        return pool;
+    }
+
+    @Override
+    public String toString() {
+        return isParallel() ? "parallel(threshold=" + threshold + ")" : "sequential";
+    }
+}
@@ -0,0 +1,99 @@
+package org.bohdansharubin.services;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntPredicate;
+
+/**
+ * Filters a range of positions with fork-join tasks.
+ * <p>
+ * The range is split in halves down to segments of about a quarter of a
+ * thread's share. Every segment collects its matches into its own buffer
+ * and buffers are concatenated left to right, so matches keep ascending
+ * order without any synchronization.
+ */
+final class ParallelRowFilter {
+
+    private ParallelRowFilter() {
+    }
+
+    /**
+     * Returns positions in {@code [from, to)} accepted by the predicate.
+     *
+     * @param from      first position (inclusive)
+     * @param to        last position (exclusive)
+     * @param predicate test of a position, must be safe to call from several threads
+     * @param config    execution mode
+     * @return accepted positions in ascending order
+     */
+    static int[] filter(int from, int to, IntPredicate predicate, ParallelConfig config) {
+        int size = to - from;
+        if (!config.isParallelFor(size)) {
+            return filterSegment(from, to, predicate);
+        }
+        int segment = Math.max(1, size / (config.pool().getParallelism() * 4));
+        return config.pool().invoke(new FilterTask(from, to, segment, predicate));
+    }
+
+    /**
+     * Returns elements of the array accepted by the predicate.
+     *
+     * @param rows      rows to filter
+     * @param predicate test of a row, must be safe to call from several threads
+     * @param config    execution mode
+     * @return accepted rows in their original order
+     */
+    static int[] filter(int[] rows, IntPredicate predicate, ParallelConfig config) {
+        int[] positions = filter(0, rows.length, position -> predicate.test(rows[position]), config);
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = rows[positions[i]];
+        }
+        return positions;
+    }
+
+    private static int[] filterSegment(int from, int to, IntPredicate predicate) {
+        int[] result = new int[Math.min(to - from, 16)];
+        int count = 0;
+        for (int position = from; position < to; position++) {
+            if (predicate.test(position)) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, Math.min(to - from, result.length * 2));
+                }
+                result[count++] = position;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private static final class FilterTask extends RecursiveTask<int[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int segment;
+        private final IntPredicate predicate;
+
+        FilterTask(int from, int to, int segment, IntPredicate predicate) {
+            this.from = from;
+            this.to = to;
+            this.segment = segment;
+            this.predicate = predicate;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= segment) {
+                return filterSegment(from, to, predicate);
+            }
+            int middle = (from + to) >>> 1;
+            FilterTask left = new FilterTask(from, middle, segment, predicate);
+            left.fork();
+            int[] right = new FilterTask(middle, to, segment, predicate).compute();
+            int[] leftResult = left.join();
+            int[] merged = Arrays.copyOf(leftResult, leftResult.length + right.length);
+            System.arraycopy(right, 0, merged, leftResult.length, right.length);
+            return merged;
+        }
+    }
+}
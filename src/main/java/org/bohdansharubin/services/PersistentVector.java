@@ -0,0 +1,163 @@
+package org.bohdansharubin.services;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Immutable vector with cheap modified copies.
+ * <p>
+ * Elements are kept in the leaves of a 32-way trie indexed by the bits of
+ * the position. {@link #set} and {@link #append} copy only the path from the
+ * root to one leaf, at most seven arrays of 32 references, and share all
+ * other nodes with the original vector. Old versions stay valid and are
+ * reclaimed by the garbage collector once nothing refers to them.
+ *
+ * @param <T> type of the elements
+ */
+final class PersistentVector<T> {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final PersistentVector<?> EMPTY = new PersistentVector<>(new Object[WIDTH], 0, 0);
+
+    private final Object[] root;
+    private final int shift;
+    private final int size;
+
+    private PersistentVector(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    /**
+     * @param <T> type of the elements
+     * @return empty vector
+     */
+    @SuppressWarnings("unchecked")
+    static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    /**
+     * Builds a vector bottom-up in linear time.
+     *
+     * @param elements elements of the vector, may contain {@code null}
+     * @param <T>      type of the elements
+     * @return vector with the given elements
+     */
+    static <T> PersistentVector<T> of(List<? extends T> elements) {
+        if (elements.isEmpty()) {
+            return empty();
+        }
+        Object[][] level = new Object[(elements.size() + MASK) >>> BITS][];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = new Object[WIDTH];
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            level[i >>> BITS][i & MASK] = elements.get(i);
+        }
+        int shift = 0;
+        while (level.length > 1) {
+            Object[][] parents = new Object[(level.length + MASK) >>> BITS][];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = new Object[WIDTH];
+            }
+            for (int i = 0; i < level.length; i++) {
+                parents[i >>> BITS][i & MASK] = level[i];
+            }
+            level = parents;
+            shift += BITS;
+        }
+        return new PersistentVector<>(level[0], shift, elements.size());
+    }
+
+    /**
+     * @return number of elements
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index position of the element
+     * @return the element
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    @SuppressWarnings("unchecked")
+    T get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return (T) node[index & MASK];
+    }
+
+    /**
+     * @param index   position of the element
+     * @param element new element, may be {@code null}
+     * @return copy of this vector with the element replaced
+     * @throws IndexOutOfBoundsException if index is out of range
+     */
+    PersistentVector<T> set(int index, T element) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return new PersistentVector<>(set(root, shift, index, element), shift, size);
+    }
+
+    /**
+     * @param element element to append, may be {@code null}
+     * @return copy of this vector with the element added at the end
+     */
+    PersistentVector<T> append(T element) {
+        Object[] newRoot = root;
+        int newShift = shift;
+        if (size == 1 << (shift + BITS)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newShift += BITS;
+        }
+        return new PersistentVector<>(set(newRoot, newShift, size, element), newShift, size + 1);
+    }
+
+    /**
+     * Passes elements to the action in index order.
+     *
+     * @param action action for every element, including {@code null} ones
+     */
+    void forEach(Consumer<? super T> action) {
+        forEach(root, shift, 0, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEach(Object[] node, int level, int offset, Consumer<? super T> action) {
+        for (int i = 0; i < WIDTH; i++) {
+            int index = offset + (i << level);
+            if (index >= size) {
+                return;
+            }
+            if (level == 0) {
+                action.accept((T) node[i]);
+            } else {
+                forEach((Object[]) node[i], level - BITS, index, action);
+            }
+        }
+    }
+
+    private static Object[] set(Object[] node, int level, int index, Object element) {
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        int slot = (index >>> level) & MASK;
+        if (level == 0) {
+            copy[slot] = element;
+        } else {
+            copy[slot] = set((Object[]) copy[slot], level - BITS, index, element);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,131 @@
+package org.bohdansharubin.services;
+
+import java.util.Arrays;
+
+/**
+ * Growable, ascending list of distinct row numbers.
+ * <p>
+ * Rows are appended in increasing order by the service, so adding is
+ * amortized constant time; removal locates the row with a binary search.
+ */
+final class PostingList {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] rows;
+    private int size;
+
+    /**
+     * Constructs an empty list.
+     */
+    PostingList() {
+        this(new int[INITIAL_CAPACITY], 0);
+    }
+
+    private PostingList(int[] rows, int size) {
+        this.rows = rows;
+        this.size = size;
+    }
+
+    /**
+     * Creates a list of the given rows, e.g. read from a {@link ClothesIndexFile}.
+     *
+     * @param rows distinct rows in ascending order, the array is used by the list
+     * @return the list
+     */
+    static PostingList of(int[] rows) {
+        return rows.length == 0 ? new PostingList() : new PostingList(rows, rows.length);
+    }
+
+    /**
+     * @return number of rows in the list
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return {@code true} if the list holds no rows
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index position in the list
+     * @return row stored at the given position
+     */
+    int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return rows[index];
+    }
+
+    /**
+     * Adds a row keeping the list sorted. Adding a row already present
+     * does nothing.
+     *
+     * @param row non-negative row number
+     */
+    void add(int row) {
+        if (size == 0 || rows[size - 1] < row) {
+            ensureCapacity(size + 1);
+            rows[size++] = row;
+            return;
+        }
+        int position = Arrays.binarySearch(rows, 0, size, row);
+        if (position >= 0) {
+            return;
+        }
+        int insertion = -position - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(rows, insertion, rows, insertion + 1, size - insertion);
+        rows[insertion] = row;
+        size++;
+    }
+
+    /**
+     * Removes a row from the list.
+     *
+     * @param row the row to remove
+     * @return {@code true} if the row was present
+     */
+    boolean remove(int row) {
+        int position = Arrays.binarySearch(rows, 0, size, row);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(rows, position + 1, rows, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * @param row the row to look for
+     * @return {@code true} if the row is present
+     */
+    boolean contains(int row) {
+        return Arrays.binarySearch(rows, 0, size, row) >= 0;
+    }
+
+    /**
+     * Removes all rows, keeping the allocated capacity.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return copy of the rows in ascending order
+     */
+    int[] toArray() {
+        return Arrays.copyOf(rows, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(capacity, rows.length + (rows.length >> 1)));
+        }
+    }
+}
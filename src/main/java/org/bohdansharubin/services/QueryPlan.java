@@ -0,0 +1,126 @@
+package org.bohdansharubin.services;
+
+import java.util.List;
+
+import static org.bohdansharubin.views.View.LINE_SEPARATOR;
+
+/**
+ * Execution plan chosen by the planner of {@link ClothesService} for a
+ * {@link ClothesQuery}.
+ * <p>
+ * Returned by {@link ClothesService#explain(ClothesQuery)} together with the
+ * number of rows the query actually produced, so estimates can be compared
+ * with reality.
+ */
+public final class QueryPlan {
+
+    /**
+     * Way the rows of a query are found.
+     */
+    public enum AccessPath {
+
+        /** A condition matches no rows, nothing is read */
+        EMPTY,
+
+        /** Rows of the most selective condition are read from its index and filtered by the others */
+        INDEX_SCAN,
+
+        /** Bitmaps of all conditions are intersected */
+        BITMAP_INTERSECTION,
+
+        /** Every row of the storage is tested */
+        FULL_SCAN
+    }
+
+    private final AccessPath accessPath;
+    private final QueryPredicate driver;
+    private final List<QueryPredicate> predicates;
+    private final int[] predicateEstimates;
+    private final int catalogSize;
+    private final long estimatedRows;
+    private final double estimatedCost;
+    private int actualRows = -1;
+
+    QueryPlan(AccessPath accessPath, QueryPredicate driver, List<QueryPredicate> predicates,
+              int[] predicateEstimates, int catalogSize, long estimatedRows, double estimatedCost) {
+        this.accessPath = accessPath;
+        this.driver = driver;
+        this.predicates = predicates;
+        this.predicateEstimates = predicateEstimates;
+        this.catalogSize = catalogSize;
+        this.estimatedRows = estimatedRows;
+        this.estimatedCost = estimatedCost;
+    }
+
+    /**
+     * @return chosen access path
+     */
+    public AccessPath getAccessPath() {
+        return accessPath;
+    }
+
+    /**
+     * @return estimated number of result rows
+     */
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    /**
+     * @return estimated cost in rows visited
+     */
+    public double getEstimatedCost() {
+        return estimatedCost;
+    }
+
+    /**
+     * @return number of rows produced by the query or -1 if it was not executed
+     */
+    public int getActualRows() {
+        return actualRows;
+    }
+
+    /**
+     * @return predicate whose index drives an {@link AccessPath#INDEX_SCAN}, otherwise {@code null}
+     */
+    QueryPredicate driver() {
+        return driver;
+    }
+
+    /**
+     * @return predicates ordered from the most to the least selective
+     */
+    List<QueryPredicate> predicates() {
+        return predicates;
+    }
+
+    void setActualRows(int actualRows) {
+        this.actualRows = actualRows;
+    }
+
+    /**
+     * Returns readable description of the plan with per-condition estimates.
+     *
+     * @return plan description
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(accessPath);
+        if (driver != null) {
+            sb.append(" using ").append(driver);
+        }
+        sb.append(" over ").append(catalogSize).append(" clothes")
+                .append(LINE_SEPARATOR);
+        for (int i = 0; i < predicates.size(); i++) {
+            sb.append("  ").append(predicates.get(i))
+                    .append(": estimated ").append(predicateEstimates[i]).append(" rows")
+                    .append(LINE_SEPARATOR);
+        }
+        sb.append("  estimated cost ").append(String.format("%.1f", estimatedCost))
+                .append(", estimated rows ").append(estimatedRows)
+                .append(", actual rows ").append(actualRows < 0 ? "n/a" : String.valueOf(actualRows))
+                .append(LINE_SEPARATOR);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,172 @@
+package org.bohdansharubin.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cost-based planner and executor of {@link ClothesQuery}.
+ * <p>
+ * The cardinality of every condition is read from the indexes, which the
+ * service keeps exact on every add, update and delete. Conditions are then
+ * ordered by selectivity and the cheapest of three access paths is chosen:
+ * <ul>
+ *     <li>full scan - every row is visited once, sequentially;</li>
+ *     <li>index scan - only rows of the most selective condition are visited,
+ *     but each visit is a random access;</li>
+ *     <li>bitmap intersection - bitmaps of all conditions are combined word by
+ *     word and only result rows are visited.</li>
+ * </ul>
+ * Result rows are always returned in row order.
+ */
+final class QueryPlanner {
+
+    /**
+     * Cost of testing one row during a sequential scan.
+     */
+    static final double SCAN_ROW_COST = 1.0;
+
+    /**
+     * Cost of reading one row by position from an index.
+     */
+    static final double INDEX_ROW_COST = 2.0;
+
+    /**
+     * Cost of one bitmap row in an intersection, amortized over 64-bit words.
+     */
+    static final double BITMAP_ROW_COST = 0.1;
+
+    private final ClothesStorage storage;
+    private final ClothesIndexes indexes;
+
+    /**
+     * @param storage storage holding the rows
+     * @param indexes indexes over the storage
+     */
+    QueryPlanner(ClothesStorage storage, ClothesIndexes indexes) {
+        this.storage = storage;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Chooses the cheapest plan for the query.
+     *
+     * @param query the query to plan
+     * @return plan of the query
+     */
+    QueryPlan plan(ClothesQuery query) {
+        int catalogSize = indexes.size();
+        List<QueryPredicate> predicates = new ArrayList<>(query.predicates());
+        int[] estimates = new int[predicates.size()];
+        Integer[] order = new Integer[predicates.size()];
+        for (int i = 0; i < predicates.size(); i++) {
+            estimates[i] = predicates.get(i).estimateRows(indexes);
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> estimates[i]));
+        List<QueryPredicate> ordered = new ArrayList<>(predicates.size());
+        int[] orderedEstimates = new int[predicates.size()];
+        for (int i = 0; i < order.length; i++) {
+            ordered.add(predicates.get(order[i]));
+            orderedEstimates[i] = estimates[order[i]];
+        }
+
+        long estimatedRows = estimateResult(catalogSize, orderedEstimates);
+        double scanCost = catalogSize * SCAN_ROW_COST;
+        if (ordered.isEmpty()) {
+            return new QueryPlan(QueryPlan.AccessPath.FULL_SCAN, null, ordered, orderedEstimates,
+                    catalogSize, catalogSize, scanCost);
+        }
+        if (orderedEstimates[0] == 0) {
+            return new QueryPlan(QueryPlan.AccessPath.EMPTY, null, ordered, orderedEstimates,
+                    catalogSize, 0, 0);
+        }
+
+        double indexCost = orderedEstimates[0] * INDEX_ROW_COST;
+        double bitmapCost = Double.MAX_VALUE;
+        if (ordered.size() > 1 && ordered.stream().allMatch(QueryPredicate::hasBitmap)) {
+            long bitmapRows = 0;
+            for (int estimate : orderedEstimates) {
+                bitmapRows += estimate;
+            }
+            bitmapCost = bitmapRows * BITMAP_ROW_COST + estimatedRows * INDEX_ROW_COST;
+        }
+
+        if (scanCost <= indexCost && scanCost <= bitmapCost) {
+            return new QueryPlan(QueryPlan.AccessPath.FULL_SCAN, null, ordered, orderedEstimates,
+                    catalogSize, estimatedRows, scanCost);
+        }
+        if (bitmapCost < indexCost) {
+            return new QueryPlan(QueryPlan.AccessPath.BITMAP_INTERSECTION, null, ordered, orderedEstimates,
+                    catalogSize, estimatedRows, bitmapCost);
+        }
+        return new QueryPlan(QueryPlan.AccessPath.INDEX_SCAN, ordered.get(0), ordered, orderedEstimates,
+                catalogSize, estimatedRows, indexCost);
+    }
+
+    /**
+     * Executes the plan.
+     * <p>
+     * Scans and residual filters of large inputs run as fork-join tasks
+     * when the given configuration allows it, with the same result.
+     *
+     * @param plan   plan created by this planner
+     * @param config execution mode of scans
+     * @return matching rows in ascending order
+     */
+    int[] execute(QueryPlan plan, ParallelConfig config) {
+        List<QueryPredicate> predicates = plan.predicates();
+        int[] rows = switch (plan.getAccessPath()) {
+            case EMPTY -> new int[0];
+            case FULL_SCAN -> scan(predicates, config);
+            case INDEX_SCAN -> filter(plan.driver().indexRows(indexes), predicates.subList(1, predicates.size()), config);
+            case BITMAP_INTERSECTION -> intersect(predicates);
+        };
+        plan.setActualRows(rows.length);
+        return rows;
+    }
+
+    private int[] scan(List<QueryPredicate> predicates, ParallelConfig config) {
+        return ParallelRowFilter.filter(0, storage.rowCount(),
+                row -> storage.isLive(row) && matchesAll(predicates, row), config);
+    }
+
+    private int[] filter(int[] rows, List<QueryPredicate> residual, ParallelConfig config) {
+        if (residual.isEmpty()) {
+            return rows;
+        }
+        return ParallelRowFilter.filter(rows, row -> matchesAll(residual, row), config);
+    }
+
+    private int[] intersect(List<QueryPredicate> predicates) {
+        CompressedBitmap result = predicates.get(0).bitmap(indexes);
+        for (int i = 1; i < predicates.size() && !result.isEmpty(); i++) {
+            result = result.and(predicates.get(i).bitmap(indexes));
+        }
+        return result.toArray();
+    }
+
+    private boolean matchesAll(List<QueryPredicate> predicates, int row) {
+        for (QueryPredicate predicate : predicates) {
+            if (!predicate.matches(storage, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates result size assuming conditions are independent.
+     */
+    private static long estimateResult(int catalogSize, int[] estimates) {
+        if (catalogSize == 0) {
+            return 0;
+        }
+        double rows = catalogSize;
+        for (int estimate : estimates) {
+            rows *= (double) estimate / catalogSize;
+        }
+        return Math.round(rows);
+    }
+}
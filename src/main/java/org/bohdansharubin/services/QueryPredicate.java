@@ -0,0 +1,174 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.models.ColorDictionary;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Single attribute condition of a {@link ClothesQuery}.
+ * <p>
+ * Besides testing a row, a predicate knows how to estimate the number of
+ * matching rows from the indexes and how to read its rows from the index
+ * serving its attribute, which is what the {@link QueryPlanner} needs to
+ * compare access paths.
+ */
+final class QueryPredicate {
+
+    /**
+     * Tests a single stored row.
+     */
+    @FunctionalInterface
+    interface RowMatcher {
+        boolean matches(ClothesStorage storage, int row);
+    }
+
+    private final String description;
+    private final ToIntFunction<ClothesIndexes> estimator;
+    private final Function<ClothesIndexes, int[]> indexRows;
+    private final Function<ClothesIndexes, CompressedBitmap> bitmap;
+    private final RowMatcher matcher;
+
+    private QueryPredicate(String description,
+                           ToIntFunction<ClothesIndexes> estimator,
+                           Function<ClothesIndexes, int[]> indexRows,
+                           Function<ClothesIndexes, CompressedBitmap> bitmap,
+                           RowMatcher matcher) {
+        this.description = description;
+        this.estimator = estimator;
+        this.indexRows = indexRows;
+        this.bitmap = bitmap;
+        this.matcher = matcher;
+    }
+
+    static QueryPredicate uuid(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        return new QueryPredicate("uuid=" + uuid,
+                indexes -> indexes.uuids.contains(uuid) ? 1 : 0,
+                indexes -> {
+                    int row = indexes.uuids.get(uuid);
+                    return row == UuidIndex.ABSENT ? new int[0] : new int[] {row};
+                },
+                null,
+                (storage, row) -> storage.uuidMostSignificantBits(row) == msb
+                        && storage.uuidLeastSignificantBits(row) == lsb);
+    }
+
+    static QueryPredicate type(ClothesType type) {
+        return new QueryPredicate("type=" + type,
+                indexes -> indexes.types.count(type),
+                indexes -> rowsOf(indexes.types.get(type)),
+                indexes -> indexes.bitmaps.type(type),
+                (storage, row) -> storage.type(row) == type);
+    }
+
+    static QueryPredicate americanSize(AmericanSize size) {
+        return new QueryPredicate("americanSize=" + size,
+                indexes -> indexes.americanSizes.count(size),
+                indexes -> rowsOf(indexes.americanSizes.get(size)),
+                indexes -> indexes.bitmaps.americanSize(size),
+                (storage, row) -> storage.americanSize(row) == size);
+    }
+
+    static QueryPredicate color(String color) {
+        IntSupplier colorCode = ClothesIndexes.colorCode(color);
+        return new QueryPredicate("color=" + color,
+                indexes -> indexes.colors.count(ClothesIndexes.colorKey(colorCode.getAsInt())),
+                indexes -> rowsOf(indexes.colors.get(ClothesIndexes.colorKey(colorCode.getAsInt()))),
+                indexes -> indexes.bitmaps.color(colorCode.getAsInt()),
+                (storage, row) -> {
+                    int code = colorCode.getAsInt();
+                    return code != ColorDictionary.NO_CODE && storage.colorCode(row) == code;
+                });
+    }
+
+    static QueryPredicate europeanSizeBetween(int min, int max) {
+        return new QueryPredicate("europeanSize in (" + min + ", " + max + "]",
+                indexes -> indexes.europeanSizes.countBetween(min, max),
+                indexes -> {
+                    int[] rows = indexes.europeanSizes.rowsBetween(min, max);
+                    Arrays.sort(rows);
+                    return rows;
+                },
+                indexes -> indexes.bitmaps.europeanSizeBetween(min, max),
+                (storage, row) -> storage.europeanSize(row) > min && storage.europeanSize(row) <= max);
+    }
+
+    static QueryPredicate hatType(HatType hatType) {
+        return new QueryPredicate("hatType=" + hatType,
+                indexes -> indexes.bitmaps.hatType(hatType).cardinality(),
+                indexes -> indexes.bitmaps.hatType(hatType).toArray(),
+                indexes -> indexes.bitmaps.hatType(hatType),
+                (storage, row) -> storage.hatType(row) == hatType);
+    }
+
+    static QueryPredicate sleeveLength(SleeveLength sleeveLength) {
+        return new QueryPredicate("sleeveLength=" + sleeveLength,
+                indexes -> indexes.bitmaps.sleeveLength(sleeveLength).cardinality(),
+                indexes -> indexes.bitmaps.sleeveLength(sleeveLength).toArray(),
+                indexes -> indexes.bitmaps.sleeveLength(sleeveLength),
+                (storage, row) -> storage.sleeveLength(row) == sleeveLength);
+    }
+
+    static QueryPredicate skirtLength(SkirtLength skirtLength) {
+        return new QueryPredicate("skirtLength=" + skirtLength,
+                indexes -> indexes.bitmaps.skirtLength(skirtLength).cardinality(),
+                indexes -> indexes.bitmaps.skirtLength(skirtLength).toArray(),
+                indexes -> indexes.bitmaps.skirtLength(skirtLength),
+                (storage, row) -> storage.skirtLength(row) == skirtLength);
+    }
+
+    /**
+     * @param indexes current indexes
+     * @return number of rows matching the predicate according to the indexes
+     */
+    int estimateRows(ClothesIndexes indexes) {
+        return estimator.applyAsInt(indexes);
+    }
+
+    /**
+     * @param indexes current indexes
+     * @return matching rows in ascending order read from the index
+     */
+    int[] indexRows(ClothesIndexes indexes) {
+        return indexRows.apply(indexes);
+    }
+
+    /**
+     * @return {@code true} if the predicate can be evaluated as a bitmap
+     */
+    boolean hasBitmap() {
+        return bitmap != null;
+    }
+
+    /**
+     * @param indexes current indexes
+     * @return bitmap of matching rows; must not be modified
+     */
+    CompressedBitmap bitmap(ClothesIndexes indexes) {
+        return bitmap.apply(indexes);
+    }
+
+    /**
+     * @param storage storage holding the row
+     * @param row     a live row
+     * @return {@code true} if the row matches the predicate
+     */
+    boolean matches(ClothesStorage storage, int row) {
+        return matcher.matches(storage, row);
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    private static int[] rowsOf(PostingList list) {
+        return list == null ? new int[0] : list.toArray();
+    }
+}
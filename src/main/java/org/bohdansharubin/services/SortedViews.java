@@ -0,0 +1,255 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.enums.ClothesType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Sorted views of the rows for every {@link ClothesOrder}.
+ * <p>
+ * A view is a red-black tree of small keys holding the sorted attributes
+ * of a row, so inserting, removing or moving a row costs O(log n) per view
+ * and a sorted read is an in-order walk. Views are created on the first read
+ * of their ordering and maintained from then on, orderings nobody asks for
+ * cost nothing.
+ * <p>
+ * Ties are broken by an insertion sequence instead of the row. It orders
+ * rows the same way, but unlike rows it survives compaction, so keys taken
+ * as page cursors stay valid.
+ */
+final class SortedViews {
+
+    /**
+     * Sorted attributes of one row.
+     * <p>
+     * All attributes but the row are immutable. The row is renumbered in place
+     * on compaction, it is not part of any ordering.
+     */
+    static final class Key {
+
+        private int row;
+        private final long sequence;
+        private final ClothesType type;
+        private final String color;
+        private final AmericanSize americanSize;
+        private final int europeanSize;
+        private final long msb;
+        private final long lsb;
+
+        Key(int row, long sequence, ClothesStorage storage) {
+            this.row = row;
+            this.sequence = sequence;
+            this.type = storage.type(row);
+            this.color = storage.color(row);
+            this.americanSize = storage.americanSize(row);
+            this.europeanSize = storage.europeanSize(row);
+            this.msb = storage.uuidMostSignificantBits(row);
+            this.lsb = storage.uuidLeastSignificantBits(row);
+        }
+
+        int row() {
+            return row;
+        }
+
+        long sequence() {
+            return sequence;
+        }
+
+        ClothesType type() {
+            return type;
+        }
+
+        String color() {
+            return color;
+        }
+
+        AmericanSize americanSize() {
+            return americanSize;
+        }
+
+        int europeanSize() {
+            return europeanSize;
+        }
+
+        long msb() {
+            return msb;
+        }
+
+        long lsb() {
+            return lsb;
+        }
+    }
+
+    private final Map<ClothesOrder, TreeSet<Key>> views = new EnumMap<>(ClothesOrder.class);
+
+    /**
+     * Key of every indexed row, {@code null} while no view exists.
+     */
+    private Key[] keys;
+
+    /**
+     * Insertion sequence of every row below {@link #sequencedRows}.
+     */
+    private long[] sequences;
+    private int sequencedRows;
+    private long nextSequence;
+
+    /**
+     * Adds the row to the existing views.
+     * <p>
+     * A row seen for the first time gets the next insertion sequence,
+     * a changed row keeps its sequence.
+     *
+     * @param storage storage holding the row
+     * @param row     a live row
+     */
+    void add(ClothesStorage storage, int row) {
+        if (keys == null) {
+            return;
+        }
+        if (row >= keys.length) {
+            int capacity = Math.max(row + 1, keys.length * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            sequences = Arrays.copyOf(sequences, capacity);
+        }
+        while (sequencedRows <= row) {
+            sequences[sequencedRows++] = nextSequence++;
+        }
+        Key key = new Key(row, sequences[row], storage);
+        keys[row] = key;
+        for (TreeSet<Key> view : views.values()) {
+            view.add(key);
+        }
+    }
+
+    /**
+     * Removes the row from the existing views.
+     *
+     * @param row an indexed row
+     */
+    void remove(int row) {
+        if (keys == null || row >= keys.length || keys[row] == null) {
+            return;
+        }
+        Key key = keys[row];
+        keys[row] = null;
+        for (TreeSet<Key> view : views.values()) {
+            view.remove(key);
+        }
+    }
+
+    /**
+     * Renumbers the rows after the storage was compacted.
+     * <p>
+     * Compaction keeps the relative order of live rows, so the remaining keys
+     * are moved down in row order. The trees do not depend on rows and stay
+     * untouched.
+     */
+    void compact() {
+        if (keys == null) {
+            return;
+        }
+        int live = 0;
+        for (int row = 0; row < sequencedRows; row++) {
+            Key key = keys[row];
+            if (key != null) {
+                key.row = live;
+                keys[live] = key;
+                sequences[live] = key.sequence;
+                live++;
+            }
+        }
+        Arrays.fill(keys, live, keys.length, null);
+        sequencedRows = live;
+    }
+
+    /**
+     * Returns live rows of the storage in the given order, creating the view
+     * on the first call.
+     *
+     * @param storage storage holding the rows
+     * @param order   the ordering
+     * @return rows in the given order
+     */
+    int[] rows(ClothesStorage storage, ClothesOrder order) {
+        TreeSet<Key> view = view(storage, order);
+        int[] rows = new int[view.size()];
+        int i = 0;
+        for (Key key : view) {
+            rows[i++] = key.row();
+        }
+        return rows;
+    }
+
+    /**
+     * Returns at most {@code limit} keys following the given key in the given order.
+     * <p>
+     * The key does not need to be present in the view any more, the page starts
+     * where it would be.
+     *
+     * @param storage storage holding the rows
+     * @param order   the ordering
+     * @param after   key to start after, or {@code null} to start from the first row
+     * @param limit   maximum number of keys
+     * @return keys of the page in order
+     */
+    List<Key> page(ClothesStorage storage, ClothesOrder order, Key after, int limit) {
+        TreeSet<Key> view = view(storage, order);
+        NavigableSet<Key> tail = after == null ? view : view.tailSet(after, false);
+        List<Key> page = new ArrayList<>(Math.min(limit, tail.size()));
+        Iterator<Key> iterator = tail.iterator();
+        while (page.size() < limit && iterator.hasNext()) {
+            page.add(iterator.next());
+        }
+        return page;
+    }
+
+    /**
+     * @param storage storage holding the rows
+     * @param order   the ordering
+     * @param key     a key of the view
+     * @return {@code true} if there are rows after the key in the given order
+     */
+    boolean hasAfter(ClothesStorage storage, ClothesOrder order, Key key) {
+        return view(storage, order).higher(key) != null;
+    }
+
+    private TreeSet<Key> view(ClothesStorage storage, ClothesOrder order) {
+        TreeSet<Key> view = views.get(order);
+        if (view == null) {
+            view = createView(storage, order);
+        }
+        return view;
+    }
+
+    private TreeSet<Key> createView(ClothesStorage storage, ClothesOrder order) {
+        if (keys == null) {
+            int capacity = Math.max(16, storage.rowCount());
+            keys = new Key[capacity];
+            sequences = new long[capacity];
+            for (int row = 0; row < storage.rowCount(); row++) {
+                sequences[row] = nextSequence++;
+                if (storage.isLive(row)) {
+                    keys[row] = new Key(row, sequences[row], storage);
+                }
+            }
+            sequencedRows = storage.rowCount();
+        }
+        TreeSet<Key> view = new TreeSet<>(order.comparator());
+        for (int row = 0; row < sequencedRows; row++) {
+            if (keys[row] != null) {
+                view.add(keys[row]);
+            }
+        }
+        views.put(order, view);
+        return view;
+    }
+}
@@ -0,0 +1,16 @@
+package org.bohdansharubin.services;
+
+/**
+ * Layout used by {@link ClothesService} to store its catalog in memory.
+ */
+public enum StorageMode {
+
+    /** Every item is kept as its own {@link org.bohdansharubin.models.Clothes} object */
+    OBJECTS,
+
+    /**
+     * Items are kept as primitive columns and materialized
+     * as {@link org.bohdansharubin.models.Clothes} objects on demand
+     */
+    COLUMNAR
+}
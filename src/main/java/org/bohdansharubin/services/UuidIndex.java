@@ -0,0 +1,322 @@
+package org.bohdansharubin.services;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Open-addressing hash index from {@link UUID} to an {@code int} row number.
+ * <p>
+ * Keys are stored directly as their most and least significant {@code long}
+ * halves in parallel primitive arrays, so the index allocates neither boxed
+ * {@link UUID} keys nor per-entry node objects. Collisions are resolved with
+ * linear probing and removals use backward-shift deletion, which keeps probe
+ * sequences short without tombstones.
+ */
+final class UuidIndex {
+
+    /**
+     * Marker stored in {@link #rows} for a free slot.
+     */
+    static final int ABSENT = -1;
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] msbs;
+    private long[] lsbs;
+    private int[] rows;
+    private int mask;
+    private int size;
+
+    /**
+     * Constructs an empty index.
+     */
+    UuidIndex() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty index able to hold the given number of entries
+     * without resizing.
+     *
+     * @param expectedSize expected number of entries
+     */
+    UuidIndex(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private UuidIndex(long[] msbs, long[] lsbs, int[] rows, int size) {
+        this.msbs = msbs;
+        this.lsbs = lsbs;
+        this.rows = rows;
+        this.mask = rows.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * Writes the table with every row replaced by its position.
+     * <p>
+     * The layout of the slots is kept, so reading the table back needs no
+     * hashing. Only if some rows have no position the entries are hashed
+     * into a new table first.
+     *
+     * @param out the output
+     * @throws IOException if writing fails
+     */
+    void writeTo(ClothesIndexFile.Output out) throws IOException {
+        int[] positions = new int[rows.length];
+        int count = 0;
+        for (int slot = 0; slot < rows.length; slot++) {
+            positions[slot] = rows[slot] == ABSENT ? ABSENT : out.position(rows[slot]);
+            if (positions[slot] != ABSENT) {
+                count++;
+            }
+        }
+        if (count < size) {
+            UuidIndex index = new UuidIndex(count);
+            for (int slot = 0; slot < rows.length; slot++) {
+                if (positions[slot] != ABSENT) {
+                    index.put(msbs[slot], lsbs[slot], positions[slot]);
+                }
+            }
+            index.writeTo(out, index.rows, count);
+        } else {
+            writeTo(out, positions, count);
+        }
+    }
+
+    private void writeTo(ClothesIndexFile.Output out, int[] slotRows, int count) throws IOException {
+        out.writeInt(slotRows.length);
+        out.writeInt(count);
+        out.writeLongs(msbs);
+        out.writeLongs(lsbs);
+        out.writeInts(slotRows, slotRows.length);
+    }
+
+    /**
+     * Reads a table written by {@link #writeTo(ClothesIndexFile.Output)}.
+     *
+     * @param in the input
+     * @return the index
+     * @throws IOException if the table is corrupted
+     */
+    static UuidIndex readFrom(ClothesIndexFile.Input in) throws IOException {
+        int capacity = in.readInt();
+        int size = in.readInt();
+        if (capacity < MIN_CAPACITY || Integer.bitCount(capacity) != 1 || size < 0 || size * 2L > capacity) {
+            throw new IOException("Index file is corrupted");
+        }
+        long[] msbs = in.readLongs(capacity);
+        long[] lsbs = in.readLongs(capacity);
+        int[] rows = in.readInts(capacity);
+        int count = 0;
+        for (int row : rows) {
+            if (row != ABSENT) {
+                if (row < 0 || row >= in.rowCount()) {
+                    throw new IOException("Index file is corrupted");
+                }
+                count++;
+            }
+        }
+        if (count != size) {
+            throw new IOException("Index file is corrupted");
+        }
+        return new UuidIndex(msbs, lsbs, rows, size);
+    }
+
+    /**
+     * @return number of entries in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the row stored for the given uuid.
+     *
+     * @param uuid the key, may be {@code null}
+     * @return the row or {@link #ABSENT} if the key is not present
+     */
+    int get(UUID uuid) {
+        if (uuid == null) {
+            return ABSENT;
+        }
+        return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * Returns the row stored for the uuid given by its two halves.
+     *
+     * @param msb most significant bits of the uuid
+     * @param lsb least significant bits of the uuid
+     * @return the row or {@link #ABSENT} if the key is not present
+     */
+    int get(long msb, long lsb) {
+        int slot = hash(msb, lsb) & mask;
+        while (rows[slot] != ABSENT) {
+            if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                return rows[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ABSENT;
+    }
+
+    /**
+     * @param uuid the key, may be {@code null}
+     * @return {@code true} if the index contains the key
+     */
+    boolean contains(UUID uuid) {
+        return get(uuid) != ABSENT;
+    }
+
+    /**
+     * Associates the uuid with the given row.
+     *
+     * @param uuid the key (must not be null)
+     * @param row  non-negative row number
+     * @return the previous row of the key or {@link #ABSENT}
+     */
+    int put(UUID uuid, int row) {
+        return put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), row);
+    }
+
+    /**
+     * Associates the uuid given by its two halves with the given row.
+     *
+     * @param msb most significant bits of the uuid
+     * @param lsb least significant bits of the uuid
+     * @param row non-negative row number
+     * @return the previous row of the key or {@link #ABSENT}
+     */
+    int put(long msb, long lsb, int row) {
+        if (row < 0) {
+            throw new IllegalArgumentException("row must not be negative");
+        }
+        if ((size + 1) * 2 > rows.length) {
+            resize(rows.length * 2);
+        }
+        int slot = hash(msb, lsb) & mask;
+        while (rows[slot] != ABSENT) {
+            if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                int previous = rows[slot];
+                rows[slot] = row;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        msbs[slot] = msb;
+        lsbs[slot] = lsb;
+        rows[slot] = row;
+        size++;
+        return ABSENT;
+    }
+
+    /**
+     * Removes the uuid from the index.
+     *
+     * @param uuid the key, may be {@code null}
+     * @return the removed row or {@link #ABSENT} if the key was not present
+     */
+    int remove(UUID uuid) {
+        if (uuid == null) {
+            return ABSENT;
+        }
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int slot = hash(msb, lsb) & mask;
+        while (rows[slot] != ABSENT) {
+            if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                int removed = rows[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Removes all entries, keeping the allocated capacity.
+     */
+    void clear() {
+        Arrays.fill(rows, ABSENT);
+        size = 0;
+    }
+
+    /**
+     * Closes the gap left at {@code free} by moving back entries of the same
+     * probe run whose home slot is not between the gap and their position.
+     */
+    private void shiftBack(int free) {
+        int current = free;
+        while (true) {
+            current = (current + 1) & mask;
+            if (rows[current] == ABSENT) {
+                break;
+            }
+            int home = hash(msbs[current], lsbs[current]) & mask;
+            boolean staysInPlace = free <= current
+                    ? free < home && home <= current
+                    : free < home || home <= current;
+            if (staysInPlace) {
+                continue;
+            }
+            msbs[free] = msbs[current];
+            lsbs[free] = lsbs[current];
+            rows[free] = rows[current];
+            free = current;
+        }
+        rows[free] = ABSENT;
+    }
+
+    private void resize(int newCapacity) {
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        int[] oldRows = rows;
+        allocate(newCapacity);
+        for (int i = 0; i < oldRows.length; i++) {
+            if (oldRows[i] != ABSENT) {
+                int slot = hash(oldMsbs[i], oldLsbs[i]) & mask;
+                while (rows[slot] != ABSENT) {
+                    slot = (slot + 1) & mask;
+                }
+                msbs[slot] = oldMsbs[i];
+                lsbs[slot] = oldLsbs[i];
+                rows[slot] = oldRows[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        rows = new int[capacity];
+        Arrays.fill(rows, ABSENT);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Returns the power of two capacity keeping the load factor at most 1/2.
+     */
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Mixes both halves of the uuid, so that time-ordered and random uuids
+     * spread evenly over the table.
+     */
+    private static int hash(long msb, long lsb) {
+        long h = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,159 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Utility class for saving the catalog of clothes in the binary
+ * {@link CatalogFormat} and loading it back.
+ * <p>
+ * Files are read and written by {@link CatalogReader} and {@link CatalogWriter}
+ * through {@link FileChannel}s with a buffer of whole records. A save writes a
+ * temporary file next to the target and moves it over the target, so a failed
+ * save keeps the previous catalog.
+ * <p>
+ * Files written by {@link Serializer} in the former Java serialization format
+ * are recognized by {@link #isLegacy(Path)}, can still be loaded and are
+ * converted by {@link #migrate(Path)}. Files saved by {@link CompressedCatalogFile}
+ * or {@link PagedCatalogFile} are loaded as well.
+ */
+public final class CatalogFile {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private CatalogFile() {
+    }
+
+    /**
+     * Saves the clothes to the file, replacing its previous content.
+     *
+     * @param clothes the clothes to save (must not contain null)
+     * @param path    path of the file
+     * @throws IOException if an I/O error occurs while writing the file
+     * @throws IllegalArgumentException if clothes contain null or clothes with unset fields
+     */
+    public static void save(Collection<? extends Clothes> clothes, Path path) throws IOException {
+        CatalogWriter writer = CatalogWriter.open(path);
+        try {
+            for (Clothes item : clothes) {
+                writer.write(item);
+            }
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            throw e;
+        }
+        writer.close();
+    }
+
+    /**
+     * Loads clothes from the file, which may also be in the legacy Java
+     * serialization format or saved by {@link CompressedCatalogFile} or
+     * {@link PagedCatalogFile}.
+     *
+     * @param path path of the file
+     * @return list of the loaded clothes
+     * @throws IOException if the file can't be read or is corrupted
+     */
+    public static List<Clothes> load(Path path) throws IOException {
+        if (isLegacy(path)) {
+            return loadLegacy(path);
+        }
+        if (CompressedCatalogFile.isCompressed(path)) {
+            return CompressedCatalogFile.load(path);
+        }
+        if (PagedCatalogFile.isPaged(path)) {
+            List<Clothes> clothes = new ArrayList<>();
+            PagedCatalogFile.open(path, clothes::add).close();
+            return clothes;
+        }
+        try (CatalogReader reader = CatalogReader.open(path)) {
+            List<Clothes> clothes = new ArrayList<>((int) Math.min(reader.size(), Integer.MAX_VALUE - 8));
+            reader.forEachRemaining(clothes::add);
+            return clothes;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads the stamp identifying the content of a file in the binary format
+     * from its header, without reading the records.
+     *
+     * @param path path of the file
+     * @return the stamp, empty if the file was saved by an older version
+     *         of the format which does not store it
+     * @throws IOException if the file can't be read or is not in the binary format
+     * @see CatalogFormat.Header#stamp()
+     */
+    public static OptionalLong stamp(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return CatalogFormat.readHeader(channel).stamp();
+        }
+    }
+
+    /**
+     * Checks whether the file was written by {@link Serializer} in the legacy
+     * Java serialization format.
+     *
+     * @param path path of the file
+     * @return {@code true} if the file starts with the Java serialization magic number
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isLegacy(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.size() >= Short.BYTES
+                    && CatalogFormat.readFully(channel, 0, Short.BYTES).getShort() == ObjectStreamConstants.STREAM_MAGIC;
+        }
+    }
+
+    /**
+     * Rewrites a file in the legacy Java serialization format in the binary format.
+     *
+     * @param path path of the file
+     * @return {@code true} if the file was converted, {@code false} if it already was in the binary format
+     * @throws IOException if the file can't be read or written
+     */
+    public static boolean migrate(Path path) throws IOException {
+        if (!isLegacy(path)) {
+            return false;
+        }
+        save(loadLegacy(path), path);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Clothes> loadLegacy(Path path) throws IOException {
+        try {
+            Object object = Deserializer.loadObject(path.toString());
+            if (!(object instanceof List<?> list)) {
+                throw new IOException("Legacy file does not contain a list of clothes");
+            }
+            for (Object item : list) {
+                if (!(item instanceof Clothes)) {
+                    throw new IOException("Legacy file does not contain a list of clothes");
+                }
+            }
+            return new ArrayList<>((List<Clothes>) list);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Legacy file contains unknown classes", e);
+        }
+    }
+
+    /**
+     * Moves the file over the target, atomically where supported.
+     */
+    static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
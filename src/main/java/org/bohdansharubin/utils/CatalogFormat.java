@@ -0,0 +1,547 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.exceptions.InvalidFieldValueException;
+import org.bohdansharubin.models.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of the binary catalog file.
+ * <p>
+ * The file starts with a fixed header of {@link #HEADER_SIZE} bytes:
+ * <pre>
+ * offset size
+ *  0     4    magic number {@link #MAGIC}
+ *  4     2    format version
+ *  6     2    record size
+ *  8     8    number of records
+ * 16     8    offset of the color dictionary
+ * 24     4    offset of the first record
+ * 28     4    CRC-32 of the records and the color dictionary
+ * </pre>
+ * followed by the enum dictionary, which lists constant names of
+ * {@link ClothesType}, {@link AmericanSize}, {@link HatType},
+ * {@link SleeveLength} and {@link SkirtLength} by their stored ordinals,
+ * so files stay readable after constants are reordered or added.
+ * <p>
+ * Records of {@link #RECORD_SIZE} bytes follow the dictionary:
+ * <pre>
+ *  0     8    most significant bits of the uuid
+ *  8     8    least significant bits of the uuid
+ * 16     4    color id
+ * 20     1    type ordinal
+ * 21     1    American size ordinal
+ * 22     1    European size
+ * 23     1    subtype ordinal + 1 in the low 4 bits (0 if not set),
+ *             bit 4 set if the pants have pockets or the hat is waterproof
+ * </pre>
+ * The color dictionary after the records lists the distinct spellings of
+ * colors indexed by color id.
+ * <p>
+ * Numbers are big-endian; strings are written as their {@code int} length
+ * in bytes followed by UTF-8 bytes.
+ * <p>
+ * The CRC-32 identifies the content of the file, e.g. for index files built
+ * for it, and is not verified when the file is read. Files of version 1 have
+ * a header of 28 bytes without it and are still read.
+ */
+public final class CatalogFormat {
+
+    /**
+     * First four bytes of every catalog file, "CLTH" in ASCII.
+     */
+    public static final int MAGIC = 0x434C5448;
+
+    /**
+     * Current version of the format.
+     */
+    public static final short VERSION = 2;
+
+    /**
+     * Size of the fixed part of the header in bytes.
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * Size of one record in bytes.
+     */
+    public static final int RECORD_SIZE = 24;
+
+    /**
+     * Offset of the color id within a record.
+     */
+    public static final int COLOR_ID_OFFSET = 16;
+
+    /**
+     * Offset of the type ordinal within a record.
+     */
+    public static final int TYPE_OFFSET = 20;
+
+    /**
+     * Offset of the American size ordinal within a record.
+     */
+    public static final int AMERICAN_SIZE_OFFSET = 21;
+
+    /**
+     * Offset of the European size within a record.
+     */
+    public static final int EUROPEAN_SIZE_OFFSET = 22;
+
+    /**
+     * Offset of the subtype and flag byte within a record.
+     */
+    public static final int ATTRIBUTES_OFFSET = 23;
+
+    /**
+     * Bits of the attributes byte holding the subtype ordinal + 1.
+     */
+    public static final int SUBTYPE_MASK = 0x0F;
+
+    /**
+     * Bit of the attributes byte set if the pants have pockets or the hat is waterproof.
+     */
+    public static final int FLAG = 0x10;
+
+    static final int RECORD_COUNT_POSITION = 8;
+
+    private static final int CHECKSUM_POSITION = 28;
+
+    /**
+     * Version of files without the CRC-32 in the header.
+     */
+    private static final short FIRST_VERSION = 1;
+
+    private static final Enum<?>[][] DICTIONARY = {
+            ClothesType.values(),
+            AmericanSize.values(),
+            HatType.values(),
+            SleeveLength.values(),
+            SkirtLength.values()
+    };
+
+    private CatalogFormat() {
+    }
+
+    /**
+     * Mapping of stored enum ordinals to the constants of the running application.
+     */
+    public static class Dictionary {
+
+        private final ClothesType[] types;
+        private final AmericanSize[] americanSizes;
+        private final HatType[] hatTypes;
+        private final SleeveLength[] sleeveLengths;
+        private final SkirtLength[] skirtLengths;
+
+        private Dictionary(Enum<?>[][] constants) {
+            this.types = (ClothesType[]) constants[0];
+            this.americanSizes = (AmericanSize[]) constants[1];
+            this.hatTypes = (HatType[]) constants[2];
+            this.sleeveLengths = (SleeveLength[]) constants[3];
+            this.skirtLengths = (SkirtLength[]) constants[4];
+        }
+
+        private Dictionary(Dictionary other) {
+            this.types = other.types;
+            this.americanSizes = other.americanSizes;
+            this.hatTypes = other.hatTypes;
+            this.sleeveLengths = other.sleeveLengths;
+            this.skirtLengths = other.skirtLengths;
+        }
+
+        /**
+         * @param ordinal stored ordinal
+         * @return the type or {@code null} if the ordinal is unknown
+         */
+        public ClothesType type(int ordinal) {
+            return constant(types, ordinal);
+        }
+
+        /**
+         * @param ordinal stored ordinal
+         * @return the American size or {@code null} if the ordinal is unknown
+         */
+        public AmericanSize americanSize(int ordinal) {
+            return constant(americanSizes, ordinal);
+        }
+
+        /**
+         * @param ordinal stored ordinal
+         * @return the hat type or {@code null} if the ordinal is unknown
+         */
+        public HatType hatType(int ordinal) {
+            return constant(hatTypes, ordinal);
+        }
+
+        /**
+         * @param ordinal stored ordinal
+         * @return the sleeve length or {@code null} if the ordinal is unknown
+         */
+        public SleeveLength sleeveLength(int ordinal) {
+            return constant(sleeveLengths, ordinal);
+        }
+
+        /**
+         * @param ordinal stored ordinal
+         * @return the skirt length or {@code null} if the ordinal is unknown
+         */
+        public SkirtLength skirtLength(int ordinal) {
+            return constant(skirtLengths, ordinal);
+        }
+
+        private static <E> E constant(E[] constants, int ordinal) {
+            return ordinal >= 0 && ordinal < constants.length ? constants[ordinal] : null;
+        }
+    }
+
+    /**
+     * Layout of a particular catalog file, read from its header.
+     */
+    public static final class Header extends Dictionary {
+
+        private final long recordCount;
+        private final long colorsOffset;
+        private final int dataOffset;
+        private final OptionalLong stamp;
+
+        private Header(long recordCount, long colorsOffset, int dataOffset, OptionalLong stamp,
+                       Dictionary dictionary) {
+            super(dictionary);
+            this.recordCount = recordCount;
+            this.colorsOffset = colorsOffset;
+            this.dataOffset = dataOffset;
+            this.stamp = stamp;
+        }
+
+        /**
+         * @return number of records in the file
+         */
+        public long recordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return offset of the color dictionary
+         */
+        public long colorsOffset() {
+            return colorsOffset;
+        }
+
+        /**
+         * @return offset of the first record
+         */
+        public int dataOffset() {
+            return dataOffset;
+        }
+
+        /**
+         * @return CRC-32 of the records and the color dictionary stored in the
+         *         header, empty for files of version 1
+         */
+        public OptionalLong stamp() {
+            return stamp;
+        }
+    }
+
+    /**
+     * Encodes the header of a file written with the current version of
+     * the format. Number of records, offset of the color dictionary and the
+     * CRC-32 are left zero and are set by {@link #writeTrailer}.
+     *
+     * @return buffer ready to be written at the start of the file
+     */
+    public static ByteBuffer encodeHeader() {
+        byte[] dictionary = encodeDictionary();
+        int size = HEADER_SIZE + dictionary.length;
+        return ByteBuffer.allocate(size)
+                .putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) RECORD_SIZE)
+                .putLong(0)
+                .putLong(0)
+                .putInt(size)
+                .putInt(0)
+                .put(dictionary)
+                .flip();
+    }
+
+    /**
+     * Encodes the enum dictionary of the running application.
+     *
+     * @return the encoded dictionary
+     */
+    public static byte[] encodeDictionary() {
+        List<byte[]> names = new ArrayList<>();
+        int size = 0;
+        for (Enum<?>[] constants : DICTIONARY) {
+            size += Byte.BYTES;
+            for (Enum<?> constant : constants) {
+                byte[] name = constant.name().getBytes(StandardCharsets.UTF_8);
+                names.add(name);
+                size += Integer.BYTES + name.length;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        int name = 0;
+        for (Enum<?>[] constants : DICTIONARY) {
+            buffer.put((byte) constants.length);
+            for (int i = 0; i < constants.length; i++) {
+                byte[] bytes = names.get(name++);
+                buffer.putInt(bytes.length).put(bytes);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes an enum dictionary at the current position of the buffer.
+     *
+     * @param buffer heap buffer holding the dictionary
+     * @return the dictionary
+     * @throws IOException if the dictionary is corrupted or names unknown constants
+     */
+    public static Dictionary readDictionary(ByteBuffer buffer) throws IOException {
+        Enum<?>[][] constants = new Enum<?>[DICTIONARY.length][];
+        for (int i = 0; i < DICTIONARY.length; i++) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Corrupted catalog dictionary");
+            }
+            int count = Byte.toUnsignedInt(buffer.get());
+            constants[i] = Arrays.copyOf(DICTIONARY[i], count);
+            for (int j = 0; j < count; j++) {
+                constants[i][j] = constantNamed(DICTIONARY[i], getString(buffer));
+            }
+        }
+        return new Dictionary(constants);
+    }
+
+    /**
+     * Reads and validates the header of a catalog file.
+     *
+     * @param channel channel of the file
+     * @return the header
+     * @throws IOException if the file is not a catalog of a supported version
+     */
+    public static Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer fixed = readFully(channel, 0, CHECKSUM_POSITION);
+        if (fixed.getInt() != MAGIC) {
+            throw new IOException("Not a catalog file");
+        }
+        short version = fixed.getShort();
+        if (version != VERSION && version != FIRST_VERSION) {
+            throw new IOException("Unsupported catalog version " + version);
+        }
+        if (fixed.getShort() != RECORD_SIZE) {
+            throw new IOException("Unexpected record size");
+        }
+        long recordCount = fixed.getLong();
+        long colorsOffset = fixed.getLong();
+        int dataOffset = fixed.getInt();
+        int headerSize = version == VERSION ? HEADER_SIZE : CHECKSUM_POSITION;
+        if (recordCount < 0 || dataOffset < headerSize
+                || colorsOffset != dataOffset + recordCount * RECORD_SIZE
+                || colorsOffset > channel.size()) {
+            throw new IOException("Corrupted catalog header");
+        }
+        OptionalLong stamp = version == VERSION
+                ? OptionalLong.of(Integer.toUnsignedLong(readFully(channel, CHECKSUM_POSITION, Integer.BYTES).getInt()))
+                : OptionalLong.empty();
+
+        Dictionary dictionary = readDictionary(readFully(channel, headerSize, dataOffset - headerSize));
+        return new Header(recordCount, colorsOffset, dataOffset, stamp, dictionary);
+    }
+
+    /**
+     * Reads the color dictionary.
+     *
+     * @param channel channel of the file
+     * @param header  header of the file
+     * @return colors indexed by color id
+     * @throws IOException if reading fails or the dictionary is corrupted
+     */
+    public static List<String> readColors(FileChannel channel, Header header) throws IOException {
+        long size = channel.size() - header.colorsOffset();
+        if (size < Integer.BYTES || size > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted color dictionary");
+        }
+        ByteBuffer buffer = readFully(channel, header.colorsOffset(), (int) size);
+        int count = buffer.getInt();
+        List<String> colors = new ArrayList<>(Math.max(0, Math.min(count, buffer.remaining())));
+        for (int i = 0; i < count; i++) {
+            colors.add(getString(buffer));
+        }
+        return colors;
+    }
+
+    /**
+     * Writes the color dictionary at the current position of the channel and
+     * sets the number of records, the dictionary offset and the CRC-32 in the header.
+     *
+     * @param channel     channel positioned right after the last record
+     * @param recordCount number of written records
+     * @param colors      colors indexed by color id
+     * @param checksum    CRC-32 updated with all written records, updated with the dictionary here
+     * @throws IOException if writing fails
+     */
+    public static void writeTrailer(FileChannel channel, long recordCount, List<String> colors, CRC32 checksum)
+            throws IOException {
+        long colorsOffset = channel.position();
+        List<byte[]> encoded = new ArrayList<>(colors.size());
+        int size = Integer.BYTES;
+        for (String color : colors) {
+            byte[] bytes = color.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += Integer.BYTES + bytes.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).putInt(colors.size());
+        for (byte[] bytes : encoded) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        checksum.update(buffer.flip().duplicate());
+        writeFully(channel, buffer);
+
+        ByteBuffer counts = ByteBuffer.allocate(2 * Long.BYTES)
+                .putLong(recordCount)
+                .putLong(colorsOffset)
+                .flip();
+        while (counts.hasRemaining()) {
+            channel.write(counts, RECORD_COUNT_POSITION + counts.position());
+        }
+        ByteBuffer crc = ByteBuffer.allocate(Integer.BYTES).putInt((int) checksum.getValue()).flip();
+        while (crc.hasRemaining()) {
+            channel.write(crc, CHECKSUM_POSITION + crc.position());
+        }
+    }
+
+    /**
+     * Encodes the clothes as a record at the current position of the buffer.
+     *
+     * @param buffer  buffer with at least {@link #RECORD_SIZE} bytes remaining
+     * @param clothes the clothes (must have all fields set)
+     * @param colorId id of its color in the color dictionary
+     * @throws IllegalArgumentException if a field of the clothes is not set
+     */
+    public static void writeRecord(ByteBuffer buffer, Clothes clothes, int colorId) {
+        if (clothes.getColor() == null || clothes.getType() == null || clothes.getAmericanSize() == null) {
+            throw new IllegalArgumentException("Clothes with unset fields can't be saved");
+        }
+        Enum<?> subtype = null;
+        boolean flag = false;
+        if (clothes instanceof Pants pants) {
+            flag = pants.isHasPockets();
+        } else if (clothes instanceof Shirt shirt) {
+            subtype = shirt.getSleeveLength();
+        } else if (clothes instanceof Hat hat) {
+            flag = hat.isWaterProof();
+            subtype = hat.getHatType();
+        } else if (clothes instanceof Skirt skirt) {
+            subtype = skirt.getLength();
+        }
+        int attributes = (subtype == null ? 0 : subtype.ordinal() + 1) | (flag ? FLAG : 0);
+        buffer.putLong(clothes.getUuid().getMostSignificantBits())
+                .putLong(clothes.getUuid().getLeastSignificantBits())
+                .putInt(colorId)
+                .put((byte) clothes.getType().ordinal())
+                .put((byte) clothes.getAmericanSize().ordinal())
+                .put((byte) clothes.getEuropeanSize())
+                .put((byte) attributes);
+    }
+
+    /**
+     * Decodes the record at the current position of the buffer.
+     *
+     * @param buffer     buffer with at least {@link #RECORD_SIZE} bytes remaining
+     * @param dictionary enum dictionary of the file
+     * @param colors     colors indexed by color id
+     * @return the decoded clothes
+     * @throws IOException if the record is corrupted
+     */
+    public static Clothes readRecord(ByteBuffer buffer, Dictionary dictionary, List<String> colors)
+            throws IOException {
+        UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+        int colorId = buffer.getInt();
+        ClothesType type = dictionary.type(Byte.toUnsignedInt(buffer.get()));
+        AmericanSize americanSize = dictionary.americanSize(Byte.toUnsignedInt(buffer.get()));
+        int europeanSize = Byte.toUnsignedInt(buffer.get());
+        int attributes = Byte.toUnsignedInt(buffer.get());
+        if (colorId < 0 || colorId >= colors.size() || type == null) {
+            throw new IOException("Corrupted record of " + uuid);
+        }
+        String color = colors.get(colorId);
+        int subtype = (attributes & SUBTYPE_MASK) - 1;
+        boolean flag = (attributes & FLAG) != 0;
+        try {
+            return switch (type) {
+                case HAT -> new Hat(uuid, color, europeanSize, americanSize, flag, dictionary.hatType(subtype));
+                case PANTS -> new Pants(uuid, color, europeanSize, americanSize, flag);
+                case SKIRT -> new Skirt(uuid, color, europeanSize, americanSize, dictionary.skirtLength(subtype));
+                case SHIRT -> new Shirt(uuid, color, europeanSize, americanSize, dictionary.sleeveLength(subtype));
+            };
+        } catch (InvalidFieldValueException e) {
+            throw new IOException("Corrupted record of " + uuid, e);
+        }
+    }
+
+    /**
+     * Reads exactly the given number of bytes at the given position.
+     *
+     * @return buffer ready to be read
+     * @throws IOException if the file ends earlier
+     */
+    static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of catalog file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer at the current position of the channel.
+     */
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads a string written as its length and UTF-8 bytes from a heap buffer.
+     *
+     * @throws IOException if the buffer ends within the string
+     */
+    static String getString(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            throw new IOException("Corrupted string");
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupted string");
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private static Enum<?> constantNamed(Enum<?>[] constants, String name) throws IOException {
+        for (Enum<?> constant : constants) {
+            if (constant.name().equals(name)) {
+                return constant;
+            }
+        }
+        throw new IOException("Unknown constant " + name + " of " + constants.getClass().getComponentType().getSimpleName());
+    }
+}
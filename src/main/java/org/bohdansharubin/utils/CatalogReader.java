@@ -0,0 +1,172 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming reader of a catalog file saved in the {@link CatalogFormat}.
+ * <p>
+ * Records are read through a buffer of whole records and decoded one at a
+ * time when the next clothes are requested, so only the buffer and the color
+ * dictionary are held in memory however large the catalog is. The reader is
+ * an {@link Iterator} over the clothes of the file and can be turned into a
+ * {@link Stream} closing the file when the stream is closed.
+ * <p>
+ * Errors while reading records are thrown as {@link UncheckedIOException}.
+ * A reader is not thread-safe.
+ *
+ * @see CatalogWriter
+ */
+public final class CatalogReader implements Iterator<Clothes>, Closeable {
+
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final FileChannel channel;
+    private final CatalogFormat.Header header;
+    private final List<String> colors;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * CatalogFormat.RECORD_SIZE);
+    private long position;
+    private long remaining;
+
+    private CatalogReader(FileChannel channel, CatalogFormat.Header header, List<String> colors) {
+        this.channel = channel;
+        this.header = header;
+        this.colors = colors;
+        this.position = header.dataOffset();
+        this.remaining = header.recordCount();
+        buffer.limit(0);
+    }
+
+    /**
+     * Opens the catalog file for reading.
+     * <p>
+     * Files in the legacy Java serialization format can't be streamed and
+     * have to be converted by {@link CatalogFile#migrate(Path)} first, files
+     * saved by {@link CompressedCatalogFile} can't be streamed either.
+     *
+     * @param path path of the file
+     * @return reader positioned before the first clothes
+     * @throws IOException if the file can't be read, is not a catalog or is in the legacy
+     *         or compressed format
+     */
+    public static CatalogReader open(Path path) throws IOException {
+        if (CatalogFile.isLegacy(path)) {
+            throw new IOException("Legacy catalog file has to be migrated before it can be streamed");
+        }
+        if (CompressedCatalogFile.isCompressed(path)) {
+            throw new IOException("Compressed catalog file can't be streamed");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            CatalogFormat.Header header = CatalogFormat.readHeader(channel);
+            return new CatalogReader(channel, header, CatalogFormat.readColors(channel, header));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the catalog file as a stream of its clothes, closing the stream closes the file.
+     *
+     * @param path path of the file
+     * @return sequential stream of the clothes in the order they were saved
+     * @throws IOException if the file can't be read, is not a catalog or is in the legacy
+     *         or compressed format
+     * @see #open(Path)
+     */
+    public static Stream<Clothes> stream(Path path) throws IOException {
+        return open(path).stream();
+    }
+
+    /**
+     * @return number of clothes in the file
+     */
+    public long size() {
+        return header.recordCount();
+    }
+
+    /**
+     * @return number of clothes not read yet
+     */
+    public long remaining() {
+        return remaining;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+    /**
+     * Decodes the next clothes of the file.
+     *
+     * @return new clothes object of the next record
+     * @throws NoSuchElementException if all clothes were read
+     * @throws UncheckedIOException if the file can't be read or the record is corrupted
+     */
+    @Override
+    public Clothes next() {
+        if (remaining == 0) {
+            throw new NoSuchElementException();
+        }
+        try {
+            if (!buffer.hasRemaining()) {
+                fill();
+            }
+            Clothes clothes = CatalogFormat.readRecord(buffer, header, colors);
+            remaining--;
+            return clothes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a stream of the clothes not read yet, closing the stream closes the reader.
+     *
+     * @return sequential stream of the remaining clothes
+     */
+    public Stream<Clothes> stream() {
+        Spliterator<Clothes> spliterator = Spliterators.spliterator(this, remaining,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void fill() throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), remaining * CatalogFormat.RECORD_SIZE));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of catalog file");
+            }
+        }
+        position += buffer.position();
+        buffer.flip();
+    }
+}
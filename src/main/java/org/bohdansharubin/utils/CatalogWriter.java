@@ -0,0 +1,163 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming writer of a catalog file in the {@link CatalogFormat}.
+ * <p>
+ * Clothes are encoded as they are written into a buffer of whole records,
+ * which is written to the file whenever it fills up, so only the buffer and
+ * the distinct colors are held in memory however many clothes are written.
+ * <p>
+ * Records go to a temporary file next to the target. {@link #close()} writes
+ * the color dictionary, forces the file and moves it over the target, while
+ * {@link #abort()} deletes it and keeps the previous catalog. A failed write
+ * aborts the writer. A writer is not thread-safe.
+ *
+ * @see CatalogReader
+ */
+public final class CatalogWriter implements Closeable {
+
+    private static final int BUFFER_RECORDS = 4096;
+
+    private final Path path;
+    private final Path temporary;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * CatalogFormat.RECORD_SIZE);
+    private final Map<String, Integer> colorIds = new HashMap<>();
+    private final List<String> colors = new ArrayList<>();
+    private final CRC32 checksum = new CRC32();
+    private long count;
+    private boolean closed;
+
+    private CatalogWriter(Path path, Path temporary, FileChannel channel) {
+        this.path = path;
+        this.temporary = temporary;
+        this.channel = channel;
+    }
+
+    /**
+     * Starts writing a catalog file which replaces the file at the path when the writer is closed.
+     *
+     * @param path path of the file
+     * @return writer of an empty catalog
+     * @throws IOException if the temporary file can't be created
+     */
+    public static CatalogWriter open(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            CatalogFormat.writeFully(channel, CatalogFormat.encodeHeader());
+            return new CatalogWriter(path, temporary, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Appends the clothes to the catalog.
+     *
+     * @param clothes the clothes (must not be null and must have all fields set)
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if clothes is null or has unset fields
+     * @throws IllegalStateException if the writer is closed or aborted
+     */
+    public void write(Clothes clothes) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Catalog writer is closed");
+        }
+        try {
+            if (clothes == null) {
+                throw new IllegalArgumentException("clothes must not be null");
+            }
+            Integer colorId = colorIds.get(clothes.getColor());
+            if (colorId == null && clothes.getColor() != null) {
+                colorId = colors.size();
+                colorIds.put(clothes.getColor(), colorId);
+                colors.add(clothes.getColor());
+            }
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            CatalogFormat.writeRecord(buffer, clothes, colorId == null ? 0 : colorId);
+            count++;
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of clothes written so far
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Discards the written clothes, keeping the previous catalog file. Does
+     * nothing if the writer is already closed.
+     *
+     * @throws IOException if the temporary file can't be deleted
+     */
+    public void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Completes the catalog and moves it over the target file. Does nothing
+     * if the writer is already closed or aborted.
+     *
+     * @throws IOException if the catalog can't be completed, the previous catalog is kept then
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+            CatalogFormat.writeTrailer(channel, count, colors, checksum);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+        closed = true;
+        channel.close();
+        CatalogFile.replace(temporary, path);
+    }
+
+    /**
+     * Writes the buffered records and adds them to the checksum.
+     */
+    private void flush() throws IOException {
+        checksum.update(buffer.flip().duplicate());
+        CatalogFormat.writeFully(channel, buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,588 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.enums.ClothesType;
+import org.bohdansharubin.enums.HatType;
+import org.bohdansharubin.enums.SkirtLength;
+import org.bohdansharubin.enums.SleeveLength;
+import org.bohdansharubin.exceptions.InvalidFieldValueException;
+import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.models.Hat;
+import org.bohdansharubin.models.Pants;
+import org.bohdansharubin.models.Shirt;
+import org.bohdansharubin.models.Skirt;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Parser of clothes from the lines of a CSV or JSON Lines file.
+ * <p>
+ * Every line holds one clothes with the fields {@code uuid} (optional, a new
+ * one is generated if it's missing), {@code type}, {@code color},
+ * {@code europeanSize}, {@code americanSize} and the fields of the type:
+ * {@code hasPockets} of pants, {@code sleeveLength} of shirts,
+ * {@code waterProof} and {@code hatType} of hats, {@code skirtLength} of
+ * skirts. Names of fields and enum constants are case-insensitive, other
+ * fields are ignored. A CSV file names its columns in the header line, quoted
+ * values may contain commas and doubled quotes but no line breaks. A JSON
+ * Lines file holds one flat object per line.
+ * <p>
+ * Fields are located and decoded in the bytes of the line: numbers, booleans,
+ * uuids and enum constants are parsed without creating strings and colors
+ * are looked up in a small cache of recent colors, so a line usually
+ * allocates only its clothes. The clothes are created by their constructors,
+ * which validate them by the same rules as clothes entered by hand.
+ * <p>
+ * A parser is not thread-safe, every thread needs its own.
+ */
+public final class ClothesRecordParser {
+
+    /**
+     * Format of an import file.
+     */
+    public enum Format {
+
+        /** Comma-separated values with a header line */
+        CSV,
+
+        /** One JSON object per line */
+        JSON_LINES;
+
+        /**
+         * Detects the format by the file extension, {@code .jsonl},
+         * {@code .ndjson} and {@code .json} are JSON Lines, others are CSV.
+         *
+         * @param path path of the file (must not be null)
+         * @return format of the file
+         */
+        public static Format of(Path path) {
+            String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")
+                    ? JSON_LINES : CSV;
+        }
+    }
+
+    private enum Field {
+        UUID("uuid"),
+        TYPE("type"),
+        COLOR("color"),
+        EUROPEAN_SIZE("europeanSize"),
+        AMERICAN_SIZE("americanSize"),
+        HAS_POCKETS("hasPockets"),
+        SLEEVE_LENGTH("sleeveLength"),
+        WATER_PROOF("waterProof"),
+        HAT_TYPE("hatType"),
+        SKIRT_LENGTH("skirtLength");
+
+        private final String key;
+        private final byte[] name;
+
+        Field(String key) {
+            this.key = key;
+            this.name = key.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final ClothesType[] CLOTHES_TYPES = ClothesType.values();
+    private static final byte[][] CLOTHES_TYPES_NAMES = names(CLOTHES_TYPES);
+    private static final AmericanSize[] AMERICAN_SIZES = AmericanSize.values();
+    private static final byte[][] AMERICAN_SIZES_NAMES = names(AMERICAN_SIZES);
+    private static final SleeveLength[] SLEEVE_LENGTHS = SleeveLength.values();
+    private static final byte[][] SLEEVE_LENGTHS_NAMES = names(SLEEVE_LENGTHS);
+    private static final HatType[] HAT_TYPES = HatType.values();
+    private static final byte[][] HAT_TYPES_NAMES = names(HAT_TYPES);
+    private static final SkirtLength[] SKIRT_LENGTHS = SkirtLength.values();
+    private static final byte[][] SKIRT_LENGTHS_NAMES = names(SKIRT_LENGTHS);
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final int COLOR_CACHE_SIZE = 256;
+
+    private final Format format;
+
+    /**
+     * Fields of the CSV columns in their order, {@code null} for ignored columns.
+     */
+    private final Field[] columns;
+
+    private final int[] starts = new int[FIELDS.length];
+    private final int[] ends = new int[FIELDS.length];
+    private final boolean[] escaped = new boolean[FIELDS.length];
+    private final byte[][] colorKeys = new byte[COLOR_CACHE_SIZE][];
+    private final String[] colorValues = new String[COLOR_CACHE_SIZE];
+    private byte[] line;
+
+    private ClothesRecordParser(Format format, Field[] columns) {
+        this.format = format;
+        this.columns = columns;
+    }
+
+    /**
+     * @return parser of JSON Lines
+     */
+    public static ClothesRecordParser jsonLines() {
+        return new ClothesRecordParser(Format.JSON_LINES, null);
+    }
+
+    /**
+     * Creates a parser of CSV lines with the columns named in the header line.
+     *
+     * @param header header line of the file (must not be null)
+     * @return parser of the following lines
+     * @throws IllegalArgumentException if header is null, names a field twice
+     *         or has no type column
+     */
+    public static ClothesRecordParser csv(String header) {
+        if (header == null) {
+            throw new IllegalArgumentException("header must not be null");
+        }
+        String[] names = header.split(",", -1);
+        Field[] columns = new Field[names.length];
+        boolean[] named = new boolean[FIELDS.length];
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].strip();
+            if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+                name = name.substring(1, name.length() - 1).strip();
+            }
+            for (Field field : FIELDS) {
+                if (field.key.equalsIgnoreCase(name)) {
+                    if (named[field.ordinal()]) {
+                        throw new IllegalArgumentException("Column " + field.key + " is named twice");
+                    }
+                    named[field.ordinal()] = true;
+                    columns[i] = field;
+                }
+            }
+        }
+        if (!named[Field.TYPE.ordinal()]) {
+            throw new IllegalArgumentException("Header has no type column");
+        }
+        return new ClothesRecordParser(Format.CSV, columns);
+    }
+
+    /**
+     * @return format of the parsed lines
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Parses the clothes of a line.
+     *
+     * @param bytes bytes holding the line in UTF-8
+     * @param from  index of the first byte of the line
+     * @param to    index after the last byte of the line, without the line break
+     * @return new clothes of the line
+     * @throws InvalidFieldValueException if the line is malformed or the clothes is invalid
+     */
+    public Clothes parse(byte[] bytes, int from, int to) {
+        line = bytes;
+        Arrays.fill(starts, -1);
+        Arrays.fill(escaped, false);
+        if (format == Format.CSV) {
+            splitCsv(from, to);
+        } else {
+            splitJson(from, to);
+        }
+        return create();
+    }
+
+    private Clothes create() {
+        ClothesType type = enumValue(Field.TYPE, CLOTHES_TYPES, CLOTHES_TYPES_NAMES);
+        if (type == null) {
+            throw new InvalidFieldValueException("Type cannot be null");
+        }
+        UUID uuid = uuidValue();
+        String color = colorValue();
+        int europeanSize = intValue(Field.EUROPEAN_SIZE);
+        AmericanSize americanSize = enumValue(Field.AMERICAN_SIZE, AMERICAN_SIZES, AMERICAN_SIZES_NAMES);
+        return switch (type) {
+            case PANTS -> {
+                boolean hasPockets = booleanValue(Field.HAS_POCKETS);
+                yield uuid == null
+                        ? new Pants(color, europeanSize, americanSize, hasPockets)
+                        : new Pants(uuid, color, europeanSize, americanSize, hasPockets);
+            }
+            case SHIRT -> {
+                SleeveLength sleeveLength = required(Field.SLEEVE_LENGTH,
+                        enumValue(Field.SLEEVE_LENGTH, SLEEVE_LENGTHS, SLEEVE_LENGTHS_NAMES));
+                yield uuid == null
+                        ? new Shirt(color, europeanSize, americanSize, sleeveLength)
+                        : new Shirt(uuid, color, europeanSize, americanSize, sleeveLength);
+            }
+            case HAT -> {
+                boolean waterProof = booleanValue(Field.WATER_PROOF);
+                HatType hatType = required(Field.HAT_TYPE, enumValue(Field.HAT_TYPE, HAT_TYPES, HAT_TYPES_NAMES));
+                yield uuid == null
+                        ? new Hat(color, europeanSize, americanSize, waterProof, hatType)
+                        : new Hat(uuid, color, europeanSize, americanSize, waterProof, hatType);
+            }
+            case SKIRT -> {
+                SkirtLength length = required(Field.SKIRT_LENGTH,
+                        enumValue(Field.SKIRT_LENGTH, SKIRT_LENGTHS, SKIRT_LENGTHS_NAMES));
+                yield uuid == null
+                        ? new Skirt(color, europeanSize, americanSize, length)
+                        : new Skirt(uuid, color, europeanSize, americanSize, length);
+            }
+        };
+    }
+
+    private void splitCsv(int from, int to) {
+        int column = 0;
+        int i = from;
+        while (true) {
+            while (i < to && line[i] == ' ') {
+                i++;
+            }
+            int start;
+            int end;
+            boolean quoted = i < to && line[i] == '"';
+            boolean doubled = false;
+            if (quoted) {
+                start = ++i;
+                while (true) {
+                    if (i >= to) {
+                        throw new InvalidFieldValueException("Unterminated quote in column " + (column + 1));
+                    }
+                    if (line[i] == '"') {
+                        if (i + 1 < to && line[i + 1] == '"') {
+                            doubled = true;
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                end = i++;
+                while (i < to && line[i] == ' ') {
+                    i++;
+                }
+                if (i < to && line[i] != ',') {
+                    throw new InvalidFieldValueException("Unexpected character after quote in column " + (column + 1));
+                }
+            } else {
+                start = i;
+                while (i < to && line[i] != ',') {
+                    i++;
+                }
+                end = i;
+                while (end > start && line[end - 1] == ' ') {
+                    end--;
+                }
+            }
+            if (column < columns.length && columns[column] != null && (quoted || end > start)) {
+                int field = columns[column].ordinal();
+                starts[field] = start;
+                ends[field] = end;
+                escaped[field] = doubled;
+            }
+            column++;
+            if (i >= to) {
+                return;
+            }
+            i++;
+        }
+    }
+
+    private void splitJson(int from, int to) {
+        int i = skipSpaces(from, to);
+        if (i >= to || line[i] != '{') {
+            throw malformed(from, i);
+        }
+        i = skipSpaces(i + 1, to);
+        if (i < to && line[i] == '}') {
+            i = skipSpaces(i + 1, to);
+            if (i < to) {
+                throw malformed(from, i);
+            }
+            return;
+        }
+        while (true) {
+            if (i >= to || line[i] != '"') {
+                throw malformed(from, i);
+            }
+            int keyStart = i + 1;
+            i = endOfString(keyStart, to, from);
+            Field field = fieldOf(keyStart, i);
+            i = skipSpaces(i + 1, to);
+            if (i >= to || line[i] != ':') {
+                throw malformed(from, i);
+            }
+            i = skipSpaces(i + 1, to);
+            if (i >= to) {
+                throw malformed(from, i);
+            }
+            int start;
+            int end;
+            boolean backslash = false;
+            if (line[i] == '"') {
+                start = i + 1;
+                end = endOfString(start, to, from);
+                for (int j = start; j < end; j++) {
+                    if (line[j] == '\\') {
+                        backslash = true;
+                        break;
+                    }
+                }
+                i = end + 1;
+            } else if (line[i] == '{' || line[i] == '[') {
+                throw new InvalidFieldValueException("Nested values are not supported at column " + (i - from + 1));
+            } else {
+                start = i;
+                while (i < to && line[i] != ',' && line[i] != '}' && !isSpace(line[i])) {
+                    i++;
+                }
+                end = i;
+                if (end - start == 4 && matches(start, end, NULL)) {
+                    field = null;
+                }
+            }
+            if (field != null) {
+                starts[field.ordinal()] = start;
+                ends[field.ordinal()] = end;
+                escaped[field.ordinal()] = backslash;
+            }
+            i = skipSpaces(i, to);
+            if (i < to && line[i] == ',') {
+                i = skipSpaces(i + 1, to);
+            } else if (i < to && line[i] == '}') {
+                i = skipSpaces(i + 1, to);
+                if (i < to) {
+                    throw malformed(from, i);
+                }
+                return;
+            } else {
+                throw malformed(from, i);
+            }
+        }
+    }
+
+    private int endOfString(int i, int to, int from) {
+        while (i < to && line[i] != '"') {
+            i += line[i] == '\\' ? 2 : 1;
+        }
+        if (i >= to) {
+            throw new InvalidFieldValueException("Unterminated string at column " + (to - from + 1));
+        }
+        return i;
+    }
+
+    private Field fieldOf(int start, int end) {
+        for (Field field : FIELDS) {
+            if (end - start == field.name.length && matches(start, end, field.name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private UUID uuidValue() {
+        int field = Field.UUID.ordinal();
+        int start = starts[field];
+        if (start < 0 || start == ends[field]) {
+            return null;
+        }
+        if (ends[field] - start != 36) {
+            throw invalid(Field.UUID);
+        }
+        long mostSigBits = 0;
+        long leastSigBits = 0;
+        int digits = 0;
+        for (int i = start; i < ends[field]; i++) {
+            int offset = i - start;
+            if (offset == 8 || offset == 13 || offset == 18 || offset == 23) {
+                if (line[i] != '-') {
+                    throw invalid(Field.UUID);
+                }
+                continue;
+            }
+            int digit = Character.digit(line[i], 16);
+            if (digit < 0) {
+                throw invalid(Field.UUID);
+            }
+            if (digits++ < 16) {
+                mostSigBits = mostSigBits << 4 | digit;
+            } else {
+                leastSigBits = leastSigBits << 4 | digit;
+            }
+        }
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    private String colorValue() {
+        int field = Field.COLOR.ordinal();
+        int start = starts[field];
+        if (start < 0) {
+            return null;
+        }
+        int end = ends[field];
+        if (escaped[field]) {
+            return unescape(start, end);
+        }
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line[i];
+        }
+        int slot = (hash ^ hash >>> 16) & (COLOR_CACHE_SIZE - 1);
+        byte[] key = colorKeys[slot];
+        if (key != null && key.length == end - start && Arrays.equals(key, 0, key.length, line, start, end)) {
+            return colorValues[slot];
+        }
+        String color = new String(line, start, end - start, StandardCharsets.UTF_8);
+        colorKeys[slot] = Arrays.copyOfRange(line, start, end);
+        colorValues[slot] = color;
+        return color;
+    }
+
+    private int intValue(Field field) {
+        int start = starts[field.ordinal()];
+        int end = ends[field.ordinal()];
+        if (start < 0 || start == end) {
+            throw new InvalidFieldValueException("Missing " + field.key);
+        }
+        boolean negative = line[start] == '-';
+        int i = negative || line[start] == '+' ? start + 1 : start;
+        if (i == end || end - i > 9) {
+            throw invalid(field);
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalid(field);
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private boolean booleanValue(Field field) {
+        int start = starts[field.ordinal()];
+        int end = ends[field.ordinal()];
+        if (start < 0 || start == end) {
+            return false;
+        }
+        if (end - start == 4 && matches(start, end, TRUE)) {
+            return true;
+        }
+        if (end - start == 5 && matches(start, end, FALSE)) {
+            return false;
+        }
+        throw invalid(field);
+    }
+
+    private <E extends Enum<E>> E enumValue(Field field, E[] constants, byte[][] names) {
+        int start = starts[field.ordinal()];
+        int end = ends[field.ordinal()];
+        if (start < 0 || start == end) {
+            return null;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (end - start == names[i].length && matches(start, end, names[i])) {
+                return constants[i];
+            }
+        }
+        throw invalid(field);
+    }
+
+    private static <T> T required(Field field, T value) {
+        if (value == null) {
+            throw new InvalidFieldValueException("Missing " + field.key);
+        }
+        return value;
+    }
+
+    /**
+     * Compares the bytes with an ASCII name, ignoring case.
+     */
+    private boolean matches(int start, int end, byte[] name) {
+        for (int i = start; i < end; i++) {
+            int a = line[i];
+            int b = name[i - start];
+            if (a == b) {
+                continue;
+            }
+            int lower = a | 0x20;
+            if (lower != (b | 0x20) || lower < 'a' || lower > 'z') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String unescape(int start, int end) {
+        if (format == Format.CSV) {
+            return new String(line, start, end - start, StandardCharsets.UTF_8).replace("\"\"", "\"");
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        int plain = start;
+        for (int i = start; i < end; i++) {
+            if (line[i] != '\\') {
+                continue;
+            }
+            builder.append(new String(line, plain, i - plain, StandardCharsets.UTF_8));
+            char escape = (char) line[++i];
+            switch (escape) {
+                case 'b' -> builder.append('\b');
+                case 'f' -> builder.append('\f');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    if (i + 4 >= end) {
+                        throw invalid(Field.COLOR);
+                    }
+                    int code = 0;
+                    for (int j = 1; j <= 4; j++) {
+                        int digit = Character.digit(line[i + j], 16);
+                        if (digit < 0) {
+                            throw invalid(Field.COLOR);
+                        }
+                        code = code << 4 | digit;
+                    }
+                    builder.append((char) code);
+                    i += 4;
+                }
+                default -> builder.append(escape);
+            }
+            plain = i + 1;
+        }
+        return builder.append(new String(line, plain, end - plain, StandardCharsets.UTF_8)).toString();
+    }
+
+    private InvalidFieldValueException invalid(Field field) {
+        int start = starts[field.ordinal()];
+        String value = new String(line, start, ends[field.ordinal()] - start, StandardCharsets.UTF_8);
+        return new InvalidFieldValueException("Invalid " + field.key + ": " + value);
+    }
+
+    private static InvalidFieldValueException malformed(int from, int i) {
+        return new InvalidFieldValueException("Malformed JSON at column " + (i - from + 1));
+    }
+
+    private int skipSpaces(int i, int to) {
+        while (i < to && isSpace(line[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static byte[][] names(Enum<?>[] constants) {
+        byte[][] names = new byte[constants.length][];
+        for (int i = 0; i < constants.length; i++) {
+            names[i] = constants[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,401 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Utility class for saving the catalog of clothes in independently
+ * compressed chunks and loading it back.
+ * <p>
+ * The file starts with a header holding {@link #MAGIC}, the format version
+ * and the enum dictionary of {@link CatalogFormat}. Chunks of up to
+ * {@link #CHUNK_RECORDS} clothes follow, each framed as
+ * <pre>
+ *  0     4    number of records
+ *  4     4    length of the uncompressed chunk
+ *  8     4    length of the compressed chunk
+ * 12     n    chunk compressed by {@link Deflater}
+ * </pre>
+ * An uncompressed chunk holds its own color dictionary followed by the
+ * records of the chunk in the {@link CatalogFormat}, whose color ids refer
+ * to that dictionary. The chunk table closes the file: the number of chunks,
+ * the offset and the number of records of every chunk, and finally the
+ * offset of the table itself.
+ * <p>
+ * Since chunks do not depend on each other, they are compressed during a save
+ * and decompressed during a load on a worker pool, while the calling thread
+ * writes or reads the file in order. Only a bounded window of chunks is in
+ * flight at a time.
+ */
+public final class CompressedCatalogFile {
+
+    /**
+     * First four bytes of every compressed catalog file, "CLTZ" in ASCII.
+     */
+    public static final int MAGIC = 0x434C545A;
+
+    /**
+     * Current version of the format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Maximal number of records in a chunk.
+     */
+    public static final int CHUNK_RECORDS = 16 * 1024;
+
+    private static final int FILE_HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    private static final int CHUNK_HEADER_SIZE = 3 * Integer.BYTES;
+    private static final int TABLE_ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+    private static final int WINDOW = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private CompressedCatalogFile() {
+    }
+
+    /**
+     * Saves the clothes to the file compressing chunks in the common fork-join pool.
+     *
+     * @param clothes the clothes to save (must not contain null)
+     * @param path    path of the file
+     * @throws IOException if an I/O error occurs while writing the file
+     * @throws IllegalArgumentException if clothes contain null or clothes with unset fields
+     * @see #save(Collection, Path, Executor)
+     */
+    public static void save(Collection<? extends Clothes> clothes, Path path) throws IOException {
+        save(clothes, path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Saves the clothes to the file, replacing its previous content.
+     * <p>
+     * A temporary file next to the target is moved over the target, so a
+     * failed save keeps the previous catalog.
+     *
+     * @param clothes  the clothes to save (must not contain null)
+     * @param path     path of the file
+     * @param executor pool compressing the chunks (must not be null)
+     * @throws IOException if an I/O error occurs while writing the file
+     * @throws IllegalArgumentException if executor is null, clothes contain null
+     *         or clothes with unset fields
+     */
+    public static void save(Collection<? extends Clothes> clothes, Path path, Executor executor) throws IOException {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Deque<CompletableFuture<ByteBuffer>> window = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CatalogFormat.writeFully(channel, encodeFileHeader());
+            List<Long> offsets = new ArrayList<>();
+            List<Integer> counts = new ArrayList<>();
+            List<Clothes> chunk = new ArrayList<>(CHUNK_RECORDS);
+            for (Clothes item : clothes) {
+                if (item == null) {
+                    throw new IllegalArgumentException("clothes must not contain null");
+                }
+                chunk.add(item);
+                if (chunk.size() == CHUNK_RECORDS) {
+                    List<Clothes> full = chunk;
+                    window.add(CompletableFuture.supplyAsync(() -> encodeChunk(full), executor));
+                    counts.add(full.size());
+                    chunk = new ArrayList<>(CHUNK_RECORDS);
+                    if (window.size() >= WINDOW) {
+                        offsets.add(channel.position());
+                        CatalogFormat.writeFully(channel, await(window.poll()));
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                List<Clothes> last = chunk;
+                window.add(CompletableFuture.supplyAsync(() -> encodeChunk(last), executor));
+                counts.add(last.size());
+            }
+            while (!window.isEmpty()) {
+                offsets.add(channel.position());
+                CatalogFormat.writeFully(channel, await(window.poll()));
+            }
+            CatalogFormat.writeFully(channel, encodeTable(channel.position(), offsets, counts));
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            window.forEach(future -> future.cancel(false));
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        CatalogFile.replace(temporary, path);
+    }
+
+    /**
+     * Loads clothes from the file decompressing chunks in the common fork-join pool.
+     *
+     * @param path path of the file
+     * @return list of the loaded clothes
+     * @throws IOException if the file can't be read or is corrupted
+     * @see #load(Path, Executor)
+     */
+    public static List<Clothes> load(Path path) throws IOException {
+        return load(path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads clothes from the file.
+     *
+     * @param path     path of the file
+     * @param executor pool decompressing the chunks (must not be null)
+     * @return list of the loaded clothes in the order they were saved
+     * @throws IOException if the file can't be read or is corrupted
+     * @throws IllegalArgumentException if executor is null
+     */
+    public static List<Clothes> load(Path path, Executor executor) throws IOException {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        Deque<CompletableFuture<List<Clothes>>> window = new ArrayDeque<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            CatalogFormat.Dictionary dictionary = readFileHeader(channel);
+            long dataOffset = channel.position();
+            long size = channel.size();
+            if (size < dataOffset + Integer.BYTES + Long.BYTES) {
+                throw new IOException("Corrupted compressed catalog");
+            }
+            long tableOffset = CatalogFormat.readFully(channel, size - Long.BYTES, Long.BYTES).getLong();
+            if (tableOffset < dataOffset || tableOffset > size - Long.BYTES - Integer.BYTES) {
+                throw new IOException("Corrupted compressed catalog");
+            }
+            ByteBuffer table = CatalogFormat.readFully(channel, tableOffset, (int) (size - Long.BYTES - tableOffset));
+            int chunkCount = table.getInt();
+            if (chunkCount < 0 || (long) chunkCount * TABLE_ENTRY_SIZE != table.remaining()) {
+                throw new IOException("Corrupted chunk table");
+            }
+            long[] offsets = new long[chunkCount + 1];
+            int[] counts = new int[chunkCount];
+            long total = 0;
+            for (int i = 0; i < chunkCount; i++) {
+                offsets[i] = table.getLong();
+                counts[i] = table.getInt();
+                total += counts[i];
+                if (counts[i] <= 0 || offsets[i] < (i == 0 ? dataOffset : offsets[i - 1] + CHUNK_HEADER_SIZE)) {
+                    throw new IOException("Corrupted chunk table");
+                }
+            }
+            offsets[chunkCount] = tableOffset;
+
+            List<Clothes> clothes = new ArrayList<>((int) Math.min(total, Integer.MAX_VALUE - 8));
+            for (int i = 0; i < chunkCount; i++) {
+                long length = offsets[i + 1] - offsets[i];
+                if (length < CHUNK_HEADER_SIZE || length > Integer.MAX_VALUE) {
+                    throw new IOException("Corrupted chunk table");
+                }
+                ByteBuffer chunk = CatalogFormat.readFully(channel, offsets[i], (int) length);
+                int count = counts[i];
+                window.add(CompletableFuture.supplyAsync(() -> decodeChunk(chunk, count, dictionary), executor));
+                if (window.size() >= WINDOW) {
+                    clothes.addAll(await(window.poll()));
+                }
+            }
+            while (!window.isEmpty()) {
+                clothes.addAll(await(window.poll()));
+            }
+            return clothes;
+        } finally {
+            window.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * Checks whether the file is a compressed catalog.
+     *
+     * @param path path of the file
+     * @return {@code true} if the file starts with {@link #MAGIC}
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isCompressed(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.size() >= Integer.BYTES
+                    && CatalogFormat.readFully(channel, 0, Integer.BYTES).getInt() == MAGIC;
+        }
+    }
+
+    private static ByteBuffer encodeFileHeader() {
+        byte[] dictionary = CatalogFormat.encodeDictionary();
+        return ByteBuffer.allocate(FILE_HEADER_SIZE + dictionary.length)
+                .putInt(MAGIC)
+                .putShort(VERSION)
+                .putInt(dictionary.length)
+                .put(dictionary)
+                .flip();
+    }
+
+    /**
+     * Reads the file header, leaving the channel positioned at the first chunk.
+     */
+    private static CatalogFormat.Dictionary readFileHeader(FileChannel channel) throws IOException {
+        if (channel.size() < FILE_HEADER_SIZE) {
+            throw new IOException("Not a compressed catalog file");
+        }
+        ByteBuffer header = CatalogFormat.readFully(channel, 0, FILE_HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a compressed catalog file");
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported compressed catalog version " + version);
+        }
+        int length = header.getInt();
+        if (length < 0 || FILE_HEADER_SIZE + (long) length > channel.size()) {
+            throw new IOException("Corrupted compressed catalog header");
+        }
+        channel.position(FILE_HEADER_SIZE + length);
+        return CatalogFormat.readDictionary(CatalogFormat.readFully(channel, FILE_HEADER_SIZE, length));
+    }
+
+    private static ByteBuffer encodeTable(long tableOffset, List<Long> offsets, List<Integer> counts) {
+        ByteBuffer table = ByteBuffer.allocate(Integer.BYTES + offsets.size() * TABLE_ENTRY_SIZE + Long.BYTES)
+                .putInt(offsets.size());
+        for (int i = 0; i < offsets.size(); i++) {
+            table.putLong(offsets.get(i)).putInt(counts.get(i));
+        }
+        return table.putLong(tableOffset).flip();
+    }
+
+    /**
+     * Encodes and compresses a chunk, returning it framed and ready to be written.
+     */
+    private static ByteBuffer encodeChunk(List<Clothes> chunk) {
+        ByteBuffer records = ByteBuffer.allocate(chunk.size() * CatalogFormat.RECORD_SIZE);
+        Map<String, Integer> colorIds = new HashMap<>();
+        List<byte[]> colors = new ArrayList<>();
+        int colorsSize = Integer.BYTES;
+        for (Clothes item : chunk) {
+            int start = records.position();
+            CatalogFormat.writeRecord(records, item, 0);
+            Integer colorId = colorIds.get(item.getColor());
+            if (colorId == null) {
+                colorId = colors.size();
+                colorIds.put(item.getColor(), colorId);
+                byte[] color = item.getColor().getBytes(StandardCharsets.UTF_8);
+                colors.add(color);
+                colorsSize += Integer.BYTES + color.length;
+            }
+            records.putInt(start + CatalogFormat.COLOR_ID_OFFSET, colorId);
+        }
+        ByteBuffer raw = ByteBuffer.allocate(colorsSize + records.capacity()).putInt(colors.size());
+        for (byte[] color : colors) {
+            raw.putInt(color.length).put(color);
+        }
+        raw.put(records.flip()).flip();
+        int rawLength = raw.remaining();
+
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteBuffer framed = ByteBuffer.allocate(CHUNK_HEADER_SIZE + rawLength / 2 + 64);
+            framed.position(CHUNK_HEADER_SIZE);
+            while (!deflater.finished()) {
+                if (!framed.hasRemaining()) {
+                    framed = ByteBuffer.allocate(framed.capacity() * 2).put(framed.flip());
+                }
+                deflater.deflate(framed);
+            }
+            return framed.putInt(0, chunk.size())
+                    .putInt(Integer.BYTES, rawLength)
+                    .putInt(2 * Integer.BYTES, framed.position() - CHUNK_HEADER_SIZE)
+                    .flip();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses and decodes a framed chunk.
+     *
+     * @throws UncheckedIOException if the chunk is corrupted
+     */
+    private static List<Clothes> decodeChunk(ByteBuffer chunk, int count, CatalogFormat.Dictionary dictionary) {
+        try {
+            int recordCount = chunk.getInt();
+            int rawLength = chunk.getInt();
+            int compressedLength = chunk.getInt();
+            if (recordCount != count || rawLength < Integer.BYTES || compressedLength != chunk.remaining()) {
+                throw new IOException("Corrupted chunk header");
+            }
+            ByteBuffer raw = ByteBuffer.allocate(rawLength);
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(chunk);
+                while (raw.hasRemaining() && !inflater.finished()) {
+                    if (inflater.inflate(raw) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                }
+                if (raw.hasRemaining() || !inflater.finished()) {
+                    throw new IOException("Corrupted chunk data");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupted chunk data", e);
+            } finally {
+                inflater.end();
+            }
+            raw.flip();
+            int colorCount = raw.getInt();
+            if (colorCount < 0 || colorCount > raw.remaining() / Integer.BYTES) {
+                throw new IOException("Corrupted chunk colors");
+            }
+            List<String> colors = new ArrayList<>(colorCount);
+            for (int i = 0; i < colorCount; i++) {
+                colors.add(CatalogFormat.getString(raw));
+            }
+            if (raw.remaining() != (long) recordCount * CatalogFormat.RECORD_SIZE) {
+                throw new IOException("Corrupted chunk records");
+            }
+            List<Clothes> clothes = new ArrayList<>(recordCount);
+            while (raw.hasRemaining()) {
+                clothes.add(CatalogFormat.readRecord(raw, dictionary, colors));
+            }
+            return clothes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits for a chunk task, rethrowing its failure.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
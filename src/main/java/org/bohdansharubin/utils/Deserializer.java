@@ -8,7 +8,9 @@ import java.io.ObjectInputStream;
  * Utility class for deserializing objects from files.
  * <p>
  * Provides methods to read serialized objects from a file using
- * {@link ObjectInputStream}.
+ * {@link ObjectInputStream}. The whole object graph is built before it is
+ * returned, catalogs in the binary format can be read one clothes item at a
+ * time by {@link CatalogReader}.
  */
 public class Deserializer {
 
@@ -0,0 +1,75 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.util.UUID;
+
+/**
+ * Change of the catalog read from a {@link WriteAheadLog}.
+ */
+public final class LogEntry {
+
+    /**
+     * Kind of the change.
+     */
+    public enum Operation {
+
+        /** Clothes were added or changed, the entry holds their new state */
+        PUT,
+
+        /** Clothes were deleted */
+        DELETE
+    }
+
+    private final Operation operation;
+    private final UUID uuid;
+    private final Clothes clothes;
+
+    private LogEntry(Operation operation, UUID uuid, Clothes clothes) {
+        this.operation = operation;
+        this.uuid = uuid;
+        this.clothes = clothes;
+    }
+
+    /**
+     * @param clothes new state of the clothes
+     * @return entry putting the clothes
+     */
+    static LogEntry put(Clothes clothes) {
+        return new LogEntry(Operation.PUT, clothes.getUuid(), clothes);
+    }
+
+    /**
+     * @param uuid uuid of the deleted clothes
+     * @return entry deleting the clothes
+     */
+    static LogEntry delete(UUID uuid) {
+        return new LogEntry(Operation.DELETE, uuid, null);
+    }
+
+    /**
+     * @return kind of the change
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return uuid of the changed clothes
+     */
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    /**
+     * @return new state of the clothes or {@code null} for a delete
+     */
+    public Clothes getClothes() {
+        return clothes;
+    }
+
+    @Override
+    public String toString() {
+        return operation + " " + uuid;
+    }
+}
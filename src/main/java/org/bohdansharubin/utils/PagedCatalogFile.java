@@ -0,0 +1,568 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Catalog file of fixed-size pages, saved incrementally.
+ * <p>
+ * The file is divided into units of {@link #PAGE_SIZE} bytes. The first unit
+ * holds {@link #MAGIC}, the format version, the number of records per page
+ * and two commit slots. Every other unit holds either a page of
+ * {@link #PAGE_RECORDS} records in the {@link CatalogFormat}, whose empty
+ * slots have the type byte {@code 0xFF}, or a part of the page table. The
+ * page table holds the enum dictionary, the unit of every page and the color
+ * dictionary the color ids of all records refer to. A commit slot holds
+ * <pre>
+ *  0     8    generation
+ *  8     8    offset of the page table
+ * 16     4    length of the page table
+ * 20     4    CRC-32 of the page table
+ * 24     4    CRC-32 of the slot
+ * </pre>
+ * and the valid slot with the highest generation is the current one.
+ * <p>
+ * {@link #save(Collection, Collection)} rewrites only the pages holding added,
+ * changed or deleted records. Dirty pages and the new page table are written
+ * to free units, then the older commit slot is overwritten to point to the
+ * new table, which commits the save atomically. Units of the committed
+ * catalog are never written before the commit, so a crash during a save
+ * leaves the previous catalog. Units released by a save are reused later.
+ */
+public final class PagedCatalogFile implements Closeable {
+
+    /**
+     * First four bytes of every paged catalog file, "CLTP" in ASCII.
+     */
+    public static final int MAGIC = 0x434C5450;
+
+    /**
+     * Current version of the format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * Number of records in a page.
+     */
+    public static final int PAGE_RECORDS = 256;
+
+    /**
+     * Size of a page and of every unit of the file in bytes.
+     */
+    public static final int PAGE_SIZE = PAGE_RECORDS * CatalogFormat.RECORD_SIZE;
+
+    private static final int EMPTY = 0xFF;
+    private static final int SLOTS_OFFSET = Integer.BYTES + 2 * Short.BYTES;
+    private static final int SLOT_SIZE = 32;
+    private static final int SLOT_CONTENT_SIZE = 2 * Long.BYTES + 2 * Integer.BYTES;
+
+    private final FileChannel channel;
+
+    /**
+     * Location of every record, the page number times {@link #PAGE_RECORDS} plus the slot.
+     */
+    private final Map<UUID, Integer> locations = new HashMap<>();
+    private final List<String> colors = new ArrayList<>();
+    private final Map<String, Integer> colorIds = new HashMap<>();
+    private int[] pageUnits = new int[0];
+    private int[] pageSizes = new int[0];
+
+    /**
+     * CRC-32 of every page and of the current page table, combined by {@link #stamp()}.
+     */
+    private int[] pageCrcs = new int[0];
+    private int tableCrc;
+    private final BitSet pagesWithSpace = new BitSet();
+
+    /**
+     * Units referenced by the committed catalog, including the first unit.
+     */
+    private BitSet usedUnits = new BitSet();
+    private long generation;
+    private int currentSlot = 1;
+
+    private PagedCatalogFile(FileChannel channel) {
+        this.channel = channel;
+        usedUnits.set(0);
+    }
+
+    /**
+     * Creates a paged catalog file holding the clothes, replacing the file at the path.
+     *
+     * @param path    path of the file
+     * @param clothes the clothes (must not contain null)
+     * @return the opened file
+     * @throws IOException if the file can't be written
+     * @throws IllegalArgumentException if clothes contain null or clothes with unset fields
+     */
+    public static PagedCatalogFile create(Path path, Collection<? extends Clothes> clothes) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (PagedCatalogFile file = new PagedCatalogFile(FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE))) {
+            ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE)
+                    .putInt(MAGIC)
+                    .putShort(VERSION)
+                    .putShort((short) PAGE_RECORDS);
+            CatalogFormat.writeFully(file.channel, header.clear());
+            file.save(clothes, List.of());
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        CatalogFile.replace(temporary, path);
+        return open(path, ignored -> {
+        });
+    }
+
+    /**
+     * Opens a paged catalog file, passing every stored clothes item to the action.
+     * <p>
+     * A file saved with another enum dictionary is rewritten with the current one.
+     *
+     * @param path   path of the file
+     * @param action receives every stored clothes item (must not be null)
+     * @return the opened file
+     * @throws IOException if the file can't be read, is not a paged catalog or is corrupted
+     */
+    public static PagedCatalogFile open(Path path, Consumer<? super Clothes> action) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        PagedCatalogFile file = new PagedCatalogFile(channel);
+        List<Clothes> outdated = new ArrayList<>();
+        boolean current;
+        try {
+            current = file.read(action, outdated);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        if (current) {
+            return file;
+        }
+        file.close();
+        return create(path, outdated);
+    }
+
+    /**
+     * Checks whether the file is a paged catalog.
+     *
+     * @param path path of the file
+     * @return {@code true} if the file starts with {@link #MAGIC}
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isPaged(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.size() >= Integer.BYTES
+                    && CatalogFormat.readFully(channel, 0, Integer.BYTES).getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Saves added or changed clothes and deletions, rewriting only the pages holding them.
+     *
+     * @param changed clothes to add or to replace the stored clothes with the same uuid
+     *                (must not be null or contain null)
+     * @param deleted uuids of clothes to delete, unknown uuids are ignored (must not be null)
+     * @return number of written pages
+     * @throws IOException if the file can't be written, the previous catalog is kept then
+     * @throws IllegalArgumentException if changed contains null or clothes with unset fields
+     */
+    public synchronized int save(Collection<? extends Clothes> changed, Collection<UUID> deleted)
+            throws IOException {
+        int colorsBefore = colors.size();
+        try {
+            return commit(changed, deleted);
+        } catch (IOException | RuntimeException e) {
+            for (String color : colors.subList(colorsBefore, colors.size())) {
+                colorIds.remove(color);
+            }
+            colors.subList(colorsBefore, colors.size()).clear();
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of stored clothes
+     */
+    public synchronized int size() {
+        return locations.size();
+    }
+
+    /**
+     * @return generation of the last saved state, it changes with every save
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Returns a stamp of the saved state, which identifies the records and
+     * their order in the file: the generation in the high half and a CRC-32
+     * over the checksums of all pages and of the page table in the low half.
+     * Files holding other clothes at the same generation have other stamps.
+     *
+     * @return stamp of the last saved state
+     */
+    public synchronized long stamp() {
+        ByteBuffer checksums = ByteBuffer.allocate((pageCrcs.length + 1) * Integer.BYTES);
+        for (int pageCrc : pageCrcs) {
+            checksums.putInt(pageCrc);
+        }
+        checksums.putInt(tableCrc).flip();
+        return generation << Integer.SIZE | Integer.toUnsignedLong(crc(checksums));
+    }
+
+    /**
+     * @return uuids of the stored clothes in the order {@link #open} reads them
+     */
+    public synchronized List<UUID> uuidsInLoadOrder() {
+        List<Map.Entry<UUID, Integer>> entries = new ArrayList<>(locations.entrySet());
+        entries.sort(Map.Entry.comparingByValue());
+        List<UUID> uuids = new ArrayList<>(entries.size());
+        for (Map.Entry<UUID, Integer> entry : entries) {
+            uuids.add(entry.getKey());
+        }
+        return uuids;
+    }
+
+    /**
+     * @return number of pages, including pages left empty by deletions
+     */
+    public synchronized int pageCount() {
+        return pageUnits.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the current page table and all pages.
+     *
+     * @return {@code false} if the file was saved with another enum dictionary,
+     *         its clothes are collected to outdated then
+     */
+    private boolean read(Consumer<? super Clothes> action, List<Clothes> outdated) throws IOException {
+        if (channel.size() < PAGE_SIZE) {
+            throw new IOException("Not a paged catalog file");
+        }
+        ByteBuffer header = CatalogFormat.readFully(channel, 0, SLOTS_OFFSET + 2 * SLOT_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a paged catalog file");
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported paged catalog version " + version);
+        }
+        if (header.getShort() != PAGE_RECORDS) {
+            throw new IOException("Unexpected page size");
+        }
+        ByteBuffer table = null;
+        for (int slot : slotsByGeneration(header)) {
+            table = readTable(header.position(SLOTS_OFFSET + slot * SLOT_SIZE));
+            if (table != null) {
+                currentSlot = slot;
+                break;
+            }
+        }
+        if (table == null) {
+            throw new IOException("Paged catalog has no valid page table");
+        }
+
+        int dictionaryLength = table.getInt();
+        if (dictionaryLength < 0 || dictionaryLength > table.remaining()) {
+            throw new IOException("Corrupted page table");
+        }
+        byte[] dictionaryBytes = new byte[dictionaryLength];
+        table.get(dictionaryBytes);
+        CatalogFormat.Dictionary dictionary = CatalogFormat.readDictionary(ByteBuffer.wrap(dictionaryBytes));
+        boolean current = Arrays.equals(dictionaryBytes, CatalogFormat.encodeDictionary());
+        int pageCount = table.getInt();
+        long unitCount = channel.size() / PAGE_SIZE;
+        if (pageCount < 0 || pageCount > unitCount) {
+            throw new IOException("Corrupted page table");
+        }
+        pageUnits = new int[pageCount];
+        pageSizes = new int[pageCount];
+        pageCrcs = new int[pageCount];
+        for (int page = 0; page < pageCount; page++) {
+            pageUnits[page] = table.getInt();
+            if (pageUnits[page] <= 0 || pageUnits[page] >= unitCount || usedUnits.get(pageUnits[page])) {
+                throw new IOException("Corrupted page table");
+            }
+            usedUnits.set(pageUnits[page]);
+        }
+        int colorCount = table.getInt();
+        for (int i = 0; i < colorCount; i++) {
+            colorId(CatalogFormat.getString(table));
+        }
+
+        for (int page = 0; page < pageCount; page++) {
+            ByteBuffer records = CatalogFormat.readFully(channel, (long) pageUnits[page] * PAGE_SIZE, PAGE_SIZE);
+            pageCrcs[page] = crc(records);
+            for (int slot = 0; slot < PAGE_RECORDS; slot++) {
+                records.position(slot * CatalogFormat.RECORD_SIZE);
+                if (Byte.toUnsignedInt(records.get(records.position() + CatalogFormat.TYPE_OFFSET)) == EMPTY) {
+                    continue;
+                }
+                Clothes clothes = CatalogFormat.readRecord(records, dictionary, colors);
+                if (locations.put(clothes.getUuid(), page * PAGE_RECORDS + slot) != null) {
+                    throw new IOException("Duplicate uuid " + clothes.getUuid() + " in paged catalog");
+                }
+                pageSizes[page]++;
+                action.accept(clothes);
+                if (!current) {
+                    outdated.add(clothes);
+                }
+            }
+            if (pageSizes[page] < PAGE_RECORDS) {
+                pagesWithSpace.set(page);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Returns the slots ordered by their generation, the newest first.
+     */
+    private static int[] slotsByGeneration(ByteBuffer header) {
+        long first = header.getLong(SLOTS_OFFSET);
+        long second = header.getLong(SLOTS_OFFSET + SLOT_SIZE);
+        return first >= second ? new int[] {0, 1} : new int[] {1, 0};
+    }
+
+    /**
+     * Reads the page table of the slot at the position of the header.
+     *
+     * @return the table or {@code null} if the slot or the table is not valid
+     */
+    private ByteBuffer readTable(ByteBuffer header) throws IOException {
+        ByteBuffer slot = header.slice(header.position(), SLOT_SIZE);
+        if (crc(slot.slice(0, SLOT_CONTENT_SIZE)) != slot.getInt(SLOT_CONTENT_SIZE)) {
+            return null;
+        }
+        long slotGeneration = slot.getLong();
+        long offset = slot.getLong();
+        int length = slot.getInt();
+        int tableCrc = slot.getInt();
+        if (offset < PAGE_SIZE || offset % PAGE_SIZE != 0 || length <= 0 || offset + length > channel.size()) {
+            return null;
+        }
+        ByteBuffer table = CatalogFormat.readFully(channel, offset, length);
+        if (crc(table) != tableCrc) {
+            return null;
+        }
+        generation = slotGeneration;
+        this.tableCrc = tableCrc;
+        int tableUnit = (int) (offset / PAGE_SIZE);
+        usedUnits.set(tableUnit, tableUnit + units(length));
+        return table;
+    }
+
+    private int commit(Collection<? extends Clothes> changed, Collection<UUID> deleted) throws IOException {
+        Map<Integer, ByteBuffer> dirtyPages = new TreeMap<>();
+        Map<UUID, Integer> newLocations = new HashMap<>();
+        Map<Integer, Integer> newSizes = new HashMap<>();
+        int pageCount = pageUnits.length;
+        BitSet freedPages = new BitSet();
+
+        for (UUID uuid : deleted) {
+            Integer location = newLocations.containsKey(uuid) ? newLocations.get(uuid) : locations.get(uuid);
+            if (location == null) {
+                continue;
+            }
+            int page = location / PAGE_RECORDS;
+            ByteBuffer records = page(dirtyPages, page);
+            records.put((location % PAGE_RECORDS) * CatalogFormat.RECORD_SIZE + CatalogFormat.TYPE_OFFSET,
+                    (byte) EMPTY);
+            newSizes.put(page, sizeOf(newSizes, page) - 1);
+            newLocations.put(uuid, null);
+            freedPages.set(page);
+        }
+
+        int candidate = nextCandidate(freedPages, -1);
+        int slot = 0;
+        for (Clothes clothes : changed) {
+            if (clothes == null) {
+                throw new IllegalArgumentException("changed must not contain null");
+            }
+            Integer location = newLocations.containsKey(clothes.getUuid())
+                    ? newLocations.get(clothes.getUuid())
+                    : locations.get(clothes.getUuid());
+            if (location == null) {
+                while (sizeOf(newSizes, candidate) == PAGE_RECORDS) {
+                    candidate = nextCandidate(freedPages, candidate);
+                    slot = 0;
+                }
+                pageCount = Math.max(pageCount, candidate + 1);
+                ByteBuffer records = page(dirtyPages, candidate);
+                while (Byte.toUnsignedInt(records.get(slot * CatalogFormat.RECORD_SIZE
+                        + CatalogFormat.TYPE_OFFSET)) != EMPTY) {
+                    slot++;
+                }
+                location = candidate * PAGE_RECORDS + slot;
+                newSizes.put(candidate, sizeOf(newSizes, candidate) + 1);
+                newLocations.put(clothes.getUuid(), location);
+            }
+            ByteBuffer records = page(dirtyPages, location / PAGE_RECORDS);
+            CatalogFormat.writeRecord(records.position((location % PAGE_RECORDS) * CatalogFormat.RECORD_SIZE),
+                    clothes, 0);
+            records.putInt((location % PAGE_RECORDS) * CatalogFormat.RECORD_SIZE + CatalogFormat.COLOR_ID_OFFSET,
+                    colorId(clothes.getColor()));
+        }
+        if (dirtyPages.isEmpty() && generation > 0) {
+            return 0;
+        }
+
+        BitSet allocated = (BitSet) usedUnits.clone();
+        int[] newPageUnits = Arrays.copyOf(pageUnits, pageCount);
+        int[] newPageCrcs = Arrays.copyOf(pageCrcs, pageCount);
+        for (Map.Entry<Integer, ByteBuffer> page : dirtyPages.entrySet()) {
+            int unit = allocated.nextClearBit(1);
+            allocated.set(unit);
+            newPageUnits[page.getKey()] = unit;
+            newPageCrcs[page.getKey()] = crc(page.getValue().clear());
+            channel.position((long) unit * PAGE_SIZE);
+            CatalogFormat.writeFully(channel, page.getValue().clear());
+        }
+        ByteBuffer table = encodeTable(newPageUnits);
+        int newTableUnit = Math.max(allocated.length(), 1);
+        long tableOffset = (long) newTableUnit * PAGE_SIZE;
+        channel.position(tableOffset);
+        CatalogFormat.writeFully(channel, table.duplicate());
+        channel.force(false);
+
+        int slotToWrite = 1 - currentSlot;
+        ByteBuffer commit = ByteBuffer.allocate(SLOT_SIZE)
+                .putLong(generation + 1)
+                .putLong(tableOffset)
+                .putInt(table.remaining())
+                .putInt(crc(table));
+        commit.putInt(crc(commit.slice(0, SLOT_CONTENT_SIZE))).clear();
+        while (commit.hasRemaining()) {
+            channel.write(commit, SLOTS_OFFSET + slotToWrite * SLOT_SIZE + commit.position());
+        }
+        channel.force(false);
+
+        BitSet newUsedUnits = new BitSet();
+        newUsedUnits.set(0);
+        for (int unit : newPageUnits) {
+            newUsedUnits.set(unit);
+        }
+        newUsedUnits.set(newTableUnit, newTableUnit + units(table.remaining()));
+        usedUnits = newUsedUnits;
+        generation++;
+        currentSlot = slotToWrite;
+        int[] newPageSizes = Arrays.copyOf(pageSizes, pageCount);
+        for (Map.Entry<Integer, Integer> size : newSizes.entrySet()) {
+            newPageSizes[size.getKey()] = size.getValue();
+            pagesWithSpace.set(size.getKey(), size.getValue() < PAGE_RECORDS);
+        }
+        pageUnits = newPageUnits;
+        pageSizes = newPageSizes;
+        pageCrcs = newPageCrcs;
+        tableCrc = crc(table);
+        for (Map.Entry<UUID, Integer> location : newLocations.entrySet()) {
+            if (location.getValue() == null) {
+                locations.remove(location.getKey());
+            } else {
+                locations.put(location.getKey(), location.getValue());
+            }
+        }
+        long end = (long) usedUnits.length() * PAGE_SIZE;
+        if (channel.size() > end) {
+            channel.truncate(end);
+        }
+        return dirtyPages.size();
+    }
+
+    /**
+     * Returns the content of the page, read from the file or empty for a new page.
+     */
+    private ByteBuffer page(Map<Integer, ByteBuffer> dirtyPages, int page) throws IOException {
+        ByteBuffer records = dirtyPages.get(page);
+        if (records != null) {
+            return records;
+        }
+        if (page < pageUnits.length) {
+            records = CatalogFormat.readFully(channel, (long) pageUnits[page] * PAGE_SIZE, PAGE_SIZE);
+        } else {
+            records = ByteBuffer.allocate(PAGE_SIZE);
+            for (int slot = 0; slot < PAGE_RECORDS; slot++) {
+                records.put(slot * CatalogFormat.RECORD_SIZE + CatalogFormat.TYPE_OFFSET, (byte) EMPTY);
+            }
+        }
+        dirtyPages.put(page, records);
+        return records;
+    }
+
+    /**
+     * Returns the next page which may have space for a new record: pages with
+     * space or with slots freed by the save first, then new pages after the last one.
+     */
+    private int nextCandidate(BitSet freedPages, int page) {
+        int withSpace = pagesWithSpace.nextSetBit(page + 1);
+        int freed = freedPages.nextSetBit(page + 1);
+        int next = withSpace < 0 ? freed : freed < 0 ? withSpace : Math.min(withSpace, freed);
+        return next >= 0 ? next : Math.max(page + 1, pageUnits.length);
+    }
+
+    private int sizeOf(Map<Integer, Integer> newSizes, int page) {
+        Integer size = newSizes.get(page);
+        if (size != null) {
+            return size;
+        }
+        return page < pageSizes.length ? pageSizes[page] : 0;
+    }
+
+    private int colorId(String color) {
+        return colorIds.computeIfAbsent(color, added -> {
+            colors.add(added);
+            return colors.size() - 1;
+        });
+    }
+
+    private ByteBuffer encodeTable(int[] units) {
+        byte[] dictionary = CatalogFormat.encodeDictionary();
+        List<byte[]> encodedColors = new ArrayList<>(colors.size());
+        int size = Integer.BYTES + dictionary.length + Integer.BYTES + units.length * Integer.BYTES + Integer.BYTES;
+        for (String color : colors) {
+            byte[] bytes = color.getBytes(StandardCharsets.UTF_8);
+            encodedColors.add(bytes);
+            size += Integer.BYTES + bytes.length;
+        }
+        ByteBuffer table = ByteBuffer.allocate(size)
+                .putInt(dictionary.length)
+                .put(dictionary)
+                .putInt(units.length);
+        for (int unit : units) {
+            table.putInt(unit);
+        }
+        table.putInt(colors.size());
+        for (byte[] bytes : encodedColors) {
+            table.putInt(bytes.length).put(bytes);
+        }
+        return table.flip();
+    }
+
+    private static int units(int length) {
+        return (length + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    private static int crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,752 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.models.Clothes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of catalog changes, written ahead of the next snapshot.
+ * <p>
+ * The file starts with a header holding {@link #MAGIC}, the format version
+ * and the enum dictionary of {@link CatalogFormat}. Every entry is framed as
+ * <pre>
+ *  0     4    length of the payload
+ *  4     4    CRC-32 of the payload
+ *  8     n    payload
+ * </pre>
+ * and its payload is an operation byte followed either by a
+ * {@link CatalogFormat#RECORD_SIZE} byte record and the color string for a
+ * put, or by the two uuid halves for a delete. A torn entry at the end of the
+ * file, left by a crash during a write, is dropped when the log is opened.
+ * <p>
+ * Appends only copy the entry into a buffer in memory. Writing and
+ * {@link FileChannel#force(boolean) forcing} the buffer is shared by all
+ * entries appended since the previous write, so concurrent mutators pay for
+ * one fsync together (group commit). When an appended entry becomes durable
+ * depends on the {@link Durability} of the log.
+ * <p>
+ * Every entry holds the whole state of the clothes or their deletion, so
+ * applying an entry twice or applying only the last entry of every uuid
+ * gives the same catalog. Entries already covered by a saved snapshot are
+ * dropped by {@link #discardBefore(long)}.
+ */
+public final class WriteAheadLog implements Closeable {
+
+    /**
+     * First four bytes of every log file, "CWAL" in ASCII.
+     */
+    public static final int MAGIC = 0x4357414C;
+
+    /**
+     * Current version of the log format.
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * When appended entries are written to disk.
+     */
+    public enum Durability {
+
+        /**
+         * {@link #awaitDurable()} writes and forces pending entries itself,
+         * threads waiting at the same time share the write
+         */
+        PER_OPERATION,
+
+        /**
+         * A background thread writes and forces pending entries once per
+         * interval, {@link #awaitDurable()} waits for it
+         */
+        BATCHED,
+
+        /**
+         * A background thread writes and forces pending entries once per
+         * interval, {@link #awaitDurable()} does not wait, so entries of the
+         * last interval may be lost on a crash
+         */
+        ASYNC
+    }
+
+    private static final int FRAME_SIZE = 2 * Integer.BYTES;
+    private static final int FILE_HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private final Path path;
+    private final int headerSize;
+    private FileChannel channel;
+    private final Durability durability;
+    private final long intervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+    private final Condition flushRequested = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocate(BUFFER_SIZE);
+    private long appendedPosition;
+    private long durablePosition;
+
+    /**
+     * Position of the first byte of the file, grows when entries are discarded.
+     */
+    private long base;
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;
+    private final Thread flusher;
+
+    /**
+     * End of the last entry appended by each thread.
+     */
+    private final ThreadLocal<long[]> lastAppended = ThreadLocal.withInitial(() -> new long[1]);
+
+    private WriteAheadLog(Path path, FileChannel channel, Durability durability, Duration interval)
+            throws IOException {
+        this.path = path;
+        this.headerSize = encodeFileHeader().remaining();
+        this.channel = channel;
+        this.durability = durability;
+        this.intervalNanos = interval.toNanos();
+        this.appendedPosition = channel.size();
+        this.durablePosition = appendedPosition;
+        channel.position(appendedPosition);
+        if (durability == Durability.PER_OPERATION) {
+            this.flusher = null;
+        } else {
+            this.flusher = new Thread(this::flushPeriodically, "write-ahead-log-flusher");
+            this.flusher.setDaemon(true);
+            this.flusher.start();
+        }
+    }
+
+    /**
+     * Opens the log for appending, creating it if it does not exist.
+     * <p>
+     * A torn entry at the end is cut off. A log written with another enum
+     * dictionary is rewritten with the current one first.
+     *
+     * @param path       path of the log file
+     * @param durability when appended entries are written to disk (must not be null)
+     * @param interval   interval of background writes for {@link Durability#BATCHED}
+     *                   and {@link Durability#ASYNC} (must be positive)
+     * @return the opened log
+     * @throws IOException if the file can't be opened or is not a log
+     * @throws IllegalArgumentException if durability is null or interval is not positive
+     */
+    public static WriteAheadLog open(Path path, Durability durability, Duration interval) throws IOException {
+        if (durability == null) {
+            throw new IllegalArgumentException("durability must not be null");
+        }
+        if (interval == null || interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        if (Files.exists(path) && Files.size(path) > 0) {
+            byte[] dictionary = readDictionaryBytes(path);
+            if (!Arrays.equals(dictionary, CatalogFormat.encodeDictionary())) {
+                rewrite(path, read(path));
+            }
+        }
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                CatalogFormat.writeFully(channel, encodeFileHeader());
+                channel.force(true);
+            } else {
+                channel.truncate(validEnd(channel));
+            }
+            return new WriteAheadLog(path, channel, durability, interval);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads all complete entries of the log.
+     *
+     * @param path path of the log file
+     * @return entries in the order they were appended, empty if the file does not exist
+     * @throws IOException if the file can't be read, is not a log or an entry is corrupted
+     */
+    public static List<LogEntry> read(Path path) throws IOException {
+        List<LogEntry> entries = new ArrayList<>();
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return entries;
+        }
+        try (channel) {
+            if (channel.size() == 0) {
+                return entries;
+            }
+            CatalogFormat.Dictionary dictionary = readFileHeader(channel);
+            long end = validEnd(channel);
+            long position = channel.position();
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+            while (position < end) {
+                frame.clear();
+                readFully(channel, frame, position);
+                ByteBuffer payload = ByteBuffer.allocate(frame.getInt(0));
+                readFully(channel, payload, position + FRAME_SIZE);
+                entries.add(decode(payload.flip(), dictionary));
+                position += FRAME_SIZE + payload.capacity();
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Reads the last complete entry of every uuid in the log.
+     * <p>
+     * Entries are partitioned by uuid and every partition is reduced to the
+     * last entries of its uuids in parallel, only these entries are decoded.
+     * Applying the result gives the same catalog as applying all entries.
+     *
+     * @param path       path of the log file
+     * @param partitions number of partitions reduced in parallel (must be positive)
+     * @return last entry of every uuid in the order they were appended,
+     *         empty if the file does not exist
+     * @throws IOException if the file can't be read, is not a log or an entry is corrupted
+     * @throws IllegalArgumentException if partitions is not positive
+     */
+    public static List<LogEntry> readLatest(Path path, int partitions) throws IOException {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("partitions must be positive");
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return new ArrayList<>();
+        }
+        CatalogFormat.Dictionary dictionary;
+        ByteBuffer entries;
+        try (channel) {
+            if (channel.size() == 0) {
+                return new ArrayList<>();
+            }
+            dictionary = readFileHeader(channel);
+            long start = channel.position();
+            long end = validEnd(channel);
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Write-ahead log is too large to be read at once");
+            }
+            entries = CatalogFormat.readFully(channel, start, (int) (end - start));
+        }
+        List<ByteBuffer> payloads = new ArrayList<>();
+        for (int position = 0; position < entries.limit(); ) {
+            int length = entries.getInt(position);
+            if (length < Byte.BYTES + 2 * Long.BYTES) {
+                throw new IOException("Corrupted write-ahead log entry");
+            }
+            payloads.add(entries.slice(position + FRAME_SIZE, length));
+            position += FRAME_SIZE + length;
+        }
+        int[][] partitioned = partition(payloads, partitions);
+        try {
+            return IntStream.range(0, partitions).parallel()
+                    .mapToObj(partition -> latest(payloads, partitioned[partition], dictionary))
+                    .flatMap(latest -> latest.entrySet().stream())
+                    .sorted(Map.Entry.comparingByKey())
+                    .map(Map.Entry::getValue)
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Appends the current state of the clothes.
+     *
+     * @param clothes added or changed clothes (must have all fields set)
+     * @return end position of the entry in the log
+     * @throws IllegalStateException if the log is closed
+     */
+    public long appendPut(Clothes clothes) {
+        byte[] color = clothes.getColor().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(Byte.BYTES + CatalogFormat.RECORD_SIZE + Integer.BYTES + color.length);
+        payload.put(PUT);
+        CatalogFormat.writeRecord(payload, clothes, 0);
+        payload.putInt(color.length).put(color);
+        return append(payload.flip());
+    }
+
+    /**
+     * Appends deletion of the clothes with the uuid.
+     *
+     * @param uuid uuid of the deleted clothes
+     * @return end position of the entry in the log
+     * @throws IllegalStateException if the log is closed
+     */
+    public long appendDelete(UUID uuid) {
+        ByteBuffer payload = ByteBuffer.allocate(Byte.BYTES + 2 * Long.BYTES)
+                .put(DELETE)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits());
+        return append(payload.flip());
+    }
+
+    /**
+     * Waits until the last entry appended by the calling thread is durable,
+     * as far as the {@link Durability} of the log requires.
+     *
+     * @throws UncheckedIOException if writing the log failed
+     */
+    public void awaitDurable() {
+        awaitDurable(lastAppended.get()[0]);
+    }
+
+    /**
+     * Waits until entries up to the position are durable, as far as the
+     * {@link Durability} of the log requires.
+     *
+     * @param position end position of an appended entry
+     * @throws UncheckedIOException if writing the log failed
+     */
+    public void awaitDurable(long position) {
+        if (durability == Durability.ASYNC) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durablePosition < position) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Write-ahead log failed", failure);
+                }
+                if (durability == Durability.PER_OPERATION && !flushing) {
+                    flush();
+                } else {
+                    written.awaitUninterruptibly();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks that appended entries can still be written, so a change can be
+     * rejected before it is applied instead of failing once it is logged.
+     *
+     * @throws UncheckedIOException if writing the log failed, all later writes fail then
+     * @throws IllegalStateException if the log is closed
+     */
+    public void checkWritable() {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return when appended entries are written to disk
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Discards the entries before the position, once a snapshot covering
+     * them is saved.
+     * <p>
+     * The remaining entries are copied into a new file which then replaces
+     * the log. Appends continue during the copy, only writes of appended
+     * entries wait until the new file is in place. Entries not written yet
+     * are kept even if they precede the position. Positions returned before
+     * stay valid.
+     *
+     * @param position end position of an appended entry, e.g. returned by {@link #size()}
+     * @return number of discarded bytes
+     * @throws IOException if the log can't be rewritten, it is left unchanged then
+     * @throws IllegalStateException if the log is closed
+     */
+    public long discardBefore(long position) throws IOException {
+        long from;
+        long to;
+        lock.lock();
+        try {
+            while (flushing) {
+                written.awaitUninterruptibly();
+            }
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            if (failure != null) {
+                throw new IOException("Write-ahead log failed", failure);
+            }
+            from = Math.min(position, durablePosition) - base;
+            to = durablePosition - base;
+            if (from <= headerSize) {
+                return 0;
+            }
+            flushing = true;
+        } finally {
+            lock.unlock();
+        }
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        FileChannel replacement = null;
+        try {
+            replacement = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            CatalogFormat.writeFully(replacement, encodeFileHeader());
+            for (long copied = 0; copied < to - from; ) {
+                long transferred = channel.transferTo(from + copied, to - from - copied, replacement);
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of write-ahead log");
+                }
+                copied += transferred;
+            }
+            replacement.force(true);
+            CatalogFile.replace(temporary, path);
+        } catch (IOException | RuntimeException e) {
+            if (replacement != null) {
+                replacement.close();
+            }
+            Files.deleteIfExists(temporary);
+            lock.lock();
+            try {
+                flushing = false;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+        FileChannel discarded;
+        lock.lock();
+        try {
+            discarded = channel;
+            channel = replacement;
+            base += from - headerSize;
+            flushing = false;
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        discarded.close();
+        return from - headerSize;
+    }
+
+    /**
+     * Returns the end position of the last appended entry. Positions grow
+     * with every append and are not reduced by {@link #discardBefore(long)}.
+     *
+     * @return end position of the log including entries not written yet
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces all pending entries and closes the log.
+     *
+     * @throws IOException if writing the pending entries fails
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            flushRequested.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.lock();
+        try {
+            while (flushing) {
+                written.awaitUninterruptibly();
+            }
+            if (pending.position() > 0) {
+                flush();
+            }
+        } finally {
+            lock.unlock();
+            channel.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private long append(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        int size = FRAME_SIZE + payload.remaining();
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            if (pending.remaining() < size) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+                pending = larger.put(pending.flip());
+            }
+            pending.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload);
+            appendedPosition += size;
+            lastAppended.get()[0] = appendedPosition;
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces the pending entries. Must be called holding the lock
+     * while no other flush is running; the lock is released during the I/O so
+     * other threads can keep appending into the spare buffer.
+     */
+    private void flush() {
+        flushing = true;
+        ByteBuffer batch = pending;
+        pending = spare.capacity() >= batch.capacity() ? spare : ByteBuffer.allocate(batch.capacity());
+        spare = null;
+        long target = appendedPosition;
+        lock.unlock();
+        IOException error = null;
+        try {
+            batch.flip();
+            CatalogFormat.writeFully(channel, batch);
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+        }
+        spare = batch.clear();
+        flushing = false;
+        if (error != null) {
+            failure = error;
+        } else {
+            durablePosition = target;
+        }
+        written.signalAll();
+    }
+
+    private void flushPeriodically() {
+        lock.lock();
+        try {
+            while (!closed) {
+                try {
+                    flushRequested.awaitNanos(intervalNanos);
+                } catch (InterruptedException e) {
+                    if (closed) {
+                        return;
+                    }
+                }
+                if (!closed && !flushing && failure == null && pending.position() > 0) {
+                    flush();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ByteBuffer encodeFileHeader() {
+        byte[] dictionary = CatalogFormat.encodeDictionary();
+        return ByteBuffer.allocate(FILE_HEADER_SIZE + dictionary.length)
+                .putInt(MAGIC)
+                .putShort(VERSION)
+                .putInt(dictionary.length)
+                .put(dictionary)
+                .flip();
+    }
+
+    /**
+     * Reads the file header, leaving the channel positioned at the first entry.
+     */
+    private static CatalogFormat.Dictionary readFileHeader(FileChannel channel) throws IOException {
+        ByteBuffer dictionary = ByteBuffer.wrap(readDictionaryBytes(channel));
+        channel.position(FILE_HEADER_SIZE + dictionary.capacity());
+        return CatalogFormat.readDictionary(dictionary);
+    }
+
+    private static byte[] readDictionaryBytes(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return readDictionaryBytes(channel);
+        }
+    }
+
+    private static byte[] readDictionaryBytes(FileChannel channel) throws IOException {
+        if (channel.size() < FILE_HEADER_SIZE) {
+            throw new IOException("Not a write-ahead log");
+        }
+        ByteBuffer header = CatalogFormat.readFully(channel, 0, FILE_HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a write-ahead log");
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported write-ahead log version " + version);
+        }
+        int length = header.getInt();
+        if (length < 0 || FILE_HEADER_SIZE + (long) length > channel.size()) {
+            throw new IOException("Corrupted write-ahead log header");
+        }
+        return CatalogFormat.readFully(channel, FILE_HEADER_SIZE, length).array();
+    }
+
+    /**
+     * Returns the end of the last complete entry whose checksum matches.
+     */
+    private static long validEnd(FileChannel channel) throws IOException {
+        readFileHeader(channel);
+        long position = channel.position();
+        long size = channel.size();
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_SIZE);
+        ByteBuffer payload = ByteBuffer.allocate(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        while (position + FRAME_SIZE <= size) {
+            frame.clear();
+            readFully(channel, frame, position);
+            int length = frame.getInt(0);
+            if (length <= 0 || position + FRAME_SIZE + length > size) {
+                break;
+            }
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(length);
+            }
+            payload.clear().limit(length);
+            readFully(channel, payload, position + FRAME_SIZE);
+            crc.reset();
+            crc.update(payload.flip());
+            if ((int) crc.getValue() != frame.getInt(Integer.BYTES)) {
+                break;
+            }
+            position += FRAME_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Returns the indexes of payloads in every partition, partitioned by
+     * their uuid, which both operations store right after the operation byte.
+     */
+    private static int[][] partition(List<ByteBuffer> payloads, int partitions) {
+        int[] partitionOf = new int[payloads.size()];
+        int[] sizes = new int[partitions];
+        for (int i = 0; i < payloads.size(); i++) {
+            ByteBuffer payload = payloads.get(i);
+            int hash = Long.hashCode(payload.getLong(Byte.BYTES) ^ payload.getLong(Byte.BYTES + Long.BYTES));
+            partitionOf[i] = Math.floorMod(hash ^ (hash >>> 16), partitions);
+            sizes[partitionOf[i]]++;
+        }
+        int[][] partitioned = new int[partitions][];
+        for (int partition = 0; partition < partitions; partition++) {
+            partitioned[partition] = new int[sizes[partition]];
+            sizes[partition] = 0;
+        }
+        for (int i = 0; i < partitionOf.length; i++) {
+            partitioned[partitionOf[i]][sizes[partitionOf[i]]++] = i;
+        }
+        return partitioned;
+    }
+
+    /**
+     * Decodes the last payload of every uuid in the partition, keyed by its index.
+     */
+    private static Map<Integer, LogEntry> latest(List<ByteBuffer> payloads, int[] partition,
+                                                 CatalogFormat.Dictionary dictionary) {
+        Map<UUID, Integer> lastIndexes = new HashMap<>();
+        for (int index : partition) {
+            ByteBuffer payload = payloads.get(index);
+            lastIndexes.put(new UUID(payload.getLong(Byte.BYTES), payload.getLong(Byte.BYTES + Long.BYTES)), index);
+        }
+        Map<Integer, LogEntry> entries = new HashMap<>();
+        for (int index : lastIndexes.values()) {
+            try {
+                entries.put(index, decode(payloads.get(index).duplicate(), dictionary));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return entries;
+    }
+
+    private static LogEntry decode(ByteBuffer payload, CatalogFormat.Dictionary dictionary) throws IOException {
+        byte operation = payload.get();
+        if (operation == DELETE) {
+            return LogEntry.delete(new UUID(payload.getLong(), payload.getLong()));
+        }
+        if (operation != PUT) {
+            throw new IOException("Unknown write-ahead log operation " + operation);
+        }
+        ByteBuffer record = payload.slice(payload.position(), CatalogFormat.RECORD_SIZE);
+        payload.position(payload.position() + CatalogFormat.RECORD_SIZE);
+        String color = CatalogFormat.getString(payload);
+        return LogEntry.put(CatalogFormat.readRecord(record, dictionary, List.of(color)));
+    }
+
+    /**
+     * Rewrites the log with the current enum dictionary.
+     */
+    private static void rewrite(Path path, List<LogEntry> entries) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        try (WriteAheadLog log = open(temporary, Durability.ASYNC, Duration.ofSeconds(1))) {
+            for (LogEntry entry : entries) {
+                if (entry.getOperation() == LogEntry.Operation.PUT) {
+                    log.appendPut(entry.getClothes());
+                } else {
+                    log.appendDelete(entry.getUuid());
+                }
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0) {
+                throw new IOException("Unexpected end of write-ahead log");
+            }
+        }
+    }
+}
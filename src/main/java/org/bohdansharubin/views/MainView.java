@@ -28,6 +28,8 @@ public class MainView implements View {
                 .append(LINE_SEPARATOR)
                 .append("6. Delete clothes")
                 .append(LINE_SEPARATOR)
+                .append("7. Import clothes from a file")
+                .append(LINE_SEPARATOR)
                 .append("99. Exit")
                 .append(LINE_SEPARATOR);
     }
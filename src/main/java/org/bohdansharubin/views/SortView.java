@@ -27,6 +27,8 @@ public class SortView implements  View {
                 .append(LINE_SEPARATOR)
                 .append("5. Sort by default")
                 .append(LINE_SEPARATOR)
+                .append("6. Sort by type, american size and european size")
+                .append(LINE_SEPARATOR)
                 .append("99. Go back")
                 .append(LINE_SEPARATOR);
     }
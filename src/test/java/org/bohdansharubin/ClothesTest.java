@@ -3,12 +3,16 @@ package org.bohdansharubin;
 import org.bohdansharubin.enums.AmericanSize;
 import org.bohdansharubin.exceptions.InvalidFieldValueException;
 import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.models.IdGenerator;
 import org.bohdansharubin.enums.ClothesType;
 import org.bohdansharubin.models.Pants;
 import org.bohdansharubin.models.Shirt;
+import org.bohdansharubin.models.UuidV7Generator;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.util.UUID;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class ClothesTest {
@@ -68,6 +72,17 @@ class ClothesTest {
         assertEquals(original, copy);
     }
 
+    @DisplayName("Colors differing only in case and spaces are equal")
+    @Test
+    void shouldBeEqualWhenColorsDifferOnlyInCase() {
+        Clothes black = new Pants("Black", 42, AmericanSize.L);
+        Clothes otherBlack = new Pants(" BLACK ", 42, AmericanSize.L);
+
+        assertEquals(black, otherBlack);
+        assertEquals(black.hashCode(), otherBlack.hashCode());
+        assertNotEquals(black, new Pants("Blue", 42, AmericanSize.L));
+    }
+
     @DisplayName("Setting valid color")
     @Test
     void shouldSetColorWhenValid() {
@@ -133,4 +148,34 @@ class ClothesTest {
 
         assertEquals("American size can't be null", ex.getMessage());
     }
+
+    @DisplayName("New clothes get increasing time-ordered uuids")
+    @Test
+    void shouldGenerateIncreasingVersion7UuidsWhenCreatingClothes() {
+        long before = System.currentTimeMillis();
+        UUID previous = new Pants("Black", 40, AmericanSize.M).getUuid();
+        for (int i = 0; i < 10_000; i++) {
+            UUID next = new Pants("Black", 40, AmericanSize.M).getUuid();
+            assertEquals(7, next.version());
+            assertEquals(2, next.variant());
+            assertTrue(previous.compareTo(next) < 0);
+            previous = next;
+        }
+        assertTrue(UuidV7Generator.timestampOf(previous) >= before);
+    }
+
+    @DisplayName("Clothes use the configured id generator")
+    @Test
+    void shouldUseConfiguredIdGenerator() {
+        UUID uuid = UUID.randomUUID();
+        IdGenerator defaultGenerator = Clothes.getIdGenerator();
+        Clothes.setIdGenerator(() -> uuid);
+        try {
+            assertEquals(uuid, new Shirt("Red", 40, AmericanSize.M).getUuid());
+        } finally {
+            Clothes.setIdGenerator(defaultGenerator);
+        }
+        assertNotEquals(uuid, new Shirt("Red", 40, AmericanSize.M).getUuid());
+        assertThrows(IllegalArgumentException.class, () -> Clothes.setIdGenerator(null));
+    }
 }
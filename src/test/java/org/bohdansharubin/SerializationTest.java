@@ -2,10 +2,25 @@ package org.bohdansharubin;
 
 import org.bohdansharubin.enums.*;
 import org.bohdansharubin.models.*;
+import org.bohdansharubin.utils.CatalogFile;
+import org.bohdansharubin.utils.CatalogFormat;
+import org.bohdansharubin.utils.CatalogReader;
+import org.bohdansharubin.utils.CatalogWriter;
+import org.bohdansharubin.utils.CompressedCatalogFile;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -157,4 +172,170 @@ public class SerializationTest {
         );
     }
 
+    @Test
+    @DisplayName("Catalog saved in the binary format is loaded back")
+    void shouldSaveAndLoadCatalogInBinaryFormat(@TempDir Path directory) throws Exception {
+        List<Clothes> catalog = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            catalog.add(i % 3 == 0
+                    ? new Hat("red", 55, AmericanSize.L)
+                    : new Hat("red", 55, AmericanSize.L, i % 2 == 0, HatType.CAP));
+            catalog.add(new Pants("Blue" + i % 7, 40, AmericanSize.M, i % 2 == 0));
+            catalog.add(new Shirt("white", 33, AmericanSize.S, SleeveLength.SHORT));
+            catalog.add(new Skirt("black", 59, AmericanSize.XXXL, SkirtLength.MIDI));
+        }
+        Path path = directory.resolve("catalog.bin");
+
+        CatalogFile.save(catalog, path);
+        List<Clothes> loaded = CatalogFile.load(path);
+
+        assertFalse(CatalogFile.isLegacy(path));
+        assertEquals(catalog, loaded);
+        for (int i = 0; i < catalog.size(); i++) {
+            assertEquals(catalog.get(i).toString(), loaded.get(i).toString());
+        }
+        assertTrue(Files.size(path) < (long) CatalogFormat.RECORD_SIZE * catalog.size() + 1024);
+    }
+
+    @Test
+    @DisplayName("Legacy serialized catalog is migrated to the binary format")
+    void shouldMigrateLegacyCatalog(@TempDir Path directory) throws Exception {
+        // legacy-catalog.ser was written by Serializer.saveObject before the binary format existed
+        List<Clothes> catalog = List.of(
+                new Pants(UUID.fromString("6c59684a-cc15-4eff-84de-7dbed019381b"), "black", 40, AmericanSize.M, true),
+                new Shirt(UUID.fromString("8a0c45e2-16ef-403d-98ef-d161a670b23d"), "white", 44, AmericanSize.L, SleeveLength.SHORT),
+                new Hat(UUID.fromString("3e1da0eb-84f0-4965-99c3-fc3846846b81"), "Dark Blue", 56, AmericanSize.S, true, HatType.BEANIE),
+                new Skirt(UUID.fromString("d038ecd5-0d2a-4af4-8430-1cf51f651c25"), "red", 36, AmericanSize.S, SkirtLength.MINI));
+        Path path = directory.resolve("input.txt");
+        try (InputStream in = SerializationTest.class.getResourceAsStream("/legacy-catalog.ser")) {
+            assertNotNull(in);
+            Files.copy(in, path);
+        }
+
+        assertTrue(CatalogFile.isLegacy(path));
+        assertDetailsEqual(catalog, CatalogFile.load(path));
+        assertTrue(CatalogFile.migrate(path));
+        assertFalse(CatalogFile.isLegacy(path));
+        assertFalse(CatalogFile.migrate(path));
+        assertDetailsEqual(catalog, CatalogFile.load(path));
+    }
+
+    private static void assertDetailsEqual(List<Clothes> expected, List<Clothes> actual) {
+        assertEquals(expected, actual);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Corrupted catalog file is rejected")
+    void shouldThrowExceptionWhenCatalogIsCorrupted(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.bin");
+        CatalogFile.save(List.of(new Shirt("red", 40, AmericanSize.M)), path);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertThrows(IOException.class, () -> CatalogFile.load(path));
+    }
+
+    @Test
+    @DisplayName("Catalog is written and read one clothes item at a time")
+    void shouldStreamCatalogWhenWrittenAndReadRecordByRecord(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.bin");
+        int count = 50_000;
+        try (CatalogWriter writer = CatalogWriter.open(path)) {
+            for (int i = 0; i < count; i++) {
+                writer.write(new Pants("color" + i % 10, 33 + i % 27, AmericanSize.M, i % 2 == 0));
+            }
+            assertEquals(count, writer.count());
+        }
+
+        try (CatalogReader reader = CatalogReader.open(path)) {
+            assertEquals(count, reader.size());
+            int read = 0;
+            while (reader.hasNext()) {
+                Clothes clothes = reader.next();
+                assertEquals("color" + read % 10, clothes.getColor());
+                assertEquals(33 + read % 27, clothes.getEuropeanSize());
+                read++;
+            }
+            assertEquals(count, read);
+        }
+        try (Stream<Clothes> stream = CatalogReader.stream(path)) {
+            assertEquals(count / 2, stream.filter(clothes -> ((Pants) clothes).isHasPockets()).count());
+        }
+    }
+
+    @Test
+    @DisplayName("Aborted or failed streaming write keeps the previous catalog")
+    void shouldKeepPreviousCatalogWhenStreamingWriteFails(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.bin");
+        List<Clothes> catalog = List.of(new Shirt("red", 40, AmericanSize.M));
+        CatalogFile.save(catalog, path);
+
+        CatalogWriter aborted = CatalogWriter.open(path);
+        aborted.write(new Pants("blue", 42, AmericanSize.L, true));
+        aborted.abort();
+        aborted.close();
+        try (CatalogWriter failed = CatalogWriter.open(path)) {
+            failed.write(new Pants("blue", 42, AmericanSize.L, true));
+            assertThrows(IllegalArgumentException.class, () -> failed.write(new Pants()));
+            assertThrows(IllegalStateException.class, () -> failed.write(new Pants("blue", 42, AmericanSize.L)));
+        }
+
+        assertEquals(catalog, CatalogFile.load(path));
+        assertFalse(Files.exists(directory.resolve("catalog.bin.tmp")));
+    }
+
+    @Test
+    @DisplayName("Catalog saved in compressed chunks is loaded back in order")
+    void shouldSaveAndLoadCatalogInCompressedChunks(@TempDir Path directory) throws Exception {
+        List<Clothes> catalog = new ArrayList<>();
+        for (int i = 0; i < 3 * CompressedCatalogFile.CHUNK_RECORDS + 17; i++) {
+            catalog.add(switch (i % 4) {
+                case 0 -> new Hat("red", 55, AmericanSize.L, i % 2 == 0, HatType.CAP);
+                case 1 -> new Pants("Blue" + i % 7, 40, AmericanSize.M, i % 3 == 0);
+                case 2 -> new Shirt("white", 33, AmericanSize.S, SleeveLength.SHORT);
+                default -> new Skirt("black", 59, AmericanSize.XXXL, SkirtLength.MIDI);
+            });
+        }
+        Path plain = directory.resolve("catalog.bin");
+        Path compressed = directory.resolve("catalog.z");
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            CatalogFile.save(catalog, plain);
+            CompressedCatalogFile.save(catalog, compressed, executor);
+
+            assertTrue(CompressedCatalogFile.isCompressed(compressed));
+            assertFalse(CompressedCatalogFile.isCompressed(plain));
+            assertTrue(Files.size(compressed) < Files.size(plain) / 2);
+            List<Clothes> loaded = CompressedCatalogFile.load(compressed, executor);
+            assertEquals(catalog, loaded);
+            for (int i = 0; i < catalog.size(); i++) {
+                assertEquals(catalog.get(i).toString(), loaded.get(i).toString());
+            }
+            assertEquals(catalog, CatalogFile.load(compressed));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Corrupted compressed catalog file is rejected")
+    void shouldThrowExceptionWhenCompressedCatalogIsCorrupted(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.z");
+        List<Clothes> catalog = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            catalog.add(new Shirt("red", 40, AmericanSize.M));
+        }
+        CompressedCatalogFile.save(catalog, path);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 0x5A;
+        Files.write(path, bytes);
+
+        assertThrows(IOException.class, () -> CompressedCatalogFile.load(path));
+        assertThrows(IllegalArgumentException.class,
+                () -> CompressedCatalogFile.save(Arrays.asList(new Shirt(), null), path));
+        assertArrayEquals(bytes, Files.readAllBytes(path));
+    }
 }
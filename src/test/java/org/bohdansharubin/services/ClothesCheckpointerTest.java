@@ -0,0 +1,188 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.models.Pants;
+import org.bohdansharubin.utils.CatalogFile;
+import org.bohdansharubin.utils.LogEntry;
+import org.bohdansharubin.utils.PagedCatalogFile;
+import org.bohdansharubin.utils.WriteAheadLog;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClothesCheckpointerTest {
+
+    @DisplayName("Checkpoint and log tail restore the catalog")
+    @Test
+    void shouldRestoreCatalogWhenCheckpointAndTailAreLoaded(@TempDir Path directory) throws Exception {
+        Path catalogFile = directory.resolve("catalog.bin");
+        Path logFile = directory.resolve("catalog.log");
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>());
+        List<Clothes> added = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(logFile, WriteAheadLog.Durability.PER_OPERATION,
+                Duration.ofMillis(5));
+             ClothesCheckpointer checkpointer = new ClothesCheckpointer(service, log, catalogFile,
+                     Duration.ofHours(1))) {
+            service.setWriteAheadLog(log);
+            for (int i = 0; i < 100; i++) {
+                Clothes pants = new Pants("black", 40, AmericanSize.M, true);
+                service.addClothes(pants);
+                added.add(pants);
+            }
+            long fullSize = Files.size(logFile);
+
+            assertTrue(checkpointer.checkpoint());
+            assertFalse(checkpointer.checkpoint());
+            assertTrue(Files.size(logFile) < fullSize / 10);
+
+            added.get(0).setColor("white");
+            added.get(0).setColor("green");
+            service.deleteClothesByUuid(added.get(1).getUuid());
+            service.addClothes(new Pants("blue", 42, AmericanSize.L, false));
+        }
+
+        List<LogEntry> tail = WriteAheadLog.readLatest(logFile, 4);
+        assertEquals(3, tail.size());
+        ClothesService restored = new ClothesService(CatalogFile.load(catalogFile));
+        tail.forEach(restored::apply);
+        assertEquals(service.getSortedList(ClothesOrder.UUID).toString(),
+                restored.getSortedList(ClothesOrder.UUID).toString());
+    }
+
+    @DisplayName("Checkpoint of a mapped catalog saves its clothes in row order")
+    @Test
+    void shouldSaveClothesInRowOrderWhenCatalogIsMapped(@TempDir Path directory) throws Exception {
+        Path catalogFile = directory.resolve("catalog.bin");
+        List<Clothes> clothes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            clothes.add(new Pants("black", 33 + i % 27, AmericanSize.M, i % 2 == 0));
+        }
+        CatalogFile.save(clothes, catalogFile);
+        ConcurrentClothesService service = new ConcurrentClothesService(catalogFile);
+        try (WriteAheadLog log = WriteAheadLog.open(directory.resolve("catalog.log"),
+                WriteAheadLog.Durability.PER_OPERATION, Duration.ofMillis(5));
+             ClothesCheckpointer checkpointer = new ClothesCheckpointer(service, log, catalogFile,
+                     Duration.ofHours(1))) {
+            service.setWriteAheadLog(log);
+            service.deleteClothesByUuid(clothes.get(3).getUuid());
+            service.findClothesByUuid(clothes.get(5).getUuid()).orElseThrow().setColor("white");
+            service.addClothes(new Pants("blue", 42, AmericanSize.L, false));
+
+            assertTrue(checkpointer.checkpoint());
+        }
+
+        assertEquals(service.getClothesList(), CatalogFile.load(catalogFile));
+        assertEquals("white", CatalogFile.load(catalogFile).get(4).getColor());
+    }
+
+    @DisplayName("Checkpoint keeps the versions of snapshots taken before it")
+    @Test
+    void shouldKeepSnapshotsUpToDateWhenCheckpointIsSaved(@TempDir Path directory) throws Exception {
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>());
+        try (WriteAheadLog log = WriteAheadLog.open(directory.resolve("catalog.log"),
+                WriteAheadLog.Durability.PER_OPERATION, Duration.ofMillis(5));
+             ClothesCheckpointer checkpointer = new ClothesCheckpointer(service, log,
+                     directory.resolve("catalog.bin"), Duration.ofHours(1))) {
+            service.setWriteAheadLog(log);
+            service.addClothes(new Pants("black", 40, AmericanSize.M, true));
+            assertEquals(1, service.snapshot().size());
+
+            assertTrue(checkpointer.checkpoint());
+            service.addClothes(new Pants("blue", 42, AmericanSize.L, false));
+
+            assertEquals(2, service.snapshot().size());
+            assertEquals(1, CatalogFile.load(directory.resolve("catalog.bin")).size());
+        }
+    }
+
+    @DisplayName("Checkpoints run in the background while writers change the catalog")
+    @Test
+    void shouldKeepEveryChangeWhenCheckpointsRunConcurrently(@TempDir Path directory) throws Exception {
+        Path catalogFile = directory.resolve("catalog.bin");
+        Path logFile = directory.resolve("catalog.log");
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>());
+        try (WriteAheadLog log = WriteAheadLog.open(logFile, WriteAheadLog.Durability.BATCHED,
+                Duration.ofMillis(1));
+             ClothesCheckpointer checkpointer = new ClothesCheckpointer(service, log, catalogFile,
+                     Duration.ofMillis(2))) {
+            service.setWriteAheadLog(log);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        Clothes pants = new Pants("black", 40, AmericanSize.M, true);
+                        service.addClothes(pants);
+                        pants.setEuropeanSize(44);
+                        if (i % 3 == 0) {
+                            service.deleteClothesByUuid(pants.getUuid());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+            assertNull(checkpointer.getFailure());
+        }
+
+        List<Clothes> checkpoint = Files.exists(catalogFile) ? CatalogFile.load(catalogFile) : new ArrayList<>();
+        ClothesService restored = new ClothesService(checkpoint);
+        WriteAheadLog.readLatest(logFile, 3).forEach(restored::apply);
+        assertEquals(service.getSortedList(ClothesOrder.UUID).toString(),
+                restored.getSortedList(ClothesOrder.UUID).toString());
+    }
+
+    @DisplayName("Changes are tracked and saved to the paged catalog file")
+    @Test
+    void shouldSaveOnlyChangesWhenCatalogFileIsPaged(@TempDir Path directory) throws Exception {
+        Path catalogFile = directory.resolve("catalog.pages");
+        Path logFile = directory.resolve("catalog.log");
+        List<Clothes> initial = new ArrayList<>();
+        for (int i = 0; i < 4 * PagedCatalogFile.PAGE_RECORDS; i++) {
+            initial.add(new Pants("black", 40, AmericanSize.M, true));
+        }
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>(initial));
+        try (PagedCatalogFile pagedFile = PagedCatalogFile.create(catalogFile, initial);
+             WriteAheadLog log = WriteAheadLog.open(logFile, WriteAheadLog.Durability.PER_OPERATION,
+                     Duration.ofMillis(5));
+             ClothesCheckpointer checkpointer = new ClothesCheckpointer(service, log, pagedFile,
+                     Duration.ofHours(1))) {
+            service.setWriteAheadLog(log);
+            service.findClothesByUuid(initial.get(3).getUuid()).orElseThrow().setColor("white");
+            service.deleteClothesByUuid(initial.get(4).getUuid());
+            Clothes added = new Pants("blue", 42, AmericanSize.L, false);
+            service.addClothes(added);
+            service.deleteClothesByUuid(added.getUuid());
+            service.addClothes(new Pants("green", 44, AmericanSize.S, false));
+
+            ClothesChanges changes = service.drainChanges();
+            assertEquals(2, changes.getChanged().size());
+            assertEquals(Set.of(initial.get(4).getUuid(), added.getUuid()), changes.getDeleted());
+            assertTrue(service.drainChanges().isEmpty());
+            service.restoreChanges(changes);
+
+            assertTrue(checkpointer.checkpoint());
+            assertEquals(service.size(), pagedFile.size());
+            assertEquals(4, pagedFile.pageCount());
+        }
+
+        List<Clothes> restored = new ArrayList<>();
+        PagedCatalogFile.open(catalogFile, restored::add).close();
+        assertEquals(new HashSet<>(service.getClothesList()), new HashSet<>(restored));
+        assertTrue(WriteAheadLog.read(logFile).isEmpty());
+    }
+}
@@ -0,0 +1,103 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.enums.HatType;
+import org.bohdansharubin.enums.SleeveLength;
+import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.models.Hat;
+import org.bohdansharubin.models.Pants;
+import org.bohdansharubin.models.Shirt;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClothesImporterTest {
+
+    @DisplayName("CSV import adds valid rows in file order and reports the others by line")
+    @Test
+    void shouldImportValidRowsAndReportRejectedRowsWhenFileIsCsv(@TempDir Path directory) throws IOException {
+        ClothesService service = new ClothesService(new ArrayList<>(List.of(
+                new Pants("black", 40, AmericanSize.M, true))));
+        Path file = directory.resolve("supplier.csv");
+        List<String> lines = new ArrayList<>();
+        lines.add("\uFEFFType,color,europeanSize,americanSize,hasPockets,sleeveLength,hatType,waterProof,note");
+        for (int i = 0; i < 1000; i++) {
+            lines.add("pants,\"Dark, blue\"," + (33 + i % 27) + ",l,true,,,,row " + i);
+        }
+        lines.add("shirt,white,40,M,,SHORT,,,");
+        lines.add("shirt,white,40,M,,,,,");
+        lines.add("");
+        lines.add("hat,red,70,S,,,CAP,false,");
+        lines.add("pants," + "\"x\"\"y\"" + ",40,XL,maybe,,,,");
+        lines.add("hat,red,41,S,,,fedora,TRUE,");
+        lines.add("skirt,red,41,S,,,,,");
+        Files.write(file, lines);
+        Files.writeString(file, "PANTS,green,40,M,false,,,,\r\n", StandardOpenOption.APPEND);
+
+        ImportReport report = new ClothesImporter(service, 3, 256).importFile(file);
+
+        assertEquals(1007, report.getRowCount());
+        assertEquals(1003, report.getImportedCount());
+        assertEquals(1004, service.size());
+        assertEquals(List.of(1003L, 1005L, 1006L, 1008L),
+                report.getRejections().stream().map(ImportReport.Rejection::getLine).toList());
+        assertEquals("Missing sleeveLength", report.getRejections().get(0).getMessage());
+        assertEquals("Invalid hasPockets: maybe", report.getRejections().get(2).getMessage());
+
+        List<Clothes> list = service.getClothesList();
+        assertEquals("Dark, blue", list.get(1).getColor());
+        assertEquals(33, list.get(1).getEuropeanSize());
+        assertEquals(new Shirt("white", 40, AmericanSize.M, SleeveLength.SHORT), list.get(1001));
+        assertEquals(new Hat("red", 41, AmericanSize.S, true, HatType.FEDORA), list.get(1002));
+        assertEquals(new Pants("green", 40, AmericanSize.M, false), list.get(1003));
+    }
+
+    @DisplayName("JSON Lines import keeps uuids and reports duplicates and malformed lines")
+    @Test
+    void shouldKeepUuidsAndReportDuplicatesWhenFileIsJsonLines(@TempDir Path directory) throws IOException {
+        ClothesService service = new ClothesService(new ArrayList<>());
+        Path file = directory.resolve("supplier.jsonl");
+        Files.write(file, List.of(
+                "{\"uuid\": \"0190a5b2-3c4d-7e5f-8a9b-0c1d2e3f4a5b\", \"type\": \"HAT\", \"color\": \"gr\\u00e9y \\\"x\\\"\","
+                        + " \"europeanSize\": 44, \"americanSize\": \"XXL\", \"hatType\": \"BEANIE\", \"waterProof\": true}",
+                "{\"type\": \"SKIRT\", \"color\": \"red\", \"europeanSize\": \"38\", \"americanSize\": \"S\","
+                        + " \"skirtLength\": \"midi\", \"extra\": null}",
+                "{\"uuid\": \"0190a5b2-3c4d-7e5f-8a9b-0c1d2e3f4a5b\", \"type\": \"PANTS\", \"color\": \"red\","
+                        + " \"europeanSize\": 40, \"americanSize\": \"S\"}",
+                "{\"type\": \"PANTS\", \"color\": \"red\"",
+                "{\"type\": \"PANTS\", \"color\": null, \"europeanSize\": 40, \"americanSize\": \"S\"}"));
+
+        ImportReport report = new ClothesImporter(service).importFile(file);
+
+        assertEquals(5, report.getRowCount());
+        assertEquals(2, report.getImportedCount());
+        assertEquals(List.of(3L, 4L, 5L),
+                report.getRejections().stream().map(ImportReport.Rejection::getLine).toList());
+        assertTrue(report.getRejections().get(0).getMessage().contains("already exists"));
+        assertEquals("Color cannot be empty", report.getRejections().get(2).getMessage());
+        Hat hat = (Hat) service.findClothesByUuid(UUID.fromString("0190a5b2-3c4d-7e5f-8a9b-0c1d2e3f4a5b"))
+                .orElseThrow();
+        assertEquals("gréy \"x\"", hat.getColor());
+        assertTrue(hat.isWaterProof());
+        assertEquals(HatType.BEANIE, hat.getHatType());
+    }
+
+    @DisplayName("CSV file without a type column is not imported")
+    @Test
+    void shouldThrowWhenCsvHeaderHasNoTypeColumn(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("supplier.csv");
+        Files.write(file, List.of("color,europeanSize", "red,40"));
+
+        assertThrows(IOException.class, () -> new ClothesImporter(new ClothesService(new ArrayList<>())).importFile(file));
+    }
+}
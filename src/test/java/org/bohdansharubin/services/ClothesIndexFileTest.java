@@ -0,0 +1,167 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.exceptions.ClothesNotFoundException;
+import org.bohdansharubin.models.*;
+import org.bohdansharubin.utils.CatalogFile;
+import org.bohdansharubin.utils.CatalogFormat;
+import org.bohdansharubin.utils.PagedCatalogFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClothesIndexFileTest {
+
+    private static List<Clothes> catalog() {
+        List<Clothes> clothes = new ArrayList<>();
+        String[] colors = {"red", "Black", "white", "dark blue"};
+        AmericanSize[] sizes = AmericanSize.values();
+        for (int i = 0; i < 300; i++) {
+            String color = colors[i % colors.length];
+            int europeanSize = 33 + i % 27;
+            AmericanSize size = sizes[i % sizes.length];
+            clothes.add(switch (i % 4) {
+                case 0 -> new Pants(color, europeanSize, size, i % 3 == 0);
+                case 1 -> new Shirt(color, europeanSize, size, SleeveLength.values()[i % SleeveLength.values().length]);
+                case 2 -> new Hat(color, europeanSize, size, i % 2 == 0, HatType.values()[i % HatType.values().length]);
+                default -> new Skirt(color, europeanSize, size, SkirtLength.values()[i % SkirtLength.values().length]);
+            });
+        }
+        return clothes;
+    }
+
+    private static int colorsLength(List<Clothes> clothes) {
+        return Integer.BYTES + clothes.stream()
+                .map(Clothes::getColor)
+                .distinct()
+                .mapToInt(color -> Integer.BYTES + color.getBytes(StandardCharsets.UTF_8).length)
+                .sum();
+    }
+
+    private static void assertSameQueries(ClothesService expected, ClothesService actual) {
+        assertEquals(expected.size(), actual.size());
+        for (ClothesType type : ClothesType.values()) {
+            assertEquals(expected.findClothesByType(type), actual.findClothesByType(type));
+        }
+        for (AmericanSize size : AmericanSize.values()) {
+            assertEquals(expected.findClothesByAmericanSize(size), actual.findClothesByAmericanSize(size));
+        }
+        assertEquals(expected.findClothesByColor("BLACK"), actual.findClothesByColor("BLACK"));
+        assertEquals(expected.findClothesInEuropeanSizeBetween(40, 45), actual.findClothesInEuropeanSizeBetween(40, 45));
+        ClothesCriteria criteria = ClothesCriteria.color("dark blue")
+                .or(ClothesCriteria.hatType(HatType.CAP))
+                .and(ClothesCriteria.europeanSizeBetween(35, 50).not());
+        assertEquals(expected.findClothes(criteria), actual.findClothes(criteria));
+        for (Clothes clothes : expected.getClothesList()) {
+            assertEquals(Optional.of(clothes), actual.findClothesByUuid(clothes.getUuid()));
+        }
+    }
+
+    @DisplayName("Saved indexes are loaded for the same snapshot and answer queries like built ones")
+    @Test
+    void shouldLoadIndexesWhenStampMatches(@TempDir Path directory) throws IOException {
+        Path indexFile = directory.resolve("catalog.idx");
+        ClothesService service = new ClothesService(catalog());
+        service.deleteClothesByUuid(service.getClothesList().get(7).getUuid());
+        List<Clothes> snapshot = new ArrayList<>(service.getClothesList());
+        Collections.reverse(snapshot);
+
+        service.saveIndexes(indexFile, 5, snapshot.stream().map(Clothes::getUuid).toList());
+        ClothesService loaded = new ClothesService(snapshot, StorageMode.COLUMNAR, indexFile, 5);
+
+        assertTrue(loaded.hasLoadedIndexes());
+        assertSameQueries(new ClothesService(snapshot), loaded);
+        Clothes added = new Pants("red", 40, AmericanSize.M, true);
+        loaded.addClothes(added);
+        loaded.deleteClothesByUuid(snapshot.get(0).getUuid());
+        assertTrue(loaded.findClothesByColor("red").contains(added));
+        assertThrows(ClothesNotFoundException.class, () -> loaded.findClothesByUuid(snapshot.get(0).getUuid()));
+    }
+
+    @DisplayName("Indexes are built when the index file belongs to another snapshot or is corrupted")
+    @Test
+    void shouldBuildIndexesWhenFileDoesNotMatch(@TempDir Path directory) throws IOException {
+        Path indexFile = directory.resolve("catalog.idx");
+        List<Clothes> clothes = catalog();
+        new ClothesService(clothes).saveIndexes(indexFile, 5, null);
+
+        ClothesService otherStamp = new ClothesService(clothes, StorageMode.OBJECTS, indexFile, 6);
+        assertFalse(otherStamp.hasLoadedIndexes());
+        assertSameQueries(new ClothesService(clothes), otherStamp);
+
+        byte[] bytes = Files.readAllBytes(indexFile);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(indexFile, bytes);
+        assertFalse(new ClothesService(clothes, StorageMode.OBJECTS, indexFile, 5).hasLoadedIndexes());
+        assertFalse(new ClothesService(clothes, StorageMode.OBJECTS, directory.resolve("missing.idx"), 5)
+                .hasLoadedIndexes());
+    }
+
+    @DisplayName("Indexes saved for a paged catalog are not used for another catalog at the same generation")
+    @Test
+    void shouldBuildIndexesWhenPagedCatalogHoldsOtherClothes(@TempDir Path directory) throws IOException {
+        Path indexFile = directory.resolve("catalog.idx");
+        List<Clothes> clothes = catalog();
+        List<Clothes> otherClothes = catalog();
+        try (PagedCatalogFile file = PagedCatalogFile.create(directory.resolve("catalog.pages"), clothes);
+             PagedCatalogFile other = PagedCatalogFile.create(directory.resolve("other.pages"), otherClothes)) {
+            new ClothesService(clothes).saveIndexes(indexFile, file.stamp(), file.uuidsInLoadOrder());
+
+            assertTrue(new ClothesService(clothes, StorageMode.OBJECTS, indexFile, file.stamp()).hasLoadedIndexes());
+            ClothesService otherService = new ClothesService(otherClothes, StorageMode.OBJECTS, indexFile,
+                    other.stamp());
+            assertFalse(otherService.hasLoadedIndexes());
+            assertSameQueries(new ClothesService(otherClothes), otherService);
+        }
+    }
+
+    @DisplayName("Indexes saved for a mapped catalog are loaded without reading its records")
+    @Test
+    void shouldLoadIndexesWhenMappedCatalogMatches(@TempDir Path directory) throws IOException {
+        Path catalogFile = directory.resolve("catalog.bin");
+        Path indexFile = directory.resolve("catalog.idx");
+        List<Clothes> clothes = catalog();
+        CatalogFile.save(clothes, catalogFile);
+        ClothesService built = new ClothesService(catalogFile, indexFile);
+        assertFalse(built.hasLoadedIndexes());
+        built.saveIndexes(indexFile, CatalogFile.stamp(catalogFile).orElseThrow(), null);
+
+        byte[] bytes = Files.readAllBytes(catalogFile);
+        int firstRecord = (int) (Files.size(catalogFile) - CatalogFormat.RECORD_SIZE * (long) clothes.size())
+                - colorsLength(clothes);
+        bytes[firstRecord + CatalogFormat.TYPE_OFFSET] = (byte) 0x7F;
+        Files.write(catalogFile, bytes);
+        ClothesService loaded = new ClothesService(catalogFile, indexFile);
+
+        assertTrue(loaded.hasLoadedIndexes());
+        assertEquals(clothes.size(), loaded.size());
+        assertEquals(Optional.of(clothes.get(1)), loaded.findClothesByUuid(clothes.get(1).getUuid()));
+        assertEquals(new ClothesService(clothes).findClothesByColor("black"), loaded.findClothesByColor("black"));
+        assertThrows(IllegalStateException.class, () -> loaded.findClothesByUuid(clothes.get(0).getUuid()));
+        assertThrows(IOException.class, () -> new ClothesService(catalogFile));
+
+        CatalogFile.save(catalog(), catalogFile);
+        assertFalse(new ClothesService(catalogFile, indexFile).hasLoadedIndexes());
+    }
+
+    @DisplayName("Saving indexes for a load order with an unknown uuid fails")
+    @Test
+    void shouldThrowWhenLoadOrderHasUnknownUuid(@TempDir Path directory) {
+        ClothesService service = new ClothesService(catalog());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.saveIndexes(directory.resolve("catalog.idx"), 1, List.of(UUID.randomUUID())));
+    }
+}
@@ -0,0 +1,96 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.models.Pants;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClothesLoaderTest {
+
+    @DisplayName("Loader adds clothes in the background and becomes ready after the final step")
+    @Test
+    void shouldLoadInBackgroundAndReportProgressWhenAwaited() throws InterruptedException {
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>());
+        List<Clothes> clothes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            clothes.add(new Pants("black", 33 + i % 27, AmericanSize.M, i % 2 == 0));
+        }
+        CountDownLatch halfLoaded = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean stepRan = new AtomicBoolean();
+        ClothesLoader loader = new ClothesLoader(service, 100);
+
+        loader.start((action, discard) -> {
+            for (int i = 0; i < clothes.size(); i++) {
+                action.accept(clothes.get(i));
+                if (i == 499) {
+                    halfLoaded.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            }
+        }, () -> stepRan.set(true));
+
+        halfLoaded.await();
+        assertFalse(loader.isReady());
+        assertEquals(500, loader.getLoadedCount());
+        assertEquals(500, service.size());
+        AtomicLong reported = new AtomicLong(-1);
+        Thread releaser = new Thread(() -> {
+            while (reported.get() < 0) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+        });
+        releaser.start();
+
+        assertTrue(loader.await(Duration.ofMillis(10), reported::set));
+        releaser.join();
+        assertEquals(500, reported.get());
+        assertTrue(loader.isReady());
+        assertTrue(stepRan.get());
+        assertNull(loader.getFailure());
+        assertEquals(clothes, service.getClothesList());
+    }
+
+    @DisplayName("Failed loading discards the clothes and reports the failure")
+    @Test
+    void shouldFailAndKeepExistingClothesWhenSourceThrows() {
+        Clothes existing = new Pants("red", 40, AmericanSize.L, true);
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>(List.of(existing)));
+        ClothesLoader loader = new ClothesLoader(service, 2);
+        AtomicBoolean stepRan = new AtomicBoolean();
+
+        loader.start((action, discard) -> {
+            action.accept(existing);
+            for (int i = 0; i < 5; i++) {
+                action.accept(new Pants("black", 40, AmericanSize.M, true));
+            }
+            discard.run();
+            throw new IOException("Broken catalog");
+        }, () -> stepRan.set(true));
+
+        assertFalse(loader.await(Duration.ofMillis(10), count -> {
+        }));
+        assertEquals("Broken catalog", loader.getFailure().getMessage());
+        assertFalse(stepRan.get());
+        assertEquals(List.of(existing), service.getClothesList());
+        assertThrows(IllegalStateException.class, () -> loader.start((action, discard) -> {
+        }, () -> {
+        }));
+    }
+}
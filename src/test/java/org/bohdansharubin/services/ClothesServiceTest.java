@@ -3,14 +3,18 @@ package org.bohdansharubin.services;
 import org.bohdansharubin.enums.*;
 import org.bohdansharubin.exceptions.ClothesNotFoundException;
 import org.bohdansharubin.models.*;
+import org.bohdansharubin.utils.CatalogFile;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.NullSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.nio.file.Path;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -183,4 +187,432 @@ class ClothesServiceTest {
         assertFalse(result);
     }
 
+    @DisplayName("Find by uuid after many deletions")
+    @Test
+    void shouldFindRemainingClothesWhenOthersDeleted() {
+        ClothesService serviceForDeleting = new ClothesService(new ArrayList<>());
+        List<Clothes> added = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Clothes clothes = new Pants("black", 40, AmericanSize.M, i % 2 == 0);
+            added.add(clothes);
+            serviceForDeleting.addClothes(clothes);
+        }
+        for (int i = 0; i < added.size(); i += 3) {
+            assertTrue(serviceForDeleting.deleteClothesByUuid(added.get(i).getUuid()));
+        }
+        for (int i = 0; i < added.size(); i++) {
+            UUID uuid = added.get(i).getUuid();
+            if (i % 3 == 0) {
+                assertFalse(serviceForDeleting.containsClothes(uuid));
+            } else {
+                assertSame(added.get(i), serviceForDeleting.findClothesByUuid(uuid).orElseThrow());
+            }
+        }
+        assertEquals(66, serviceForDeleting.size());
+        assertEquals(66, serviceForDeleting.getClothesList().size());
+    }
+
+    @DisplayName("Add clothes with existing uuid")
+    @Test
+    void shouldThrowIllegalArgumentExceptionWhenAddClothesWithExistingUuid() {
+        ClothesService serviceForAdding = new ClothesService(createClothes());
+        Clothes existing = serviceForAdding.getClothesList().get(0);
+        assertThrows(IllegalArgumentException.class, () -> serviceForAdding.addClothes(existing));
+    }
+
+    @DisplayName("Search reflects changes made through setters")
+    @Test
+    void shouldReturnUpdatedResultsWhenClothesChangedAfterAdding() {
+        ClothesService serviceForUpdating = new ClothesService(createClothes());
+        Clothes clothes = serviceForUpdating.findClothesByColor("green").get(0);
+
+        clothes.setColor("yellow");
+        clothes.setAmericanSize(AmericanSize.XXL);
+
+        assertTrue(serviceForUpdating.findClothesByColor("green").isEmpty());
+        assertEquals(List.of(clothes), serviceForUpdating.findClothesByColor("yellow"));
+        assertEquals(List.of(clothes), serviceForUpdating.findClothesByAmericanSize(AmericanSize.XXL));
+        assertTrue(serviceForUpdating.findClothesByAmericanSize(AmericanSize.M).isEmpty());
+    }
+
+    @DisplayName("Deleted clothes are not found by search")
+    @Test
+    void shouldNotReturnDeletedClothesWhenSearchByType() {
+        ClothesService serviceForDeleting = new ClothesService(createClothes());
+        Clothes hat = serviceForDeleting.findClothesByType(ClothesType.HAT).get(0);
+
+        serviceForDeleting.deleteClothesByUuid(hat.getUuid());
+        hat.setColor("red");
+
+        assertTrue(serviceForDeleting.findClothesByType(ClothesType.HAT).isEmpty());
+        assertEquals(2, serviceForDeleting.findClothesByColor("red").size());
+    }
+
+    @DisplayName("Count and search by european size after size change")
+    @Test
+    void shouldMoveClothesToNewSizeWhenEuropeanSizeChanged() {
+        ClothesService serviceForUpdating = new ClothesService(createClothes());
+        Clothes skirt = serviceForUpdating.findClothesByType(ClothesType.SKIRT).get(0);
+
+        skirt.setEuropeanSize(34);
+
+        assertEquals(3, serviceForUpdating.countClothesInEuropeanSizeBetween(32, 34));
+        assertEquals(List.of(skirt), serviceForUpdating.findClothesInEuropeanSizeBetween(33, 34));
+        assertEquals(0, serviceForUpdating.countClothesInEuropeanSizeBetween(49, 50));
+        assertEquals(4, serviceForUpdating.countClothesInEuropeanSizeBetween(0, 100));
+    }
+
+    @DisplayName("Every storage mode keeps the same clothes")
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void shouldReturnEqualClothesWhenStoredInAnyMode(StorageMode storageMode) {
+        List<Clothes> original = createClothes();
+        ClothesService modeService = new ClothesService(original, storageMode);
+
+        assertEquals(original, modeService.getClothesList());
+        for (Clothes clothes : original) {
+            Clothes found = modeService.findClothesByUuid(clothes.getUuid()).orElseThrow();
+            assertEquals(clothes, found);
+            assertEquals(clothes.getUuid(), found.getUuid());
+        }
+        assertEquals(List.of(original.get(2), original.get(3)), modeService.findClothesByColor("red"));
+        assertEquals(List.of(original.get(1)), modeService.findClothesByType(ClothesType.SKIRT));
+    }
+
+    @DisplayName("Every storage mode keeps changes made through setters")
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void shouldKeepChangesWhenFoundClothesUpdatedInAnyMode(StorageMode storageMode) {
+        ClothesService modeService = new ClothesService(createClothes(), storageMode);
+        Hat hat = (Hat) modeService.findClothesByType(ClothesType.HAT).get(0);
+
+        hat.setColor("white");
+        hat.setHatType(HatType.FEDORA);
+        hat.setWaterProof(false);
+        modeService.deleteClothesByUuid(modeService.findClothesByType(ClothesType.SKIRT).get(0).getUuid());
+
+        Hat found = (Hat) modeService.findClothesByUuid(hat.getUuid()).orElseThrow();
+        assertEquals("white", found.getColor());
+        assertEquals(HatType.FEDORA, found.getHatType());
+        assertFalse(found.isWaterProof());
+        assertEquals(List.of(hat), modeService.findClothesByColor("white"));
+        assertEquals(3, modeService.getClothesList().size());
+        assertTrue(modeService.toFormattedString().contains("white"));
+    }
+
+    @DisplayName("Find and count by combined criteria")
+    @Test
+    void shouldReturnMatchingClothesWhenFindByCriteria() {
+        List<Clothes> original = createClothes();
+        ClothesService criteriaService = new ClothesService(original);
+        ClothesCriteria redOrSmall = ClothesCriteria.color("red")
+                .or(ClothesCriteria.europeanSizeBetween(32, 33));
+        ClothesCriteria criteria = redOrSmall.and(ClothesCriteria.type(ClothesType.HAT).not());
+
+        assertEquals(List.of(original.get(2), original.get(3)), criteriaService.findClothes(criteria));
+        assertEquals(2, criteriaService.countClothes(criteria));
+        assertEquals(3, criteriaService.countClothes(redOrSmall));
+        assertEquals(1, criteriaService.countClothes(ClothesCriteria.hatType(HatType.CAP)));
+        assertEquals(0, criteriaService.countClothes(ClothesCriteria.sleeveLength(SleeveLength.SHORT)));
+        assertEquals(4, criteriaService.countClothes(ClothesCriteria.all()));
+    }
+
+    @DisplayName("Find by query and explain the chosen plan")
+    @Test
+    void shouldChooseCheapestPlanWhenFindByQuery() {
+        List<Clothes> catalog = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            catalog.add(new Pants(i < 3 ? "red" : "black", 40 + i % 10, AmericanSize.M, true));
+        }
+        catalog.add(new Hat("red", 45, AmericanSize.S, false, HatType.CAP));
+        ClothesService queryService = new ClothesService(catalog);
+
+        ClothesQuery redPants = new ClothesQuery().color("red").type(ClothesType.PANTS);
+        assertEquals(catalog.subList(0, 3), queryService.findClothes(redPants));
+        QueryPlan plan = queryService.explain(redPants);
+        assertEquals(QueryPlan.AccessPath.INDEX_SCAN, plan.getAccessPath());
+        assertEquals(3, plan.getActualRows());
+
+        ClothesQuery allPants = new ClothesQuery().type(ClothesType.PANTS).americanSize(AmericanSize.M);
+        assertEquals(QueryPlan.AccessPath.FULL_SCAN, queryService.explain(allPants).getAccessPath());
+        assertEquals(100, queryService.countClothes(allPants));
+
+        ClothesQuery noSkirts = new ClothesQuery().type(ClothesType.SKIRT).color("red");
+        assertEquals(QueryPlan.AccessPath.EMPTY, queryService.explain(noSkirts).getAccessPath());
+        assertEquals(0, queryService.countClothes(noSkirts));
+
+        assertEquals(1, queryService.countClothes(new ClothesQuery().uuid(catalog.get(100).getUuid())));
+        assertEquals(11, queryService.countClothes(new ClothesQuery().europeanSizeBetween(44, 45)));
+    }
+
+    @DisplayName("Sorted views follow changes and deletions")
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void shouldKeepSortedViewsUpToDateWhenClothesChanged(StorageMode storageMode) {
+        ClothesService sortedService = new ClothesService(createClothes(), storageMode);
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparing(Clothes::getColor)),
+                sortedService.getSortedList(ClothesOrder.COLOR));
+
+        sortedService.getSortedList(ClothesOrder.EUROPEAN_SIZE).get(0).setEuropeanSize(59);
+        sortedService.addClothes(new Shirt("white", 40, AmericanSize.S, SleeveLength.SHORT));
+        sortedService.deleteClothesByUuid(sortedService.getSortedList(ClothesOrder.TYPE).get(0).getUuid());
+
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparing(Clothes::getType)),
+                sortedService.getSortedList(ClothesOrder.TYPE));
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparing(Clothes::getColor)),
+                sortedService.getSortedList(ClothesOrder.COLOR));
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparing(Clothes::getAmericanSize)),
+                sortedService.getSortedList(ClothesOrder.AMERICAN_SIZE));
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparingInt(Clothes::getEuropeanSize)),
+                sortedService.getSortedList(ClothesOrder.EUROPEAN_SIZE));
+        assertEquals(sortedService.getSortedListByComparator(Comparator.naturalOrder()),
+                sortedService.getSortedList());
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparing(Clothes::getUuid)),
+                sortedService.getSortedList(ClothesOrder.UUID));
+    }
+
+    @DisplayName("First k clothes by comparator")
+    @Test
+    void shouldReturnFirstClothesWhenGetFirstSorted() {
+        ClothesService topService = new ClothesService(createClothes());
+        Comparator<Clothes> byEuropeanSize = Comparator.comparingInt(Clothes::getEuropeanSize);
+        List<Clothes> sorted = topService.getSortedListByComparator(byEuropeanSize);
+
+        assertEquals(sorted.subList(0, 3), topService.getFirstSorted(byEuropeanSize, 3));
+        assertEquals(sorted, topService.getFirstSorted(byEuropeanSize, 10));
+        assertEquals(List.of(), topService.getFirstSorted(byEuropeanSize, 0));
+        assertThrows(IllegalArgumentException.class, () -> topService.getFirstSorted(byEuropeanSize, -1));
+    }
+
+    @DisplayName("Pages continue after the last item while clothes are added and deleted")
+    @Test
+    void shouldReturnNextPageWhenClothesChangedBetweenPages() {
+        List<Clothes> original = createClothes();
+        ClothesService pagedService = new ClothesService(original);
+
+        ClothesPage first = pagedService.getPage(ClothesOrder.EUROPEAN_SIZE, null, 2);
+        assertEquals(List.of(original.get(0), original.get(3)), first.getItems());
+        assertTrue(first.hasNext());
+
+        Clothes sameSize = new Pants("black", 33, AmericanSize.S, false);
+        pagedService.addClothes(sameSize);
+        pagedService.deleteClothesByUuid(original.get(3).getUuid());
+        pagedService.deleteClothesByUuid(original.get(0).getUuid());
+        Clothes added = new Skirt("white", 52, AmericanSize.M, SkirtLength.MINI);
+        pagedService.addClothes(added);
+        pagedService.getClothesList();
+
+        ClothesPage second = pagedService.getPage(ClothesOrder.EUROPEAN_SIZE, first.getNextCursor(), 2);
+        assertEquals(List.of(sameSize, original.get(1)), second.getItems());
+        ClothesPage last = pagedService.getPage(ClothesOrder.EUROPEAN_SIZE, second.getNextCursor(), 2);
+        assertEquals(List.of(original.get(2), added), last.getItems());
+        assertFalse(last.hasNext());
+        assertThrows(IllegalArgumentException.class,
+                () -> pagedService.getPage(ClothesOrder.COLOR, first.getNextCursor(), 2));
+    }
+
+    @DisplayName("Parallel mode returns the same results as sequential")
+    @Test
+    void shouldReturnSameResultsWhenRunInParallel() {
+        List<Clothes> catalog = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            catalog.add(new Pants(i % 3 == 0 ? "red" : "black", 33 + i % 27, AmericanSize.values()[i % 4], true));
+        }
+        ClothesService sequential = new ClothesService(catalog);
+        ClothesService parallel = new ClothesService(catalog);
+        parallel.setParallelConfig(ParallelConfig.parallel(1));
+        ClothesQuery scan = new ClothesQuery().type(ClothesType.PANTS).europeanSizeBetween(40, 59);
+        ClothesQuery filtered = new ClothesQuery().color("red").europeanSizeBetween(33, 50);
+        Comparator<Clothes> byColor = Comparator.comparing(Clothes::getColor);
+
+        assertEquals(QueryPlan.AccessPath.FULL_SCAN, parallel.explain(scan).getAccessPath());
+        assertEquals(sequential.findClothes(scan), parallel.findClothes(scan));
+        assertEquals(sequential.findClothes(filtered), parallel.findClothes(filtered));
+        assertEquals(sequential.getSortedListByComparator(byColor), parallel.getSortedListByComparator(byColor));
+        assertThrows(IllegalArgumentException.class, () -> ParallelConfig.parallel(0));
+    }
+
+    @DisplayName("Sort by several orders on packed keys")
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void shouldReturnSortedListWhenSortedBySeveralOrders(StorageMode storageMode) {
+        List<Clothes> catalog = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            catalog.add(new Shirt("color" + i % 7, 33 + i % 27, AmericanSize.values()[i % 5], SleeveLength.LONG));
+            catalog.add(new Hat("Color" + i % 3, 59 - i % 27, AmericanSize.values()[i % 6], false, HatType.CAP));
+        }
+        ClothesService sortedService = new ClothesService(catalog, storageMode);
+        sortedService.deleteClothesByUuid(catalog.get(10).getUuid());
+
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparing(Clothes::getType)
+                        .thenComparing(Clothes::getAmericanSize)
+                        .thenComparingInt(Clothes::getEuropeanSize)),
+                sortedService.getSortedList(ClothesOrder.TYPE, ClothesOrder.AMERICAN_SIZE, ClothesOrder.EUROPEAN_SIZE));
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparing(Clothes::getAmericanSize)
+                        .thenComparing(Comparator.naturalOrder())),
+                sortedService.getSortedList(ClothesOrder.AMERICAN_SIZE, ClothesOrder.NATURAL));
+        assertEquals(sortedService.getSortedListByComparator(Comparator.comparing(Clothes::getColor)
+                        .thenComparing(Clothes::getUuid)),
+                sortedService.getSortedList(ClothesOrder.COLOR, ClothesOrder.UUID));
+    }
+
+    @DisplayName("Snapshot does not change after the catalog changes")
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void shouldKeepSnapshotUnchangedWhenCatalogChanged(StorageMode storageMode) {
+        List<Clothes> catalog = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            catalog.add(new Pants("black", 33 + i % 27, AmericanSize.M, true));
+        }
+        ClothesService versionedService = new ClothesService(catalog, storageMode);
+        ClothesSnapshot before = versionedService.snapshot();
+        List<Clothes> expectedBefore = catalog.stream().map(Clothes::readOnlyCopy).toList();
+
+        versionedService.findClothesByUuid(catalog.get(5).getUuid()).orElseThrow().setColor("red");
+        for (int i = 0; i < 1500; i++) {
+            versionedService.deleteClothesByUuid(catalog.get(i).getUuid());
+        }
+        Clothes added = new Hat("blue", 40, AmericanSize.L, true, HatType.CAP);
+        versionedService.addClothes(added);
+        ClothesSnapshot after = versionedService.snapshot();
+
+        assertEquals(expectedBefore, before.getClothesList());
+        assertEquals(0, before.findClothes(clothes -> clothes.getColor().equals("red")).size());
+        assertEquals(501, after.size());
+        assertEquals(versionedService.getClothesList(), after.getClothesList());
+        assertEquals(added, after.getClothesList().get(500));
+        assertEquals(versionedService.getSortedListByComparator(Comparator.naturalOrder()),
+                after.getSortedListByComparator(Comparator.naturalOrder()));
+        Clothes copy = after.getClothesList().get(0);
+        assertTrue(copy.isReadOnly());
+        assertThrows(UnsupportedOperationException.class, () -> copy.setColor("green"));
+    }
+
+    @DisplayName("Bulk operations report every item and keep indexes consistent")
+    @ParameterizedTest
+    @EnumSource(StorageMode.class)
+    void shouldReportOutcomesWhenBulkOperationsApplied(StorageMode storageMode) {
+        List<Clothes> original = createClothes();
+        ClothesService bulkService = new ClothesService(original, storageMode);
+        List<Clothes> added = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            added.add(new Pants("black", 40, AmericanSize.M, true));
+        }
+        List<Clothes> batch = new ArrayList<>(added);
+        batch.add(null);
+        batch.add(original.get(0));
+
+        BulkReport addReport = bulkService.addAll(batch);
+        assertEquals(20, addReport.getAppliedCount());
+        assertEquals(1, addReport.count(BulkReport.Outcome.INVALID));
+        assertEquals(1, addReport.count(BulkReport.Outcome.DUPLICATE));
+        assertEquals(24, bulkService.size());
+
+        BulkReport updateReport = bulkService.updateAll(clothes -> clothes.getType() == ClothesType.PANTS,
+                clothes -> {
+                    boolean red = clothes.getColor().equals("red");
+                    clothes.setColor("white");
+                    clothes.setEuropeanSize(red ? 100 : 45);
+                });
+        assertEquals(20, updateReport.getAppliedCount());
+        assertEquals(1, updateReport.count(BulkReport.Outcome.INVALID));
+        assertEquals(21, bulkService.findClothesByColor("white").size());
+        assertEquals(0, bulkService.findClothesByColor("black").size());
+        assertEquals(20, bulkService.countClothesInEuropeanSizeBetween(44, 45));
+
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            uuids.add(added.get(i).getUuid());
+        }
+        uuids.add(UUID.randomUUID());
+        BulkReport deleteReport = bulkService.deleteAll(uuids);
+        assertEquals(15, deleteReport.getAppliedCount());
+        assertEquals(1, deleteReport.count(BulkReport.Outcome.NOT_FOUND));
+        assertTrue(deleteReport.hasFailures());
+        assertEquals(9, bulkService.size());
+        assertEquals(6, bulkService.findClothesByType(ClothesType.PANTS).size());
+        assertEquals(bulkService.getSortedListByComparator(Comparator.comparing(Clothes::getType)),
+                bulkService.getSortedList(ClothesOrder.TYPE));
+    }
+
+    @DisplayName("Colors are matched through the shared dictionary ignoring case")
+    @Test
+    void shouldFindClothesByColorIgnoringCaseAndSpaces() {
+        Clothes black = new Pants("Black", 40, AmericanSize.M, true);
+        Clothes lowerBlack = new Shirt("black", 42, AmericanSize.L);
+        Clothes otherBlack = new Skirt(new String("black"), 38, AmericanSize.S);
+        Clothes red = new Hat("red", 55, AmericanSize.M);
+        ClothesService colorService = new ClothesService(new ArrayList<>(List.of(black, lowerBlack, otherBlack, red)),
+                StorageMode.COLUMNAR);
+
+        assertEquals(List.of(black, lowerBlack, otherBlack), colorService.findClothesByColor(" BLACK "));
+        assertEquals(3, colorService.countClothes(ClothesCriteria.color("black")));
+        assertEquals(3, colorService.countClothes(new ClothesQuery().color("BLACK")));
+        assertTrue(colorService.findClothesByColor("green").isEmpty());
+        assertEquals("Black", black.getColor());
+        assertEquals(black.getColorCode(), lowerBlack.getColorCode());
+        assertNotEquals(black.getColorCode(), red.getColorCode());
+        assertSame(lowerBlack.getColor(), otherBlack.getColor());
+
+        colorService.findClothesByColor("red").get(0).setColor("BLACK");
+        assertEquals(4, colorService.findClothesByColor("black").size());
+        assertEquals(List.of("BLACK", "Black", "black", "black"),
+                colorService.getSortedList(ClothesOrder.COLOR, ClothesOrder.INSERTION).stream()
+                        .map(Clothes::getColor).toList());
+    }
+
+    @DisplayName("Searching for an unknown color does not add it to the dictionary")
+    @Test
+    void shouldNotAssignColorCodeWhenSearchedColorIsUnknown() {
+        ClothesService colorService = new ClothesService(new ArrayList<>(List.of(
+                new Pants("black", 40, AmericanSize.M, true))));
+        String unknown = "color-" + UUID.randomUUID();
+        ClothesCriteria criteria = ClothesCriteria.color(unknown);
+        ClothesQuery query = new ClothesQuery().color(unknown);
+
+        assertEquals(0, colorService.countClothes(criteria));
+        assertEquals(0, colorService.countClothes(query));
+        assertEquals(ColorDictionary.NO_CODE, ColorDictionary.getInstance().find(unknown));
+
+        Clothes added = new Shirt(unknown.toUpperCase(Locale.ROOT), 42, AmericanSize.L);
+        colorService.addClothes(added);
+        assertEquals(List.of(added), colorService.findClothes(criteria));
+        assertEquals(List.of(added), colorService.findClothes(query));
+    }
+
+    @DisplayName("Memory-mapped catalog serves the same results as loaded catalog")
+    @Test
+    void shouldServeMappedCatalogLikeLoadedCatalog(@TempDir Path directory) throws Exception {
+        List<Clothes> catalog = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            catalog.add(new Shirt("color" + i % 7, 33 + i % 27, AmericanSize.values()[i % 6], SleeveLength.LONG));
+            catalog.add(new Hat("Color" + i % 3, 59 - i % 27, AmericanSize.values()[i % 5], i % 2 == 0, HatType.CAP));
+        }
+        Path path = directory.resolve("catalog.bin");
+        CatalogFile.save(catalog, path);
+        ClothesService loaded = new ClothesService(CatalogFile.load(path));
+        ClothesService mapped = new ClothesService(path);
+
+        UUID added = UUID.randomUUID();
+        for (ClothesService target : List.of(loaded, mapped)) {
+            target.findClothesByColor("color3").get(5).setColor("white");
+            target.findClothesByType(ClothesType.HAT).get(7).setEuropeanSize(40);
+            target.addClothes(new Skirt(added, "green", 40, AmericanSize.M, SkirtLength.MINI));
+            for (int i = 0; i < 600; i += 3) {
+                target.deleteClothesByUuid(catalog.get(i).getUuid());
+            }
+        }
+
+        assertEquals(loaded.size(), mapped.size());
+        assertEquals(loaded.findClothesByColor("white"), mapped.findClothesByColor("white"));
+        assertEquals(loaded.countClothesInEuropeanSizeBetween(38, 42), mapped.countClothesInEuropeanSizeBetween(38, 42));
+        assertEquals(loaded.findClothes(new ClothesQuery().type(ClothesType.HAT).americanSize(AmericanSize.L)),
+                mapped.findClothes(new ClothesQuery().type(ClothesType.HAT).americanSize(AmericanSize.L)));
+        assertEquals(loaded.getSortedList(ClothesOrder.COLOR, ClothesOrder.EUROPEAN_SIZE),
+                mapped.getSortedList(ClothesOrder.COLOR, ClothesOrder.EUROPEAN_SIZE));
+        assertEquals(loaded.getClothesList().toString(), mapped.getClothesList().toString());
+        assertEquals(loaded.findClothesByUuid(catalog.get(1999).getUuid()),
+                mapped.findClothesByUuid(catalog.get(1999).getUuid()));
+        assertEquals(catalog, CatalogFile.load(path));
+    }
 }
@@ -0,0 +1,55 @@
+package org.bohdansharubin.services;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressedBitmapTest {
+
+    @DisplayName("Set operations match BitSet")
+    @ParameterizedTest(name = "{index}: density={0}")
+    @ValueSource(ints = {2, 20, 200})
+    void shouldMatchBitSetWhenCombiningBitmaps(int density) {
+        Random random = new Random(density);
+        int rows = 300_000;
+        BitSet leftExpected = new BitSet();
+        BitSet rightExpected = new BitSet();
+        CompressedBitmap left = new CompressedBitmap();
+        CompressedBitmap right = new CompressedBitmap();
+        for (int row = 0; row < rows; row++) {
+            if (random.nextInt(1000) < density) {
+                leftExpected.set(row);
+                left.add(row);
+            }
+            if (random.nextInt(1000) < density * 2) {
+                rightExpected.set(row);
+                right.add(row);
+            }
+        }
+        for (int row = 0; row < rows; row += 7) {
+            leftExpected.clear(row);
+            left.remove(row);
+        }
+
+        BitSet and = (BitSet) leftExpected.clone();
+        and.and(rightExpected);
+        BitSet or = (BitSet) leftExpected.clone();
+        or.or(rightExpected);
+        BitSet andNot = (BitSet) leftExpected.clone();
+        andNot.andNot(rightExpected);
+
+        assertAll(
+                () -> assertArrayEquals(leftExpected.stream().toArray(), left.toArray()),
+                () -> assertEquals(leftExpected.cardinality(), left.cardinality()),
+                () -> assertArrayEquals(and.stream().toArray(), left.and(right).toArray()),
+                () -> assertArrayEquals(or.stream().toArray(), left.or(right).toArray()),
+                () -> assertArrayEquals(andNot.stream().toArray(), left.andNot(right).toArray()),
+                () -> assertEquals(or.cardinality(), left.or(right).cardinality())
+        );
+    }
+}
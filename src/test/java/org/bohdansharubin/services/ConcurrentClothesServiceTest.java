@@ -0,0 +1,147 @@
+package org.bohdansharubin.services;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.enums.ClothesType;
+import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.models.Pants;
+import org.bohdansharubin.utils.WriteAheadLog;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentClothesServiceTest {
+
+    @DisplayName("Concurrent writers and readers keep the catalog consistent")
+    @Test
+    void shouldKeepIndexesConsistentWhenUsedFromManyThreads() throws Exception {
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>());
+        int threads = 8;
+        int perThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    Clothes clothes = new Pants("black", 40, AmericanSize.M, true);
+                    service.addClothes(clothes);
+                    clothes.setColor("red");
+                    if (i % 2 == 0) {
+                        service.deleteClothesByUuid(clothes.getUuid());
+                    }
+                }
+            }));
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    int size = service.size();
+                    assertTrue(size >= 0);
+                    service.findClothesByType(ClothesType.PANTS);
+                    service.countClothes(ClothesCriteria.color("red"));
+                    service.getSortedList(ClothesOrder.UUID);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        int expected = threads * perThread / 2;
+        assertEquals(expected, service.size());
+        assertEquals(expected, service.getClothesList().size());
+        assertEquals(expected, service.findClothesByColor("red").size());
+        assertEquals(0, service.countClothes(ClothesCriteria.color("black")));
+        assertEquals(expected, service.getSortedList(ClothesOrder.UUID).size());
+    }
+
+    @DisplayName("Mixed workload of 95% reads and 5% writes keeps searches and the log consistent")
+    @Test
+    void shouldKeepSearchesAndLogConsistentWhenReadsAndWritesAreMixed(@TempDir Path directory) throws Exception {
+        int black = 1000;
+        int white = 64;
+        List<Clothes> clothesList = new ArrayList<>();
+        List<Clothes> replayedList = new ArrayList<>();
+        for (int i = 0; i < black + white; i++) {
+            UUID uuid = UUID.randomUUID();
+            String color = i < black ? "black" : "white";
+            int size = i < black ? 33 + i % 27 : 55;
+            clothesList.add(new Pants(uuid, color, size, AmericanSize.M, true));
+            replayedList.add(new Pants(uuid, color, size, AmericanSize.M, true));
+        }
+        List<Clothes> shared = List.copyOf(clothesList.subList(black, black + white));
+        int inRange = (int) clothesList.stream()
+                .filter(clothes -> clothes.getEuropeanSize() > 40 && clothes.getEuropeanSize() <= 50)
+                .count();
+        ConcurrentClothesService service = new ConcurrentClothesService(clothesList);
+        Path logFile = directory.resolve("catalog.log");
+        int threads = 8;
+        int operations = 4000;
+        List<Future<Integer>> futures = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(logFile, WriteAheadLog.Durability.ASYNC, Duration.ofMillis(5))) {
+            service.setWriteAheadLog(log);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    List<Clothes> own = new ArrayList<>();
+                    for (int i = 0; i < operations; i++) {
+                        int choice = random.nextInt(100);
+                        if (choice < 95) {
+                            switch (choice % 3) {
+                                case 0 -> assertEquals(black, service.findClothesByColor("black").size());
+                                case 1 -> assertTrue(service.findClothesByUuid(
+                                        clothesList.get(random.nextInt(black)).getUuid()).isPresent());
+                                default -> assertEquals(inRange, service.countClothesInEuropeanSizeBetween(40, 50));
+                            }
+                        } else if (choice < 97) {
+                            shared.get(random.nextInt(white)).setEuropeanSize(51 + random.nextInt(9));
+                        } else if (choice < 99 || own.isEmpty()) {
+                            Clothes pants = new Pants("white", 59, AmericanSize.L, false);
+                            service.addClothes(pants);
+                            own.add(pants);
+                        } else {
+                            service.deleteClothesByUuid(own.remove(random.nextInt(own.size())).getUuid());
+                        }
+                    }
+                    return own.size();
+                }));
+            }
+            int added = 0;
+            for (Future<Integer> future : futures) {
+                added += future.get(60, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+
+            assertEquals(black + white + added, service.size());
+            assertEquals(white + added, service.findClothesByColor("white").size());
+        }
+
+        ClothesService replayed = new ClothesService(replayedList);
+        WriteAheadLog.read(logFile).forEach(replayed::apply);
+        assertEquals(service.getSortedList(ClothesOrder.UUID).toString(),
+                replayed.getSortedList(ClothesOrder.UUID).toString());
+    }
+
+    @DisplayName("Clothes list is a snapshot")
+    @Test
+    void shouldReturnSnapshotWhenGetClothesList() {
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>());
+        Clothes pants = new Pants("black", 40, AmericanSize.M, true);
+        service.addClothes(pants);
+
+        List<Clothes> snapshot = service.getClothesList();
+        service.deleteClothesByUuid(pants.getUuid());
+
+        assertEquals(List.of(pants), snapshot);
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(pants));
+        assertTrue(service.getClothesList().isEmpty());
+    }
+}
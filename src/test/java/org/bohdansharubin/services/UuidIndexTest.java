@@ -0,0 +1,63 @@
+package org.bohdansharubin.services;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UuidIndexTest {
+
+    @DisplayName("Put and get many uuids")
+    @Test
+    void shouldReturnRowWhenUuidWasPut() {
+        UuidIndex index = new UuidIndex();
+        List<UUID> uuids = new ArrayList<>();
+        for (int row = 0; row < 10_000; row++) {
+            UUID uuid = UUID.randomUUID();
+            uuids.add(uuid);
+            assertEquals(UuidIndex.ABSENT, index.put(uuid, row));
+        }
+        assertEquals(uuids.size(), index.size());
+        for (int row = 0; row < uuids.size(); row++) {
+            assertEquals(row, index.get(uuids.get(row)));
+        }
+        assertEquals(UuidIndex.ABSENT, index.get(UUID.randomUUID()));
+        assertEquals(UuidIndex.ABSENT, index.get(null));
+    }
+
+    @DisplayName("Remove keeps other uuids reachable")
+    @Test
+    void shouldKeepOtherEntriesWhenUuidRemoved() {
+        UuidIndex index = new UuidIndex();
+        List<UUID> uuids = new ArrayList<>();
+        for (int row = 0; row < 5_000; row++) {
+            UUID uuid = new UUID(row % 7, row);
+            uuids.add(uuid);
+            index.put(uuid, row);
+        }
+        for (int row = 0; row < uuids.size(); row += 2) {
+            assertEquals(row, index.remove(uuids.get(row)));
+        }
+        for (int row = 0; row < uuids.size(); row++) {
+            int expected = row % 2 == 0 ? UuidIndex.ABSENT : row;
+            assertEquals(expected, index.get(uuids.get(row)));
+        }
+        assertEquals(uuids.size() / 2, index.size());
+        assertEquals(UuidIndex.ABSENT, index.remove(uuids.get(0)));
+    }
+
+    @DisplayName("Put existing uuid replaces row")
+    @Test
+    void shouldReplaceRowWhenUuidPutTwice() {
+        UuidIndex index = new UuidIndex();
+        UUID uuid = UUID.randomUUID();
+        index.put(uuid, 1);
+        assertEquals(1, index.put(uuid, 2));
+        assertEquals(2, index.get(uuid));
+        assertEquals(1, index.size());
+    }
+}
@@ -0,0 +1,138 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.enums.AmericanSize;
+import org.bohdansharubin.enums.SleeveLength;
+import org.bohdansharubin.models.Clothes;
+import org.bohdansharubin.models.Pants;
+import org.bohdansharubin.models.Shirt;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedCatalogFileTest {
+
+    @DisplayName("Save rewrites only pages holding changed records")
+    @Test
+    void shouldRewriteOnlyDirtyPagesWhenChangesAreSaved(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.pages");
+        Map<UUID, Clothes> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 10 * PagedCatalogFile.PAGE_RECORDS; i++) {
+            Clothes pants = new Pants("black", 40, AmericanSize.M, i % 2 == 0);
+            expected.put(pants.getUuid(), pants);
+        }
+        List<Clothes> all = new ArrayList<>(expected.values());
+
+        try (PagedCatalogFile file = PagedCatalogFile.create(path, all)) {
+            assertEquals(10, file.pageCount());
+            Clothes recolored = new Pants(all.get(5));
+            recolored.setColor("Lilac");
+            expected.put(recolored.getUuid(), recolored);
+            expected.remove(all.get(6).getUuid());
+            Clothes added = new Shirt("white", 44, AmericanSize.L, SleeveLength.SHORT);
+            expected.put(added.getUuid(), added);
+
+            assertEquals(1, file.save(List.of(recolored, added), List.of(all.get(6).getUuid())));
+            assertEquals(expected.size(), file.size());
+            assertEquals(10, file.pageCount());
+            assertEquals(0, file.save(List.of(), List.of(UUID.randomUUID())));
+        }
+
+        assertEquals(expected, load(path));
+        assertEquals("Lilac", load(path).get(all.get(5).getUuid()).getColor());
+    }
+
+    @DisplayName("New clothes fill freed slots and then new pages")
+    @Test
+    void shouldAppendPagesWhenFreeSlotsAreFilled(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.pages");
+        Map<UUID, Clothes> expected = new HashMap<>();
+        try (PagedCatalogFile file = PagedCatalogFile.create(path, List.of())) {
+            for (int round = 0; round < 5; round++) {
+                List<Clothes> added = new ArrayList<>();
+                for (int i = 0; i < PagedCatalogFile.PAGE_RECORDS + 7; i++) {
+                    Clothes shirt = new Shirt("red" + round, 40, AmericanSize.S, SleeveLength.LONG);
+                    added.add(shirt);
+                    expected.put(shirt.getUuid(), shirt);
+                }
+                List<UUID> deleted = new ArrayList<>();
+                Iterator<UUID> uuids = expected.keySet().iterator();
+                for (int i = 0; i < 10 && uuids.hasNext(); i++) {
+                    UUID uuid = uuids.next();
+                    if (added.stream().noneMatch(clothes -> clothes.getUuid().equals(uuid))) {
+                        deleted.add(uuid);
+                    }
+                }
+                deleted.forEach(expected::remove);
+                file.save(added, deleted);
+            }
+            assertEquals(expected.size(), file.size());
+            assertTrue(file.pageCount() <= expected.size() / PagedCatalogFile.PAGE_RECORDS + 2);
+        }
+
+        assertEquals(expected, load(path));
+    }
+
+    @DisplayName("Torn commit falls back to the previous page table")
+    @Test
+    void shouldLoadPreviousCatalogWhenCommitIsTorn(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.pages");
+        Clothes first = new Pants("black", 40, AmericanSize.M, true);
+        Clothes second = new Pants("blue", 42, AmericanSize.L, false);
+        try (PagedCatalogFile file = PagedCatalogFile.create(path, List.of(first))) {
+            file.save(List.of(second), List.of());
+        }
+        Map<UUID, Clothes> committed = load(path);
+        try (PagedCatalogFile file = PagedCatalogFile.open(path, clothes -> {
+        })) {
+            file.save(List.of(), List.of(first.getUuid()));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}), 8 + 8);
+        }
+
+        assertEquals(committed, load(path));
+        assertEquals(2, committed.size());
+    }
+
+    @DisplayName("Stamp survives reopening and differs for other clothes at the same generation")
+    @Test
+    void shouldChangeStampWhenRecordsDiffer(@TempDir Path directory) throws Exception {
+        Clothes first = new Pants("black", 40, AmericanSize.M, true);
+        Clothes second = new Pants("black", 40, AmericanSize.M, true);
+        long stamp;
+        try (PagedCatalogFile file = PagedCatalogFile.create(directory.resolve("first.pages"), List.of(first));
+             PagedCatalogFile other = PagedCatalogFile.create(directory.resolve("second.pages"), List.of(second))) {
+            assertEquals(file.generation(), other.generation());
+            assertNotEquals(file.stamp(), other.stamp());
+            stamp = file.stamp();
+        }
+
+        try (PagedCatalogFile file = PagedCatalogFile.open(directory.resolve("first.pages"), clothes -> {
+        })) {
+            assertEquals(stamp, file.stamp());
+            Clothes recolored = new Pants(first);
+            recolored.setColor("blue");
+            file.save(List.of(recolored), List.of());
+            assertNotEquals(stamp, file.stamp());
+            stamp = file.stamp();
+        }
+        try (PagedCatalogFile file = PagedCatalogFile.open(directory.resolve("first.pages"), clothes -> {
+        })) {
+            assertEquals(stamp, file.stamp());
+        }
+    }
+
+    private static Map<UUID, Clothes> load(Path path) throws Exception {
+        Map<UUID, Clothes> clothes = new HashMap<>();
+        PagedCatalogFile.open(path, item -> clothes.put(item.getUuid(), item)).close();
+        return clothes;
+    }
+}
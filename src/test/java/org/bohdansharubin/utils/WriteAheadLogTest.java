@@ -0,0 +1,146 @@
+package org.bohdansharubin.utils;
+
+import org.bohdansharubin.enums.*;
+import org.bohdansharubin.models.*;
+import org.bohdansharubin.services.ClothesOrder;
+import org.bohdansharubin.services.ClothesService;
+import org.bohdansharubin.services.ConcurrentClothesService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+
+    @DisplayName("Replaying the log restores every logged change")
+    @ParameterizedTest
+    @EnumSource(WriteAheadLog.Durability.class)
+    void shouldRestoreCatalogWhenLogIsReplayed(WriteAheadLog.Durability durability, @TempDir Path directory)
+            throws Exception {
+        Path path = directory.resolve("catalog.log");
+        UUID shirt = UUID.randomUUID();
+        ClothesService service = new ClothesService(initialCatalog());
+        try (WriteAheadLog log = WriteAheadLog.open(path, durability, Duration.ofMillis(5))) {
+            service.setWriteAheadLog(log);
+            service.addClothes(new Shirt(shirt, "red", 40, AmericanSize.M, SleeveLength.LONG));
+            service.findClothesByUuid(shirt).orElseThrow().setColor("Green");
+            service.findClothesByType(ClothesType.HAT).get(0).setEuropeanSize(50);
+            service.deleteClothesByUuid(service.findClothesByType(ClothesType.PANTS).get(1).getUuid());
+            service.addAll(List.of(new Skirt("black", 38, AmericanSize.S, SkirtLength.MIDI),
+                    new Pants("blue", 44, AmericanSize.L, false)));
+            service.updateAll(clothes -> clothes.getType() == ClothesType.PANTS,
+                    clothes -> clothes.setAmericanSize(AmericanSize.XL));
+        }
+
+        ClothesService restored = new ClothesService(initialCatalog());
+        for (LogEntry entry : WriteAheadLog.read(path)) {
+            restored.apply(entry);
+        }
+
+        assertEquals(service.getClothesList().toString(), restored.getClothesList().toString());
+        assertEquals("Green", restored.findClothesByUuid(shirt).orElseThrow().getColor());
+    }
+
+    @DisplayName("Torn entry at the end of the log is dropped")
+    @Test
+    void shouldDropTornEntryWhenLogIsOpened(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.log");
+        Clothes hat = new Hat("red", 55, AmericanSize.M, true, HatType.CAP);
+        try (WriteAheadLog log = WriteAheadLog.open(path, WriteAheadLog.Durability.PER_OPERATION, Duration.ofMillis(5))) {
+            log.appendPut(hat);
+            log.awaitDurable();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 30, 1, 2, 3, 4, 1}));
+        }
+
+        assertEquals(1, WriteAheadLog.read(path).size());
+        try (WriteAheadLog log = WriteAheadLog.open(path, WriteAheadLog.Durability.PER_OPERATION, Duration.ofMillis(5))) {
+            log.appendDelete(hat.getUuid());
+            log.awaitDurable();
+        }
+
+        List<LogEntry> entries = WriteAheadLog.read(path);
+        assertEquals(2, entries.size());
+        assertEquals(hat.toString(), entries.get(0).getClothes().toString());
+        assertEquals(LogEntry.Operation.DELETE, entries.get(1).getOperation());
+        assertEquals(hat.getUuid(), entries.get(1).getUuid());
+    }
+
+    @DisplayName("Concurrent mutators share the log")
+    @Test
+    void shouldLogEveryChangeWhenMutatedFromManyThreads(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("catalog.log");
+        ConcurrentClothesService service = new ConcurrentClothesService(new ArrayList<>());
+        int threads = 8;
+        int perThread = 200;
+        try (WriteAheadLog log = WriteAheadLog.open(path, WriteAheadLog.Durability.PER_OPERATION, Duration.ofMillis(5))) {
+            service.setWriteAheadLog(log);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        service.addClothes(new Pants("black", 40, AmericanSize.M, true));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            executor.shutdown();
+        }
+
+        ClothesService restored = new ClothesService(new ArrayList<>());
+        WriteAheadLog.read(path).forEach(restored::apply);
+        assertEquals(threads * perThread, restored.size());
+        assertEquals(service.getSortedList(ClothesOrder.UUID).toString(),
+                restored.getSortedList(ClothesOrder.UUID).toString());
+    }
+
+    @DisplayName("Changes are rejected before they are applied when the log can't take them")
+    @Test
+    void shouldKeepCatalogWhenLogIsNotWritable(@TempDir Path directory) throws Exception {
+        ConcurrentClothesService service = new ConcurrentClothesService(initialCatalog());
+        Clothes stored = service.findClothesByType(ClothesType.PANTS).get(0);
+        WriteAheadLog log = WriteAheadLog.open(directory.resolve("catalog.log"),
+                WriteAheadLog.Durability.PER_OPERATION, Duration.ofMillis(5));
+        service.setWriteAheadLog(log);
+        log.close();
+
+        assertThrows(IllegalStateException.class, log::checkWritable);
+        assertThrows(IllegalStateException.class,
+                () -> service.addClothes(new Pants("blue", 44, AmericanSize.L, false)));
+        assertThrows(IllegalStateException.class, () -> stored.setColor("red"));
+        assertThrows(IllegalStateException.class, () -> service.deleteClothesByUuid(stored.getUuid()));
+
+        assertEquals(initialCatalog().toString(), service.getClothesList().toString());
+        assertEquals("black", stored.getColor());
+        assertTrue(service.findClothesByColor("red").isEmpty());
+    }
+
+    private static List<Clothes> initialCatalog() {
+        List<Clothes> catalog = new ArrayList<>();
+        UUID base = new UUID(1, 1);
+        for (int i = 0; i < 10; i++) {
+            UUID uuid = new UUID(base.getMostSignificantBits(), i);
+            catalog.add(i % 2 == 0
+                    ? new Pants(uuid, "black", 40 + i, AmericanSize.M, true)
+                    : new Hat(uuid, "white", 50 + i, AmericanSize.L, false, HatType.FEDORA));
+        }
+        return catalog;
+    }
+}